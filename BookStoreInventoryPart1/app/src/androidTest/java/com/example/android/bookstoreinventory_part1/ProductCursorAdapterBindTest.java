@@ -0,0 +1,76 @@
+package com.example.android.bookstoreinventory_part1;
+
+import android.database.MatrixCursor;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the diff {@link ProductCursorAdapter} applies when the list is reloaded:
+ * only the row that changed is reported. The cost of binding a row is measured by
+ * ProductBindingBenchmark in the benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductCursorAdapterBindTest {
+
+    private static final int ROW_COUNT = 10000;
+
+    private static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    private MatrixCursor mCursor;
+
+    @Before
+    public void setUp() {
+        mCursor = new MatrixCursor(PROJECTION, ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            mCursor.addRow(new Object[]{i + 1L, "Book " + i, 10 + i % 20, i % 50});
+        }
+    }
+
+    @Test
+    public void snapshotDiff_onlyReportsTheChangedRow() {
+        ProductListSnapshot before = ProductListSnapshot.of(mCursor, ROW_COUNT);
+
+        MatrixCursor changed = new MatrixCursor(PROJECTION, ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            int quantity = i == 42 ? 99 : i % 50;
+            changed.addRow(new Object[]{i + 1L, "Book " + i, 10 + i % 20, quantity});
+        }
+        ProductListSnapshot after = ProductListSnapshot.of(changed, ROW_COUNT);
+
+        final int[] changedRows = new int[1];
+        before.diff(after).dispatchUpdatesTo(new android.support.v7.util.ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                fail("No row was inserted");
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                fail("No row was removed");
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                fail("No row was moved");
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                assertEquals(42, position);
+                changedRows[0] += count;
+            }
+        });
+        assertEquals(1, changedRows[0]);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of {@link BookInventoryProvider#bulkInsert}: every product is inserted, and
+ * an invalid one rolls the whole batch back. Its single change notification is checked by
+ * {@link NotificationCountTest}, and its time against one insert per product is measured by
+ * ProviderBenchmark in the benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BulkInsertTest {
+
+    private static final int ROW_COUNT = 10000;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void bulkInsert_insertsEveryProduct() {
+        int inserted = mResolver.bulkInsert(BookEntry.CONTENT_URI, createProducts(ROW_COUNT));
+
+        assertEquals(ROW_COUNT, inserted);
+        assertEquals(ROW_COUNT, countProducts());
+    }
+
+    @Test
+    public void bulkInsert_rollsBackWhenARowIsInvalid() {
+        ContentValues[] products = createProducts(10);
+        products[7].put(BookEntry.COLUMN_PRODUCTS_QUANTITY, -1);
+
+        try {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, products);
+            fail("Expected the invalid quantity to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The whole batch has to be rolled back
+        }
+        assertEquals(0, countProducts());
+    }
+
+    /**
+     * Products spread over the suppliers of {@link TestInventory#getSupplierIds()}, each with the
+     * phone number of its supplier
+     */
+    static ContentValues[] createProducts(int count) {
+        long[] supplierIds = TestInventory.getSupplierIds();
+        ContentValues[] products = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCT_NAMES, "Book " + i);
+            values.put(BookEntry.COLUMN_PRODUCT_PRICES, 10 + i % 20);
+            values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, i % 50);
+            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplierIds[i % supplierIds.length]);
+            values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, 5550000 + i % supplierIds.length);
+            products[i] = values;
+        }
+        return products;
+    }
+
+    private int countProducts() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
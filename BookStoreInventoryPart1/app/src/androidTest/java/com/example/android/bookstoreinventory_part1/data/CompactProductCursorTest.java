@@ -0,0 +1,96 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of a {@link CompactProductCursor} copied from a sorted list of 200k products:
+ * it holds the same rows, columns and types as the provider cursor it was copied from. Its memory
+ * and the frame times of a fling through it are measured by ProductListFlingBenchmark in the
+ * benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CompactProductCursorTest {
+
+    private static final int ROW_COUNT = 200000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    /** The projection of the product list */
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES, BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    /** A sorted list, which the loader doesn't read page by page */
+    private static final Uri LIST_URI = new ProductQuery.Builder()
+            .sortBy(ProductQuery.SORT_NAME, false)
+            .build()
+            .appendTo(BookEntry.CONTENT_URI);
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        long[] supplierIds = TestInventory.getSupplierIds();
+        ContentValues[] products = new ContentValues[BATCH_SIZE];
+        for (int first = 0; first < ROW_COUNT; first += BATCH_SIZE) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                int number = first + i;
+                ContentValues values = new ContentValues();
+                values.put(BookEntry.COLUMN_PRODUCT_NAMES, "Book " + number);
+                values.put(BookEntry.COLUMN_PRODUCT_PRICES, 10 + number % 20);
+                values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, number % 50);
+                values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplierIds[number % supplierIds.length]);
+                products[i] = values;
+            }
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, products);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void compactCursor_holdsTheSameRows() {
+        Cursor source = mResolver.query(LIST_URI, PROJECTION, null, null, null);
+        CompactProductCursor compact = CompactProductCursor.copyOf(source);
+        try {
+            assertEquals(ROW_COUNT, compact.getCount());
+            assertArrayEquals(PROJECTION, compact.getColumnNames());
+            CharArrayBuffer buffer = new CharArrayBuffer(4);
+            source.moveToPosition(-1);
+            while (source.moveToNext()) {
+                assertTrue(compact.moveToPosition(source.getPosition()));
+                for (int i = 0; i < PROJECTION.length; i++) {
+                    assertEquals(source.getType(i), compact.getType(i));
+                    assertEquals(source.getString(i), compact.getString(i));
+                }
+                assertEquals(source.getLong(0), compact.getLong(0));
+                assertEquals(source.getLong(2), compact.getLong(2));
+                assertEquals(source.getInt(3), compact.getInt(3));
+                compact.copyStringToBuffer(1, buffer);
+                assertEquals(source.getString(1), new String(buffer.data, 0, buffer.sizeCopied));
+            }
+            assertFalse(compact.moveToPosition(ROW_COUNT));
+        } finally {
+            source.close();
+            compact.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test checking that, with write-ahead logging, a provider read doesn't wait for a
+ * write transaction open on another connection: it completes while the transaction is held open,
+ * and sees the rows as they were before it. The read latency during writes is measured by
+ * ConcurrentReadBenchmark in the benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadTest {
+
+    /** How long the test waits for the transaction to open and for the read, far above either */
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void read_completesWhileAWriteTransactionIsOpen() throws Exception {
+        ContentValues product = BulkInsertTest.createProducts(1)[0];
+        final int quantity = product.getAsInteger(BookEntry.COLUMN_PRODUCTS_QUANTITY);
+        final long id = ContentUris.parseId(mResolver.insert(BookEntry.CONTENT_URI, product));
+
+        // A second connection to the database file, set up as the provider's
+        final BookInventoryDbHelper writerHelper = TestInventory.createDbHelper();
+        writerHelper.setTuningEnabled(true);
+        final CountDownLatch transactionOpen = new CountDownLatch(1);
+        final CountDownLatch commit = new CountDownLatch(1);
+        final AtomicBoolean committed = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = writerHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    ContentValues values = new ContentValues();
+                    values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, quantity + 1);
+                    db.update(BookEntry.TABLE_NAME, values, BookEntry._ID + " = ?",
+                            new String[]{String.valueOf(id)});
+                    // The transaction now holds the write lock, until the test lets it commit
+                    transactionOpen.countDown();
+                    commit.await();
+                    db.setTransactionSuccessful();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    db.endTransaction();
+                    committed.set(true);
+                }
+            }
+        });
+        writer.start();
+        try {
+            assertTrue(transactionOpen.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+            FutureTask<Integer> read = new FutureTask<>(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return readQuantity(id);
+                }
+            });
+            new Thread(read).start();
+            // Times out if the read waits for the transaction, which only commits after this
+            int readQuantity = read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            assertFalse(committed.get());
+            assertEquals(quantity, readQuantity);
+        } finally {
+            commit.countDown();
+            writer.join();
+            writerHelper.close();
+        }
+        assertEquals(quantity + 1, readQuantity(id));
+    }
+
+    /**
+     * Reads the quantity of the product. A selection instead of the product URI, so the read
+     * reaches SQLite instead of the cache.
+     */
+    private int readQuantity(long id) {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry.COLUMN_PRODUCTS_QUANTITY},
+                BookEntry._ID + " = ?", new String[]{String.valueOf(id)}, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the Products/isbn/* URI: a scanned ISBN is found with one probe of the
+ * unique ISBN index, even among 1M products, and receiving a known ISBN adds to its product
+ * instead of creating another one. The lookup is timed by IsbnLookupBenchmark in the benchmark
+ * module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IsbnLookupTest {
+
+    private static final int ROW_COUNT = 1000000;
+
+    /** Rows written per transaction while filling the table */
+    private static final int CHUNK_SIZE = 50000;
+
+    private static final int LOOKUPS = 1000;
+
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY, BookEntry.COLUMN_ISBN};
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        // Deleted products keep their ISBN until purged, and fillTable writes past the provider
+        mResolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED, null, null);
+        mDbHelper = TestInventory.createDbHelper();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void receive_insertsAnUnknownIsbn_thenAddsToIt() {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAMES, "Data Structures");
+        values.put(BookEntry.COLUMN_PRODUCT_PRICES, 4500);
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, TestInventory.getSupplierIds()[1]);
+        // One scan of the ISBN-10, then a carton of the same book scanned as its ISBN-13
+        Uri first = mResolver.insert(BookEntry.buildIsbnUri("0-306-40615-2"), values);
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 4);
+        Uri second = mResolver.insert(BookEntry.buildIsbnUri("978-0-306-40615-7"), values);
+
+        assertNotNull(first);
+        assertEquals(first, second);
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, PROJECTION, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(ContentUris.parseId(first), cursor.getLong(0));
+            assertEquals(5, cursor.getInt(2));
+            assertEquals("9780306406157", cursor.getString(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void insert_refusesAnIsbnAlreadyUsed() {
+        assertNotNull(mResolver.insert(BookEntry.CONTENT_URI, createProduct(1)));
+        ContentValues duplicate = createProduct(2);
+        duplicate.put(BookEntry.COLUMN_ISBN, isbnOf(1));
+        assertNull(mResolver.insert(BookEntry.CONTENT_URI, duplicate));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void update_refusesAnIsbnAlreadyUsed() {
+        mResolver.insert(BookEntry.CONTENT_URI, createProduct(1));
+        Uri uri = mResolver.insert(BookEntry.CONTENT_URI, createProduct(2));
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_ISBN, isbnOf(1));
+        mResolver.update(uri, values, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lookup_rejectsInvalidIsbns() {
+        mResolver.query(BookEntry.buildIsbnUri("978-0-306-40615-8"), PROJECTION, null, null, null);
+    }
+
+    @Test
+    public void lookup_isOneProbeOfTheIsbnIndex() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM " + BookInventoryMigrations.VIEW_PRODUCT_DETAILS
+                + " WHERE " + ProductStatements.SELECTION_ISBN, new String[]{isbnOf(42)});
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        assertTrue(plan.toString(), plan.toString().contains(BookInventoryMigrations.INDEX_PRODUCT_ISBN));
+        assertFalse(plan.toString(), plan.toString().contains("SCAN"));
+    }
+
+    @Test
+    public void lookup_findsEachIsbnAt1MRows() {
+        fillTable();
+
+        Random random = new Random(42);
+        for (int i = 0; i < LOOKUPS; i++) {
+            int number = random.nextInt(ROW_COUNT);
+            String isbn = isbnOf(number);
+            // Typed with separators, as printed on the back cover
+            Uri uri = BookEntry.buildIsbnUri(isbn.substring(0, 3) + "-" + isbn.substring(3, 12) + "-" + isbn.charAt(12));
+            Cursor cursor = mResolver.query(uri, PROJECTION, null, null, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("Book " + number, cursor.getString(1));
+                assertFalse(cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+
+        Cursor cursor = mResolver.query(BookEntry.buildIsbnUri(isbnOf(ROW_COUNT)), PROJECTION, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Writes ROW_COUNT products with an ISBN each straight into the table, with a compiled
+     * statement: going through the provider would also write a ledger row for each of them.
+     */
+    private void fillTable() {
+        long[] supplierIds = TestInventory.getSupplierIds();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + BookEntry.TABLE_NAME + " ("
+                + BookEntry.COLUMN_PRODUCT_NAMES + ", " + BookEntry.COLUMN_PRODUCT_PRICES + ", "
+                + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", "
+                + BookEntry.COLUMN_ISBN + ") VALUES (?, ?, ?, ?, ?)");
+        try {
+            for (int first = 0; first < ROW_COUNT; first += CHUNK_SIZE) {
+                db.beginTransaction();
+                try {
+                    for (int i = first; i < first + CHUNK_SIZE; i++) {
+                        insert.bindString(1, "Book " + i);
+                        insert.bindLong(2, 10 + i % 20);
+                        insert.bindLong(3, i % 50);
+                        insert.bindLong(4, supplierIds[i % supplierIds.length]);
+                        insert.bindString(5, isbnOf(i));
+                        insert.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static ContentValues createProduct(int number) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAMES, "Book " + number);
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 1);
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, TestInventory.getSupplierIds()[0]);
+        values.put(BookEntry.COLUMN_ISBN, isbnOf(number));
+        return values;
+    }
+
+    /** Returns the ISBN-13 of the given book number, 978 and the number on nine digits */
+    private static String isbnOf(int number) {
+        String digits = "978" + String.format(Locale.US, "%09d", number);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (digits.charAt(i) - '0');
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+}
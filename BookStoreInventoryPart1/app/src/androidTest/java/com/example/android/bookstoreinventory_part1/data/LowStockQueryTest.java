@@ -0,0 +1,180 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Instrumented tests of the low-stock URI on a large catalogue: the query reads the partial
+ * index instead of scanning the products, a page of it holds the low products in name order, and
+ * a sale moves a product into the list. The time of a page is measured by ProviderBenchmark in the
+ * benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LowStockQueryTest {
+
+    private static final int ROW_COUNT = 200000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    /** Reorder threshold of one product in ten, the others keep the default of 0 */
+    private static final int THRESHOLD = 10;
+
+    private static final int PAGE_SIZE = 50;
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    /** Number of the inserted products that are low in stock */
+    private int mLowStockCount;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        ContentValues[] products = BulkInsertTest.createProducts(BATCH_SIZE);
+        int lowPerBatch = 0;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int threshold = i % 10 == 0 ? THRESHOLD : 0;
+            products[i].put(BookEntry.COLUMN_REORDER_THRESHOLD, threshold);
+            if (products[i].getAsInteger(BookEntry.COLUMN_PRODUCTS_QUANTITY) <= threshold) {
+                lowPerBatch++;
+            }
+        }
+        for (int i = 0; i < ROW_COUNT; i += BATCH_SIZE) {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, products);
+        }
+        mLowStockCount = lowPerBatch * (ROW_COUNT / BATCH_SIZE);
+        mDbHelper = TestInventory.createDbHelper();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void lowStockQuery_usesPartialIndex() {
+        // Older devices have no partial indexes, see BookInventoryMigrations
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+        String plan = explain("SELECT * FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.SELECTION_LOW_STOCK
+                + " ORDER BY " + BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE LIMIT " + PAGE_SIZE);
+        assertTrue(plan, plan.contains(BookInventoryMigrations.INDEX_LOW_STOCK));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void lowStockUri_listsEveryLowProduct() {
+        Cursor cursor = mResolver.query(BookEntry.LOW_STOCK_URI,
+                new String[]{BookEntry._ID, BookEntry.COLUMN_PRODUCTS_QUANTITY, BookEntry.COLUMN_REORDER_THRESHOLD},
+                null, null, null);
+        try {
+            assertEquals(mLowStockCount, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertTrue(cursor.getInt(1) <= cursor.getInt(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void lowStockPage_isSortedByName() {
+        Uri pageUri = BookEntry.LOW_STOCK_URI.buildUpon()
+                .appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+        Cursor cursor = mResolver.query(pageUri,
+                new String[]{BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES, BookEntry.COLUMN_PRODUCTS_QUANTITY,
+                        BookEntry.COLUMN_REORDER_THRESHOLD},
+                null, null, null);
+        try {
+            assertEquals(PAGE_SIZE, cursor.getCount());
+            String previousName = null;
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                assertTrue(cursor.getInt(2) <= cursor.getInt(3));
+                if (previousName != null) {
+                    assertTrue(previousName + " before " + name, previousName.compareToIgnoreCase(name) <= 0);
+                }
+                previousName = name;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void sale_movesProductIntoLowStock() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCT_NAMES, "Almost Sold Out");
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 6);
+        values.put(BookEntry.COLUMN_REORDER_THRESHOLD, 5);
+        long id = ContentUris.parseId(mResolver.insert(BookEntry.CONTENT_URI, values));
+        assertFalse(isLowStock(id));
+
+        Bundle extras = new Bundle();
+        extras.putInt(BookInventoryContract.KEY_DELTA, -1);
+        mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_ADJUST_QUANTITY,
+                BookEntry.buildAdjustUri(id).toString(), extras);
+        assertTrue(isLowStock(id));
+
+        // Lowering the threshold takes it back out
+        ContentValues threshold = new ContentValues();
+        threshold.put(BookEntry.COLUMN_REORDER_THRESHOLD, 2);
+        mResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), threshold, null, null);
+        assertFalse(isLowStock(id));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThreshold_isRejected() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_REORDER_THRESHOLD, -1);
+        mResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    private boolean isLowStock(long id) {
+        Cursor cursor = mResolver.query(BookEntry.LOW_STOCK_URI, new String[]{BookEntry._ID},
+                BookEntry._ID + "=?", new String[]{String.valueOf(id)}, null);
+        try {
+            return cursor.getCount() == 1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Returns the detail lines of the query plan of the given statement, one per line */
+    private String explain(String sql, String... args) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test counting the change notifications, and so the list re-queries, caused by
+ * importing products and by editing a single row.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotificationCountTest {
+
+    private static final String LOG_TAG = NotificationCountTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 1000;
+
+    /** Time given to the content service to deliver the notifications */
+    private static final long DELIVERY_MILLIS = 500;
+
+    private ContentResolver mResolver;
+
+    /** Observes the Products URI like the list's cursor does */
+    private CountingObserver mListObserver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mListObserver = new CountingObserver();
+        mResolver.registerContentObserver(BookEntry.CONTENT_URI, true, mListObserver);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.unregisterContentObserver(mListObserver);
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void bulkImport_notifiesTheListOnce() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(ROW_COUNT));
+        SystemClock.sleep(DELIVERY_MILLIS);
+
+        Log.i(LOG_TAG, "List re-queries during a " + ROW_COUNT + " row bulk import: "
+                + mListObserver.mCount.get());
+        assertEquals(1, mListObserver.mCount.get());
+    }
+
+    @Test
+    public void batchImport_notifiesTheListOnce() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (ContentValues values : BulkInsertTest.createProducts(ROW_COUNT)) {
+            operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI).withValues(values).build());
+        }
+        mResolver.applyBatch(BookInventoryContract.CONTENT_AUTHORITY, operations);
+        SystemClock.sleep(DELIVERY_MILLIS);
+
+        Log.i(LOG_TAG, "List re-queries during a " + ROW_COUNT + " row batch import: "
+                + mListObserver.mCount.get());
+        assertEquals(1, mListObserver.mCount.get());
+    }
+
+    @Test
+    public void rowUpdate_onlyNotifiesThatRow() {
+        Uri first = mResolver.insert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(1)[0]);
+        Uri second = mResolver.insert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(1)[0]);
+        SystemClock.sleep(DELIVERY_MILLIS);
+
+        CountingObserver firstObserver = new CountingObserver();
+        CountingObserver secondObserver = new CountingObserver();
+        mResolver.registerContentObserver(first, false, firstObserver);
+        mResolver.registerContentObserver(second, false, secondObserver);
+        try {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 3);
+            mResolver.update(first, values, null, null);
+            SystemClock.sleep(DELIVERY_MILLIS);
+
+            assertEquals(1, firstObserver.mCount.get());
+            assertEquals(0, secondObserver.mCount.get());
+            assertEquals(ContentUris.parseId(first), ContentUris.parseId(firstObserver.mLastUri));
+        } finally {
+            mResolver.unregisterContentObserver(firstObserver);
+            mResolver.unregisterContentObserver(secondObserver);
+        }
+    }
+
+    private static class CountingObserver extends ContentObserver {
+
+        final AtomicInteger mCount = new AtomicInteger();
+
+        volatile Uri mLastUri;
+
+        CountingObserver() {
+            // No handler: onChange is called directly on the notifying thread
+            super(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            mLastUri = uri;
+            mCount.incrementAndGet();
+        }
+    }
+}
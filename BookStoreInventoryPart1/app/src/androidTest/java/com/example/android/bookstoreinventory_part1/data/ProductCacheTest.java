@@ -0,0 +1,192 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the provider's product cache: single-row reads served without SQLite,
+ * list pages filling the cache, and writes invalidating it. Cold and warm loads of a product
+ * with the projection the editor uses are timed by ProviderBenchmark in the benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductCacheTest {
+
+    private static final int ROW_COUNT = 500;
+
+    /** The projection of the editor's loader */
+    private static final String[] EDITOR_PROJECTION = ProductCache.COLUMNS;
+
+    private ContentResolver mResolver;
+
+    private long[] mIds;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(ROW_COUNT));
+
+        mIds = new long[ROW_COUNT];
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                null, null, BookEntry._ID);
+        try {
+            for (int i = 0; cursor.moveToNext(); i++) {
+                mIds[i] = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void warmEditorLoad_skipsTheDatabase() {
+        invalidateAll();
+
+        loadEach();
+        Bundle afterCold = getStats();
+        loadEach();
+        Bundle afterWarm = getStats();
+
+        assertEquals(ROW_COUNT, afterWarm.getInt(BookInventoryContract.RESULT_CACHE_HITS)
+                - afterCold.getInt(BookInventoryContract.RESULT_CACHE_HITS));
+        assertEquals(0, afterWarm.getInt(BookInventoryContract.RESULT_CACHE_MISSES)
+                - afterCold.getInt(BookInventoryContract.RESULT_CACHE_MISSES));
+    }
+
+    @Test
+    public void listPage_fillsTheCache() {
+        invalidateAll();
+        Cursor page = mResolver.query(BookEntry.buildPageUri(100, 0), null, null, null, null);
+        page.close();
+
+        Bundle before = getStats();
+        query(mIds[50]).close();
+        Bundle after = getStats();
+        assertEquals(1, after.getInt(BookInventoryContract.RESULT_CACHE_HITS)
+                - before.getInt(BookInventoryContract.RESULT_CACHE_HITS));
+    }
+
+    @Test
+    public void update_invalidatesTheProduct() {
+        long id = mIds[0];
+        assertEquals(0, readQuantity(id));
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 42);
+        mResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), values, null, null);
+        assertEquals(42, readQuantity(id));
+
+        // A write with a selection invalidates every product
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 7);
+        mResolver.update(BookEntry.CONTENT_URI, values, BookEntry._ID + "=?",
+                new String[]{String.valueOf(id)});
+        assertEquals(7, readQuantity(id));
+    }
+
+    @Test
+    public void delete_invalidatesTheProduct() {
+        long id = mIds[1];
+        query(id).close();
+        mResolver.delete(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), null, null);
+
+        Cursor cursor = query(id);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void cachedProduct_hasEveryColumn() {
+        long id = mIds[2];
+        Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        mResolver.update(uri, values, null, null);
+        query(id).close();
+
+        // Served from the cache, yet with the columns of a query that reads the database
+        Cursor cached = mResolver.query(uri, null, null, null, null);
+        Cursor read = mResolver.query(BookEntry.CONTENT_URI, null, BookEntry._ID + "=?",
+                new String[]{String.valueOf(id)}, null);
+        try {
+            assertArrayEquals(read.getColumnNames(), cached.getColumnNames());
+            assertTrue(cached.moveToFirst());
+            assertEquals("9780306406157", new ProductReader(cached).getIsbn());
+        } finally {
+            cached.close();
+            read.close();
+        }
+    }
+
+    @Test
+    public void cache_staysBounded() {
+        for (long id : mIds) {
+            query(id).close();
+        }
+        assertTrue(getStats().getInt(BookInventoryContract.RESULT_CACHE_SIZE) <= ProductCache.DEFAULT_MAX_SIZE);
+    }
+
+    private void loadEach() {
+        for (long id : mIds) {
+            Cursor cursor = query(id);
+            try {
+                assertTrue(cursor.moveToFirst());
+                new ProductReader(cursor).read();
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private int readQuantity(long id) {
+        Cursor cursor = query(id);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return new ProductReader(cursor).getQuantity();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor query(long id) {
+        Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+        return mResolver.query(uri, EDITOR_PROJECTION, null, null, null);
+    }
+
+    /**
+     * Empties the cache through a write with a selection, which rewrites the quantity the first
+     * product already has
+     */
+    private void invalidateAll() {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 0);
+        mResolver.update(BookEntry.CONTENT_URI, values, BookEntry._ID + "=?",
+                new String[]{String.valueOf(mIds[0])});
+    }
+
+    private Bundle getStats() {
+        return mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_GET_CACHE_STATS,
+                null, null);
+    }
+}
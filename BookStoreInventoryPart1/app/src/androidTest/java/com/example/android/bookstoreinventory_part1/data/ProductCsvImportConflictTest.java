@@ -0,0 +1,144 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of a CSV import with {@link BookInventoryContract#EXTRA_ON_CONFLICT}:
+ * importing the same file again resolves its rows against the stored products, like an upsert
+ * through the provider, instead of adding copies.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductCsvImportConflictTest {
+
+    private ContentResolver mResolver;
+
+    private File mCsvFile;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        mCsvFile = new File(context.getCacheDir(), "import_conflict_test.csv");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mCsvFile), "UTF-8");
+        try {
+            writer.write("product_name,product_price,product_quantity,supplier_name\n");
+            writer.write("The Hobbit,999,3,1\n");
+            writer.write("The Silmarillion,1299,2,1\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mCsvFile.delete();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void reimport_withoutStrategy_duplicatesTheRows() {
+        importCsv(null);
+        Bundle result = importCsv(null);
+
+        assertEquals(2, result.getInt(BookInventoryContract.RESULT_IMPORTED));
+        assertEquals(0, result.getInt(BookInventoryContract.RESULT_MERGED));
+        assertEquals(4, countProducts());
+    }
+
+    @Test
+    public void reimport_keep_addsNothing() {
+        importCsv(null);
+        Bundle result = importCsv(BookInventoryContract.CONFLICT_KEEP);
+
+        assertEquals(0, result.getInt(BookInventoryContract.RESULT_IMPORTED));
+        assertEquals(2, result.getInt(BookInventoryContract.RESULT_MERGED));
+        assertEquals(2, countProducts());
+        assertEquals(3, readQuantity("The Hobbit"));
+    }
+
+    @Test
+    public void reimport_sumQuantity_addsTheStock() {
+        importCsv(BookInventoryContract.CONFLICT_SUM_QUANTITY);
+        Bundle result = importCsv(BookInventoryContract.CONFLICT_SUM_QUANTITY);
+
+        assertEquals(0, result.getInt(BookInventoryContract.RESULT_IMPORTED));
+        assertEquals(2, result.getInt(BookInventoryContract.RESULT_MERGED));
+        assertEquals(2, countProducts());
+        assertEquals(6, readQuantity("The Hobbit"));
+        assertEquals(4, readQuantity("the silmarillion"));
+    }
+
+    @Test
+    public void reimport_replace_takesTheFileValues() throws IOException {
+        importCsv(null);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mCsvFile), "UTF-8");
+        try {
+            writer.write("product_name,product_quantity,supplier_name\n");
+            writer.write("THE HOBBIT,10,1\n");
+        } finally {
+            writer.close();
+        }
+        Bundle result = importCsv(BookInventoryContract.CONFLICT_REPLACE);
+
+        assertEquals(1, result.getInt(BookInventoryContract.RESULT_MERGED));
+        assertEquals(2, countProducts());
+        assertEquals(10, readQuantity("The Hobbit"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStrategy_isRejected() {
+        importCsv("merge");
+    }
+
+    private Bundle importCsv(String onConflict) {
+        Bundle extras = new Bundle();
+        extras.putString(BookInventoryContract.EXTRA_ON_CONFLICT, onConflict);
+        return mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_IMPORT_CSV,
+                Uri.fromFile(mCsvFile).toString(), extras);
+    }
+
+    private int countProducts() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{"COUNT(*)"}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Returns the quantity of the product with the given name, ignoring case */
+    private int readQuantity(String name) {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, null,
+                BookEntry.COLUMN_PRODUCT_NAMES + " = ? COLLATE NOCASE", new String[]{name}, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return new ProductReader(cursor).getQuantity();
+        } finally {
+            cursor.close();
+        }
+    }
+}
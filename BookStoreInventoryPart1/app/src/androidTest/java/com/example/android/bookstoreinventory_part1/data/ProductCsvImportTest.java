@@ -0,0 +1,130 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ResultReceiver;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark importing a 1M-row CSV file through the provider, checking that the
+ * memory used stays flat while the rows stream in.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductCsvImportTest {
+
+    private static final String LOG_TAG = ProductCsvImportTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 1000000;
+
+    /** Every this many rows, one invalid row is written */
+    private static final int INVALID_ROW_INTERVAL = 10000;
+
+    /** Growth of the Java heap we accept during the import, far below the size of the file */
+    private static final long MAX_HEAP_GROWTH_BYTES = 8 * 1024 * 1024;
+
+    private ContentResolver mResolver;
+
+    private File mCsvFile;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        mCsvFile = new File(context.getCacheDir(), "import_test.csv");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mCsvFile), "UTF-8"));
+        try {
+            writer.write("product_name,product_price,product_quantity,supplier_name,supplier_phone_number\n");
+            for (int i = 0; i < ROW_COUNT; i++) {
+                if (i % INVALID_ROW_INTERVAL == 0) {
+                    // Negative quantity, must be rejected like the provider would
+                    writer.write("\"Bad, book " + i + "\",100,-1,1,5550000\n");
+                } else {
+                    writer.write("Book " + i + "," + (100 + i % 5000) + "," + (i % 50) + "," + (1 + i % 5) + ",5550000\n");
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mCsvFile.delete();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void importMillionRows_inFlatMemory() {
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        final long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        final AtomicLong peakHeap = new AtomicLong(heapBefore);
+
+        HandlerThread progressThread = new HandlerThread("import-progress");
+        progressThread.start();
+        ResultReceiver receiver = new ResultReceiver(new Handler(progressThread.getLooper())) {
+            @Override
+            protected void onReceiveResult(int resultCode, Bundle progress) {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                if (used > peakHeap.get()) {
+                    peakHeap.set(used);
+                }
+            }
+        };
+        Bundle extras = new Bundle();
+        extras.putInt(BookInventoryContract.EXTRA_CHUNK_SIZE, 5000);
+        extras.putParcelable(BookInventoryContract.EXTRA_PROGRESS_RECEIVER, receiver);
+
+        long start = System.nanoTime();
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_IMPORT_CSV,
+                Uri.fromFile(mCsvFile).toString(), extras);
+        long millis = (System.nanoTime() - start) / 1000000;
+        progressThread.quitSafely();
+
+        int expectedRejected = ROW_COUNT / INVALID_ROW_INTERVAL;
+        assertEquals(ROW_COUNT - expectedRejected, result.getInt(BookInventoryContract.RESULT_IMPORTED));
+        assertEquals(expectedRejected, result.getInt(BookInventoryContract.RESULT_REJECTED));
+        assertEquals(ProductCsvImporter.MAX_REPORTED_REJECTIONS,
+                result.getStringArrayList(BookInventoryContract.RESULT_REJECTIONS).size());
+
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{"COUNT(*)"}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(ROW_COUNT - expectedRejected, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+
+        long growth = peakHeap.get() - heapBefore;
+        Log.i(LOG_TAG, ROW_COUNT + " rows imported in " + millis + " ms ("
+                + (ROW_COUNT * 1000L / Math.max(millis, 1)) + " rows/s), file "
+                + mCsvFile.length() + " bytes, peak heap growth " + growth + " bytes");
+        assertTrue("Heap grew by " + growth + " bytes", growth < MAX_HEAP_GROWTH_BYTES);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests exporting the product table through the provider: a 500k-row CSV export
+ * that must stream in bounded memory and import back to the same products, and a JSON export.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductExportTest {
+
+    private static final String LOG_TAG = ProductExportTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 500000;
+
+    /** Rows inserted per bulkInsert call while filling the table */
+    private static final int INSERT_CHUNK = 10000;
+
+    /** Growth of the Java heap we accept during the export, far below the size of the file */
+    private static final long MAX_HEAP_GROWTH_BYTES = 8 * 1024 * 1024;
+
+    private static final String[] COLUMNS = ProductExporter.COLUMNS;
+
+    private ContentResolver mResolver;
+
+    private File mCsvFile;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mCsvFile = new File(context.getCacheDir(), "export_test.csv");
+    }
+
+    @After
+    public void tearDown() {
+        mCsvFile.delete();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void exportThenImport_roundTrips() throws IOException {
+        ContentValues[] products = BulkInsertTest.createProducts(INSERT_CHUNK);
+        // Names that need quoting in the CSV
+        products[1].put(BookEntry.COLUMN_PRODUCT_NAMES, "Eats, Shoots & Leaves");
+        products[2].put(BookEntry.COLUMN_PRODUCT_NAMES, "The \"Best\" Book");
+        for (int inserted = 0; inserted < ROW_COUNT; inserted += INSERT_CHUNK) {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, products);
+        }
+        long fingerprint = fingerprintProducts();
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long peakHeap = heapBefore;
+
+        long start = System.nanoTime();
+        InputStream input = mResolver.openInputStream(BookEntry.EXPORT_URI);
+        OutputStream output = new FileOutputStream(mCsvFile);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                peakHeap = Math.max(peakHeap, runtime.totalMemory() - runtime.freeMemory());
+            }
+        } finally {
+            input.close();
+            output.close();
+        }
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        long growth = peakHeap - heapBefore;
+        Log.i(LOG_TAG, ROW_COUNT + " rows exported in " + millis + " ms ("
+                + (ROW_COUNT * 1000L / Math.max(millis, 1)) + " rows/s), file "
+                + mCsvFile.length() + " bytes, peak heap growth " + growth + " bytes");
+        assertTrue("Heap grew by " + growth + " bytes", growth < MAX_HEAP_GROWTH_BYTES);
+
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_IMPORT_CSV,
+                Uri.fromFile(mCsvFile).toString(), null);
+        assertEquals(ROW_COUNT, result.getInt(BookInventoryContract.RESULT_IMPORTED));
+        assertEquals(0, result.getInt(BookInventoryContract.RESULT_REJECTED));
+
+        // The import gives the rows new _IDs, but in the same order, so only the _IDs differ
+        assertEquals(fingerprint, fingerprintProducts());
+    }
+
+    @Test
+    public void exportJson_writesEveryProduct() throws IOException, JSONException {
+        ContentValues[] products = BulkInsertTest.createProducts(10);
+        products[4].put(BookEntry.COLUMN_PRODUCT_NAMES, "The \"Best\" Book");
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, products);
+
+        assertArrayEquals(new String[]{BookInventoryContract.MIME_TYPE_JSON},
+                mResolver.getStreamTypes(BookEntry.EXPORT_URI, "application/*"));
+
+        AssetFileDescriptor descriptor = mResolver.openTypedAssetFileDescriptor(BookEntry.EXPORT_URI,
+                BookInventoryContract.MIME_TYPE_JSON, null);
+        InputStream input = descriptor.createInputStream();
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                json.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+
+        JSONArray array = new JSONArray(json.toString("UTF-8"));
+        assertEquals(products.length, array.length());
+        for (int i = 0; i < products.length; i++) {
+            JSONObject product = array.getJSONObject(i);
+            assertEquals(products[i].getAsString(BookEntry.COLUMN_PRODUCT_NAMES),
+                    product.getString(BookEntry.COLUMN_PRODUCT_NAMES));
+            for (int column = 2; column < COLUMNS.length; column++) {
+                assertEquals(COLUMNS[column], (long) products[i].getAsLong(COLUMNS[column]),
+                        product.getLong(COLUMNS[column]));
+            }
+        }
+    }
+
+    /** Hash of every product but its _ID, in _ID order, read page by page */
+    private long fingerprintProducts() {
+        long hash = 1;
+        long lastId = 0;
+        int rows = 0;
+        int pageRows;
+        do {
+            Cursor cursor = mResolver.query(BookEntry.buildPageUri(INSERT_CHUNK, lastId), COLUMNS,
+                    null, null, null);
+            try {
+                pageRows = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    hash = 31 * hash + cursor.getString(1).hashCode();
+                    for (int i = 2; i < COLUMNS.length; i++) {
+                        hash = 31 * hash + cursor.getLong(i);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+            rows += pageRows;
+        } while (pageRows == INSERT_CHUNK);
+        assertEquals(ROW_COUNT, rows);
+        return hash;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the filtered and sorted product list on a large catalogue: every shape
+ * of {@link ProductQuery} is answered from an index, and the provider returns the rows the
+ * filters select in the order asked for.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductListQueryTest {
+
+    private static final int ROW_COUNT = 100000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final String[] SORT_KEYS = {null, ProductQuery.SORT_NAME, ProductQuery.SORT_PRICE,
+            ProductQuery.SORT_QUANTITY, ProductQuery.SORT_SUPPLIER};
+
+    /** Number of filters a query can combine, see {@link #buildQuery} */
+    private static final int FILTER_COUNT = 6;
+
+    /** The projection of the product list */
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES, BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        for (int i = 0; i < ROW_COUNT; i += BATCH_SIZE) {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(BATCH_SIZE));
+        }
+        mDbHelper = TestInventory.createDbHelper();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void everyShape_usesAnIndex() {
+        int shapes = 0;
+        for (int filters = 0; filters < 1 << FILTER_COUNT; filters++) {
+            for (String sort : SORT_KEYS) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    if ((filters == 0 && sort == null) || (sort == null && descending)) {
+                        // The whole table in _ID order, or a direction without a sort
+                        continue;
+                    }
+                    ProductQuery query = buildQuery(filters, sort, descending);
+                    String plan = explain(query);
+                    for (String step : plan.split("\n")) {
+                        // The view's bound is the last key of the wipes, a probe the plan shows without USING
+                        if ((step.startsWith("SCAN") || step.startsWith("SEARCH"))
+                                && !step.contains(BookInventoryMigrations.TABLE_PRODUCT_WIPES)) {
+                            assertTrue(describe(query) + plan, step.contains(" USING "));
+                        }
+                    }
+                    assertTrue(describe(query) + plan, plan.contains(" INDEX "));
+                    if (filters == 0) {
+                        // Sorting alone reads an index in order instead of sorting the rows
+                        assertFalse(describe(query) + plan, plan.contains("TEMP B-TREE"));
+                    }
+                    shapes++;
+                }
+            }
+        }
+        assertEquals((1 << FILTER_COUNT) * 9 - 1, shapes);
+    }
+
+    @Test
+    public void singleFilter_searchesItsOwnIndex() {
+        assertPlanUses(new ProductQuery.Builder().supplier(3).build(), BookInventoryMigrations.INDEX_SUPPLIER_NAME);
+        assertPlanUses(new ProductQuery.Builder().minPriceCents(15).maxPriceCents(20).build(),
+                BookInventoryMigrations.INDEX_PRODUCT_PRICE);
+        assertPlanUses(new ProductQuery.Builder().maxQuantity(3).build(), BookInventoryMigrations.INDEX_PRODUCT_QUANTITY);
+        assertPlanUses(new ProductQuery.Builder().namePrefix("book 42").build(), BookInventoryMigrations.INDEX_PRODUCT_NAME);
+    }
+
+    @Test
+    public void provider_filtersAndSorts() {
+        ProductQuery query = new ProductQuery.Builder()
+                .supplier(TestInventory.getSupplierIds()[1])
+                .minPriceCents(12)
+                .maxPriceCents(20)
+                .namePrefix("BOOK 1")
+                .sortBy(ProductQuery.SORT_PRICE, true)
+                .build();
+        Cursor cursor = mResolver.query(query.appendTo(BookEntry.CONTENT_URI), PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.getCount() > 0);
+            ProductReader reader = new ProductReader(cursor);
+            long previousPrice = Long.MAX_VALUE;
+            while (cursor.moveToNext()) {
+                assertTrue(reader.getName(), reader.getName().startsWith("Book 1"));
+                assertTrue(reader.getPriceCents() >= 12 && reader.getPriceCents() <= 20);
+                assertTrue(reader.getPriceCents() <= previousPrice);
+                previousPrice = reader.getPriceCents();
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Every name starting with the prefix, and only those, whatever the case
+        assertEquals(count(BookEntry.CONTENT_URI, BookEntry.COLUMN_PRODUCT_NAMES + " LIKE 'book 4%'"),
+                count(new ProductQuery.Builder().namePrefix("bOOK 4").build().appendTo(BookEntry.CONTENT_URI), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void provider_rejectsUnknownSortKeys() {
+        Uri uri = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_SORT, BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER)
+                .build();
+        mResolver.query(uri, PROJECTION, null, null, null);
+    }
+
+    /**
+     * Returns a query with the filters of the set bits: supplier, minimum price, maximum price,
+     * minimum quantity, maximum quantity and name prefix.
+     */
+    private static ProductQuery buildQuery(int filters, String sort, boolean descending) {
+        ProductQuery.Builder builder = new ProductQuery.Builder().sortBy(sort, descending);
+        if ((filters & 1) != 0) {
+            builder.supplier(TestInventory.getSupplierIds()[2]);
+        }
+        if ((filters & 2) != 0) {
+            builder.minPriceCents(15);
+        }
+        if ((filters & 4) != 0) {
+            builder.maxPriceCents(25);
+        }
+        if ((filters & 8) != 0) {
+            builder.minQuantity(10);
+        }
+        if ((filters & 16) != 0) {
+            builder.maxQuantity(40);
+        }
+        if ((filters & 32) != 0) {
+            builder.namePrefix("Book 12");
+        }
+        return builder.build();
+    }
+
+    private void assertPlanUses(ProductQuery query, String index) {
+        String plan = explain(query);
+        assertTrue(describe(query) + plan, plan.contains("SEARCH"));
+        assertTrue(describe(query) + plan, plan.contains(index));
+    }
+
+    /** Returns the query plan of the SQL the provider runs for the query, one step per line */
+    private String explain(ProductQuery query) {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, BookInventoryMigrations.VIEW_PRODUCT_DETAILS,
+                PROJECTION, query.getSelection(), null, null, query.getSortOrder(), null);
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, query.getSelectionArgs());
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private static String describe(ProductQuery query) {
+        return query.getSelection() + " ORDER BY " + query.getSortOrder() + ":\n";
+    }
+
+    private int count(Uri uri, String selection) {
+        Cursor cursor = mResolver.query(uri, new String[]{BookEntry._ID}, selection, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.util.ListUpdateCallback;
+
+import com.example.android.bookstoreinventory_part1.ProductListSnapshot;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of a {@link ProductPageCursor} over 100k products: every row is visited in
+ * order, the pages are fetched ahead, and a snapshot of the list only reads the fetched pages.
+ * Its time to the first row is measured by ProviderBenchmark in the benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductPageCursorTest {
+
+    private static final int ROW_COUNT = 100000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        for (int i = 0; i < ROW_COUNT; i += BATCH_SIZE) {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(BATCH_SIZE));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void pagedCursor_visitsEveryRowInOrder() {
+        Cursor cursor = new ProductPageCursor(mResolver, PROJECTION, 100, 3);
+        try {
+            assertEquals(ROW_COUNT, cursor.getCount());
+            long previousId = 0;
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                assertTrue(id > previousId);
+                previousId = id;
+            }
+            // Jump back to a page that has been dropped, then past pages never seen
+            assertTrue(cursor.moveToPosition(150));
+            assertTrue(cursor.moveToPosition(ROW_COUNT - 1));
+            assertEquals(previousId, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void pagedCursor_jumpsOverGapsInTheIds() {
+        // A deleted product leaves a gap, page starts can't be worked out from the _IDs
+        long[] ids = readIds();
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(BookEntry.CONTENT_URI, ids[5000]),
+                null, null));
+
+        Cursor cursor = new ProductPageCursor(mResolver, PROJECTION, 100, 3);
+        try {
+            assertEquals(ROW_COUNT - 1, cursor.getCount());
+            assertTrue(cursor.moveToPosition(ROW_COUNT - 2));
+            assertEquals(ids[ROW_COUNT - 1], cursor.getLong(0));
+            // Back before the gap, then past it from the page just seen
+            assertTrue(cursor.moveToPosition(4950));
+            assertEquals(ids[4950], cursor.getLong(0));
+            assertTrue(cursor.moveToPosition(5250));
+            assertEquals(ids[5251], cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void pagedCursor_holdsTheFirstPageOnceCreated() {
+        ProductPageCursor cursor = new ProductPageCursor(mResolver, PROJECTION, 100, 3);
+        try {
+            assertEquals(100, cursor.getFetchedCount());
+            // The next page was fetched ahead, moving onto it hands it over
+            assertTrue(cursor.moveToPosition(99));
+            assertTrue(cursor.moveToPosition(100));
+            assertEquals(200, cursor.getFetchedCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void snapshot_onlyReadsTheFetchedPages() {
+        ProductPageCursor cursor = new ProductPageCursor(mResolver, PROJECTION, 100, 3);
+        try {
+            ProductListSnapshot snapshot = ProductListSnapshot.of(cursor, ROW_COUNT, cursor.getFetchedCount());
+            assertEquals(100, cursor.getFetchedCount());
+            assertEquals(ROW_COUNT, snapshot.size());
+
+            // The rows read match, the others are rebound
+            final int[] changed = new int[1];
+            snapshot.diff(snapshot).dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    fail("Inserted " + count + " at " + position);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    fail("Removed " + count + " at " + position);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    fail("Moved " + fromPosition + " to " + toPosition);
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    assertTrue(position >= 100);
+                    changed[0] += count;
+                }
+            });
+            assertEquals(ROW_COUNT - 100, changed[0]);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Returns the _ID of every product, in _ID order */
+    private long[] readIds() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID}, null, null,
+                BookEntry._ID);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark counting the objects allocated while reading the numeric columns of
+ * 100k products through {@link ProductReader} and through getString and parsing.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductReaderTest {
+
+    private static final String LOG_TAG = ProductReaderTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 100000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        for (int i = 0; i < ROW_COUNT; i += BATCH_SIZE) {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(BATCH_SIZE));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void reader_allocatesLessThanGetString() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, PROJECTION, null, null, null);
+        try {
+            // Fill the cursor window outside of the measured loops
+            assertEquals(ROW_COUNT, cursor.getCount());
+
+            int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_PRICES);
+            int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCTS_QUANTITY);
+            long stringTotal = 0;
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                stringTotal += (long) Float.parseFloat(cursor.getString(priceColumnIndex))
+                        * Integer.parseInt(cursor.getString(quantityColumnIndex));
+            }
+            Debug.stopAllocCounting();
+            int stringAllocations = Debug.getThreadAllocCount();
+
+            ProductReader reader = new ProductReader(cursor);
+            long readerTotal = 0;
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                readerTotal += reader.getPriceCents() * reader.getQuantity();
+            }
+            Debug.stopAllocCounting();
+            int readerAllocations = Debug.getThreadAllocCount();
+
+            Log.i(LOG_TAG, ROW_COUNT + " rows: getString path " + stringAllocations
+                    + " allocations, ProductReader " + readerAllocations + " allocations");
+            assertEquals(stringTotal, readerTotal);
+            assertTrue(readerAllocations < stringAllocations);
+        } finally {
+            cursor.close();
+        }
+    }
+}
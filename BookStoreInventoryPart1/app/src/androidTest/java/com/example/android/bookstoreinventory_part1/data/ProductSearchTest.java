@@ -0,0 +1,206 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the full-text search of {@link BookEntry#buildSearchUri}: the words
+ * match as prefixes, the shortest names come first, FTS syntax typed by the user is ignored and
+ * the search index follows every insert, rename and delete. The test database is created
+ * through every migration, so the triggers checked here are the ones the version 8 rebuild of
+ * the product table recreated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductSearchTest {
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        purgeDeleted();
+        mDbHelper = TestInventory.createDbHelper();
+
+        insert("The Hobbit");
+        insert("The Hobbit: An Illustrated Edition");
+        insert("Hobbies for Children");
+        insert("The Lord of the Rings");
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void wordsMatchAsPrefixes() {
+        assertEquals(Arrays.asList("The Hobbit", "Hobbies for Children", "The Hobbit: An Illustrated Edition"),
+                search("hob"));
+        // Every word has to match
+        assertEquals(Arrays.asList("The Hobbit", "The Hobbit: An Illustrated Edition"), search("the hob"));
+        assertEquals(Arrays.asList("The Lord of the Rings"), search("LORD ring"));
+        assertEquals(new ArrayList<String>(), search("dragon"));
+    }
+
+    @Test
+    public void shortestNamesComeFirst() {
+        List<String> names = search("the");
+
+        assertEquals(3, names.size());
+        for (int i = 1; i < names.size(); i++) {
+            assertTrue(names.get(i - 1).length() <= names.get(i).length());
+        }
+    }
+
+    @Test
+    public void ftsSyntaxIsIgnored() {
+        // Unbalanced quotes, a leading minus or a bare star would make MATCH throw
+        assertEquals(search("hobbit"), search("\"hobbit"));
+        assertEquals(search("hobbit"), search("-hobbit"));
+        assertEquals(search("hobbit"), search("hobbit*"));
+        assertEquals(search("the hob"), search("the:hob"));
+        // Operators are searched as plain words, so none of them widens the search
+        assertEquals(new ArrayList<String>(), search("hobbit OR lord"));
+        assertEquals(new ArrayList<String>(), search("hobbit NEAR lord"));
+        // Nothing left to match shows every product, like an empty search box
+        assertEquals(4, search("*\"()").size());
+    }
+
+    @Test
+    public void insertedProduct_isFoundRightAway() {
+        insert("Farmer Giles of Ham");
+
+        assertEquals(Arrays.asList("Farmer Giles of Ham"), search("giles"));
+    }
+
+    @Test
+    public void renamedProduct_isFoundByItsNewName() {
+        long id = idOf("The Lord of the Rings");
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAMES, "The Fellowship of the Ring");
+
+        assertEquals(1, mResolver.update(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), values,
+                null, null));
+
+        assertEquals(new ArrayList<String>(), search("lord"));
+        assertEquals(Arrays.asList("The Fellowship of the Ring"), search("fellowship"));
+    }
+
+    @Test
+    public void deletedProduct_leavesTheIndex() {
+        long id = idOf("Hobbies for Children");
+
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id), null, null));
+        // Hidden from the search until the purge, which takes it out of the index
+        assertEquals(new ArrayList<String>(), search("children"));
+        assertEquals(1, countIndexed(mDbHelper.getReadableDatabase(), id));
+
+        assertEquals(1, purgeDeleted());
+        assertEquals(0, countIndexed(mDbHelper.getReadableDatabase(), id));
+    }
+
+    @Test
+    public void rebuiltProductTable_keepsItsIndexInSync() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL(SupplierTableTest.CREATE_V1_PRODUCTS);
+            BookInventoryMigrations.migrate(db, 1, 7);
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCT_NAMES, "The Silmarillion");
+            // Supplier 1 of this scratch database, seeded by the migration
+            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, 1);
+            long kept = db.insert(BookEntry.TABLE_NAME, null, values);
+
+            // Version 8 replaces the product table, dropping the triggers with the old one
+            BookInventoryMigrations.migrate(db, 7, 8);
+            assertEquals(1, countMatches(db, "silmarillion"));
+
+            values.put(BookEntry.COLUMN_PRODUCT_NAMES, "Unfinished Tales");
+            long added = db.insert(BookEntry.TABLE_NAME, null, values);
+            assertEquals(1, countMatches(db, "unfinished"));
+
+            values.clear();
+            values.put(BookEntry.COLUMN_PRODUCT_NAMES, "The Children of Hurin");
+            db.update(BookEntry.TABLE_NAME, values, BookEntry._ID + " = ?", new String[]{String.valueOf(kept)});
+            assertEquals(0, countMatches(db, "silmarillion"));
+            assertEquals(1, countMatches(db, "hurin"));
+
+            db.delete(BookEntry.TABLE_NAME, BookEntry._ID + " = ?", new String[]{String.valueOf(added)});
+            assertEquals(0, countIndexed(db, added));
+        } finally {
+            db.close();
+        }
+    }
+
+    private void insert(String name) {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCT_NAMES, name);
+        assertNotNull(mResolver.insert(BookEntry.CONTENT_URI, values));
+    }
+
+    /** Returns the names the search finds, in the order of the results */
+    private List<String> search(String query) {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = mResolver.query(BookEntry.buildSearchUri(query),
+                new String[]{BookEntry.COLUMN_PRODUCT_NAMES}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+
+    private long idOf(String name) {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                BookEntry.COLUMN_PRODUCT_NAMES + " = ?", new String[]{name}, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int purgeDeleted() {
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED,
+                null, null);
+        return result.getInt(BookInventoryProvider.RESULT_PURGED);
+    }
+
+    private static long countMatches(SQLiteDatabase db, String word) {
+        return DatabaseUtils.longForQuery(db, "SELECT count(*) FROM " + BookInventoryMigrations.TABLE_PRODUCT_SEARCH
+                + " WHERE " + BookInventoryMigrations.TABLE_PRODUCT_SEARCH + " MATCH ?", new String[]{word});
+    }
+
+    private static long countIndexed(SQLiteDatabase db, long id) {
+        return DatabaseUtils.longForQuery(db, "SELECT count(*) FROM " + BookInventoryMigrations.TABLE_PRODUCT_SEARCH
+                + " WHERE docid = ?", new String[]{String.valueOf(id)});
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented microbenchmark of the single-row hot paths: the generic SQLiteDatabase calls the
+ * provider used to make (SQL built per call, ContentValues, selection arguments) against
+ * {@link ProductStatements}. Logs the latency and the allocations per operation.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductStatementsBenchmarkTest {
+
+    private static final String LOG_TAG = ProductStatementsBenchmarkTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 2000;
+
+    /** Operations run untimed first, so both variants start with warm caches */
+    private static final int WARMUP_COUNT = 200;
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    private SQLiteDatabase mDatabase;
+
+    private ProductStatements mStatements;
+
+    private long[] mIds;
+
+    /** One single-row operation of the benchmark */
+    private interface Operation {
+        void run(long id);
+    }
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        // Purge the products deleted by earlier tests, which the table still holds
+        mResolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED, null, null);
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(ROW_COUNT));
+
+        mDbHelper = TestInventory.createDbHelper();
+        mDbHelper.setTuningEnabled(true);
+        mDatabase = mDbHelper.getWritableDatabase();
+        mStatements = new ProductStatements(mDatabase);
+
+        mIds = new long[ROW_COUNT];
+        Cursor cursor = mDatabase.query(BookEntry.TABLE_NAME, new String[]{BookEntry._ID},
+                null, null, null, null, BookEntry._ID);
+        try {
+            for (int i = 0; cursor.moveToNext(); i++) {
+                mIds[i] = cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void readById() {
+        final String[] columns = ProductCache.COLUMNS;
+        double[] before = measure("read by id, query()", new Operation() {
+            @Override
+            public void run(long id) {
+                Cursor cursor = mDatabase.query(BookInventoryMigrations.VIEW_PRODUCT_DETAILS, columns, BookEntry._ID + "=?",
+                        new String[]{String.valueOf(id)}, null, null, null);
+                cursor.moveToFirst();
+                cursor.close();
+            }
+        });
+        double[] after = measure("read by id, compiled", new Operation() {
+            @Override
+            public void run(long id) {
+                Cursor cursor = mStatements.queryById(id);
+                cursor.moveToFirst();
+                cursor.close();
+            }
+        });
+        assertTrue(after[1] <= before[1]);
+    }
+
+    @Test
+    public void updateQuantity() {
+        double[] before = measure("update quantity, update()", new Operation() {
+            @Override
+            public void run(long id) {
+                ContentValues values = new ContentValues();
+                values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, (int) (id % 50));
+                mDatabase.update(BookEntry.TABLE_NAME, values, BookEntry._ID + "=?",
+                        new String[]{String.valueOf(id)});
+            }
+        });
+        double[] after = measure("update quantity, compiled", new Operation() {
+            @Override
+            public void run(long id) {
+                assertEquals(1, mStatements.updateQuantity(id, (int) (id % 50)));
+            }
+        });
+        assertTrue(after[1] < before[1]);
+    }
+
+    @Test
+    public void hideById() {
+        // Each variant deletes half of the rows, so neither deletes a row twice
+        int half = ROW_COUNT / 2;
+        final long[] firstHalf = new long[half];
+        final long[] secondHalf = new long[half];
+        System.arraycopy(mIds, 0, firstHalf, 0, half);
+        System.arraycopy(mIds, half, secondHalf, 0, half);
+
+        mIds = firstHalf;
+        final long deletedAt = System.currentTimeMillis();
+        double[] before = measure("delete by id, update()", new Operation() {
+            @Override
+            public void run(long id) {
+                ContentValues values = new ContentValues();
+                values.put(BookEntry.COLUMN_DELETED_AT, deletedAt);
+                mDatabase.update(BookEntry.TABLE_NAME, values, BookEntry._ID + "=? AND "
+                        + ProductStatements.SELECTION_SHOWN, new String[]{String.valueOf(id)});
+            }
+        });
+        mIds = secondHalf;
+        double[] after = measure("delete by id, compiled", new Operation() {
+            @Override
+            public void run(long id) {
+                mStatements.hideById(id, deletedAt);
+            }
+        });
+        assertTrue(after[1] < before[1]);
+    }
+
+    /**
+     * Runs the operation on every id after a warmup and returns the mean microseconds and
+     * allocations per operation.
+     */
+    @SuppressWarnings("deprecation")
+    private double[] measure(String name, Operation operation) {
+        int warmup = Math.min(WARMUP_COUNT, mIds.length / 4);
+        for (int i = 0; i < warmup; i++) {
+            operation.run(mIds[i]);
+        }
+        int count = mIds.length - warmup;
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = warmup; i < mIds.length; i++) {
+            operation.run(mIds[i]);
+        }
+        long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        double micros = nanos / 1000.0 / count;
+        double allocationsPerOperation = (double) allocations / count;
+        Log.i(LOG_TAG, String.format("%s: %.1f us, %.1f allocations per operation",
+                name, micros, allocationsPerOperation));
+        return new double[]{micros, allocationsPerOperation};
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Looper;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of {@link ProductWriter}: writes to a product run in the order they were
+ * requested, and every outcome is reported on the main thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductWriterTest {
+
+    private static final int UPDATE_COUNT = 200;
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private ContentResolver mResolver;
+
+    private ProductWriter mWriter;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mWriter = new ProductWriter(mResolver, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void writesToAProduct_runInRequestOrder() throws InterruptedException {
+        Uri productUri = insertAndWait(BulkInsertTest.createProducts(1)[0]);
+        assertNotNull(productUri);
+
+        final List<Integer> completed = new ArrayList<>();
+        final AtomicBoolean offMainThread = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(UPDATE_COUNT + 2);
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, i);
+            final int quantity = i;
+            mWriter.update(productUri, values, null, null, new ProductWriter.Callback() {
+                @Override
+                public void onUpdateComplete(int rowsAffected) {
+                    offMainThread.compareAndSet(false, Looper.myLooper() != Looper.getMainLooper());
+                    // Only successful updates are recorded, a failed one shows up as missing
+                    if (rowsAffected == 1) {
+                        completed.add(quantity);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        // Queued behind the updates, so it runs after all of them...
+        final AtomicReference<Integer> deletedRows = new AtomicReference<>();
+        mWriter.delete(productUri, null, null, new ProductWriter.Callback() {
+            @Override
+            public void onDeleteComplete(int rowsDeleted) {
+                deletedRows.set(rowsDeleted);
+                done.countDown();
+            }
+        });
+        // ...and this update finds nothing left to update
+        final AtomicReference<Integer> lateRows = new AtomicReference<>();
+        mWriter.update(productUri, new ContentValues(BulkInsertTest.createProducts(1)[0]), null, null,
+                new ProductWriter.Callback() {
+                    @Override
+                    public void onUpdateComplete(int rowsAffected) {
+                        lateRows.set(rowsAffected);
+                        done.countDown();
+                    }
+                });
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse("A callback ran off the main thread", offMainThread.get());
+        assertEquals(UPDATE_COUNT, completed.size());
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            assertEquals(Integer.valueOf(i), completed.get(i));
+        }
+        assertEquals(Integer.valueOf(1), deletedRows.get());
+        assertEquals(Integer.valueOf(0), lateRows.get());
+    }
+
+    @Test
+    public void lastUpdate_wins() throws InterruptedException {
+        Uri productUri = insertAndWait(BulkInsertTest.createProducts(1)[0]);
+
+        final CountDownLatch done = new CountDownLatch(UPDATE_COUNT);
+        ProductWriter.Callback callback = new ProductWriter.Callback() {
+            @Override
+            public void onUpdateComplete(int rowsAffected) {
+                done.countDown();
+            }
+        };
+        for (int i = 0; i < UPDATE_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, i);
+            mWriter.update(productUri, values, null, null, callback);
+        }
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        Cursor cursor = mResolver.query(productUri, new String[]{BookEntry.COLUMN_PRODUCTS_QUANTITY},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(UPDATE_COUNT - 1, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void invalidInsert_reportsFailure() throws InterruptedException {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, -1);
+        assertNull(insertAndWait(values));
+    }
+
+    private Uri insertAndWait(ContentValues values) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Uri> result = new AtomicReference<>();
+        mWriter.insert(BookEntry.CONTENT_URI, values, new ProductWriter.Callback() {
+            @Override
+            public void onInsertComplete(Uri newUri) {
+                result.set(newUri);
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result.get();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the provider's metrics: every operation is recorded on the URI it ran
+ * on, slow ones with their SQL and query plan, and nothing is recorded while they are off.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProviderMetricsWiringTest {
+
+    private static final int PRODUCT_COUNT = 100;
+
+    private ContentResolver mResolver;
+
+    private ContentProviderClient mClient;
+
+    private ProviderMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mClient = mResolver.acquireContentProviderClient(BookInventoryContract.CONTENT_AUTHORITY);
+        mMetrics = ((BookInventoryProvider) mClient.getLocalContentProvider()).getMetrics();
+        mMetrics.reset();
+        mMetrics.setSlowThresholdMillis(ProviderMetrics.DEFAULT_SLOW_THRESHOLD_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        mMetrics.setEnabled(false);
+        mMetrics.setSlowThresholdMillis(ProviderMetrics.DEFAULT_SLOW_THRESHOLD_MILLIS);
+        mMetrics.reset();
+        mClient.release();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(PRODUCT_COUNT));
+        readAll(BookEntry.CONTENT_URI);
+        assertNull(mMetrics.getStats(ProviderMetrics.OP_BULK_INSERT, BookInventoryContract.PATH_PRODUCTS));
+        assertNull(mMetrics.getStats(ProviderMetrics.OP_QUERY, BookInventoryContract.PATH_PRODUCTS));
+    }
+
+    @Test
+    public void operations_areRecordedByUri() {
+        mMetrics.setEnabled(true);
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(PRODUCT_COUNT));
+        Uri productUri = mResolver.insert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(1)[0]);
+        assertEquals(PRODUCT_COUNT + 1, readAll(BookEntry.CONTENT_URI));
+        readAll(productUri);
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 3);
+        mResolver.update(productUri, values, null, null);
+        mResolver.delete(productUri, null, null);
+
+        ProviderMetrics.OperationStats bulk = mMetrics.getStats(ProviderMetrics.OP_BULK_INSERT,
+                BookInventoryContract.PATH_PRODUCTS);
+        assertEquals(1, bulk.getLatency().getCount());
+        assertEquals(PRODUCT_COUNT, bulk.getRows());
+        ProviderMetrics.OperationStats list = mMetrics.getStats(ProviderMetrics.OP_QUERY,
+                BookInventoryContract.PATH_PRODUCTS);
+        assertEquals(1, list.getLatency().getCount());
+        assertEquals(PRODUCT_COUNT + 1, list.getRows());
+        String item = BookInventoryContract.PATH_PRODUCTS + "/#";
+        assertEquals(1, mMetrics.getStats(ProviderMetrics.OP_QUERY, item).getRows());
+        assertEquals(1, mMetrics.getStats(ProviderMetrics.OP_UPDATE, item).getRows());
+        assertEquals(1, mMetrics.getStats(ProviderMetrics.OP_DELETE, item).getRows());
+    }
+
+    @Test
+    public void slowQuery_isSampledWithSqlAndPlan() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(PRODUCT_COUNT));
+        mMetrics.setEnabled(true);
+        // Every operation counts as slow
+        mMetrics.setSlowThresholdMillis(0);
+        mResolver.query(BookEntry.LOW_STOCK_URI, new String[]{BookEntry._ID}, null, null, null).close();
+
+        List<ProviderMetrics.SlowSample> samples = mMetrics.getSlowSamples();
+        assertEquals(1, samples.size());
+        ProviderMetrics.SlowSample sample = samples.get(0);
+        assertEquals(ProviderMetrics.OP_QUERY, sample.operation);
+        assertTrue(sample.sql, sample.sql.contains(BookEntry.SELECTION_LOW_STOCK));
+        assertFalse(sample.plan, sample.plan.isEmpty() || sample.plan.startsWith("No plan"));
+
+        StringWriter out = new StringWriter();
+        ((BookInventoryProvider) mClient.getLocalContentProvider()).dump(null, new PrintWriter(out),
+                new String[]{"metrics", "off"});
+        assertFalse(mMetrics.isEnabled());
+        assertTrue(out.toString(), out.toString().contains(sample.sql));
+    }
+
+    private int readAll(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+}
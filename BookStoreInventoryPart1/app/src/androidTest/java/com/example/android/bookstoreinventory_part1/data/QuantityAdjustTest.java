@@ -0,0 +1,143 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the adjust URI: the quantity never goes below 0, and many threads
+ * adjusting one product at once don't lose any change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QuantityAdjustTest {
+
+    private static final int THREAD_COUNT = 16;
+
+    private static final int ADJUSTMENTS_PER_THREAD = 500;
+
+    private static final int INITIAL_QUANTITY = 100;
+
+    private ContentResolver mResolver;
+
+    private long mId;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, INITIAL_QUANTITY);
+        mId = ContentUris.parseId(mResolver.insert(BookEntry.CONTENT_URI, values));
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void adjust_returnsNewQuantity() {
+        assertEquals(INITIAL_QUANTITY + 5, adjust(5));
+        assertEquals(INITIAL_QUANTITY + 2, adjust(-3));
+        assertEquals(INITIAL_QUANTITY + 2, readQuantity());
+    }
+
+    @Test
+    public void adjust_refusesNegativeStock() {
+        assertEquals(-1, adjust(-INITIAL_QUANTITY - 1));
+        assertEquals(INITIAL_QUANTITY, readQuantity());
+        assertEquals(0, adjust(-INITIAL_QUANTITY));
+
+        ContentValues values = new ContentValues();
+        values.put(BookInventoryContract.KEY_DELTA, -1);
+        assertEquals(0, mResolver.update(BookEntry.buildAdjustUri(mId), values, null, null));
+    }
+
+    @Test
+    public void adjust_unknownProduct_isRefused() {
+        ContentValues values = new ContentValues();
+        values.put(BookInventoryContract.KEY_DELTA, 1);
+        assertEquals(0, mResolver.update(BookEntry.buildAdjustUri(mId + 1), values, null, null));
+    }
+
+    @Test
+    public void concurrentAdjustments_loseNoUpdate() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger appliedTotal = new AtomicInteger();
+        final AtomicInteger negativeSeen = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            // Half the threads mostly sell, the other half mostly receive
+            final int direction = t % 2 == 0 ? -1 : 1;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < ADJUSTMENTS_PER_THREAD; i++) {
+                        int delta = i % 3 == 0 ? -direction : direction;
+                        int quantity = adjust(delta);
+                        if (quantity >= 0) {
+                            appliedTotal.addAndGet(delta);
+                        } else if (delta > 0) {
+                            // Receiving stock can't be refused
+                            negativeSeen.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, negativeSeen.get());
+        int quantity = readQuantity();
+        assertTrue(quantity >= 0);
+        assertEquals(INITIAL_QUANTITY + appliedTotal.get(), quantity);
+    }
+
+    private int adjust(int delta) {
+        Bundle extras = new Bundle();
+        extras.putInt(BookInventoryContract.KEY_DELTA, delta);
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_ADJUST_QUANTITY,
+                BookEntry.buildAdjustUri(mId).toString(), extras);
+        return result.getInt(BookInventoryContract.RESULT_QUANTITY);
+    }
+
+    private int readQuantity() {
+        Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, mId);
+        Cursor cursor = mResolver.query(uri, new String[]{BookEntry.COLUMN_PRODUCTS_QUANTITY},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
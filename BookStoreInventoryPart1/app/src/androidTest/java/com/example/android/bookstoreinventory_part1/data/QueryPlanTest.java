@@ -0,0 +1,140 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test checking with EXPLAIN QUERY PLAN that the provider's common product queries
+ * are answered from an index instead of a full table scan. The plans are those of the SQL the
+ * provider actually ran, over the product view with the selections it adds, as its metrics
+ * sample them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+
+    private static final int ROW_COUNT = 100000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    private ContentResolver mResolver;
+
+    private ContentProviderClient mClient;
+
+    private ProviderMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        for (int i = 0; i < ROW_COUNT; i += BATCH_SIZE) {
+            mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(BATCH_SIZE));
+        }
+        mClient = mResolver.acquireContentProviderClient(BookInventoryContract.CONTENT_AUTHORITY);
+        mMetrics = ((BookInventoryProvider) mClient.getLocalContentProvider()).getMetrics();
+        mMetrics.reset();
+        // Every operation is sampled with the plan of its statement
+        mMetrics.setSlowThresholdMillis(0);
+        mMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        mMetrics.setEnabled(false);
+        mMetrics.setSlowThresholdMillis(ProviderMetrics.DEFAULT_SLOW_THRESHOLD_MILLIS);
+        mMetrics.reset();
+        mClient.release();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void lookupById_usesPrimaryKey() {
+        // With a selection the provider reads the product from SQLite instead of its cache
+        String plan = explain(ContentUris.withAppendedId(BookEntry.CONTENT_URI, 42),
+                ProductStatements.SELECTION_ID, "42");
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+    }
+
+    @Test
+    public void filterByName_usesNameIndex() {
+        String plan = explain(BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_PRODUCT_NAMES + " = ? COLLATE NOCASE", "book 42");
+        assertTrue(plan, plan.contains(BookInventoryMigrations.INDEX_PRODUCT_NAME));
+    }
+
+    @Test
+    public void sortByName_usesNameIndex() {
+        String plan = explain(new ProductQuery.Builder().sortBy(ProductQuery.SORT_NAME, false).build()
+                .appendTo(BookEntry.CONTENT_URI), null);
+        assertTrue(plan, plan.contains(BookInventoryMigrations.INDEX_PRODUCT_NAME));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void filterBySupplier_usesSupplierIndex() {
+        String plan = explain(new ProductQuery.Builder().supplier(3).build().appendTo(BookEntry.CONTENT_URI), null);
+        assertTrue(plan, plan.contains(BookInventoryMigrations.INDEX_SUPPLIER_NAME));
+    }
+
+    @Test
+    public void sortByQuantity_usesQuantityIndex() {
+        String plan = explain(new ProductQuery.Builder().sortBy(ProductQuery.SORT_QUANTITY, false).build()
+                .appendTo(BookEntry.CONTENT_URI), null);
+        assertTrue(plan, plan.contains(BookInventoryMigrations.INDEX_PRODUCT_QUANTITY));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void pageById_seeksThePrimaryKey() {
+        String plan = explain(BookEntry.buildPageUri(50, 5000), null);
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void pageByName_seeksTheNameIndex() {
+        String plan = explain(BookEntry.buildPageUri(50, "Book 5000", 5000), null);
+        assertTrue(plan, plan.contains(BookInventoryMigrations.INDEX_PRODUCT_NAME));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void lowStock_usesLowStockIndex() {
+        String plan = explain(BookEntry.LOW_STOCK_URI, null);
+        assertTrue(plan, plan.contains(BookInventoryMigrations.INDEX_LOW_STOCK));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * Queries the URI through the provider and returns the plan of the statement it ran, with
+     * the statement itself on the first line
+     */
+    private String explain(Uri uri, String selection, String... selectionArgs) {
+        mMetrics.reset();
+        Cursor cursor = mResolver.query(uri, PROJECTION, selection,
+                selectionArgs.length == 0 ? null : selectionArgs, null);
+        cursor.close();
+        List<ProviderMetrics.SlowSample> samples = mMetrics.getSlowSamples();
+        assertEquals(uri.toString(), 1, samples.size());
+        ProviderMetrics.SlowSample sample = samples.get(0);
+        assertNotNull(uri + " ran no statement", sample.sql);
+        return sample.sql + "\n" + sample.plan;
+    }
+}
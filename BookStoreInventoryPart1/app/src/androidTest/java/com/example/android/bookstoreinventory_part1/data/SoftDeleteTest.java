@@ -0,0 +1,285 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StatsEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StockMovementEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of deleting products: a delete hides them until the purge, within the undo
+ * window {@link BookInventoryContract#METHOD_UNDO_DELETE} brings them back, and the purge removes
+ * them a chunk at a time, recording their stock in the ledger.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SoftDeleteTest {
+
+    private static final String LOG_TAG = SoftDeleteTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 20000;
+
+    /** Rows per bulkInsert when filling the table */
+    private static final int CHUNK_SIZE = 5000;
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        purgeDeleted();
+        mDbHelper = TestInventory.createDbHelper();
+        mDatabase = mDbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void deleteById_hidesTheProductUntilUndone() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        Uri productUri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        long since = System.currentTimeMillis();
+
+        assertEquals(1, mResolver.delete(productUri, null, null));
+        assertEquals(0, count(productUri));
+        // A deleted product can't be changed or deleted again
+        ContentValues quantity = new ContentValues();
+        quantity.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 3);
+        assertEquals(0, mResolver.update(productUri, quantity, null, null));
+        assertEquals(0, mResolver.delete(productUri, null, null));
+        // It is still in the table until the purge
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, BookEntry.TABLE_NAME,
+                BookEntry._ID + " = ?", new String[]{String.valueOf(ContentUris.parseId(productUri))}));
+
+        assertEquals(1, undo(since));
+        assertEquals(1, count(productUri));
+        assertEquals(0, undo(since));
+    }
+
+    @Test
+    public void deleteAll_writesOneRowWhateverTheNumberOfProducts() {
+        fill(ROW_COUNT);
+        long since = System.currentTimeMillis();
+
+        long start = SystemClock.elapsedRealtime();
+        assertEquals(ROW_COUNT, mResolver.delete(BookEntry.CONTENT_URI, null, null));
+        long deleteMillis = SystemClock.elapsedRealtime() - start;
+        Log.i(LOG_TAG, "Deleted " + ROW_COUNT + " products in " + deleteMillis + " ms");
+
+        assertEquals(0, count(BookEntry.CONTENT_URI));
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, BookInventoryMigrations.TABLE_PRODUCT_WIPES));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase, BookEntry.TABLE_NAME,
+                BookEntry.COLUMN_DELETED_AT + " IS NOT NULL"));
+        assertArrayEquals(new long[]{0, 0}, readTotals());
+
+        assertEquals(ROW_COUNT, undo(since));
+        assertEquals(ROW_COUNT, count(BookEntry.CONTENT_URI));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase, BookInventoryMigrations.TABLE_PRODUCT_WIPES));
+        assertArrayEquals(recomputeTotals(), readTotals());
+    }
+
+    @Test
+    public void undo_keepsTheStatisticsRight() {
+        fill(100);
+        long[] totals = readTotals();
+        long since = System.currentTimeMillis();
+
+        // Some products deleted one by one, then the rest all at once
+        mResolver.delete(BookEntry.CONTENT_URI, BookEntry.COLUMN_PRODUCTS_QUANTITY + " < ?", new String[]{"10"});
+        assertArrayEquals(recomputeTotals(), readTotals());
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        assertArrayEquals(new long[]{0, 0}, readTotals());
+        // A product added after the delete of everything stays counted through the undo
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 4);
+        mResolver.insert(BookEntry.CONTENT_URI, values);
+
+        assertEquals(100, undo(since));
+        assertArrayEquals(new long[]{totals[0] + 1, totals[1] + 4}, readTotals());
+        assertArrayEquals(recomputeTotals(), readTotals());
+    }
+
+    @Test
+    public void purge_recordsTheRemainingStock() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 7);
+        Uri productUri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        long id = ContentUris.parseId(productUri);
+        long since = System.currentTimeMillis();
+
+        mResolver.delete(productUri, null, null);
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase, StockMovementEntry.TABLE_NAME,
+                StockMovementEntry.COLUMN_PRODUCT_ID + " = ? AND " + StockMovementEntry.COLUMN_REASON + " = ?",
+                new String[]{String.valueOf(id), StockMovementEntry.REASON_DELETE}));
+
+        assertEquals(1, purgeDeleted());
+        assertEquals(-7, DatabaseUtils.longForQuery(mDatabase, "SELECT " + StockMovementEntry.COLUMN_DELTA
+                        + " FROM " + StockMovementEntry.TABLE_NAME + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID
+                        + " = ? AND " + StockMovementEntry.COLUMN_REASON + " = ?",
+                new String[]{String.valueOf(id), StockMovementEntry.REASON_DELETE}));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase, BookEntry.TABLE_NAME,
+                BookEntry._ID + " = ?", new String[]{String.valueOf(id)}));
+        // Gone for good
+        assertEquals(0, undo(since));
+    }
+
+    @Test
+    public void purge_holdsTheLockOneChunkAtATime() {
+        fill(ROW_COUNT);
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+
+        ProductTrash trash = new ProductTrash(mDatabase, new StockLedger(mDatabase));
+        assertEquals(ROW_COUNT, trash.purge(Long.MAX_VALUE));
+
+        // One transaction per chunk, and the last one finding nothing left
+        assertEquals(ROW_COUNT / ProductTrash.PURGE_CHUNK_SIZE + 1, trash.getLockHoldTimes().getCount());
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase, BookEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(mDatabase, BookInventoryMigrations.TABLE_PRODUCT_WIPES));
+    }
+
+    @Test
+    public void deletedProduct_givesUpItsIsbn() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        Uri first = mResolver.insert(BookEntry.CONTENT_URI, values);
+        mResolver.delete(first, null, null);
+
+        Uri second = mResolver.insert(BookEntry.CONTENT_URI, values);
+
+        assertNotNull(second);
+        assertEquals(1, count(BookEntry.CONTENT_URI));
+        // The first product is still there to undo, it just doesn't hold the ISBN anymore
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, BookEntry.TABLE_NAME,
+                BookEntry._ID + " = ?", new String[]{String.valueOf(ContentUris.parseId(first))}));
+    }
+
+    @Test
+    public void undo_givesTheIsbnBack() {
+        ContentValues values = BulkInsertTest.createProducts(2)[0];
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        Uri productUri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        mResolver.insert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(2)[1]);
+        long since = System.currentTimeMillis();
+
+        mResolver.delete(productUri, null, null);
+        assertEquals(1, undo(since));
+        assertEquals("9780306406157", readIsbn(productUri));
+
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        assertEquals(2, undo(since));
+        assertEquals("9780306406157", readIsbn(productUri));
+    }
+
+    @Test
+    public void undo_leavesATakenIsbnToItsNewProduct() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        Uri first = mResolver.insert(BookEntry.CONTENT_URI, values);
+        long since = System.currentTimeMillis();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        Uri second = mResolver.insert(BookEntry.CONTENT_URI, values);
+
+        assertEquals(1, undo(since));
+
+        assertNull(readIsbn(first));
+        assertEquals("9780306406157", readIsbn(second));
+    }
+
+    /** Bulk inserts count products, CHUNK_SIZE rows at a time */
+    private void fill(int count) {
+        ContentValues[] products = BulkInsertTest.createProducts(count);
+        for (int first = 0; first < count; first += CHUNK_SIZE) {
+            ContentValues[] chunk = new ContentValues[Math.min(CHUNK_SIZE, count - first)];
+            System.arraycopy(products, first, chunk, 0, chunk.length);
+            assertEquals(chunk.length, mResolver.bulkInsert(BookEntry.CONTENT_URI, chunk));
+        }
+    }
+
+    private int undo(long since) {
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_UNDO_DELETE,
+                String.valueOf(since), null);
+        return result.getInt(BookInventoryContract.RESULT_RESTORED);
+    }
+
+    private int purgeDeleted() {
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED,
+                null, null);
+        return result.getInt(BookInventoryProvider.RESULT_PURGED);
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, new String[]{BookEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String readIsbn(Uri productUri) {
+        Cursor cursor = mResolver.query(productUri, new String[]{BookEntry.COLUMN_ISBN}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Reads the product count and units of every supplier from the statistics URI */
+    private long[] readTotals() {
+        long[] totals = new long[2];
+        Cursor cursor = mResolver.query(StatsEntry.CONTENT_URI, new String[]{StatsEntry.COLUMN_PRODUCT_COUNT,
+                StatsEntry.COLUMN_TOTAL_UNITS}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                totals[0] += cursor.getLong(0);
+                totals[1] += cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
+
+    /** Computes the same totals from the products shown */
+    private long[] recomputeTotals() {
+        long[] totals = new long[2];
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry.COLUMN_PRODUCTS_QUANTITY},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                totals[0]++;
+                totals[1] += cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StockMovementEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the stock ledger: a million movements rebuilt from snapshots and their
+ * tail give the same quantities as a full replay, every write path records its movement, and the
+ * ledger URI pages through a time range.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockLedgerTest {
+
+    private static final String LOG_TAG = StockLedgerTest.class.getSimpleName();
+
+    private static final int MOVEMENT_COUNT = 1000000;
+
+    private static final int PRODUCT_COUNT = 100;
+
+    /** Movements committed per transaction by the replay test */
+    private static final int CHUNK_SIZE = 10000;
+
+    /** The replay test compacts after this many movements, leaving a tail after the last one */
+    private static final int COMPACT_EVERY = 300000;
+
+    /**
+     * The replay test records movements of made-up product ids from here on, far above the real
+     * products, so it can clean up after itself
+     */
+    private static final long FIRST_TEST_PRODUCT_ID = 1L << 40;
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mDbHelper = TestInventory.createDbHelper();
+        mDbHelper.setTuningEnabled(true);
+        mDatabase = mDbHelper.getWritableDatabase();
+        deleteTestMovements();
+    }
+
+    @After
+    public void tearDown() {
+        deleteTestMovements();
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void replayMillionMovements_snapshotRebuildMatches() {
+        StockLedger ledger = new StockLedger(mDatabase);
+        Random random = new Random(42);
+        long[] expected = new long[PRODUCT_COUNT];
+
+        long start = SystemClock.elapsedRealtime();
+        for (int recorded = 0; recorded < MOVEMENT_COUNT; ) {
+            mDatabase.beginTransaction();
+            try {
+                for (int i = 0; i < CHUNK_SIZE; i++, recorded++) {
+                    int product = random.nextInt(PRODUCT_COUNT);
+                    // Mostly sales, with receipts large enough to keep some stock
+                    int delta = random.nextInt(10) == 0 ? 1 + random.nextInt(50) : -1 - random.nextInt(3);
+                    ledger.record(FIRST_TEST_PRODUCT_ID + product, delta, StockMovementEntry.REASON_SALE);
+                    expected[product] += delta;
+                }
+                mDatabase.setTransactionSuccessful();
+            } finally {
+                mDatabase.endTransaction();
+            }
+            if (recorded % COMPACT_EVERY == 0) {
+                ledger.compact();
+            }
+        }
+        Log.i(LOG_TAG, "Recorded " + MOVEMENT_COUNT + " movements in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+
+        start = SystemClock.elapsedRealtime();
+        for (int product = 0; product < PRODUCT_COUNT; product++) {
+            assertEquals("Rebuilt product " + product, expected[product],
+                    ledger.rebuildQuantity(FIRST_TEST_PRODUCT_ID + product));
+        }
+        long rebuildMillis = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        Cursor cursor = mDatabase.rawQuery("SELECT " + StockMovementEntry.COLUMN_PRODUCT_ID
+                + ", SUM(" + StockMovementEntry.COLUMN_DELTA + ") FROM " + StockMovementEntry.TABLE_NAME
+                + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID + " >= ?"
+                + " GROUP BY " + StockMovementEntry.COLUMN_PRODUCT_ID,
+                new String[]{String.valueOf(FIRST_TEST_PRODUCT_ID)});
+        try {
+            assertEquals(PRODUCT_COUNT, cursor.getCount());
+            while (cursor.moveToNext()) {
+                int product = (int) (cursor.getLong(0) - FIRST_TEST_PRODUCT_ID);
+                assertEquals("Replayed product " + product, expected[product], cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        long replayMillis = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "Rebuilt " + PRODUCT_COUNT + " quantities from snapshots in " + rebuildMillis
+                + " ms, full replay took " + replayMillis + " ms");
+    }
+
+    @Test
+    public void rebuild_matchesAfterCompactingTwice() {
+        StockLedger ledger = new StockLedger(mDatabase);
+        long id = FIRST_TEST_PRODUCT_ID;
+        ledger.record(id, 10, StockMovementEntry.REASON_INITIAL);
+        ledger.compact();
+        // Compacting again with nothing new must not count the movements twice
+        ledger.compact();
+        assertEquals(10, ledger.rebuildQuantity(id));
+
+        ledger.record(id, -4, StockMovementEntry.REASON_SALE);
+        assertEquals(6, ledger.rebuildQuantity(id));
+        ledger.compact();
+        assertEquals(6, ledger.rebuildQuantity(id));
+        assertEquals(0, ledger.rebuildQuantity(id + 1));
+    }
+
+    @Test
+    public void writePaths_recordTheirMovements() {
+        long start = System.currentTimeMillis();
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 10);
+        Uri productUri = mResolver.insert(BookEntry.CONTENT_URI, values);
+        long id = ContentUris.parseId(productUri);
+
+        adjust(id, -3, null);
+        adjust(id, 5, null);
+        adjust(id, -1, StockMovementEntry.REASON_EDIT);
+        // Refused, so not recorded
+        adjust(id, -100, null);
+
+        ContentValues quantity = new ContentValues();
+        quantity.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 20);
+        mResolver.update(productUri, quantity, null, null);
+        // Same quantity, nothing to record
+        mResolver.update(productUri, quantity, null, null);
+        mResolver.delete(productUri, null, null);
+        // The stock leaves the ledger when the deleted product is purged
+        mResolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED, null, null);
+
+        List<Long> deltas = new ArrayList<>();
+        List<String> reasons = new ArrayList<>();
+        readLedger(id, start, 2, deltas, reasons);
+        assertEquals(Arrays.asList(10L, -3L, 5L, -1L, 9L, -20L), deltas);
+        assertEquals(Arrays.asList(StockMovementEntry.REASON_INITIAL, StockMovementEntry.REASON_SALE,
+                StockMovementEntry.REASON_RECEIPT, StockMovementEntry.REASON_EDIT,
+                StockMovementEntry.REASON_EDIT, StockMovementEntry.REASON_DELETE), reasons);
+    }
+
+    @Test
+    public void ledgerUri_pagesThroughTimeRange() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 50);
+        long id = ContentUris.parseId(mResolver.insert(BookEntry.CONTENT_URI, values));
+
+        long from = System.currentTimeMillis();
+        SystemClock.sleep(2);
+        for (int i = 0; i < 25; i++) {
+            adjust(id, -1, null);
+        }
+        SystemClock.sleep(2);
+        long to = System.currentTimeMillis();
+        SystemClock.sleep(2);
+        adjust(id, -1, null);
+
+        // The initial movement is before the range and the last sale after it
+        List<Long> deltas = new ArrayList<>();
+        long afterTime = from;
+        long afterId = 0;
+        int pages = 0;
+        while (true) {
+            Cursor cursor = mResolver.query(StockMovementEntry.buildPageUri(from, to, 10, afterTime, afterId),
+                    null, null, null, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    break;
+                }
+                pages++;
+                do {
+                    assertEquals(id, cursor.getLong(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_PRODUCT_ID)));
+                    deltas.add(cursor.getLong(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_DELTA)));
+                    afterTime = cursor.getLong(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_CREATED_AT));
+                    afterId = cursor.getLong(cursor.getColumnIndexOrThrow(StockMovementEntry._ID));
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+        assertEquals(3, pages);
+        assertEquals(25, deltas.size());
+        for (long delta : deltas) {
+            assertEquals(-1, delta);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ledgerUri_isReadOnly() {
+        ContentValues values = new ContentValues();
+        values.put(StockMovementEntry.COLUMN_DELTA, 1);
+        mResolver.insert(StockMovementEntry.CONTENT_URI, values);
+    }
+
+    /** Adds the movements of the product since start to deltas and reasons, pageSize at a time */
+    private void readLedger(long id, long start, int pageSize, List<Long> deltas, List<String> reasons) {
+        long afterTime = start;
+        long afterId = 0;
+        while (true) {
+            Uri uri = StockMovementEntry.buildPageUri(start, Long.MAX_VALUE, pageSize, afterTime, afterId);
+            Cursor cursor = mResolver.query(uri, null, StockMovementEntry.COLUMN_PRODUCT_ID + "=?",
+                    new String[]{String.valueOf(id)}, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return;
+                }
+                do {
+                    deltas.add(cursor.getLong(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_DELTA)));
+                    reasons.add(cursor.getString(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_REASON)));
+                    afterTime = cursor.getLong(cursor.getColumnIndexOrThrow(StockMovementEntry.COLUMN_CREATED_AT));
+                    afterId = cursor.getLong(cursor.getColumnIndexOrThrow(StockMovementEntry._ID));
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private int adjust(long id, int delta, String reason) {
+        Bundle extras = new Bundle();
+        extras.putInt(BookInventoryContract.KEY_DELTA, delta);
+        if (reason != null) {
+            extras.putString(BookInventoryContract.KEY_REASON, reason);
+        }
+        Bundle result = mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_ADJUST_QUANTITY,
+                BookEntry.buildAdjustUri(id).toString(), extras);
+        return result.getInt(BookInventoryContract.RESULT_QUANTITY);
+    }
+
+    /** The ledger is append-only, but the movements of the made-up products are removed after the test */
+    private void deleteTestMovements() {
+        String[] args = {String.valueOf(FIRST_TEST_PRODUCT_ID)};
+        mDatabase.delete(StockMovementEntry.TABLE_NAME, StockMovementEntry.COLUMN_PRODUCT_ID + " >= ?", args);
+        mDatabase.delete(BookInventoryMigrations.TABLE_STOCK_SNAPSHOTS,
+                BookInventoryMigrations.COLUMN_SNAPSHOT_PRODUCT_ID + " >= ?", args);
+    }
+}
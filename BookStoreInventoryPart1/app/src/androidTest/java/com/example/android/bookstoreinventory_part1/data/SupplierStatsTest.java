@@ -0,0 +1,202 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StatsEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the statistics URI: after random workloads through every write path,
+ * the incrementally kept totals match a full recomputation over the product table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SupplierStatsTest {
+
+    private static final String LOG_TAG = SupplierStatsTest.class.getSimpleName();
+
+    private static final int INITIAL_COUNT = 2000;
+
+    private static final int ROUND_COUNT = 20;
+
+    private static final int OPERATIONS_PER_ROUND = 50;
+
+    private ContentResolver mResolver;
+
+    private Random mRandom;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mRandom = new Random(16);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void emptyInventory_hasNoTotals() {
+        assertEquals(new TreeMap<Integer, List<Long>>(), readStats());
+    }
+
+    @Test
+    public void randomWorkload_matchesFullRecomputation() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(INITIAL_COUNT));
+        assertEquals(recompute(), readStats());
+
+        for (int round = 0; round < ROUND_COUNT; round++) {
+            List<Long> ids = readIds();
+            for (int i = 0; i < OPERATIONS_PER_ROUND; i++) {
+                runRandomOperation(ids);
+            }
+            assertEquals("After round " + round, recompute(), readStats());
+        }
+    }
+
+    @Test
+    public void readingStats_doesNotScanProducts() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(INITIAL_COUNT));
+
+        long start = SystemClock.elapsedRealtime();
+        Map<Integer, List<Long>> stats = readStats();
+        long statsMillis = SystemClock.elapsedRealtime() - start;
+        start = SystemClock.elapsedRealtime();
+        Map<Integer, List<Long>> recomputed = recompute();
+        long recomputeMillis = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(recomputed, stats);
+        Log.i(LOG_TAG, "Stats of " + INITIAL_COUNT + " products: " + statsMillis
+                + " ms from the summary table, " + recomputeMillis + " ms recomputed");
+    }
+
+    /** Runs one of the provider's write paths on random products */
+    private void runRandomOperation(List<Long> ids) {
+        long id = ids.get(mRandom.nextInt(ids.size()));
+        Uri productUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+        ContentValues values = new ContentValues();
+        switch (mRandom.nextInt(7)) {
+            case 0:
+                ContentValues product = BulkInsertTest.createProducts(1)[0];
+                product.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, mRandom.nextInt(6));
+                product.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, mRandom.nextInt(100));
+                ids.add(ContentUris.parseId(mResolver.insert(BookEntry.CONTENT_URI, product)));
+                break;
+            case 1:
+                values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, mRandom.nextInt(100));
+                mResolver.update(productUri, values, null, null);
+                break;
+            case 2:
+                Bundle extras = new Bundle();
+                extras.putInt(BookInventoryContract.KEY_DELTA, mRandom.nextInt(11) - 5);
+                mResolver.call(BookEntry.CONTENT_URI, BookInventoryContract.METHOD_ADJUST_QUANTITY,
+                        BookEntry.buildAdjustUri(id).toString(), extras);
+                break;
+            case 3:
+                values.put(BookEntry.COLUMN_PRODUCT_PRICES, mRandom.nextInt(5000));
+                values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, mRandom.nextInt(100));
+                mResolver.update(productUri, values, null, null);
+                break;
+            case 4:
+                // Move the product to another supplier
+                values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, mRandom.nextInt(6));
+                mResolver.update(productUri, values, null, null);
+                break;
+            case 5:
+                // A write with a selection, touching many rows of many suppliers
+                values.put(BookEntry.COLUMN_PRODUCT_PRICES, mRandom.nextInt(5000));
+                mResolver.update(BookEntry.CONTENT_URI, values, BookEntry.COLUMN_PRODUCTS_QUANTITY + " = ?",
+                        new String[]{String.valueOf(mRandom.nextInt(50))});
+                break;
+            default:
+                mResolver.delete(productUri, null, null);
+                ids.remove(Long.valueOf(id));
+                break;
+        }
+    }
+
+    /** Reads the statistics URI as product count, units and value by supplier */
+    private Map<Integer, List<Long>> readStats() {
+        Cursor cursor = mResolver.query(StatsEntry.CONTENT_URI, new String[]{StatsEntry.COLUMN_SUPPLIER,
+                        StatsEntry.COLUMN_PRODUCT_COUNT, StatsEntry.COLUMN_TOTAL_UNITS, StatsEntry.COLUMN_TOTAL_VALUE},
+                StatsEntry.COLUMN_PRODUCT_COUNT + " > 0", null, null);
+        return toMap(cursor);
+    }
+
+    /** Computes the same figures from every product row */
+    private Map<Integer, List<Long>> recompute() {
+        Map<Integer, List<Long>> stats = new TreeMap<>();
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+                BookEntry.COLUMN_PRODUCTS_QUANTITY, BookEntry.COLUMN_PRODUCT_PRICES}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                List<Long> totals = stats.get(cursor.getInt(0));
+                if (totals == null) {
+                    totals = new ArrayList<>();
+                    totals.add(0L);
+                    totals.add(0L);
+                    totals.add(0L);
+                    stats.put(cursor.getInt(0), totals);
+                }
+                long quantity = cursor.getLong(1);
+                totals.set(0, totals.get(0) + 1);
+                totals.set(1, totals.get(1) + quantity);
+                totals.set(2, totals.get(2) + cursor.getLong(2) * quantity);
+            }
+        } finally {
+            cursor.close();
+        }
+        return stats;
+    }
+
+    private static Map<Integer, List<Long>> toMap(Cursor cursor) {
+        Map<Integer, List<Long>> stats = new TreeMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                List<Long> totals = new ArrayList<>();
+                totals.add(cursor.getLong(1));
+                totals.add(cursor.getLong(2));
+                totals.add(cursor.getLong(3));
+                stats.put(cursor.getInt(0), totals);
+            }
+        } finally {
+            cursor.close();
+        }
+        return stats;
+    }
+
+    private List<Long> readIds() {
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests of the supplier table: the migration keeps one phone number per supplier,
+ * the foreign key guards the products, a product row without the phone number is smaller, and a
+ * page of products finds their supplier's number through its primary key. The time of that page
+ * is measured by ProviderBenchmark in the benchmark module.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SupplierTableTest {
+
+    private static final String LOG_TAG = SupplierTableTest.class.getSimpleName();
+
+    private static final int ROW_COUNT = 200000;
+
+    private static final int BATCH_SIZE = 5000;
+
+    private static final int PAGE_SIZE = 50;
+
+    /** The version 1 product table, as {@link BookInventoryDbHelper#onCreate} creates it */
+    static final String CREATE_V1_PRODUCTS = "CREATE TABLE " + BookEntry.TABLE_NAME + " ("
+            + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + BookEntry.COLUMN_PRODUCT_NAMES + " TEXT NOT NULL, "
+            + BookEntry.COLUMN_PRODUCT_PRICES + " INTEGER NOT NULL DEFAULT 0, "
+            + BookEntry.COLUMN_PRODUCTS_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+            + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " INTEGER NOT NULL,"
+            + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " INTEGER NOT NULL DEFAULT 0)";
+
+    private ContentResolver mResolver;
+
+    private BookInventoryDbHelper mDbHelper;
+
+    /** The suppliers a test inserted, deleted once it is over */
+    private final List<Uri> mInsertedSuppliers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        mDbHelper = TestInventory.createDbHelper();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+        for (Uri supplierUri : mInsertedSuppliers) {
+            mResolver.delete(supplierUri, null, null);
+        }
+    }
+
+    @Test
+    public void migration_keepsMostCommonPhonePerSupplier() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL(CREATE_V1_PRODUCTS);
+            BookInventoryMigrations.migrate(db, 1, 7);
+            // Supplier 1 has a typo on one product, supplier 2 a tie that goes to the latest
+            // number, supplier 3 never had a number and supplier 9 isn't one of the seeded ones
+            insertV1(db, "a", 1, 5550101L);
+            insertV1(db, "b", 1, 5550101L);
+            insertV1(db, "c", 1, 5550110L);
+            insertV1(db, "d", 2, 5550202L);
+            insertV1(db, "e", 2, 5550203L);
+            insertV1(db, "f", 3, 0L);
+            insertV1(db, "g", 9, 2079460958L);
+            long lastId = insertV1(db, "h", 1, 5550101L);
+            db.delete(BookEntry.TABLE_NAME, BookEntry._ID + " = ?", new String[]{String.valueOf(lastId)});
+
+            BookInventoryMigrations.migrate(db, 7, 8);
+
+            assertEquals("5550101", supplierPhone(db, 1));
+            assertEquals("5550203", supplierPhone(db, 2));
+            assertEquals("", supplierPhone(db, 3));
+            assertEquals("2079460958", supplierPhone(db, 9));
+            assertEquals("", supplierPhone(db, BookEntry.SUPPLIER_UNKNOWN));
+            // Every product keeps its _ID and reads its supplier's number through the view
+            assertEquals(7, DatabaseUtils.queryNumEntries(db, BookInventoryMigrations.VIEW_PRODUCT_DETAILS));
+            assertEquals("5550101", DatabaseUtils.stringForQuery(db, "SELECT "
+                    + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " FROM " + BookInventoryMigrations.VIEW_PRODUCT_DETAILS
+                    + " WHERE " + BookEntry.COLUMN_PRODUCT_NAMES + " = 'c'", null));
+
+            // The _ID of the deleted product isn't handed out again, the ledger may refer to it
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCT_NAMES, "i");
+            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, 1);
+            assertEquals(lastId + 1, db.insert(BookEntry.TABLE_NAME, null, values));
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSupplier_isRejected() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, 999);
+        mResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    @Test
+    public void supplierWithProducts_cannotBeDeleted() {
+        Uri supplierUri = insertSupplier("Small Press", "555 0199");
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, ContentUris.parseId(supplierUri));
+        values.remove(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        Uri productUri = mResolver.insert(BookEntry.CONTENT_URI, values);
+
+        try {
+            mResolver.delete(supplierUri, null, null);
+            fail("Deleted a supplier that still has a product");
+        } catch (IllegalArgumentException expected) {
+            // The foreign key kept the supplier
+        }
+        assertEquals("5550199", readString(supplierUri, SupplierEntry.COLUMN_SUPPLIER_PHONE));
+
+        mResolver.delete(productUri, null, null);
+        assertEquals(1, mResolver.delete(supplierUri, null, null));
+    }
+
+    @Test
+    public void unknownSupplier_isNeverDeleted() {
+        assertEquals(0, mResolver.delete(ContentUris.withAppendedId(SupplierEntry.CONTENT_URI,
+                BookEntry.SUPPLIER_UNKNOWN), null, null));
+    }
+
+    @Test
+    public void longPhoneNumber_roundTripsAsText() {
+        Uri supplierUri = insertSupplier("London Books", null);
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, ContentUris.parseId(supplierUri));
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "+44 20 7946 0958");
+        Uri productUri = mResolver.insert(BookEntry.CONTENT_URI, values);
+
+        // More digits than an int holds, and the "+" is kept
+        assertEquals("+442079460958", readString(productUri, BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER));
+        assertEquals("+442079460958", readString(supplierUri, SupplierEntry.COLUMN_SUPPLIER_PHONE));
+    }
+
+    @Test
+    public void phoneOfOneProduct_changesEveryProductOfTheSupplier() {
+        ContentValues[] products = BulkInsertTest.createProducts(2);
+        products[0].put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, TestInventory.getSupplierIds()[1]);
+        products[1].put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, TestInventory.getSupplierIds()[1]);
+        Uri first = mResolver.insert(BookEntry.CONTENT_URI, products[0]);
+        Uri second = mResolver.insert(BookEntry.CONTENT_URI, products[1]);
+        // Reading the whole row caches the product with the old number
+        readString(second, BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "555-0123");
+        mResolver.update(first, values, null, null);
+
+        assertEquals("5550123", readString(second, BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPhoneNumber_isRejected() {
+        ContentValues values = BulkInsertTest.createProducts(1)[0];
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "call me");
+        mResolver.insert(BookEntry.CONTENT_URI, values);
+    }
+
+    @Test
+    public void productRow_isSmallerWithoutThePhoneNumber() {
+        long legacyBytes = measureTable(true);
+        long normalizedBytes = measureTable(false);
+        Log.i(LOG_TAG, String.format("%d products: %.1f bytes per row with the phone number, %.1f without",
+                ROW_COUNT, legacyBytes / (double) ROW_COUNT, normalizedBytes / (double) ROW_COUNT));
+        assertTrue(normalizedBytes + " >= " + legacyBytes, normalizedBytes < legacyBytes);
+    }
+
+    @Test
+    public void pageWithSupplierPhone_joinsByPrimaryKey() {
+        mResolver.bulkInsert(BookEntry.CONTENT_URI, BulkInsertTest.createProducts(BATCH_SIZE));
+
+        // Each product finds its supplier through the primary key, the suppliers aren't scanned
+        String plan = explain("SELECT * FROM " + BookInventoryMigrations.VIEW_PRODUCT_DETAILS
+                + " ORDER BY " + BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE LIMIT " + PAGE_SIZE);
+        assertTrue(plan, plan.contains("USING INTEGER PRIMARY KEY"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+        Uri pageUri = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+        Cursor cursor = mResolver.query(pageUri,
+                new String[]{BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES, BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER},
+                null, null, BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE");
+        try {
+            assertEquals(PAGE_SIZE, cursor.getCount());
+            while (cursor.moveToNext()) {
+                assertFalse(cursor.isNull(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Fills a scratch product table, with the phone number on every row as before the supplier
+     * table or without it, and returns its size in bytes.
+     */
+    private static long measureTable(boolean withPhone) {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE products (" + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + BookEntry.COLUMN_PRODUCT_NAMES + " TEXT NOT NULL, "
+                    + BookEntry.COLUMN_PRODUCT_PRICES + " INTEGER NOT NULL DEFAULT 0, "
+                    + BookEntry.COLUMN_PRODUCTS_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                    + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " INTEGER NOT NULL, "
+                    + (withPhone ? BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " INTEGER NOT NULL DEFAULT 0, " : "")
+                    + BookEntry.COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0)");
+            SQLiteStatement insert = db.compileStatement("INSERT INTO products ("
+                    + BookEntry.COLUMN_PRODUCT_NAMES + ", " + BookEntry.COLUMN_PRODUCT_PRICES + ", "
+                    + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                    + (withPhone ? ", " + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + ") VALUES (?, ?, ?, ?, ?)"
+                    : ") VALUES (?, ?, ?, ?)"));
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < ROW_COUNT; i++) {
+                    insert.bindString(1, "Book " + i);
+                    insert.bindLong(2, 100 + i % 5000);
+                    insert.bindLong(3, i % 50);
+                    // The scratch table has no supplier table to refer to
+                    insert.bindLong(4, 1 + i % TestInventory.SUPPLIER_COUNT);
+                    if (withPhone) {
+                        // Ten digit numbers, as the editor saved them
+                        insert.bindLong(5, 5550100000L + i % 5);
+                    }
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+            }
+            return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+                    * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static long insertV1(SQLiteDatabase db, String name, int supplier, long phone) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAMES, name);
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplier);
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phone);
+        return db.insert(BookEntry.TABLE_NAME, null, values);
+    }
+
+    private static String supplierPhone(SQLiteDatabase db, long supplierId) {
+        return DatabaseUtils.stringForQuery(db, "SELECT " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " FROM "
+                + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry._ID + " = ?",
+                new String[]{String.valueOf(supplierId)});
+    }
+
+    private Uri insertSupplier(String name, String phone) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        if (phone != null) {
+            values.put(SupplierEntry.COLUMN_SUPPLIER_PHONE, phone);
+        }
+        Uri supplierUri = mResolver.insert(SupplierEntry.CONTENT_URI, values);
+        mInsertedSuppliers.add(supplierUri);
+        return supplierUri;
+    }
+
+    private String readString(Uri uri, String column) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(cursor.getColumnIndexOrThrow(column));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Returns the detail lines of the query plan of the given statement, one per line */
+    private String explain(String sql, String... args) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
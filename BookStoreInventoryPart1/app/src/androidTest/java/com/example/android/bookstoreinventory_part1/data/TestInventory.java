@@ -0,0 +1,87 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.SupplierEntry;
+
+/**
+ * The inventory the instrumented tests run against: a {@link BookInventoryProvider} of their own
+ * over a test database, reached through a resolver that only knows it. Running the tests never
+ * reads or deletes the products of the app installed on the device.
+ * <p>
+ * The provider still sends its change notifications through the app's resolver, so observers
+ * registered on {@link #getResolver()} receive them.
+ */
+public final class TestInventory {
+
+    /** Database file of the test provider, next to the app's own */
+    public static final String DATABASE_NAME = "productInventory-test.db";
+
+    /** Number of suppliers the test products are spread over */
+    public static final int SUPPLIER_COUNT = 5;
+
+    private static MockContentResolver sResolver;
+
+    private static long[] sSupplierIds;
+
+    private TestInventory() {
+    }
+
+    /** Returns the resolver of the test provider, created with its database on first use */
+    public static synchronized ContentResolver getResolver() {
+        if (sResolver == null) {
+            Context context = InstrumentationRegistry.getTargetContext();
+            ProviderInfo info = new ProviderInfo();
+            info.authority = BookInventoryContract.CONTENT_AUTHORITY;
+            BookInventoryProvider provider = new BookInventoryProvider(DATABASE_NAME);
+            provider.attachInfo(context, info);
+            sResolver = new MockContentResolver(context);
+            sResolver.addProvider(BookInventoryContract.CONTENT_AUTHORITY, provider);
+        }
+        return sResolver;
+    }
+
+    /** Returns a new helper of the test database, for the tests that check the tables directly */
+    public static BookInventoryDbHelper createDbHelper() {
+        return new BookInventoryDbHelper(InstrumentationRegistry.getTargetContext(), DATABASE_NAME);
+    }
+
+    /**
+     * Returns the _IDs of the {@link #SUPPLIER_COUNT} suppliers the test products are spread
+     * over. They are looked up by name through {@link SupplierEntry#CONTENT_URI}, and inserted
+     * there the first time the test database doesn't have them.
+     */
+    public static synchronized long[] getSupplierIds() {
+        if (sSupplierIds == null) {
+            ContentResolver resolver = getResolver();
+            long[] ids = new long[SUPPLIER_COUNT];
+            for (int i = 0; i < SUPPLIER_COUNT; i++) {
+                ids[i] = findOrInsertSupplier(resolver, "Test Supplier " + (i + 1));
+            }
+            sSupplierIds = ids;
+        }
+        return sSupplierIds;
+    }
+
+    private static long findOrInsertSupplier(ContentResolver resolver, String name) {
+        Cursor cursor = resolver.query(SupplierEntry.CONTENT_URI, new String[]{SupplierEntry._ID},
+                SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[]{name}, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        return ContentUris.parseId(resolver.insert(SupplierEntry.CONTENT_URI, values));
+    }
+}
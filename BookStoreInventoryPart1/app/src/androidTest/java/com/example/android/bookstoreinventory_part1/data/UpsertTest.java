@@ -0,0 +1,174 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of inserts on the products URI with
+ * {@link BookInventoryContract#QUERY_PARAMETER_ON_CONFLICT}: a product whose ISBN, or else name and
+ * supplier, is already taken is replaced, kept or has its quantity added, instead of duplicated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UpsertTest {
+
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES, BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = TestInventory.getResolver();
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(BookEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void replace_updatesTheProductWithTheSameNameAndSupplier() {
+        Uri stored = mResolver.insert(BookEntry.CONTENT_URI, createProduct("The Hobbit", 999, 7));
+
+        Uri replaced = mResolver.insert(BookEntry.buildUpsertUri(BookInventoryContract.CONFLICT_REPLACE),
+                createProduct("THE HOBBIT", 1299, 3));
+
+        assertEquals(stored, replaced);
+        Cursor cursor = queryProducts();
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("THE HOBBIT", cursor.getString(1));
+            assertEquals(1299, cursor.getLong(2));
+            assertEquals(3, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void keep_leavesTheStoredProduct() {
+        Uri stored = mResolver.insert(BookEntry.CONTENT_URI, createProduct("The Hobbit", 999, 7));
+
+        Uri kept = mResolver.insert(BookEntry.buildUpsertUri(BookInventoryContract.CONFLICT_KEEP),
+                createProduct("The Hobbit", 1299, 3));
+
+        assertEquals(stored, kept);
+        Cursor cursor = queryProducts();
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(999, cursor.getLong(2));
+            assertEquals(7, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void sumQuantity_matchesOnTheIsbnBeforeTheName() {
+        ContentValues values = createProduct("Data Structures", 4500, 2);
+        values.put(BookEntry.COLUMN_ISBN, "9780306406157");
+        Uri stored = mResolver.insert(BookEntry.CONTENT_URI, values);
+
+        // Renamed in the supplier's list, but the same book
+        ContentValues renamed = createProduct("Data Structures, 2nd ed.", 4500, 5);
+        renamed.put(BookEntry.COLUMN_ISBN, "0-306-40615-2");
+        Uri summed = mResolver.insert(BookEntry.buildUpsertUri(BookInventoryContract.CONFLICT_SUM_QUANTITY),
+                renamed);
+
+        assertEquals(stored, summed);
+        Cursor cursor = queryProducts();
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Data Structures", cursor.getString(1));
+            assertEquals(7, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void anotherSupplier_isAnotherProduct() {
+        Uri stored = mResolver.insert(BookEntry.CONTENT_URI, createProduct("The Hobbit", 999, 7));
+        ContentValues otherSupplier = createProduct("The Hobbit", 999, 7);
+        otherSupplier.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, TestInventory.getSupplierIds()[1]);
+
+        Uri inserted = mResolver.insert(BookEntry.buildUpsertUri(BookInventoryContract.CONFLICT_KEEP),
+                otherSupplier);
+
+        assertNotNull(inserted);
+        assertNotEquals(ContentUris.parseId(stored), ContentUris.parseId(inserted));
+        assertEquals(2, countProducts());
+    }
+
+    @Test
+    public void bulkInsert_reimportDoesNotDuplicate() {
+        ContentValues[] products = BulkInsertTest.createProducts(100);
+        assertEquals(100, mResolver.bulkInsert(BookEntry.CONTENT_URI, products));
+
+        // The same list again, with ten new products at the end
+        ContentValues[] reimport = BulkInsertTest.createProducts(110);
+        assertEquals(110, mResolver.bulkInsert(
+                BookEntry.buildUpsertUri(BookInventoryContract.CONFLICT_SUM_QUANTITY), reimport));
+
+        assertEquals(110, countProducts());
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, PROJECTION,
+                BookEntry.COLUMN_PRODUCT_NAMES + "=?", new String[]{"Book 42"}, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(2 * (42 % 50), cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void withoutOnConflict_insertsDuplicates() {
+        mResolver.insert(BookEntry.CONTENT_URI, createProduct("The Hobbit", 999, 7));
+        mResolver.insert(BookEntry.CONTENT_URI, createProduct("The Hobbit", 999, 7));
+        assertEquals(2, countProducts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownStrategy_isRejected() {
+        mResolver.insert(BookEntry.buildUpsertUri("ignore"), createProduct("The Hobbit", 999, 7));
+    }
+
+    private static ContentValues createProduct(String name, long priceCents, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAMES, name);
+        values.put(BookEntry.COLUMN_PRODUCT_PRICES, priceCents);
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, quantity);
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, TestInventory.getSupplierIds()[0]);
+        return values;
+    }
+
+    private Cursor queryProducts() {
+        return mResolver.query(BookEntry.CONTENT_URI, PROJECTION, null, null, null);
+    }
+
+    private int countProducts() {
+        Cursor cursor = queryProducts();
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -1,88 +1,156 @@
 package com.example.android.bookstoreinventory_part1;
 
-import android.content.Context;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
-import android.text.TextUtils;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.CursorAdapter;
 import android.widget.TextView;
 
-import com.example.android.bookstoreinventory_part1.data.BookInventoryContract;
+import com.example.android.bookstoreinventory_part1.data.ProductReader;
 
 /**
- * {@link ProductCursorAdapter} is an adapter for a list or grid view
+ * {@link ProductCursorAdapter} is an adapter for a RecyclerView
  * that uses a {@link Cursor} of product data as its data source. This adapter knows
- * how to create list items for each row of pet data in the {@link Cursor}.
+ * how to create list items for each row of product data in the {@link Cursor}.
  */
 
-public class ProductCursorAdapter extends CursorAdapter {
+public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdapter.ProductViewHolder> {
+
+    /**
+     * Listener told when the user clicks on a product of the list, or on its sale (-1) or
+     * receive (+1) button.
+     */
+    public interface OnProductClickListener {
+        void onProductClick(long id);
+
+        void onAdjustQuantity(long id, int delta);
+    }
+
+    private final OnProductClickListener mListener;
+
+    /** Cursor holding the product data, null until the loader finishes */
+    private Cursor mCursor;
+
+    /** Snapshot of the rows of mCursor, used to check that a diff applies to what is displayed */
+    private ProductListSnapshot mSnapshot;
+
+    // Column indices are resolved once per cursor instead of once per bound row
+    private ProductReader mReader;
 
     /**
      * Constructs a new {@link ProductCursorAdapter}.
      *
-     * @param context The context
-     * @param c       The cursor from which to get the data.
+     * @param listener Told when a product is clicked
      */
-    public ProductCursorAdapter(Context context, Cursor c) {
-        super(context, c, 0 /* flags */);
+    public ProductCursorAdapter(OnProductClickListener listener) {
+        mListener = listener;
+        // Rows keep their identity across reloads, so RecyclerView can keep their views
+        setHasStableIds(true);
     }
 
     /**
-     * Makes a new blank list item view. No data is set (or bound) to the views yet.
-     *
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already
-     *                moved to the correct position.
-     * @param parent  The parent to which the new view is attached to
-     * @return the newly created list item view.
+     * Swap in a new cursor. If it comes from a {@link ProductListLoader} with a diff against the
+     * cursor currently displayed, only the rows that changed are rebound; otherwise the whole
+     * list is. The old cursor is not closed, the loader takes care of that.
+     */
+    public void swapCursor(Cursor newCursor) {
+        ProductListSnapshot snapshot = null;
+        ProductListLoader.DiffedCursor diffedCursor = null;
+        if (newCursor instanceof ProductListLoader.DiffedCursor) {
+            diffedCursor = (ProductListLoader.DiffedCursor) newCursor;
+            snapshot = diffedCursor.getSnapshot();
+        }
+
+        boolean canDispatchDiff = diffedCursor != null && diffedCursor.getDiff() != null
+                && mSnapshot != null && diffedCursor.getPreviousSnapshot() == mSnapshot;
+
+        mCursor = newCursor;
+        mSnapshot = snapshot;
+        mReader = newCursor == null ? null : new ProductReader(newCursor);
+
+        if (canDispatchDiff) {
+            diffedCursor.getDiff().dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCursor == null ? 0 : mCursor.getCount();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (mCursor == null || !mCursor.moveToPosition(position)) {
+            return RecyclerView.NO_ID;
+        }
+        return mReader.getId();
+    }
+
+    /**
+     * Makes a new blank list item view and its holder. No data is set (or bound) to the views yet.
      */
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+    public ProductViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        return new ProductViewHolder(view);
     }
 
     /**
-     * This method binds the pet data (in the current row pointed to by cursor) to the given
-     * list item layout. For example, the name for the current pet can be set on the name TextView
-     * in the list item layout.
-     *
-     * @param view    Existing view, returned earlier by newView() method
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already moved to the
-     *                correct row.
+     * This method binds the product data (in the row at the given position of the cursor) to the
+     * views cached by the holder.
      */
     @Override
-    public void bindView(View view, Context context, Cursor cursor) {
-        // Find fields to populate in inflated template
-        // Find individual views that we want to modify in the list_item layout
-        TextView nameTextView = (TextView) view.findViewById(R.id.name);
-        TextView summaryTextView = (TextView) view.findViewById(R.id.summary);
-
-        // Extract properties from cursor
-        // Find the columns of product attributes that we are interested in, in other words the product data
-        // from the current row in the cursor using the corresponding column index/name
-        int nameColumnIndex = cursor.getColumnIndex(BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES);
-        int priceColumnIndex = cursor.getColumnIndex(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES));
-        int quantityColumnIndex = cursor.getColumnIndex(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY);
-
-        // Read the product attributes from the Cursor for the current product
-        // Here is read the values for the specific column indices
-        String name = cursor.getString(nameColumnIndex);
-        String price = cursor.getString(priceColumnIndex);
-        String quantity = cursor.getString(quantityColumnIndex);
-
-        // If the product price is empty string or null, then use some default text
-        // that says "Unknown price", so the TextView isn't blank.
-        if (TextUtils.isEmpty(price)) {
-            price = context.getString(R.string.unknown_price);
+    public void onBindViewHolder(ProductViewHolder holder, int position) {
+        if (!mCursor.moveToPosition(position)) {
+            return;
         }
+        // The name is copied into the holder's own buffer, so binding a row doesn't allocate it
+        mReader.copyName(holder.mNameBuffer);
+        holder.mNameTextView.setText(holder.mNameBuffer.data, 0, holder.mNameBuffer.sizeCopied);
+        holder.mSummaryTextView.setText(String.valueOf(mReader.getQuantity()));
+    }
+
+    /**
+     * Holds the views of a list item, so they are only looked up once when the item is created.
+     */
+    class ProductViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView mNameTextView;
+        final TextView mSummaryTextView;
 
-        // Populate fields with extracted properties
-        // Update the TextViews with the attributes for the current product
-        nameTextView.setText(name);
-        summaryTextView.setText(price);
-        summaryTextView.setText(quantity);
+        /** Characters of the name shown, only changed right before it is set again */
+        final CharArrayBuffer mNameBuffer = new CharArrayBuffer(32);
+
+        ProductViewHolder(View itemView) {
+            super(itemView);
+            mNameTextView = (TextView) itemView.findViewById(R.id.name);
+            mSummaryTextView = (TextView) itemView.findViewById(R.id.summary);
+            itemView.setOnClickListener(this);
+            itemView.findViewById(R.id.sale_button).setOnClickListener(this);
+            itemView.findViewById(R.id.receive_button).setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            long id = getItemId();
+            if (id == RecyclerView.NO_ID) {
+                return;
+            }
+            switch (view.getId()) {
+                case R.id.sale_button:
+                    mListener.onAdjustQuantity(id, -1);
+                    break;
+                case R.id.receive_button:
+                    mListener.onAdjustQuantity(id, 1);
+                    break;
+                default:
+                    mListener.onProductClick(id);
+                    break;
+            }
+        }
     }
 }
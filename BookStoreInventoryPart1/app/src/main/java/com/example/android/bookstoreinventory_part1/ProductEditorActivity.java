@@ -3,6 +3,7 @@ package com.example.android.bookstoreinventory_part1;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -10,6 +11,7 @@ import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.StrictMode;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
 import android.telecom.PhoneAccount;
@@ -21,12 +23,17 @@ import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.SimpleCursorAdapter;
 import android.widget.Spinner;
 import android.widget.Toast;
 
 import com.example.android.bookstoreinventory_part1.data.BookInventoryContract;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.SupplierEntry;
+import com.example.android.bookstoreinventory_part1.data.Phones;
+import com.example.android.bookstoreinventory_part1.data.Prices;
+import com.example.android.bookstoreinventory_part1.data.ProductReader;
+import com.example.android.bookstoreinventory_part1.data.ProductWriter;
 
 import static com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
 
@@ -38,6 +45,15 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
     /** Identifier for the product data loader */
     private static final int EXISTING_PRODUCT_LOADER = 0;
 
+    /** Identifier for the supplier list loader */
+    private static final int SUPPLIER_LOADER = 1;
+
+    /**
+     * Extra of the result holding the time, in milliseconds, just before the product was deleted,
+     * so the list can offer to undo the delete. The result data is the product URI.
+     */
+    static final String EXTRA_DELETED_SINCE = "deleted_since";
+
     /** Content URI for the existing pet (null if it's a new pet) */
     private Uri mCurrentProductUri;
 
@@ -50,15 +66,19 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
     /** EditText field to enter the product quantity */
     private EditText mProductQuantityEditText;
 
+    /** EditText field to enter the quantity at or below which the product is low in stock */
+    private EditText mReorderThresholdEditText;
+
     /** EditText field to enter the Product Supplier Name */
     private Spinner mSupplierNameSpinner;
 
+    /** Adapter of the spinner, over the rows of the supplier table */
+    private SimpleCursorAdapter mSupplierAdapter;
+
     /**
-     * Book supplier. In my case, there are 5 possible contracted suppliers and
-     * one option for non-contracted supplier:
-     * 0 for non-contracted supplier, 1-5 different contracted suppliers
+     * _ID of the book supplier, {@link BookEntry#SUPPLIER_UNKNOWN} for a non-contracted supplier
      */
-    private int mSupplierName = BookEntry.SUPPLIER_UNKNOWN;
+    private long mSupplierId = BookEntry.SUPPLIER_UNKNOWN;
 
     /** Boolean flag that keeps track of whether the product has been edited (true) or not (false) */
     private boolean mProductHasChanged = false;
@@ -82,6 +102,15 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
     //Here is where all the edit text variables are connected to their views
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (BuildConfig.DEBUG) {
+            // Every database access of the editor runs off the main thread, any disk access
+            // left on it is logged
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+        }
         setContentView(R.layout.activity_product_editor);
 
         // Examine the intent that was used to launch this activity in order to figure out
@@ -118,6 +147,7 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
         mProductNameEditText = (EditText) findViewById(R.id.edit_product_name);
         mProductPriceEditText = (EditText) findViewById(R.id.edit_product_price);
         mProductQuantityEditText = (EditText) findViewById(R.id.edit_product_quantity);
+        mReorderThresholdEditText = (EditText) findViewById(R.id.edit_reorder_threshold);
         mSupplierPhoneNumberEditText = (EditText) findViewById(R.id.edit_supplier_phone_number);
         //Here is where the Spinner begins
         mSupplierNameSpinner = (Spinner) findViewById(R.id.spinner_supplier);
@@ -129,61 +159,66 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
         mProductNameEditText.setOnTouchListener(mTouchListener);
         mProductPriceEditText.setOnTouchListener(mTouchListener);
         mProductQuantityEditText.setOnTouchListener(mTouchListener);
+        mReorderThresholdEditText.setOnTouchListener(mTouchListener);
         mSupplierNameSpinner.setOnTouchListener(mTouchListener);
         mSupplierPhoneNumberEditText.setOnTouchListener(mTouchListener);
 
         setupSpinner();
+        // The spinner lists the rows of the supplier table
+        getLoaderManager().initLoader(SUPPLIER_LOADER, null, this);
     }
 
     /**
      * Setup the dropdown spinner that allows the user to select the supplier of the product
      */
     private void setupSpinner() {
-        // Here is where is created an ArrayAdapter to populate the spinner with options.
-        // The list with options are taken from the String array available in the resource file
-        ArrayAdapter supplierNameSpinnerAdapter = ArrayAdapter.createFromResource(this,
+        // Here is where is created a cursor adapter to populate the spinner with the suppliers,
+        // showing their names. The cursor is swapped in once the supplier loader has read it
+        mSupplierAdapter = new SimpleCursorAdapter(this,
                 //Here is where the layout is specified and the drop down style of the spinner
-                R.array.array_supplier_options, android.R.layout.simple_spinner_item);
+                android.R.layout.simple_spinner_item, null,
+                new String[]{SupplierEntry.COLUMN_SUPPLIER_NAME}, new int[]{android.R.id.text1}, 0);
 
         // Specify dropdown layout style - simple list view with 1 item per line
-        supplierNameSpinnerAdapter.setDropDownViewResource(android.R.layout.simple_dropdown_item_1line);
+        mSupplierAdapter.setDropDownViewResource(android.R.layout.simple_dropdown_item_1line);
 
         // Apply the adapter to the spinner
-        mSupplierNameSpinner.setAdapter(supplierNameSpinnerAdapter);
+        mSupplierNameSpinner.setAdapter(mSupplierAdapter);
 
-        // Set the integer mSelected to the constant values
-        // Here is also where is created an instance of the abstract adapter variable class. This will
-        // require to define a default option as onNothingSelected
+        // The id of the selected item is the _ID of the supplier row. Here is also where is created
+        // an instance of the abstract adapter variable class. This will require to define a
+        // default option as onNothingSelected
         mSupplierNameSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                String selection = (String) parent.getItemAtPosition(position);
-                //Here is where the user's selection is stored and set using a mVariable
-                if (!TextUtils.isEmpty(selection)) {
-                    if (selection.equals("Supplier 1")) {
-                        mSupplierName = BookEntry.SUPPLIER_1; // Supplier # 1
-                    } else if (selection.equals("Supplier 2")) {
-                        mSupplierName = BookEntry.SUPPLIER_2; // Supplier # 2
-                    }else if (selection.equals("Supplier 3")) {
-                        mSupplierName = BookEntry.SUPPLIER_3; // Supplier # 3
-                    }else if (selection.equals("Supplier 4")) {
-                        mSupplierName = BookEntry.SUPPLIER_4; // Supplier # 4
-                    }else if (selection.equals("Supplier 5")) {
-                        mSupplierName = BookEntry.SUPPLIER_5; // Supplier # 5
-                    }else {
-                        mSupplierName = BookEntry.SUPPLIER_UNKNOWN; // Unknown supplier
-                    }
-                }
+                mSupplierId = id;
+                // The phone number belongs to the supplier, show the one of the selected supplier
+                Cursor supplier = (Cursor) parent.getItemAtPosition(position);
+                mSupplierPhoneNumberEditText.setText(supplier.getString(
+                        supplier.getColumnIndexOrThrow(SupplierEntry.COLUMN_SUPPLIER_PHONE)));
             }
 
             // Because AdapterView is an abstract class, onNothingSelected must be defined
             @Override
             public void onNothingSelected(AdapterView<?> parent) {
-                mSupplierName = BookEntry.SUPPLIER_UNKNOWN; // Unknown
+                mSupplierId = BookEntry.SUPPLIER_UNKNOWN; // Unknown
             }
         });
     }
 
+    /**
+     * Shows {@link #mSupplierId} in the spinner, once the suppliers are loaded. Called after either
+     * the product or the suppliers are read, whichever comes last selects the right row.
+     */
+    private void selectSupplier() {
+        for (int position = 0; position < mSupplierAdapter.getCount(); position++) {
+            if (mSupplierAdapter.getItemId(position) == mSupplierId) {
+                mSupplierNameSpinner.setSelection(position);
+                return;
+            }
+        }
+    }
+
     /** Get user input from editor and save product information into database*/
     // Here is where the information entered by the user will be saved and inputted into de db
     // We will get data entered by user from the EditText field. We will do that using the ID
@@ -193,6 +228,7 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
         String productNameString = mProductNameEditText.getText().toString().trim();
         String productPriceString = mProductPriceEditText.getText().toString().trim();
         String productQuantityString = mProductQuantityEditText.getText().toString().trim();
+        String reorderThresholdString = mReorderThresholdEditText.getText().toString().trim();
         // Since weight is a number, we will convert string into integer using parseInt
         //int productQuantity = Integer.parseInt(productQuantityString);
         String supplierPhoneNumberString = mSupplierPhoneNumberEditText.getText().toString().trim();
@@ -201,8 +237,9 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
         // and check if all the fields in the editor are blank
         if (mCurrentProductUri == null &&
                 TextUtils.isEmpty(productNameString) && TextUtils.isEmpty(productPriceString) &&
-                TextUtils.isEmpty(productQuantityString) && TextUtils.isEmpty(supplierPhoneNumberString)
-                && mSupplierName == BookEntry.SUPPLIER_UNKNOWN) {
+                TextUtils.isEmpty(productQuantityString) && TextUtils.isEmpty(reorderThresholdString)
+                && TextUtils.isEmpty(supplierPhoneNumberString)
+                && mSupplierId == BookEntry.SUPPLIER_UNKNOWN) {
             // Since no fields were modified, we can return early without creating a new product.
             // No need to create ContentValues and no need to do any ContentProvider operations.
             return;
@@ -220,15 +257,21 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
         values.put(BookEntry.COLUMN_PRODUCT_NAMES, productNameString);
         //values.put(BookEntry.COLUMN_PRODUCT_PRICES, productPriceString);
         //values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, productQuantityString);
-        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, mSupplierName);
+        values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, mSupplierId);
         //values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, supplierPhoneNumberString);
 
         //long newRowId = db.insert(BookInventoryContract.BookEntry.TABLE_NAME, null, values);
-        int price = 0;
+        // The price is stored in cents, so "9.99" is saved as 999
+        long priceCents = 0;
         if (!TextUtils.isEmpty(productPriceString)) {
-            price = Integer.parseInt(productPriceString);
+            try {
+                priceCents = Prices.parseCents(productPriceString);
+            } catch (NumberFormatException e) {
+                Toast.makeText(this, getString(R.string.editor_invalid_price), Toast.LENGTH_SHORT).show();
+                return;
+            }
         }
-        values.put(BookEntry.COLUMN_PRODUCT_PRICES, price);
+        values.put(BookEntry.COLUMN_PRODUCT_PRICES, priceCents);
 
         int quantity = 0;
         if (!TextUtils.isEmpty(productQuantityString)) {
@@ -236,45 +279,60 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
         }
         values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, quantity);
 
-        int supplierPhone = 0;
+        // Without a threshold, the product is low in stock once it runs out
+        int reorderThreshold = 0;
+        if (!TextUtils.isEmpty(reorderThresholdString)) {
+            reorderThreshold = Integer.parseInt(reorderThresholdString);
+        }
+        values.put(BookEntry.COLUMN_REORDER_THRESHOLD, reorderThreshold);
+
+        // The phone number is saved on the supplier, and kept as text: it doesn't fit in an int.
+        // Without one, the supplier keeps its number
         if (!TextUtils.isEmpty(supplierPhoneNumberString)) {
-            supplierPhone = Integer.parseInt(supplierPhoneNumberString);
+            try {
+                values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, Phones.normalize(supplierPhoneNumberString));
+            } catch (IllegalArgumentException e) {
+                Toast.makeText(this, getString(R.string.editor_invalid_phone), Toast.LENGTH_SHORT).show();
+                return;
+            }
         }
-        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, supplierPhone);
+
+        // The write runs in the background and the editor closes right away, so the result
+        // toast is shown with the application context once the write is done
+        final Context appContext = getApplicationContext();
+        ProductWriter writer = ProductWriter.getInstance(this);
 
         // Determine if this is a new or existing product by checking if mCurrentProductUri is null or not
         if(mCurrentProductUri == null){
             // This is a NEW product, so insert a new product into the provider,
-            // returning the content URI for the new product.
-            Uri newUri = getContentResolver().insert(BookEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful
-            if(newUri == null){
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // which hands back the content URI for the new product.
+            writer.insert(BookEntry.CONTENT_URI, values, new ProductWriter.Callback() {
+                @Override
+                public void onInsertComplete(Uri newUri) {
+                    // Show a toast message depending on whether or not the insertion was successful
+                    // If the new content URI is null, then there was an error with insertion.
+                    Toast.makeText(appContext, newUri == null
+                                    ? R.string.editor_insert_product_failed
+                                    : R.string.editor_insert_product_successful,
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
         } else {
             // Otherwise this is an EXISTING product, so update the product with content URI: mCurrentProductUri
             // and pass in the new ContentValues. Pass in null for the selection and selection args
             // because mCurrentProductUri will already identify the correct row in the database that
             // we want to modify.
-            int rowsAffected = getContentResolver().update(mCurrentProductUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            writer.update(mCurrentProductUri, values, null, null, new ProductWriter.Callback() {
+                @Override
+                public void onUpdateComplete(int rowsAffected) {
+                    // Show a toast message depending on whether or not the update was successful.
+                    // If no rows were affected, then there was an error with the update.
+                    Toast.makeText(appContext, rowsAffected == 0
+                                    ? R.string.editor_update_product_failed
+                                    : R.string.editor_update_product_successful,
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
         }
     }
 
@@ -381,6 +439,16 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+        if (i == SUPPLIER_LOADER) {
+            // Every supplier, in the order of their _ID so "Unknown Supplier" comes first
+            String[] projection = {
+                    SupplierEntry._ID,
+                    SupplierEntry.COLUMN_SUPPLIER_NAME,
+                    SupplierEntry.COLUMN_SUPPLIER_PHONE};
+            return new CursorLoader(this, SupplierEntry.CONTENT_URI, projection, null, null,
+                    SupplierEntry._ID);
+        }
+
         // Since the editor shows all product attributes, define a projection that contains
         // all columns from the product table
         String[] projection = {
@@ -389,7 +457,8 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
                 BookEntry.COLUMN_PRODUCT_PRICES,
                 BookEntry.COLUMN_PRODUCTS_QUANTITY,
                 BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
-                BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER};
+                BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+                BookEntry.COLUMN_REORDER_THRESHOLD};
 
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
@@ -402,6 +471,12 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
 
     @Override
     public void onLoadFinished(Loader <Cursor> loader, Cursor cursor) {
+        if (loader.getId() == SUPPLIER_LOADER) {
+            mSupplierAdapter.swapCursor(cursor);
+            selectSupplier();
+            return;
+        }
+
         // Proceed with moving to the first row of the cursor and reading data from it
         // (This should be the only row in the cursor)
 
@@ -413,59 +488,36 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
         // Proceed with moving to the first row of the cursor and reading data from it
         // (This should be the only row in the cursor)
         if (cursor.moveToFirst()) {
-            // Find the columns of product attributes that we're interested in
-            int nameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAMES);
-            int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_PRICES);
-            int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCTS_QUANTITY);
-            int supplierNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
-            int supplierNumberColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
-
-            // Extract out the value from the Cursor for the given column index
-            String name = cursor.getString(nameColumnIndex);
-            float price = Float.parseFloat(cursor.getString(priceColumnIndex));
-            int quantity = cursor.getInt(quantityColumnIndex);
-            int supplierName = cursor.getInt(supplierNameColumnIndex);
-            String supplierNumber = cursor.getString(supplierNumberColumnIndex);
+            // The reader finds the columns of product attributes that we're interested in
+            // and reads the numbers straight from the Cursor
+            ProductReader reader = new ProductReader(cursor);
+            mSupplierId = reader.getSupplier();
 
             // Update the views on the screen with the values from the database
-            mProductNameEditText.setText(name);
-            mProductPriceEditText.setText(Float.toString(price));
-            mProductQuantityEditText.setText(Integer.toString(quantity));
-            mSupplierPhoneNumberEditText.setText(supplierNumber);
-
-            // SupplierName is a dropdown spinner, so map the constant value from the database
-            // into one of the dropdown options (0 is Unknown supplier, 1 is SUPPLIER_1, 2 is SUPPLIER_2,
-            // 3 is SUPPLIER_3, 4 is SUPPLIER_4, 5 is SUPPLIER_5).
-            // Then call setSelection() so that option is displayed on screen as the current selection.
-            switch (supplierName) {
-                case BookEntry.SUPPLIER_1:
-                    mSupplierNameSpinner.setSelection(1);
-                    break;
-                case BookEntry.SUPPLIER_2:
-                    mSupplierNameSpinner.setSelection(2);
-                    break;
-                case BookEntry.SUPPLIER_3:
-                    mSupplierNameSpinner.setSelection(3);
-                    break;
-                case BookEntry.SUPPLIER_4:
-                    mSupplierNameSpinner.setSelection(4);
-                    break;
-                case BookEntry.SUPPLIER_5:
-                    mSupplierNameSpinner.setSelection(5);
-                    break;
-                default:
-                    mSupplierNameSpinner.setSelection(0);
-                    break;
-            }
+            mProductNameEditText.setText(reader.getName());
+            mProductPriceEditText.setText(Prices.format(reader.getPriceCents()));
+            mProductQuantityEditText.setText(Integer.toString(reader.getQuantity()));
+            mReorderThresholdEditText.setText(Integer.toString(reader.getReorderThreshold()));
+            mSupplierPhoneNumberEditText.setText(reader.getSupplierPhone());
+
+            // SupplierName is a dropdown spinner over the supplier rows, select the row of the
+            // product's supplier so it is displayed on screen as the current selection.
+            selectSupplier();
         }
     }
 
     @Override
     public void onLoaderReset(Loader <Cursor> loader) {
+        if (loader.getId() == SUPPLIER_LOADER) {
+            mSupplierAdapter.swapCursor(null);
+            return;
+        }
+
         // If the loader is invalidated, clear out all the data from the input fields.
         mProductNameEditText.setText("");
         mProductPriceEditText.setText("");
         mProductQuantityEditText.setText("");
+        mReorderThresholdEditText.setText("");
         mSupplierNameSpinner.setSelection(0); // Select "Unknown" supplier
         mSupplierPhoneNumberEditText.setText("");
     }
@@ -530,20 +582,25 @@ public class ProductEditorActivity extends AppCompatActivity implements LoaderMa
     private void deleteProduct() {
         // Only perform the delete if this is an existing product.
         if (mCurrentProductUri != null) {
-            // Call the ContentResolver to delete the product at the given content URI.
+            // Ask the ProductWriter to delete the product at the given content URI in the background.
             // Pass in null for the selection and selection args because the mCurrentProductUri
             // content URI already identifies the product that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentProductUri, null, null);
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            final Context appContext = getApplicationContext();
+            long deletedSince = System.currentTimeMillis();
+            ProductWriter.getInstance(this).delete(mCurrentProductUri, null, null,
+                    new ProductWriter.Callback() {
+                        @Override
+                        public void onDeleteComplete(int rowsDeleted) {
+                            // If no rows were deleted, then there was an error with the delete.
+                            // A successful one is reported by the list, which offers to undo it.
+                            if (rowsDeleted == 0) {
+                                Toast.makeText(appContext, R.string.editor_delete_product_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
+            setResult(RESULT_OK, new Intent().setData(mCurrentProductUri)
+                    .putExtra(EXTRA_DELETED_SINCE, deletedSince));
         }
         // Close the activity
         finish();
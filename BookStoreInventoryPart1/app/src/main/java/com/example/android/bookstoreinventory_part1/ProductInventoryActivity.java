@@ -1,24 +1,44 @@
 package com.example.android.bookstoreinventory_part1;
 
 import android.app.LoaderManager;
+import android.app.ProgressDialog;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Loader;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.ResultReceiver;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.example.android.bookstoreinventory_part1.data.BookInventoryContract;
+import com.example.android.bookstoreinventory_part1.data.Prices;
+import com.example.android.bookstoreinventory_part1.data.ProductQuery;
+import com.example.android.bookstoreinventory_part1.data.ProductWriter;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /** Displays list of products that were entered and stored in the app */
 // Here is the public activity declaration
@@ -28,12 +48,62 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
 
     private static final int PRODUCT_LOADER = 0;
 
-    // Here is where we define the adapter for the ListView
+    /** Loader of the inventory totals shown above the list */
+    private static final int STATS_LOADER = 1;
+
+    /** Request code used when picking the CSV file to import */
+    private static final int REQUEST_IMPORT_CSV = 1;
+
+    /** Request code used when opening a product, whose editor reports back if it was deleted */
+    private static final int REQUEST_EDIT_PRODUCT = 2;
+
+    /** Key of the loader argument holding the words typed in the search box */
+    private static final String ARG_SEARCH_QUERY = "search_query";
+
+    /** Key of the loader argument and saved state telling whether only low-stock products are listed */
+    private static final String ARG_LOW_STOCK = "low_stock";
+
+    /**
+     * Key of the loader argument and saved state holding the filters and sort order of the list,
+     * as the query parameters of a products URI (see {@link ProductQuery})
+     */
+    private static final String ARG_LIST_QUERY = "list_query";
+
+    /** How long the user has to stop typing before the search is run */
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    /** Handler used to delay the search until the user stops typing */
+    private final Handler mSearchHandler = new Handler();
+
+    /** Words currently typed in the search box */
+    private String mSearchQuery;
+
+    /** Whether the list only shows the products at or below their reorder threshold */
+    private boolean mLowStockOnly;
+
+    /** Filters and sort order of the list, chosen from the options menu */
+    private ProductQuery mListQuery = new ProductQuery.Builder().build();
+
+    /** _IDs and names of the suppliers that have products, from the statistics, for the filter dialog */
+    private final List<Long> mSupplierIds = new ArrayList<>();
+    private final List<String> mSupplierNames = new ArrayList<>();
+
+    /** Restarts the loader with the current search words, posted after each keystroke */
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            getLoaderManager().restartLoader(PRODUCT_LOADER, buildLoaderArgs(), ProductInventoryActivity.this);
+        }
+    };
+
+    // Here is where we define the adapter for the RecyclerView
     ProductCursorAdapter mCursorAdapter;
 
-    ListView productListView;
+    RecyclerView productListView;
 
-    TextView emptyView;
+    View emptyView;
+
+    TextView statsView;
 
     @Override
     //Here is where it created the ProductInventoryActivity activity
@@ -41,6 +111,14 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_product_inventory);
 
+        if (savedInstanceState != null) {
+            mLowStockOnly = savedInstanceState.getBoolean(ARG_LOW_STOCK);
+            Uri listQuery = savedInstanceState.getParcelable(ARG_LIST_QUERY);
+            if (listQuery != null) {
+                mListQuery = ProductQuery.fromUri(listQuery);
+            }
+        }
+
         // Setup FAB using a ClickListener that uses an Intent to open ProductEditorActivity
         fab = (FloatingActionButton) findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
@@ -51,28 +129,23 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
             }
         });
 
-        // Find the ListView which will be populated with the product data
-        ListView productListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the product data
+        productListView = (RecyclerView) findViewById(R.id.list);
+        productListView.setLayoutManager(new LinearLayoutManager(this));
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        productListView.setEmptyView(emptyView);
+        // Find the empty view, it is only shown when the list has 0 items (see onLoadFinished)
+        emptyView = findViewById(R.id.empty_view);
 
-        // Setup an Adapter to create a list item for each row of product data in the Cursor
-        // There is no product data yet (until the loader finishes) so pass in null for the cursor
-        mCursorAdapter = new ProductCursorAdapter(this, null);
-        productListView.setAdapter(mCursorAdapter);
+        // Find the view showing the inventory totals (see showStats)
+        statsView = (TextView) findViewById(R.id.stats_view);
 
-        // Here is where a new activity will start up when the user clicks on the chosen item from the ListView
-
-        // Setup item click listener
-        productListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Setup an Adapter to create a list item for each row of product data in the Cursor
+        // There is no product data yet (until the loader finishes), the adapter starts out empty.
+        // Here is where a new activity will start up when the user clicks on the chosen item from the list
+        mCursorAdapter = new ProductCursorAdapter(new ProductCursorAdapter.OnProductClickListener() {
             @Override
-            public void onItemClick(AdapterView <?> adapterView, View view, int position, long id) {
-                // adapterView: is a ListView
-                // view:        represents a particular view for the item
-                // position:    represents the position of the item in the ListView
-                // id:          id of the item where we clicked on. Since we will be generating the URI for
+            public void onProductClick(long id) {
+                // id: id of the item where we clicked on. Since we will be generating the URI for
                 // the product in order to pass along as an intent extra
 
                 // Create a new intent to go to {@Link ProductEditorActivity}
@@ -89,12 +162,30 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
 
                 // Launch the {@link ProductEditorActivity} to display the data for the current product
                 // Remember that receiving the message intent is the ProductEditorActivity
-                startActivity(intent);
+                startActivityForResult(intent, REQUEST_EDIT_PRODUCT);
+            }
+
+            @Override
+            public void onAdjustQuantity(long id, int delta) {
+                // The provider changes the quantity in one statement, the list reloads when it's done
+                Uri currentProductUri = ContentUris.withAppendedId(BookInventoryContract.BookEntry.CONTENT_URI, id);
+                ProductWriter.getInstance(ProductInventoryActivity.this).adjustQuantity(currentProductUri, delta,
+                        new ProductWriter.Callback() {
+                            @Override
+                            public void onAdjustComplete(int newQuantity) {
+                                if (newQuantity < 0) {
+                                    Toast.makeText(getApplicationContext(), R.string.list_adjust_refused,
+                                            Toast.LENGTH_SHORT).show();
+                                }
+                            }
+                        });
             }
         });
+        productListView.setAdapter(mCursorAdapter);
 
-        // Kick off the loader using this
-        getLoaderManager().initLoader(PRODUCT_LOADER, null, this);
+        // Kick off the loaders using this
+        getLoaderManager().initLoader(PRODUCT_LOADER, buildLoaderArgs(), this);
+        getLoaderManager().initLoader(STATS_LOADER, null, this);
     }
 
     private void insertProduct(){
@@ -102,10 +193,11 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
         ContentValues values = new ContentValues();
         // Here is where the key value pairs are store for the new product
         values.put(BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES, "The Hobbit");
-        values.put(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES), "9.99");
+        values.put(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES, 999); // 9.99 in cents
         values.put(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY), "7");
-        values.put(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME), BookInventoryContract.BookEntry.SUPPLIER_3);
-        values.put(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "5555555555");
+        // The unknown supplier is the only one every database has. No phone number is sent, it
+        // would replace the number of the supplier for all of its products
+        values.put(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME), BookInventoryContract.BookEntry.SUPPLIER_UNKNOWN);
         // Here is where the information about the new product is inserted in the database
         // This is completed by using the insert method and using the SQLite db object
         // In this case the first parameter is the name of the table, then null and ContentValues object
@@ -125,11 +217,49 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
     }
 
     /**
-     * Helper method to delete all products in the database.
+     * Helper method to delete all products in the database. The delete runs in the background,
+     * then a snackbar offers to undo it.
      */
     private void deleteAllProducts() {
-        int rowsDeleted = getContentResolver().delete(BookInventoryContract.BookEntry.CONTENT_URI, null, null);
-        Log.v("Product Inventory", rowsDeleted + " rows deleted from product database");
+        final long deletedSince = System.currentTimeMillis();
+        ProductWriter.getInstance(this).delete(BookInventoryContract.BookEntry.CONTENT_URI, null, null,
+                new ProductWriter.Callback() {
+                    @Override
+                    public void onDeleteComplete(int rowsDeleted) {
+                        Log.v("Product Inventory", rowsDeleted + " rows deleted from product database");
+                        if (rowsDeleted > 0 && !isFinishing()) {
+                            showUndoDelete(BookInventoryContract.BookEntry.CONTENT_URI, deletedSince,
+                                    getString(R.string.products_deleted, rowsDeleted));
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Shows a snackbar offering to restore the products deleted since the given time. Deleted
+     * products are only purged once {@link BookInventoryContract#UNDO_WINDOW_MILLIS} has passed,
+     * which outlasts the snackbar.
+     *
+     * @param uri URI the delete was requested on, so the undo is ordered after it
+     */
+    private void showUndoDelete(final Uri uri, final long deletedSince, String message) {
+        Snackbar.make(productListView, message, Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        ProductWriter.getInstance(ProductInventoryActivity.this).undoDelete(uri, deletedSince,
+                                new ProductWriter.Callback() {
+                                    @Override
+                                    public void onUndoComplete(int restored) {
+                                        if (restored == 0) {
+                                            Toast.makeText(getApplicationContext(), R.string.undo_failed,
+                                                    Toast.LENGTH_SHORT).show();
+                                        }
+                                    }
+                                });
+                    }
+                })
+                .show();
     }
 
     @Override
@@ -140,9 +270,167 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
         // Here we inflate a menu with resources by referring to its resource id from the menu_product_inventory.xml
         // then the option will be displayed in the Options menu after being created by the ProductInventoryActivity
         getMenuInflater().inflate(R.menu.menu_product_inventory, menu);
+
+        // Each keystroke in the search box only (re)schedules the search, so the database is
+        // queried once the user pauses typing instead of once per character
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mSearchQuery = query.trim();
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                mSearchRunnable.run();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mSearchQuery = newText.trim();
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DEBOUNCE_MILLIS);
+                return true;
+            }
+        });
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_low_stock).setChecked(mLowStockOnly);
+        menu.findItem(getSortItemId(mListQuery.getSort())).setChecked(true);
+        menu.findItem(R.id.action_sort_descending).setChecked(mListQuery.isDescending());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(ARG_LOW_STOCK, mLowStockOnly);
+        outState.putParcelable(ARG_LIST_QUERY, mListQuery.appendTo(BookInventoryContract.BookEntry.CONTENT_URI));
+    }
+
+    /** Returns the arguments of the product loader for the current search and list mode */
+    private Bundle buildLoaderArgs() {
+        Bundle args = new Bundle();
+        args.putString(ARG_SEARCH_QUERY, mSearchQuery);
+        args.putBoolean(ARG_LOW_STOCK, mLowStockOnly);
+        args.putParcelable(ARG_LIST_QUERY, mListQuery.appendTo(BookInventoryContract.BookEntry.CONTENT_URI));
+        return args;
+    }
+
+    /** Replaces the filters and sort order of the list and reloads it */
+    private void setListQuery(ProductQuery listQuery) {
+        mListQuery = listQuery;
+        invalidateOptionsMenu();
+        getLoaderManager().restartLoader(PRODUCT_LOADER, buildLoaderArgs(), this);
+    }
+
+    /** Returns the id of the sort menu item of the given ProductQuery sort key */
+    private static int getSortItemId(String sort) {
+        if (ProductQuery.SORT_NAME.equals(sort)) {
+            return R.id.action_sort_name;
+        } else if (ProductQuery.SORT_PRICE.equals(sort)) {
+            return R.id.action_sort_price;
+        } else if (ProductQuery.SORT_QUANTITY.equals(sort)) {
+            return R.id.action_sort_quantity;
+        } else if (ProductQuery.SORT_SUPPLIER.equals(sort)) {
+            return R.id.action_sort_supplier;
+        }
+        return R.id.action_sort_default;
+    }
+
+    /**
+     * Shows the dialog filtering the list by supplier, name prefix, price and quantity, filled
+     * in with the current filters.
+     */
+    private void showFilterDialog() {
+        final View view = getLayoutInflater().inflate(R.layout.dialog_filter, null);
+        final Spinner supplierSpinner = (Spinner) view.findViewById(R.id.filter_supplier);
+        final EditText namePrefixEditText = (EditText) view.findViewById(R.id.filter_name_prefix);
+        final EditText minPriceEditText = (EditText) view.findViewById(R.id.filter_min_price);
+        final EditText maxPriceEditText = (EditText) view.findViewById(R.id.filter_max_price);
+        final EditText minQuantityEditText = (EditText) view.findViewById(R.id.filter_min_quantity);
+        final EditText maxQuantityEditText = (EditText) view.findViewById(R.id.filter_max_quantity);
+
+        // The suppliers that have products, as the statistics list them
+        List<String> supplierLabels = new ArrayList<>();
+        supplierLabels.add(getString(R.string.filter_all_suppliers));
+        supplierLabels.addAll(mSupplierNames);
+        ArrayAdapter<String> supplierAdapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, supplierLabels);
+        supplierAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        supplierSpinner.setAdapter(supplierAdapter);
+
+        Long supplier = mListQuery.getSupplier();
+        supplierSpinner.setSelection(supplier == null ? 0 : mSupplierIds.indexOf(supplier) + 1);
+        namePrefixEditText.setText(mListQuery.getNamePrefix());
+        if (mListQuery.getMinPriceCents() != null) {
+            minPriceEditText.setText(Prices.format(mListQuery.getMinPriceCents()));
+        }
+        if (mListQuery.getMaxPriceCents() != null) {
+            maxPriceEditText.setText(Prices.format(mListQuery.getMaxPriceCents()));
+        }
+        if (mListQuery.getMinQuantity() != null) {
+            minQuantityEditText.setText(String.valueOf(mListQuery.getMinQuantity()));
+        }
+        if (mListQuery.getMaxQuantity() != null) {
+            maxQuantityEditText.setText(String.valueOf(mListQuery.getMaxQuantity()));
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.filter_dialog_title)
+                .setView(view)
+                .setPositiveButton(R.string.filter_apply, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        ProductQuery.Builder builder = mListQuery.buildUpon().clearFilters();
+                        try {
+                            int supplierPosition = supplierSpinner.getSelectedItemPosition();
+                            if (supplierPosition > 0) {
+                                builder.supplier(mSupplierIds.get(supplierPosition - 1));
+                            }
+                            builder.namePrefix(namePrefixEditText.getText().toString().trim());
+                            String minPrice = minPriceEditText.getText().toString().trim();
+                            if (!minPrice.isEmpty()) {
+                                builder.minPriceCents(Prices.parseCents(minPrice));
+                            }
+                            String maxPrice = maxPriceEditText.getText().toString().trim();
+                            if (!maxPrice.isEmpty()) {
+                                builder.maxPriceCents(Prices.parseCents(maxPrice));
+                            }
+                            String minQuantity = minQuantityEditText.getText().toString().trim();
+                            if (!minQuantity.isEmpty()) {
+                                builder.minQuantity(Integer.parseInt(minQuantity));
+                            }
+                            String maxQuantity = maxQuantityEditText.getText().toString().trim();
+                            if (!maxQuantity.isEmpty()) {
+                                builder.maxQuantity(Integer.parseInt(maxQuantity));
+                            }
+                            setListQuery(builder.build());
+                        } catch (IllegalArgumentException e) {
+                            // Not a number, or a minimum above its maximum
+                            Toast.makeText(ProductInventoryActivity.this, R.string.filter_invalid,
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                })
+                .setNeutralButton(R.string.filter_clear, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        setListQuery(mListQuery.buildUpon().clearFilters().build());
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+    @Override
+    protected void onDestroy() {
+        // Drop any pending search, the loader is going away with the activity
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        super.onDestroy();
+    }
+
     @Override
     //Here is where the set up happens after the user selects an option
     // This method provides the behavior/selection made by the user
@@ -156,16 +444,149 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
                 insertProduct();
                 //displayDatabaseInfo();
                 return true;
+            // Respond to a click on the "Low stock only" menu option by switching the list mode
+            case R.id.action_low_stock:
+                mLowStockOnly = !mLowStockOnly;
+                item.setChecked(mLowStockOnly);
+                getLoaderManager().restartLoader(PRODUCT_LOADER, buildLoaderArgs(), this);
+                return true;
+            // Respond to a click on a "Sort By" menu option by sorting the list on that column,
+            // in the direction already chosen
+            case R.id.action_sort_default:
+                setListQuery(mListQuery.buildUpon().sortBy(null, false).build());
+                return true;
+            case R.id.action_sort_name:
+                setListQuery(mListQuery.buildUpon().sortBy(ProductQuery.SORT_NAME, mListQuery.isDescending()).build());
+                return true;
+            case R.id.action_sort_price:
+                setListQuery(mListQuery.buildUpon().sortBy(ProductQuery.SORT_PRICE, mListQuery.isDescending()).build());
+                return true;
+            case R.id.action_sort_quantity:
+                setListQuery(mListQuery.buildUpon().sortBy(ProductQuery.SORT_QUANTITY, mListQuery.isDescending()).build());
+                return true;
+            case R.id.action_sort_supplier:
+                setListQuery(mListQuery.buildUpon().sortBy(ProductQuery.SORT_SUPPLIER, mListQuery.isDescending()).build());
+                return true;
+            // Respond to a click on the "Descending" menu option by reversing the sort, the
+            // default order has no direction
+            case R.id.action_sort_descending:
+                if (mListQuery.getSort() != null) {
+                    setListQuery(mListQuery.buildUpon().sortBy(mListQuery.getSort(), !mListQuery.isDescending()).build());
+                }
+                return true;
+            // Respond to a click on the "Filter" menu option
+            case R.id.action_filter:
+                showFilterDialog();
+                return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 deleteAllProducts();
                 return true;
+            // Respond to a click on the "Import CSV" menu option by letting the user pick the file
+            case R.id.action_import_csv:
+                Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+                intent.setType("text/*");
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                startActivityForResult(intent, REQUEST_IMPORT_CSV);
+                return true;
+            // Respond to a click on the "Export CSV" menu option by sharing the export stream,
+            // the receiving app reads it straight from the provider
+            case R.id.action_export_csv:
+                Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                shareIntent.setType(BookInventoryContract.MIME_TYPE_CSV);
+                shareIntent.putExtra(Intent.EXTRA_STREAM, BookInventoryContract.BookEntry.EXPORT_URI);
+                shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                startActivity(Intent.createChooser(shareIntent, getString(R.string.export_chooser_title)));
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        // Here is where the chosen CSV file comes back and the import starts
+        if (requestCode == REQUEST_IMPORT_CSV && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            new ImportCsvTask().execute(data.getData());
+        }
+        // Here is where the editor reports the product it deleted, which can still be restored
+        if (requestCode == REQUEST_EDIT_PRODUCT && resultCode == RESULT_OK && data != null
+                && data.hasExtra(ProductEditorActivity.EXTRA_DELETED_SINCE)) {
+            showUndoDelete(data.getData(), data.getLongExtra(ProductEditorActivity.EXTRA_DELETED_SINCE, 0),
+                    getString(R.string.product_deleted));
+        }
+    }
+
+    /**
+     * Imports a CSV file through the provider on a background thread, showing the progress
+     * reported after each committed chunk.
+     */
+    private class ImportCsvTask extends AsyncTask<Uri, Void, Bundle> {
+
+        private ProgressDialog mProgressDialog;
+
+        /** Message of the exception that stopped the import, null if it went through */
+        private String mError;
+
+        @Override
+        protected void onPreExecute() {
+            mProgressDialog = new ProgressDialog(ProductInventoryActivity.this);
+            mProgressDialog.setMessage(getString(R.string.import_in_progress));
+            mProgressDialog.setCancelable(false);
+            mProgressDialog.show();
+        }
+
+        @Override
+        protected Bundle doInBackground(Uri... uris) {
+            // Progress is sent to the UI thread by the receiver, through a Handler on the main looper
+            ResultReceiver progressReceiver = new ResultReceiver(new Handler(getMainLooper())) {
+                @Override
+                protected void onReceiveResult(int resultCode, Bundle progress) {
+                    mProgressDialog.setMessage(getString(R.string.import_progress,
+                            progress.getInt(BookInventoryContract.RESULT_IMPORTED),
+                            progress.getInt(BookInventoryContract.RESULT_REJECTED)));
+                }
+            };
+            Bundle extras = new Bundle();
+            extras.putParcelable(BookInventoryContract.EXTRA_PROGRESS_RECEIVER, progressReceiver);
+            try {
+                return getContentResolver().call(BookInventoryContract.BookEntry.CONTENT_URI,
+                        BookInventoryContract.METHOD_IMPORT_CSV, uris[0].toString(), extras);
+            } catch (IllegalArgumentException e) {
+                mError = e.getMessage();
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Bundle result) {
+            if (mProgressDialog.isShowing()) {
+                mProgressDialog.dismiss();
+            }
+            if (result == null) {
+                Toast.makeText(ProductInventoryActivity.this, getString(R.string.import_failed, mError),
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+            int rejected = result.getInt(BookInventoryContract.RESULT_REJECTED);
+            Toast.makeText(ProductInventoryActivity.this, getString(R.string.import_finished,
+                    result.getInt(BookInventoryContract.RESULT_IMPORTED), rejected), Toast.LENGTH_LONG).show();
+            if (rejected > 0) {
+                for (String rejection : result.getStringArrayList(BookInventoryContract.RESULT_REJECTIONS)) {
+                    Log.w("Product Inventory", "Rejected " + rejection);
+                }
+            }
+        }
+    }
+
     @Override
     public Loader <Cursor> onCreateLoader(int id, Bundle args) {
+        if (id == STATS_LOADER) {
+            // One row per supplier, kept up to date by the provider, whatever the number of products
+            return new CursorLoader(this, BookInventoryContract.StatsEntry.CONTENT_URI, null,
+                    BookInventoryContract.StatsEntry.COLUMN_PRODUCT_COUNT + " > 0", null, null);
+        }
+
         // Define a projection that specifies the columns from the table we care about
         // To make the app perform better and more responsive by using a loader, we will use a smaller
         // projection (3 items: ID, Name and quantity). ID is always needed by the cursor that we are
@@ -176,29 +597,96 @@ public class ProductInventoryActivity extends AppCompatActivity implements Loade
                 BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES,
                 String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY)};
 
-        // This loader will execute the ContentProvider's query method on a background thread
-        // Parameters here are very similar with the one used for creating in the main thread
-        return new android.content.CursorLoader(
-                this,                                   // Parent activity context
-                BookInventoryContract.BookEntry.CONTENT_URI,    // Provider content URI to query
-                projection,                                     // Columns to include in the resulting Cursor
-                null,                                  // No selection clause
-                null,                               // No selection arguments
-                null);                                 // Default sort order
+        // If the user typed something in the search box, query the search URI instead of the whole table
+        // In low-stock mode, list the low-stock URI, or search among the low products
+        Uri uri = BookInventoryContract.BookEntry.CONTENT_URI;
+        String searchQuery = args == null ? null : args.getString(ARG_SEARCH_QUERY);
+        boolean lowStockOnly = args != null && args.getBoolean(ARG_LOW_STOCK);
+        String selection = null;
+        if (!TextUtils.isEmpty(searchQuery)) {
+            uri = BookInventoryContract.BookEntry.buildSearchUri(searchQuery);
+            if (lowStockOnly) {
+                selection = BookInventoryContract.BookEntry.SELECTION_LOW_STOCK;
+            }
+        } else if (lowStockOnly) {
+            uri = BookInventoryContract.BookEntry.LOW_STOCK_URI;
+        }
+        // The filters and sort order apply to whichever list is shown
+        Uri listQuery = args == null ? null : (Uri) args.getParcelable(ARG_LIST_QUERY);
+        if (listQuery != null) {
+            uri = ProductQuery.fromUri(listQuery).appendTo(uri);
+        }
+
+        // This loader will execute the ContentProvider's query method on a background thread,
+        // and work out there which rows changed since the previous load
+        ProductListLoader loader = new ProductListLoader(this, uri, projection);
+        loader.setSelection(selection);
+        return loader;
     }
 
     @Override
     public void onLoadFinished(Loader <Cursor> loader, Cursor data) {
+        if (loader.getId() == STATS_LOADER) {
+            showStats(data);
+            return;
+        }
+
         // Update {@Link ProductCursorAdapter} with this new cursor containing updated product data
         // This method receives the cursor with the new product data and pass into my CursorAdapter using
         // the swapCursor method
         mCursorAdapter.swapCursor(data);
+
+        // Show the empty view instead of the list when there is no product
+        boolean isEmpty = data == null || data.getCount() == 0;
+        emptyView.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
+        productListView.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
     }
 
     @Override
     public void onLoaderReset(Loader <Cursor> loader) {
+        if (loader.getId() == STATS_LOADER) {
+            showStats(null);
+            return;
+        }
+
         // This callback is called when the data needs to be deleted, this iw why the method passes
         // null as the cursor here
         mCursorAdapter.swapCursor(null);
     }
+
+    /**
+     * Shows the totals of the whole inventory, the sums of the supplier rows, followed by the
+     * totals of each supplier. Hides the view when there is no product.
+     */
+    private void showStats(Cursor data) {
+        mSupplierIds.clear();
+        mSupplierNames.clear();
+        if (data == null || !data.moveToFirst()) {
+            statsView.setVisibility(View.GONE);
+            return;
+        }
+        int supplierIdColumn = data.getColumnIndexOrThrow(BookInventoryContract.StatsEntry.COLUMN_SUPPLIER);
+        int supplierColumn = data.getColumnIndexOrThrow(BookInventoryContract.StatsEntry.COLUMN_SUPPLIER_NAME);
+        int countColumn = data.getColumnIndexOrThrow(BookInventoryContract.StatsEntry.COLUMN_PRODUCT_COUNT);
+        int unitsColumn = data.getColumnIndexOrThrow(BookInventoryContract.StatsEntry.COLUMN_TOTAL_UNITS);
+        int valueColumn = data.getColumnIndexOrThrow(BookInventoryContract.StatsEntry.COLUMN_TOTAL_VALUE);
+
+        StringBuilder suppliers = new StringBuilder();
+        long products = 0;
+        long units = 0;
+        long value = 0;
+        do {
+            products += data.getLong(countColumn);
+            units += data.getLong(unitsColumn);
+            value += data.getLong(valueColumn);
+            mSupplierIds.add(data.getLong(supplierIdColumn));
+            mSupplierNames.add(data.getString(supplierColumn));
+            // The name is joined from the supplier table
+            suppliers.append('\n').append(getString(R.string.stats_supplier, data.getString(supplierColumn),
+                    data.getLong(unitsColumn), Prices.format(data.getLong(valueColumn))));
+        } while (data.moveToNext());
+
+        statsView.setText(getString(R.string.stats_total, products, units, Prices.format(value)) + suppliers);
+        statsView.setVisibility(View.VISIBLE);
+    }
 }
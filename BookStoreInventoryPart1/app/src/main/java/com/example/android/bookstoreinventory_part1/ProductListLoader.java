@@ -0,0 +1,132 @@
+package com.example.android.bookstoreinventory_part1;
+
+import android.content.Context;
+import android.content.CursorLoader;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract;
+import com.example.android.bookstoreinventory_part1.data.CompactProductCursor;
+import com.example.android.bookstoreinventory_part1.data.ProductPageCursor;
+
+/**
+ * {@link CursorLoader} for the product list. The whole product table is loaded as a
+ * {@link ProductPageCursor}, so the list can show its first rows without waiting for every
+ * product to be read. Other URIs (like a search, or a filtered or sorted list) are queried as
+ * usual and, unless they return more than {@link #MAX_COMPACT_ROWS} rows, copied into a
+ * {@link CompactProductCursor}, so flinging through the list never waits on the database.
+ * <p>
+ * Each result also carries the difference with the previous one, computed on the loader thread,
+ * so {@link ProductCursorAdapter} only rebinds the rows that actually changed. The snapshot of a
+ * {@link ProductPageCursor} only reads the pages it already fetched, so taking it doesn't query
+ * the rest of the table.
+ */
+public class ProductListLoader extends CursorLoader {
+
+    /** Above this many rows no diff is computed and the list is rebound as a whole */
+    static final int MAX_DIFF_ROWS = 10000;
+
+    /**
+     * Above this many rows the query result is kept as it is, the compact copy would take more
+     * memory than the list is worth (a few tens of bytes per row)
+     */
+    static final int MAX_COMPACT_ROWS = 250000;
+
+    /** Reloads the list when the products change */
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+
+    /** Whether the URI is the whole product table, which is then loaded page by page */
+    private final boolean mPaged;
+
+    /** Snapshot of the previous result, the next result is diffed against it */
+    private volatile ProductListSnapshot mPreviousSnapshot;
+
+    /**
+     * Constructs a new {@link ProductListLoader}.
+     *
+     * @param context    The context
+     * @param uri        Products URI to query
+     * @param projection Columns to include in the cursor, must contain the _ID column
+     */
+    public ProductListLoader(Context context, Uri uri, String[] projection) {
+        super(context, uri, projection, null, null, null);
+        mPaged = BookInventoryContract.BookEntry.CONTENT_URI.equals(uri);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor;
+        int snapshotRows = Integer.MAX_VALUE;
+        if (mPaged) {
+            // Counting the products and fetching the first page is all the work done up front,
+            // the other pages are fetched as the list scrolls onto them
+            ProductPageCursor pageCursor = new ProductPageCursor(getContext().getContentResolver(),
+                    getProjection(), ProductPageCursor.DEFAULT_PAGE_SIZE, ProductPageCursor.DEFAULT_MAX_PAGES);
+            snapshotRows = pageCursor.getFetchedCount();
+            cursor = pageCursor;
+            cursor.setNotificationUri(getContext().getContentResolver(), getUri());
+            cursor.registerContentObserver(mObserver);
+        } else {
+            cursor = super.loadInBackground();
+            if (cursor == null) {
+                return null;
+            }
+            if (cursor.getCount() <= MAX_COMPACT_ROWS) {
+                Cursor compact = CompactProductCursor.copyOf(cursor);
+                // Closing the query result also drops the observer CursorLoader registered on it
+                cursor.close();
+                compact.setNotificationUri(getContext().getContentResolver(), getUri());
+                compact.registerContentObserver(mObserver);
+                cursor = compact;
+            }
+        }
+
+        ProductListSnapshot previous = mPreviousSnapshot;
+        ProductListSnapshot snapshot = ProductListSnapshot.of(cursor, MAX_DIFF_ROWS, snapshotRows);
+        DiffUtil.DiffResult diff = null;
+        if (previous != null && snapshot != null) {
+            diff = previous.diff(snapshot);
+        }
+        cursor.moveToPosition(-1);
+        mPreviousSnapshot = snapshot;
+        return new DiffedCursor(cursor, previous, snapshot, diff);
+    }
+
+    /**
+     * Cursor returned by {@link ProductListLoader}, holding the snapshot of its rows and the
+     * changes since the previous result.
+     */
+    public static class DiffedCursor extends CursorWrapper {
+
+        private final ProductListSnapshot mPreviousSnapshot;
+
+        private final ProductListSnapshot mSnapshot;
+
+        private final DiffUtil.DiffResult mDiff;
+
+        DiffedCursor(Cursor cursor, ProductListSnapshot previousSnapshot, ProductListSnapshot snapshot,
+                     DiffUtil.DiffResult diff) {
+            super(cursor);
+            mPreviousSnapshot = previousSnapshot;
+            mSnapshot = snapshot;
+            mDiff = diff;
+        }
+
+        /** Snapshot the diff was computed against, or null */
+        public ProductListSnapshot getPreviousSnapshot() {
+            return mPreviousSnapshot;
+        }
+
+        /** Snapshot of this cursor, or null if it has too many rows */
+        public ProductListSnapshot getSnapshot() {
+            return mSnapshot;
+        }
+
+        /** Changes from the previous snapshot to this one, or null if there is none */
+        public DiffUtil.DiffResult getDiff() {
+            return mDiff;
+        }
+    }
+}
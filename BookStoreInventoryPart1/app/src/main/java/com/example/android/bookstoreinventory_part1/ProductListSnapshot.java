@@ -0,0 +1,126 @@
+package com.example.android.bookstoreinventory_part1;
+
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract;
+
+import java.util.Arrays;
+
+/**
+ * Compact copy of what the product list shows: the _ID of every row plus a hash of its other
+ * columns. Two snapshots are enough to work out which rows were added, removed or changed
+ * between two loads, without keeping the old cursor open.
+ * <p>
+ * A snapshot can cover only the first rows of the cursor, the ones it holds in memory. The other
+ * rows are only counted, and a diff reports each of them as changed, so they are rebound.
+ */
+public class ProductListSnapshot {
+
+    /** _ID of each row, in list order */
+    private final long[] mIds;
+
+    /** Hash of the displayed columns of each row, in list order */
+    private final int[] mContentHashes;
+
+    /** Number of rows of the cursor, the ones after mIds were not read */
+    private final int mCount;
+
+    private ProductListSnapshot(long[] ids, int[] contentHashes, int count) {
+        mIds = ids;
+        mContentHashes = contentHashes;
+        mCount = count;
+    }
+
+    /**
+     * Reads every row of the given cursor into a snapshot. Returns null if the cursor has more
+     * than maxRows rows, in which case the list is simply rebound. Must not be called on the UI
+     * thread.
+     */
+    public static ProductListSnapshot of(Cursor cursor, int maxRows) {
+        return of(cursor, maxRows, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #of(Cursor, int)}, but only reads the first readRows rows, the others are
+     * counted
+     */
+    public static ProductListSnapshot of(Cursor cursor, int maxRows, int readRows) {
+        if (cursor == null || cursor.getCount() > maxRows) {
+            return null;
+        }
+        int count = Math.min(cursor.getCount(), readRows);
+        int idColumnIndex = cursor.getColumnIndexOrThrow(BookInventoryContract.BookEntry._ID);
+        int columnCount = cursor.getColumnCount();
+
+        long[] ids = new long[count];
+        int[] contentHashes = new int[count];
+        for (int position = 0; position < count && cursor.moveToPosition(position); position++) {
+            ids[position] = cursor.getLong(idColumnIndex);
+            int hash = 1;
+            for (int i = 0; i < columnCount; i++) {
+                hash = 31 * hash + hashColumn(cursor, i);
+            }
+            contentHashes[position] = hash;
+        }
+        return new ProductListSnapshot(ids, contentHashes, cursor.getCount());
+    }
+
+    private static int hashColumn(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                long value = cursor.getLong(column);
+                return (int) (value ^ (value >>> 32));
+            case Cursor.FIELD_TYPE_FLOAT:
+                long bits = Double.doubleToLongBits(cursor.getDouble(column));
+                return (int) (bits ^ (bits >>> 32));
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column).hashCode();
+            case Cursor.FIELD_TYPE_BLOB:
+                return Arrays.hashCode(cursor.getBlob(column));
+            default:
+                return 0;
+        }
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Computes the changes that turn this snapshot into the newer one. Rows are matched by _ID
+     * and only rows whose content hash differs are reported as changed. Rows that weren't read
+     * are matched by their position after the rows read and always reported as changed. Must not
+     * be called on the UI thread.
+     */
+    public DiffUtil.DiffResult diff(final ProductListSnapshot newer) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return mCount;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newer.mCount;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                boolean oldRead = oldItemPosition < mIds.length;
+                boolean newRead = newItemPosition < newer.mIds.length;
+                if (oldRead && newRead) {
+                    return mIds[oldItemPosition] == newer.mIds[newItemPosition];
+                }
+                return !oldRead && !newRead
+                        && oldItemPosition - mIds.length == newItemPosition - newer.mIds.length;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldItemPosition < mIds.length && newItemPosition < newer.mIds.length
+                        && mContentHashes[oldItemPosition] == newer.mContentHashes[newItemPosition];
+            }
+        }, false);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.android.bookstoreinventory_part1.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -34,6 +35,263 @@ import android.provider.BaseColumns;
      */
     public static final String PATH_PRODUCTS = "Products";
 
+     /**
+     * Path appended to the products path for a full-text search over the product names.
+     * For instance, content://com.example.android.bookstoreinventory_part1/Products/search/hobbit
+     */
+    public static final String PATH_SEARCH = "search";
+
+     /**
+     * Path appended to the products path for an export of every product, read as a stream with
+     * {@link android.content.ContentResolver#openInputStream} (CSV) or
+     * {@link android.content.ContentResolver#openTypedAssetFileDescriptor} with
+     * {@link #MIME_TYPE_CSV} or {@link #MIME_TYPE_JSON}.
+     * For instance, content://com.example.android.bookstoreinventory_part1/Products/export
+     */
+    public static final String PATH_EXPORT = "export";
+
+     /**
+     * Path appended to a single product URI to change its quantity by a delta, in one atomic
+     * statement that refuses to take the stock below 0. Update it with {@link #KEY_DELTA}, or use
+     * {@link #METHOD_ADJUST_QUANTITY} to also get the new quantity back.
+     * For instance, content://com.example.android.bookstoreinventory_part1/Products/3/adjust
+     */
+    public static final String PATH_ADJUST = "adjust";
+
+     /**
+     * Value of an update of an adjust URI: the change of quantity (int), negative for a sale.
+     * The update returns 1, or 0 if the product doesn't exist or has too few in stock.
+     */
+    public static final String KEY_DELTA = "delta";
+
+     /**
+     * Optional value of an adjustment (in the update values or the call extras): the reason
+     * recorded in the stock ledger, one of the {@link StockMovementEntry} REASON constants.
+     * Defaults to {@link StockMovementEntry#REASON_SALE} for a negative delta and
+     * {@link StockMovementEntry#REASON_RECEIPT} otherwise.
+     */
+    public static final String KEY_REASON = "reason";
+
+     /** MIME type of a CSV export, which can be imported again with {@link #METHOD_IMPORT_CSV} */
+    public static final String MIME_TYPE_CSV = "text/csv";
+
+     /** MIME type of a JSON export, an array with one object per product */
+    public static final String MIME_TYPE_JSON = "application/json";
+
+     /**
+     * Query parameter on the products URI limiting the number of rows returned.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+     /**
+     * Query parameter on the products URI that skips the given number of rows. Prefer the keyset
+     * parameters below, which don't have to walk over the skipped rows.
+     */
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+     /**
+     * Query parameter on the products URI returning only the products with a greater _ID,
+     * in _ID order. Used to fetch the page that follows the one ending at this _ID.
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+     /**
+     * Query parameter on the products URI returning only the products that come after this name
+     * (ignoring case, ties broken by {@link #QUERY_PARAMETER_AFTER_ID}), in name order.
+     */
+    public static final String QUERY_PARAMETER_AFTER_NAME = "after_name";
+
+     /**
+     * Query parameters on the products, search and low-stock URIs filtering the list: the
+     * products of one supplier (its _ID), with a price in cents or a quantity within a range
+     * (bounds included), or whose name starts with a prefix (ignoring case). Build them with
+     * {@link ProductQuery} rather than by hand.
+     */
+    public static final String QUERY_PARAMETER_SUPPLIER = "supplier";
+    public static final String QUERY_PARAMETER_MIN_PRICE = "min_price";
+    public static final String QUERY_PARAMETER_MAX_PRICE = "max_price";
+    public static final String QUERY_PARAMETER_MIN_QUANTITY = "min_quantity";
+    public static final String QUERY_PARAMETER_MAX_QUANTITY = "max_quantity";
+    public static final String QUERY_PARAMETER_NAME_PREFIX = "name_prefix";
+
+     /**
+     * Query parameter on the products, search and low-stock URIs sorting the list by one of the
+     * {@link ProductQuery} SORT_ keys, each backed by an index. Can't be combined with keyset paging.
+     */
+    public static final String QUERY_PARAMETER_SORT = "sort";
+
+     /** Query parameter set to "true" to reverse the order of {@link #QUERY_PARAMETER_SORT} */
+    public static final String QUERY_PARAMETER_DESCENDING = "descending";
+
+     /**
+     * Query parameter on the products URI choosing what an insert or a bulk insert does with a
+     * product whose natural key is already taken: the same ISBN if the values have one, otherwise
+     * the same name (ignoring case) and supplier. One of {@link #CONFLICT_REPLACE},
+     * {@link #CONFLICT_KEEP} or {@link #CONFLICT_SUM_QUANTITY}. Without it every insert adds a
+     * product. The insert returns the URI of the stored product either way.
+     */
+    public static final String QUERY_PARAMETER_ON_CONFLICT = "on_conflict";
+
+     /** The stored product takes the values of the insert, keeping its _ID */
+    public static final String CONFLICT_REPLACE = "replace";
+
+     /** The stored product is left as it is, the insert is dropped */
+    public static final String CONFLICT_KEEP = "keep";
+
+     /**
+     * The quantity of the insert is added to the stored product, recorded as a receipt in the
+     * stock ledger; its other values are dropped
+     */
+    public static final String CONFLICT_SUM_QUANTITY = "sum_quantity";
+
+     /**
+     * Query parameter on any write URI. When set to "true" the change notification is sent with
+     * syncToNetwork off, so a sync adapter writing data it just downloaded doesn't trigger an
+     * upload of the same data.
+     */
+    public static final String QUERY_PARAMETER_CALLER_IS_SYNCADAPTER = "caller_is_syncadapter";
+
+     /**
+     * Path of the stock ledger, the read-only list of every change of quantity.
+     * For instance, content://com.example.android.bookstoreinventory_part1/StockMovements
+     */
+    public static final String PATH_STOCK_MOVEMENTS = "StockMovements";
+
+     /**
+     * Path of the inventory statistics, the totals of every supplier.
+     * For instance, content://com.example.android.bookstoreinventory_part1/Stats
+     */
+    public static final String PATH_STATS = "Stats";
+
+     /**
+     * Path of the suppliers, the companies products are bought from.
+     * For instance, content://com.example.android.bookstoreinventory_part1/Suppliers/3
+     */
+    public static final String PATH_SUPPLIERS = "Suppliers";
+
+     /**
+     * Path appended to the products path, followed by an ISBN-10 or ISBN-13 (with or without
+     * separators, see {@link Isbns}), for the product with this ISBN. Querying it returns that
+     * product, or no row. Inserting into it receives stock: the quantity of the values (1 if
+     * there is none) is added to the product that already has the ISBN, or a new product is
+     * made from the values. The insert returns the URI of the product either way.
+     * For instance, content://com.example.android.bookstoreinventory_part1/Products/isbn/9780306406157
+     */
+    public static final String PATH_ISBN = "isbn";
+
+     /**
+     * Path appended to the products path for the products at or below their reorder threshold.
+     * For instance, content://com.example.android.bookstoreinventory_part1/Products/low_stock
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+     /**
+     * Query parameter on the stock ledger URI returning only the movements recorded at or after
+     * this time, in milliseconds since the epoch.
+     */
+    public static final String QUERY_PARAMETER_FROM = "from";
+
+     /**
+     * Query parameter on the stock ledger URI returning only the movements recorded before this
+     * time, in milliseconds since the epoch.
+     */
+    public static final String QUERY_PARAMETER_TO = "to";
+
+     /**
+     * Query parameter on the stock ledger URI returning only the movements after the one with
+     * this time (ties broken by {@link #QUERY_PARAMETER_AFTER_ID}), in time order. Used to fetch
+     * the page that follows the one ending at this movement.
+     */
+    public static final String QUERY_PARAMETER_AFTER_TIME = "after_time";
+
+     /**
+     * Provider method, used with {@link android.content.ContentResolver#call}, importing products
+     * from the CSV file whose URI is passed as the argument (see {@link ProductCsvImporter} for the
+     * format). Optional extras: {@link #EXTRA_CHUNK_SIZE}, {@link #EXTRA_PROGRESS_RECEIVER} and
+     * {@link #EXTRA_ON_CONFLICT}. The returned bundle holds {@link #RESULT_IMPORTED},
+     * {@link #RESULT_MERGED}, {@link #RESULT_REJECTED} and {@link #RESULT_REJECTIONS}. Runs on the calling thread, so call it off the UI thread.
+     */
+    public static final String METHOD_IMPORT_CSV = "import_csv";
+
+     /** Number of rows committed per transaction during an import (int) */
+    public static final String EXTRA_CHUNK_SIZE = "chunk_size";
+
+     /**
+     * What an imported row does when a product with the same name (ignoring case) and supplier
+     * is already stored, one of the {@link #QUERY_PARAMETER_ON_CONFLICT} values. Without it every
+     * row is inserted.
+     */
+    public static final String EXTRA_ON_CONFLICT = QUERY_PARAMETER_ON_CONFLICT;
+
+     /**
+     * {@link android.os.ResultReceiver} sent a bundle with {@link #RESULT_IMPORTED} and
+     * {@link #RESULT_REJECTED} after each committed chunk.
+     */
+    public static final String EXTRA_PROGRESS_RECEIVER = "progress_receiver";
+
+     /** Number of rows imported so far (int) */
+    public static final String RESULT_IMPORTED = "imported";
+
+     /** Number of rows resolved against a stored product with {@link #EXTRA_ON_CONFLICT} (int) */
+    public static final String RESULT_MERGED = "merged";
+
+     /** Number of rows rejected so far (int) */
+    public static final String RESULT_REJECTED = "rejected";
+
+     /** Description of the first rejected rows (ArrayList of String) */
+    public static final String RESULT_REJECTIONS = "rejections";
+
+     /**
+     * Provider method, used with {@link android.content.ContentResolver#call}, returning the
+     * counters of the provider's product cache: {@link #RESULT_CACHE_HITS},
+     * {@link #RESULT_CACHE_MISSES}, {@link #RESULT_CACHE_EVICTIONS} and {@link #RESULT_CACHE_SIZE}.
+     */
+    public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+
+     /** Number of single-row reads served from the cache (int) */
+    public static final String RESULT_CACHE_HITS = "cache_hits";
+
+     /** Number of single-row reads that had to query the database (int) */
+    public static final String RESULT_CACHE_MISSES = "cache_misses";
+
+     /** Number of cached products dropped to make room or by a bulk invalidation (int) */
+    public static final String RESULT_CACHE_EVICTIONS = "cache_evictions";
+
+     /** Number of products currently cached (int) */
+    public static final String RESULT_CACHE_SIZE = "cache_size";
+
+     /**
+     * Provider method, used with {@link android.content.ContentResolver#call}, adjusting the
+     * quantity of the product whose adjust URI (see {@link #PATH_ADJUST}) is passed as the
+     * argument by the {@link #KEY_DELTA} int of the extras. The returned bundle holds
+     * {@link #RESULT_QUANTITY}.
+     */
+    public static final String METHOD_ADJUST_QUANTITY = "adjust_quantity";
+
+     /**
+     * Quantity of the product after the adjustment (int), or -1 if it was refused because the
+     * product doesn't exist or has too few in stock.
+     */
+    public static final String RESULT_QUANTITY = "quantity";
+
+     /**
+     * How long deleted products can be brought back, in milliseconds. A delete only hides the
+     * products; they are purged in the background once this long has passed.
+     */
+    public static final long UNDO_WINDOW_MILLIS = 30000;
+
+     /**
+     * Provider method, used with {@link android.content.ContentResolver#call}, bringing back the
+     * products deleted at or after the time passed as the argument, in milliseconds since the
+     * epoch: note {@link System#currentTimeMillis()} before the delete and pass it here. Only
+     * deletes of the last {@link #UNDO_WINDOW_MILLIS} can be undone. The returned bundle holds
+     * {@link #RESULT_RESTORED}.
+     */
+    public static final String METHOD_UNDO_DELETE = "undo_delete";
+
+     /** Number of products brought back (int) */
+    public static final String RESULT_RESTORED = "restored";
+
      /**
      * Inner class that defines constant values for the Book Inventory database table.
      * Each entry in the table represents a book
@@ -44,6 +302,71 @@ import android.provider.BaseColumns;
          /** The content URI to access the product data in the provider */
          public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
+         /**
+          * Returns the content URI that searches the product names for the given words. Each
+          * word is matched as a prefix, so "hob" finds "The Hobbit".
+          */
+         public static Uri buildSearchUri(String query) {
+             return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
+         }
+
+         /** The content URI streaming an export of every product, see {@link #PATH_EXPORT} */
+         public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+         /**
+          * The content URI listing the products whose quantity is at or below their reorder
+          * threshold, in name order. Accepts the limit query parameter.
+          */
+         public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+         /**
+          * Selection of the products at or below their reorder threshold, the filter of
+          * {@link #LOW_STOCK_URI}. Can be added to the selection of a search.
+          */
+         public static final String SELECTION_LOW_STOCK =
+                 BookEntry.COLUMN_PRODUCTS_QUANTITY + " <= " + BookEntry.COLUMN_REORDER_THRESHOLD;
+
+         /** Returns the content URI of the product with the given ISBN, see {@link #PATH_ISBN} */
+         public static Uri buildIsbnUri(String isbn) {
+             return CONTENT_URI.buildUpon().appendPath(PATH_ISBN).appendPath(isbn).build();
+         }
+
+         /**
+          * Returns the products URI whose inserts resolve conflicts on the natural key with the
+          * given strategy, see {@link #QUERY_PARAMETER_ON_CONFLICT}
+          */
+         public static Uri buildUpsertUri(String onConflict) {
+             return CONTENT_URI.buildUpon().appendQueryParameter(QUERY_PARAMETER_ON_CONFLICT, onConflict).build();
+         }
+
+         /** Returns the content URI adjusting the quantity of the product, see {@link #PATH_ADJUST} */
+         public static Uri buildAdjustUri(long id) {
+             return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_ADJUST).build();
+         }
+
+         /**
+          * Returns the content URI for the page of at most limit products that follows the
+          * product with the given _ID, in _ID order. Use 0 for the first page.
+          */
+         public static Uri buildPageUri(int limit, long afterId) {
+             return CONTENT_URI.buildUpon()
+                     .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                     .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                     .build();
+         }
+
+         /**
+          * Returns the content URI for the page of at most limit products that follows the
+          * product with the given name and _ID, in name order. Use "" and 0 for the first page.
+          */
+         public static Uri buildPageUri(int limit, String afterName, long afterId) {
+             return CONTENT_URI.buildUpon()
+                     .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                     .appendQueryParameter(QUERY_PARAMETER_AFTER_NAME, afterName)
+                     .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                     .build();
+         }
+
          /**
           * The MIME type of the {@link #CONTENT_URI} for a list of products.
           */
@@ -75,7 +398,7 @@ import android.provider.BaseColumns;
         public final static String COLUMN_PRODUCT_NAMES = "product_name";
 
         /**
-         * Price of products - Type: FLOAT
+         * Price of products in cents, e.g. 999 for 9.99 (see {@link Prices}) - Type: INTEGER
          */
         public static final String COLUMN_PRODUCT_PRICES = "product_price";
 
@@ -84,42 +407,179 @@ import android.provider.BaseColumns;
          */
         public final static String COLUMN_PRODUCTS_QUANTITY = "product_quantity";
         /**
-         * Name of product suppliers
-         *
-         * The only possible values are {@link #SUPPLIER_1}, {@link #SUPPLIER_2}, {@link #SUPPLIER_3}
-         * {@link #SUPPLIER_4}, {@link #SUPPLIER_5} or {@link #SUPPLIER_UNKNOWN}
+         * The supplier of the product, the _ID of a row of {@link SupplierEntry}. The database
+         * refuses a supplier that doesn't exist. {@link #SUPPLIER_UNKNOWN} is the supplier of
+         * products bought outside of a contract.
          *
          * Type: INTEGER
          */
         public final static String COLUMN_PRODUCT_SUPPLIER_NAME = "supplier_name";
 
         /**
-         * Supplier Phone Number - Type: TEXT
+         * Phone number of the product's supplier, read from {@link SupplierEntry#COLUMN_SUPPLIER_PHONE}
+         * through a join. Writing it with a product sets the phone number of its supplier; it is
+         * normalized with {@link Phones#normalize}.
+         *
+         * Type: TEXT
          */
         public final static String COLUMN_SUPPLIER_PHONE_NUMBER = "supplier_phone_number";
 
         /**
-         * Possible values for the supplier of products.
+         * Quantity at or below which the product has to be reordered, 0 by default so only
+         * products out of stock are low - Type: INTEGER
+         */
+        public static final String COLUMN_REORDER_THRESHOLD = "reorder_threshold";
+
+        /**
+         * ISBN of the book, unique, or null if it has none. Stored as the 13 digits of its ISBN-13,
+         * an ISBN-10 or an ISBN with separators is normalized with {@link Isbns#normalize} when
+         * written - Type: TEXT
+         */
+        public static final String COLUMN_ISBN = "isbn";
+
+        /**
+         * When the product was deleted, in milliseconds since the epoch, or null while it is not.
+         * Set by a delete, which only hides the product until the undo window is over (see
+         * {@link BookInventoryContract#UNDO_WINDOW_MILLIS}). Only in the table, never returned by
+         * a query and never written by clients - Type: INTEGER
+         */
+        public static final String COLUMN_DELETED_AT = "deleted_at";
+
+        /**
+         * _ID of the supplier every database starts with, which is never deleted. The other
+         * suppliers are read and added through {@link SupplierEntry#CONTENT_URI}, their _IDs
+         * depend on the database.
          */
-        // Here is where the constants are assigned to 5 suppliers. There is an option for unknown supplier as well
-        public static final int SUPPLIER_1 = 1;
-        public static final int SUPPLIER_2 = 2;
-        public static final int SUPPLIER_3 = 3;
-        public static final int SUPPLIER_4 = 4;
-        public static final int SUPPLIER_5 = 5;
         public static final int SUPPLIER_UNKNOWN = 0;
 
+    }
+
+     /**
+     * Constant values of the supplier table. Each product refers to one supplier, so the
+     * supplier's name and phone number are stored once instead of on every product.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+         /** The content URI to access the suppliers in the provider */
+         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+         /** The MIME type of the {@link #CONTENT_URI} for a list of suppliers */
+         public static final String CONTENT_LIST_TYPE =
+                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+         /** The MIME type of the {@link #CONTENT_URI} for a single supplier */
+         public static final String CONTENT_ITEM_TYPE =
+                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+         /** Name of the supplier table */
+         public static final String TABLE_NAME = "suppliers";
+
+         /** Name of the supplier, required - Type: TEXT */
+         public static final String COLUMN_SUPPLIER_NAME = "name";
+
          /**
-          * Returns whether or not the given gender is {@link #SUPPLIER_UNKNOWN}, {@link #SUPPLIER_1},
-          * or {@link #SUPPLIER_2}, {@link #SUPPLIER_3}, {@link #SUPPLIER_4} or {@link #SUPPLIER_5}.
+          * Phone number of the supplier, digits with an optional leading "+" (see
+          * {@link Phones#normalize}), empty if unknown - Type: TEXT
           */
-         public static boolean isValidSupplier(int supplierName) {
-             if (supplierName == SUPPLIER_UNKNOWN || supplierName == SUPPLIER_1 || supplierName == SUPPLIER_2
-                     || supplierName == SUPPLIER_3 || supplierName == SUPPLIER_4  || supplierName == SUPPLIER_5 ) {
-                 return true;
-             }
-             return false;
+         public static final String COLUMN_SUPPLIER_PHONE = "phone";
+    }
+
+     /**
+     * Constant values of the stock ledger table. Every change of a product quantity adds a row,
+     * in the same transaction as the change; rows are never updated or deleted.
+     */
+    public static final class StockMovementEntry implements BaseColumns {
+
+         /** The content URI to read the stock ledger */
+         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STOCK_MOVEMENTS);
+
+         /**
+          * Returns the content URI for the page of at most limit movements recorded in
+          * [from, to) that follows the movement with the given time and _ID. Use from and 0 for
+          * the first page.
+          */
+         public static Uri buildPageUri(long from, long to, int limit, long afterTime, long afterId) {
+             return CONTENT_URI.buildUpon()
+                     .appendQueryParameter(QUERY_PARAMETER_FROM, String.valueOf(from))
+                     .appendQueryParameter(QUERY_PARAMETER_TO, String.valueOf(to))
+                     .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                     .appendQueryParameter(QUERY_PARAMETER_AFTER_TIME, String.valueOf(afterTime))
+                     .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                     .build();
          }
 
+         /** The MIME type of the {@link #CONTENT_URI} for a list of movements */
+         public static final String CONTENT_LIST_TYPE =
+                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK_MOVEMENTS;
+
+         /** Name of the stock ledger table */
+         public static final String TABLE_NAME = "stock_movements";
+
+         /** _ID of the product whose quantity changed - Type: INTEGER */
+         public static final String COLUMN_PRODUCT_ID = "product_id";
+
+         /** Change of quantity, negative when stock went out - Type: INTEGER */
+         public static final String COLUMN_DELTA = "delta";
+
+         /** Why the quantity changed, one of the REASON constants - Type: TEXT */
+         public static final String COLUMN_REASON = "reason";
+
+         /** When the change was made, in milliseconds since the epoch - Type: INTEGER */
+         public static final String COLUMN_CREATED_AT = "created_at";
+
+         /** Quantity of a new product */
+         public static final String REASON_INITIAL = "initial";
+
+         /** Products sold */
+         public static final String REASON_SALE = "sale";
+
+         /** Products received from a supplier */
+         public static final String REASON_RECEIPT = "receipt";
+
+         /** Quantity edited by hand */
+         public static final String REASON_EDIT = "edit";
+
+         /** Product added by a CSV import */
+         public static final String REASON_IMPORT = "import";
+
+         /**
+          * Remaining stock of a deleted product, recorded when it is purged: a delete that is
+          * undone moves no stock
+          */
+         public static final String REASON_DELETE = "delete";
+    }
+
+     /**
+     * Constant values of the inventory statistics, one row per supplier holding the totals of
+     * its products. The rows are kept up to date on every write, so reading them costs the same
+     * whatever the size of the catalogue; the totals of the whole inventory are the sums of the
+     * rows. Read-only.
+     */
+    public static final class StatsEntry {
+
+         /** The content URI to read the statistics */
+         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STATS);
+
+         /** The MIME type of the {@link #CONTENT_URI} for the statistics of every supplier */
+         public static final String CONTENT_LIST_TYPE =
+                 ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+         /** Name of the statistics table */
+         public static final String TABLE_NAME = "supplier_stats";
+
+         /** The supplier, the _ID of a row of {@link SupplierEntry} - Type: INTEGER */
+         public static final String COLUMN_SUPPLIER = "supplier";
+
+         /** Name of the supplier, read from {@link SupplierEntry} through a join - Type: TEXT */
+         public static final String COLUMN_SUPPLIER_NAME = SupplierEntry.COLUMN_SUPPLIER_NAME;
+
+         /** Number of products of the supplier - Type: INTEGER */
+         public static final String COLUMN_PRODUCT_COUNT = "product_count";
+
+         /** Sum of the quantities of the supplier's products - Type: INTEGER */
+         public static final String COLUMN_TOTAL_UNITS = "total_units";
+
+         /** Sum of price times quantity of the supplier's products, in cents - Type: INTEGER */
+         public static final String COLUMN_TOTAL_VALUE = "total_value";
     }
-}
\ No newline at end of file
+}
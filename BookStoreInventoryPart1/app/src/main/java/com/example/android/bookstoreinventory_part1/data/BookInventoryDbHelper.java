@@ -1,8 +1,17 @@
 package com.example.android.bookstoreinventory_part1.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**Database helper for Book Store Inventory app. manages database creation and version management */
 public class BookInventoryDbHelper extends SQLiteOpenHelper {
@@ -10,18 +19,185 @@ public class BookInventoryDbHelper extends SQLiteOpenHelper {
     public static final String LOG_TAG = BookInventoryDbHelper.class.getSimpleName();
 
     /** Name of the database file as a constant */
-    private static final String DATABASE_NAME = "productInventory.db";
+    static final String DATABASE_NAME = "productInventory.db";
 
     /** Database version as a constant. If you change the database schema, you must increment the database version*/
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 11;
+
+    /** Version of the schema created by onCreate, before any {@link Migration} is applied */
+    private static final int BASE_DATABASE_VERSION = 1;
+
+    /** Default page size in bytes, only applied when the database file is created */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    /** Default size of the page cache of each connection, in KiB */
+    public static final int DEFAULT_CACHE_SIZE_KB = 2048;
+
+    /**
+     * Number of WAL pages after which SQLite checkpoints on its own. It is kept high so the
+     * checkpoint normally runs on the background executor (see {@link #requestCheckpoint()})
+     * instead of inside whichever commit happens to cross the limit.
+     */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 10000;
+
+    /** Number of committed writes after which a background checkpoint is scheduled */
+    private static final int CHECKPOINT_WRITE_THRESHOLD = 500;
+
+    /** Whether {@link #onConfigure} should apply WAL, synchronous, page and cache size settings */
+    private boolean mTuningEnabled = false;
+
+    /** Page size applied to a newly created database when tuning is enabled */
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+
+    /** Page cache size applied to the connection when tuning is enabled */
+    private int mCacheSizeKb = DEFAULT_CACHE_SIZE_KB;
+
+    /** Writes committed since the last checkpoint */
+    private final AtomicInteger mWritesSinceCheckpoint = new AtomicInteger();
+
+    /** True while a checkpoint is queued or running, so they don't pile up */
+    private final AtomicBoolean mCheckpointPending = new AtomicBoolean();
+
+    /**
+     * Background thread that runs the WAL checkpoints of every helper, away from the UI and binder
+     * threads. A daemon, so the helpers the tests and benchmarks create never keep it alive.
+     */
+    private static final Executor sCheckpointExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, LOG_TAG + " checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     /** Here is the constructor that constructs a new instance of {@link BookInventoryDbHelper}.
      * @param context of the app */
 
     public BookInventoryDbHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a helper of the database file with the given name, which the tests and
+     * benchmarks use so they don't touch the app's inventory.
+     */
+    public BookInventoryDbHelper(Context context, String name) {
         /** Because we are subclassing from another class, we call the pairing constructor via super
          * */
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Turn on the tuned connection setup: write-ahead logging, synchronous=NORMAL, the configured
+     * page and cache size and foreign keys. Must be called before the database is first opened.
+     */
+    public void setTuningEnabled(boolean enabled) {
+        mTuningEnabled = enabled;
+    }
+
+    /**
+     * Set the page size used when the database file is created. Has no effect on an existing file.
+     * Must be called before the database is first opened.
+     */
+    public void setPageSize(int pageSize) {
+        mPageSize = pageSize;
+    }
+
+    /**
+     * Set the page cache size in KiB of the primary connection, which runs every write. Must be
+     * called before the database is first opened.
+     */
+    public void setCacheSizeKb(int cacheSizeKb) {
+        mCacheSizeKb = cacheSizeKb;
+    }
+
+    /** This is called when the connection is being configured, before onCreate/onUpgrade/onOpen */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        applyTuning(db);
+    }
+
+    /** This is called once the database has been opened */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // onConfigure only exists since Jelly Bean, older devices get the same setup here
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            applyTuning(db);
+        }
+    }
+
+    private void applyTuning(SQLiteDatabase db) {
+        if (!mTuningEnabled) {
+            return;
+        }
+        // The page size has to be set before switching to WAL, after that SQLite ignores it
+        db.setPageSize(mPageSize);
+        // With WAL readers work on a snapshot, so the list loader doesn't wait for a save to finish
+        db.enableWriteAheadLogging();
+        // These pragmas only reach the primary connection, which runs every write: that is the
+        // only one synchronous and the autocheckpoint apply to, and the one whose cache the bulk
+        // writes and index updates use. The pooled read connections keep SQLite's default cache,
+        // the framework has no setting that carries cache_size to them.
+        // In WAL mode NORMAL is still safe against corruption and only fsyncs on checkpoint
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        // A negative value means KiB instead of pages
+        db.execSQL("PRAGMA cache_size = -" + mCacheSizeKb);
+        db.execSQL("PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+        // Kept in the connection configuration, so every pooled connection enforces the foreign
+        // keys and not just the one running this
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.setForeignKeyConstraintsEnabled(true);
+        } else {
+            db.execSQL("PRAGMA foreign_keys = ON");
+        }
+        // The list queries have one SQL string per shape of filters and sort (see ProductQuery),
+        // keep the compiled form of as many statements as the framework allows
+        db.setMaxSqlCacheSize(SQLiteDatabase.MAX_SQL_CACHE_SIZE);
+    }
+
+    /**
+     * Called by the provider after each committed write. Once enough writes have piled up in the
+     * WAL file, a passive checkpoint is queued on a background thread.
+     */
+    public void requestCheckpoint() {
+        if (!mTuningEnabled) {
+            return;
+        }
+        if (mWritesSinceCheckpoint.incrementAndGet() < CHECKPOINT_WRITE_THRESHOLD) {
+            return;
+        }
+        if (!mCheckpointPending.compareAndSet(false, true)) {
+            return;
+        }
+        sCheckpointExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mWritesSinceCheckpoint.set(0);
+                    checkpoint();
+                } finally {
+                    mCheckpointPending.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Copy the WAL content back into the database file without blocking readers or writers.
+     * Must not be called on the UI thread.
+     */
+    public void checkpoint() {
+        Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            if (cursor.moveToFirst()) {
+                Log.v(LOG_TAG, "Checkpointed " + cursor.getInt(2) + " of " + cursor.getInt(1) + " WAL pages");
+            }
+        } finally {
+            cursor.close();
+        }
     }
 
     /** Since we are subclassing SQL open helper, we need to implement onCreate and onUpgrade methods */
@@ -43,11 +219,17 @@ public class BookInventoryDbHelper extends SQLiteOpenHelper {
         // Since this is not a static method, we need to execute SQL method on the correct SQLite database class instance
         // using onCreate parameter
         db.execSQL(SQL_CREATE_PRODUCT_INVENTORY_TABLE);
+
+        // The table above is the version 1 schema, bring it up to date with the same migrations
+        // an upgraded install goes through
+        BookInventoryMigrations.migrate(db, BASE_DATABASE_VERSION, DATABASE_VERSION);
     }
 
     /** This is called when the database needs to be upgraded */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Initially, the database is at version 1, so there's nothing to do be done here at the beginning
+        // SQLiteOpenHelper already runs this inside a transaction, so either every migration
+        // step is applied or none of them is
+        BookInventoryMigrations.migrate(db, oldVersion, newVersion);
     }
 }
@@ -0,0 +1,606 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StatsEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StockMovementEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.SupplierEntry;
+
+/**
+ * All the schema migrations of the Book Store Inventory database, in the order they have to be
+ * applied. To change the schema, add a new {@link Migration} at the end of {@link #ALL} and bump
+ * the database version in {@link BookInventoryDbHelper}.
+ */
+final class BookInventoryMigrations {
+
+    private BookInventoryMigrations() {
+    }
+
+    /** Index used to look up and sort products by name, ignoring case */
+    static final String INDEX_PRODUCT_NAME = "product_name_index";
+
+    /** Index used to filter products by supplier */
+    static final String INDEX_SUPPLIER_NAME = "supplier_name_index";
+
+    /** Index used to sort and filter products by quantity */
+    static final String INDEX_PRODUCT_QUANTITY = "product_quantity_index";
+
+    /** Index used to sort and filter products by price */
+    static final String INDEX_PRODUCT_PRICE = "product_price_index";
+
+    /**
+     * Index of the products at or below their reorder threshold, in name order. Partial where
+     * SQLite supports it, so it only holds the low products.
+     */
+    static final String INDEX_LOW_STOCK = "product_low_stock_index";
+
+    /** Unique index used to look up a product by its ISBN */
+    static final String INDEX_PRODUCT_ISBN = "product_isbn_index";
+
+    /** Full-text index over the product names, its docid is the product _ID */
+    static final String TABLE_PRODUCT_SEARCH = "product_search";
+
+    /**
+     * Compacted stock ledger: for each product, its quantity once every movement up to
+     * movement_id is applied. The current quantity is the snapshot plus the movements after it.
+     */
+    static final String TABLE_STOCK_SNAPSHOTS = "stock_snapshots";
+
+    /** Column of {@link #TABLE_STOCK_SNAPSHOTS}: the product _ID, its primary key */
+    static final String COLUMN_SNAPSHOT_PRODUCT_ID = "product_id";
+
+    /** Column of {@link #TABLE_STOCK_SNAPSHOTS}: the quantity at movement_id */
+    static final String COLUMN_SNAPSHOT_QUANTITY = "quantity";
+
+    /** Column of {@link #TABLE_STOCK_SNAPSHOTS}: the last movement of the product applied */
+    static final String COLUMN_SNAPSHOT_MOVEMENT_ID = "movement_id";
+
+    /**
+     * Index of the deleted products by deletion time, the purge's work list. Partial where SQLite
+     * supports it, so it only holds the products waiting to be purged.
+     */
+    static final String INDEX_PRODUCT_DELETED_AT = "product_deleted_at_index";
+
+    /**
+     * Column of the product table: the ISBN of a deleted product, moved out of
+     * {@link BookEntry#COLUMN_ISBN} so a new product can take it, and moved back if the delete
+     * is undone
+     */
+    static final String COLUMN_DELETED_ISBN = "deleted_isbn";
+
+    /** Index of the ISBNs moved aside, so an undo finds them without reading every product */
+    static final String INDEX_PRODUCT_DELETED_ISBN = "product_deleted_isbn_index";
+
+    /**
+     * Pending deletes of every product: each row hides the products with an _ID up to up_to_id
+     * until it is undone or purged, so deleting everything writes one row instead of marking
+     * each product.
+     */
+    static final String TABLE_PRODUCT_WIPES = "product_wipes";
+
+    /** Column of {@link #TABLE_PRODUCT_WIPES}: the highest _ID it hides, its primary key */
+    static final String COLUMN_WIPE_UP_TO_ID = "up_to_id";
+
+    /** Column of {@link #TABLE_PRODUCT_WIPES}: when everything was deleted, in milliseconds */
+    static final String COLUMN_WIPE_DELETED_AT = "deleted_at";
+
+    /**
+     * The highest _ID hidden by a pending delete of every product, 0 if there is none. Found
+     * through the primary key of {@link #TABLE_PRODUCT_WIPES}, without reading its rows.
+     */
+    static final String SQL_HIDDEN_UP_TO = "(SELECT IFNULL(MAX(" + COLUMN_WIPE_UP_TO_ID + "), 0) FROM "
+            + TABLE_PRODUCT_WIPES + ")";
+
+    /** Index used to page the stock ledger in time order */
+    static final String INDEX_MOVEMENT_CREATED_AT = "stock_movement_created_at_index";
+
+    /** Index used to read the movements of one product after its snapshot */
+    static final String INDEX_MOVEMENT_PRODUCT = "stock_movement_product_index";
+
+    /**
+     * The products joined with their supplier, what the provider reads products from. It has
+     * every column of the product table plus {@link BookEntry#COLUMN_SUPPLIER_PHONE_NUMBER}.
+     */
+    static final String VIEW_PRODUCT_DETAILS = "product_details";
+
+    /** Every migration, ordered by the version it upgrades to */
+    static final Migration[] ALL = {
+            new AddProductIndexes(),
+            new AddProductSearch(),
+            new PricesInCents(),
+            new CreateStockLedger(),
+            new AddSupplierStats(),
+            new AddReorderThreshold(),
+            new NormalizeSuppliers(),
+            new AddPriceIndex(),
+            new AddIsbn(),
+            new AddSoftDelete(),
+    };
+
+    /**
+     * Apply, in order, every migration that upgrades a database at oldVersion up to newVersion.
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (Migration migration : ALL) {
+            if (migration.getVersion() > oldVersion && migration.getVersion() <= newVersion) {
+                migration.apply(db);
+            }
+        }
+    }
+
+    /** Version 2: secondary indexes on product name, supplier and quantity */
+    private static final class AddProductIndexes extends Migration {
+
+        AddProductIndexes() {
+            super(2);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            createIndexes(db);
+        }
+
+        /** Creates the three indexes, also after the product table is rebuilt */
+        static void createIndexes(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_NAME + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE)");
+            db.execSQL("CREATE INDEX " + INDEX_SUPPLIER_NAME + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ")");
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_QUANTITY + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_PRODUCTS_QUANTITY + ")");
+        }
+    }
+
+    /**
+     * Version 3: FTS4 table over the product names, kept in sync with the product table by
+     * triggers. FTS4 is used rather than FTS5 because it is available on every API level we support.
+     */
+    private static final class AddProductSearch extends Migration {
+
+        AddProductSearch() {
+            super(3);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PRODUCT_SEARCH + " USING fts4("
+                    + BookEntry.COLUMN_PRODUCT_NAMES + ")");
+
+            // Index the products that already exist
+            db.execSQL("INSERT INTO " + TABLE_PRODUCT_SEARCH
+                    + " (docid, " + BookEntry.COLUMN_PRODUCT_NAMES + ")"
+                    + " SELECT " + BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAMES
+                    + " FROM " + BookEntry.TABLE_NAME);
+
+            createTriggers(db);
+        }
+
+        /** Creates the triggers keeping the search table in sync, also after the product table is rebuilt */
+        static void createTriggers(SQLiteDatabase db) {
+            db.execSQL("CREATE TRIGGER product_search_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                    + " BEGIN INSERT INTO " + TABLE_PRODUCT_SEARCH
+                    + " (docid, " + BookEntry.COLUMN_PRODUCT_NAMES + ")"
+                    + " VALUES (new." + BookEntry._ID + ", new." + BookEntry.COLUMN_PRODUCT_NAMES + "); END");
+            db.execSQL("CREATE TRIGGER product_search_update AFTER UPDATE OF "
+                    + BookEntry.COLUMN_PRODUCT_NAMES + " ON " + BookEntry.TABLE_NAME
+                    + " BEGIN UPDATE " + TABLE_PRODUCT_SEARCH
+                    + " SET " + BookEntry.COLUMN_PRODUCT_NAMES + " = new." + BookEntry.COLUMN_PRODUCT_NAMES
+                    + " WHERE docid = old." + BookEntry._ID + "; END");
+            db.execSQL("CREATE TRIGGER product_search_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                    + " BEGIN DELETE FROM " + TABLE_PRODUCT_SEARCH
+                    + " WHERE docid = old." + BookEntry._ID + "; END");
+        }
+    }
+
+    /**
+     * Version 4: prices are stored as a whole number of cents. Earlier versions stored whole
+     * units from the editor, or a REAL for prices with decimals.
+     */
+    private static final class PricesInCents extends Migration {
+
+        PricesInCents() {
+            super(4);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET " + BookEntry.COLUMN_PRODUCT_PRICES
+                    + " = CAST(ROUND(" + BookEntry.COLUMN_PRODUCT_PRICES + " * 100) AS INTEGER)");
+        }
+    }
+
+    /**
+     * Version 5: append-only stock ledger and its snapshots. Products that already have stock
+     * get an initial movement, so the ledger adds up to every current quantity.
+     */
+    private static final class CreateStockLedger extends Migration {
+
+        CreateStockLedger() {
+            super(5);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + StockMovementEntry.TABLE_NAME + " ("
+                    + StockMovementEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + StockMovementEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                    + StockMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, "
+                    + StockMovementEntry.COLUMN_REASON + " TEXT NOT NULL, "
+                    + StockMovementEntry.COLUMN_CREATED_AT + " INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX " + INDEX_MOVEMENT_CREATED_AT + " ON " + StockMovementEntry.TABLE_NAME
+                    + " (" + StockMovementEntry.COLUMN_CREATED_AT + ")");
+            db.execSQL("CREATE INDEX " + INDEX_MOVEMENT_PRODUCT + " ON " + StockMovementEntry.TABLE_NAME
+                    + " (" + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry._ID + ")");
+
+            db.execSQL("CREATE TABLE " + TABLE_STOCK_SNAPSHOTS + " ("
+                    + COLUMN_SNAPSHOT_PRODUCT_ID + " INTEGER PRIMARY KEY, "
+                    + COLUMN_SNAPSHOT_QUANTITY + " INTEGER NOT NULL, "
+                    + COLUMN_SNAPSHOT_MOVEMENT_ID + " INTEGER NOT NULL)");
+
+            db.execSQL("INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+                    + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+                    + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT + ")"
+                    + " SELECT " + BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", '"
+                    + StockMovementEntry.REASON_INITIAL + "', CAST(strftime('%s', 'now') AS INTEGER) * 1000"
+                    + " FROM " + BookEntry.TABLE_NAME
+                    + " WHERE " + BookEntry.COLUMN_PRODUCTS_QUANTITY + " != 0");
+        }
+    }
+
+    /**
+     * Version 6: per-supplier totals, kept up to date by triggers on the product table so every
+     * write path (the provider, the CSV import, batches) maintains them in its own transaction.
+     * Each write only touches the rows of the suppliers it changes.
+     */
+    private static final class AddSupplierStats extends Migration {
+
+        AddSupplierStats() {
+            super(6);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " ("
+                    + StatsEntry.COLUMN_SUPPLIER + " INTEGER PRIMARY KEY, "
+                    + StatsEntry.COLUMN_PRODUCT_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL DEFAULT 0, "
+                    + StatsEntry.COLUMN_TOTAL_VALUE + " INTEGER NOT NULL DEFAULT 0)");
+
+            // Start from the products that already exist
+            db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " (" + StatsEntry.COLUMN_SUPPLIER + ", "
+                    + StatsEntry.COLUMN_PRODUCT_COUNT + ", " + StatsEntry.COLUMN_TOTAL_UNITS + ", "
+                    + StatsEntry.COLUMN_TOTAL_VALUE + ")"
+                    + " SELECT " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", COUNT(*), SUM("
+                    + BookEntry.COLUMN_PRODUCTS_QUANTITY + "), SUM(" + BookEntry.COLUMN_PRODUCT_PRICES
+                    + " * " + BookEntry.COLUMN_PRODUCTS_QUANTITY + ")"
+                    + " FROM " + BookEntry.TABLE_NAME + " GROUP BY " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+
+            createTriggers(db);
+        }
+
+        /** Creates the triggers keeping the totals, also after the product table is rebuilt */
+        static void createTriggers(SQLiteDatabase db) {
+            db.execSQL("CREATE TRIGGER supplier_stats_insert AFTER INSERT ON " + BookEntry.TABLE_NAME
+                    + " BEGIN " + ensureRow("new") + addProduct("new", "+") + " END");
+            db.execSQL("CREATE TRIGGER supplier_stats_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                    + " BEGIN " + addProduct("old", "-") + " END");
+            db.execSQL("CREATE TRIGGER supplier_stats_update AFTER UPDATE OF "
+                    + BookEntry.COLUMN_PRODUCT_PRICES + ", " + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", "
+                    + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " ON " + BookEntry.TABLE_NAME
+                    + " BEGIN " + addProduct("old", "-") + ensureRow("new") + addProduct("new", "+") + " END");
+        }
+
+        /** Trigger step creating the empty row of the supplier of the row, if it has none */
+        private static String ensureRow(String row) {
+            return "INSERT OR IGNORE INTO " + StatsEntry.TABLE_NAME + " (" + StatsEntry.COLUMN_SUPPLIER + ")"
+                    + " VALUES (" + row + "." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ");";
+        }
+
+        /** Trigger step adding (sign "+") or removing (sign "-") the row from its supplier's totals */
+        private static String addProduct(String row, String sign) {
+            return "UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                    + StatsEntry.COLUMN_PRODUCT_COUNT + " = " + StatsEntry.COLUMN_PRODUCT_COUNT + " " + sign + " 1, "
+                    + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS + " " + sign + " "
+                    + row + "." + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", "
+                    + StatsEntry.COLUMN_TOTAL_VALUE + " = " + StatsEntry.COLUMN_TOTAL_VALUE + " " + sign + " "
+                    + row + "." + BookEntry.COLUMN_PRODUCT_PRICES + " * " + row + "." + BookEntry.COLUMN_PRODUCTS_QUANTITY
+                    + " WHERE " + StatsEntry.COLUMN_SUPPLIER + " = " + row + "." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ";";
+        }
+    }
+
+    /**
+     * Version 7: reorder threshold of each product and the index of the low-stock list. Partial
+     * indexes need SQLite 3.8.0, shipped with Lollipop; older devices get a composite index the
+     * filter can be checked from without reading the product rows.
+     */
+    private static final class AddReorderThreshold extends Migration {
+
+        AddReorderThreshold() {
+            super(7);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                    + BookEntry.COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0");
+            createIndex(db);
+        }
+
+        /** Creates the low-stock index, also after the product table is rebuilt */
+        static void createIndex(SQLiteDatabase db) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                // Only the low products are in the index, so selling a well stocked product
+                // doesn't touch it and the low-stock list reads nothing else
+                db.execSQL("CREATE INDEX " + INDEX_LOW_STOCK + " ON " + BookEntry.TABLE_NAME
+                        + " (" + BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE)"
+                        + " WHERE " + BookEntry.SELECTION_LOW_STOCK);
+            } else {
+                db.execSQL("CREATE INDEX " + INDEX_LOW_STOCK + " ON " + BookEntry.TABLE_NAME
+                        + " (" + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", " + BookEntry.COLUMN_REORDER_THRESHOLD + ")");
+            }
+        }
+    }
+
+    /**
+     * Version 8: the suppliers get a table of their own, and the product table is rebuilt with a
+     * foreign key to it and without the phone number, which was copied onto every product (as an
+     * INTEGER, too small for many real numbers). Each supplier keeps the phone number most of its
+     * products had, ties going to the most recent product.
+     * <p>
+     * SQLite can't add a foreign key to, or drop a column from, an existing table, so the products
+     * are copied into a new table with the same _IDs, and the indexes and triggers dropped with
+     * the old table are created again.
+     */
+    private static final class NormalizeSuppliers extends Migration {
+
+        /** Name of the rebuilt product table until it replaces the old one */
+        private static final String NEW_PRODUCT_TABLE = BookEntry.TABLE_NAME + "_new";
+
+        /** Names of the suppliers every database starts with, by _ID */
+        private static final String[] INITIAL_SUPPLIER_NAMES = {
+                "Unknown Supplier", "Supplier 1", "Supplier 2", "Supplier 3", "Supplier 4", "Supplier 5"};
+
+        /** Product columns kept by the rebuild, in the order of the new table */
+        private static final String PRODUCT_COLUMNS = BookEntry._ID + ", " + BookEntry.COLUMN_PRODUCT_NAMES + ", "
+                + BookEntry.COLUMN_PRODUCT_PRICES + ", " + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", " + BookEntry.COLUMN_REORDER_THRESHOLD;
+
+        NormalizeSuppliers() {
+            super(8);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                    + SupplierEntry._ID + " INTEGER PRIMARY KEY, "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+                    + SupplierEntry.COLUMN_SUPPLIER_PHONE + " TEXT NOT NULL DEFAULT '')");
+            for (int id = 0; id < INITIAL_SUPPLIER_NAMES.length; id++) {
+                db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + ", "
+                        + SupplierEntry.COLUMN_SUPPLIER_NAME + ") VALUES (?, ?)",
+                        new Object[]{id, INITIAL_SUPPLIER_NAMES[id]});
+            }
+            // Products can't have been saved with another supplier, but the foreign key would
+            // refuse to copy them if one was
+            db.execSQL("INSERT OR IGNORE INTO " + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + ", "
+                    + SupplierEntry.COLUMN_SUPPLIER_NAME + ")"
+                    + " SELECT DISTINCT " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", 'Supplier ' || "
+                    + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " FROM " + BookEntry.TABLE_NAME);
+
+            // The phone numbers were stored on every product, keep one per supplier
+            db.execSQL("UPDATE " + SupplierEntry.TABLE_NAME + " SET " + SupplierEntry.COLUMN_SUPPLIER_PHONE
+                    + " = IFNULL((SELECT CAST(" + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " AS TEXT)"
+                    + " FROM " + BookEntry.TABLE_NAME
+                    + " WHERE " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = " + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID
+                    + " AND " + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " > 0"
+                    + " GROUP BY " + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    + " ORDER BY COUNT(*) DESC, MAX(" + BookEntry._ID + ") DESC LIMIT 1), '')");
+
+            // The stock ledger refers to products by _ID, which must not be reused after the
+            // rebuild, so the AUTOINCREMENT counter is carried over
+            long lastId = DatabaseUtils.longForQuery(db, "SELECT IFNULL((SELECT seq FROM sqlite_sequence"
+                    + " WHERE name = ?), 0)", new String[]{BookEntry.TABLE_NAME});
+
+            db.execSQL("CREATE TABLE " + NEW_PRODUCT_TABLE + " ("
+                    + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + BookEntry.COLUMN_PRODUCT_NAMES + " TEXT NOT NULL, "
+                    + BookEntry.COLUMN_PRODUCT_PRICES + " INTEGER NOT NULL DEFAULT 0, "
+                    + BookEntry.COLUMN_PRODUCTS_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                    + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " INTEGER NOT NULL REFERENCES "
+                    + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "), "
+                    + BookEntry.COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0)");
+            db.execSQL("INSERT INTO " + NEW_PRODUCT_TABLE + " (" + PRODUCT_COLUMNS + ")"
+                    + " SELECT " + PRODUCT_COLUMNS + " FROM " + BookEntry.TABLE_NAME);
+            db.execSQL("DROP TABLE " + BookEntry.TABLE_NAME);
+            db.execSQL("ALTER TABLE " + NEW_PRODUCT_TABLE + " RENAME TO " + BookEntry.TABLE_NAME);
+
+            db.execSQL("DELETE FROM sqlite_sequence WHERE name = ?", new Object[]{BookEntry.TABLE_NAME});
+            db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT ?, MAX(?, IFNULL(MAX("
+                    + BookEntry._ID + "), 0)) FROM " + BookEntry.TABLE_NAME,
+                    new Object[]{BookEntry.TABLE_NAME, lastId});
+
+            AddProductIndexes.createIndexes(db);
+            AddProductSearch.createTriggers(db);
+            AddSupplierStats.createTriggers(db);
+            AddReorderThreshold.createIndex(db);
+
+            // Each product finds its supplier through the supplier's primary key
+            db.execSQL("CREATE VIEW " + VIEW_PRODUCT_DETAILS + " AS SELECT p." + BookEntry._ID + " AS " + BookEntry._ID
+                    + ", p." + BookEntry.COLUMN_PRODUCT_NAMES + " AS " + BookEntry.COLUMN_PRODUCT_NAMES
+                    + ", p." + BookEntry.COLUMN_PRODUCT_PRICES + " AS " + BookEntry.COLUMN_PRODUCT_PRICES
+                    + ", p." + BookEntry.COLUMN_PRODUCTS_QUANTITY + " AS " + BookEntry.COLUMN_PRODUCTS_QUANTITY
+                    + ", p." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                    + ", s." + SupplierEntry.COLUMN_SUPPLIER_PHONE + " AS " + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    + ", p." + BookEntry.COLUMN_REORDER_THRESHOLD + " AS " + BookEntry.COLUMN_REORDER_THRESHOLD
+                    + " FROM " + BookEntry.TABLE_NAME + " p LEFT JOIN " + SupplierEntry.TABLE_NAME
+                    + " s ON s." + SupplierEntry._ID + " = p." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        }
+    }
+
+    /**
+     * Version 9: index on the price, so the product list can be sorted and filtered by price
+     * like it can by name, supplier and quantity.
+     */
+    private static final class AddPriceIndex extends Migration {
+
+        AddPriceIndex() {
+            super(9);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            createIndex(db);
+        }
+
+        /** Creates the price index, also after the product table is rebuilt */
+        static void createIndex(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX " + INDEX_PRODUCT_PRICE + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_PRODUCT_PRICES + ")");
+        }
+    }
+
+    /**
+     * Version 10: ISBN of each product, the key the counters scan. The unique index makes finding
+     * a scanned book a single index probe and refuses a second product with the same ISBN;
+     * products without one keep a NULL, which the index lets any number of rows have. The view
+     * is created again so it has the new column.
+     */
+    private static final class AddIsbn extends Migration {
+
+        AddIsbn() {
+            super(10);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_ISBN + " TEXT");
+            createIndex(db);
+            db.execSQL("DROP VIEW " + VIEW_PRODUCT_DETAILS);
+            createView(db);
+        }
+
+        /** Creates the ISBN index, also after the product table is rebuilt */
+        static void createIndex(SQLiteDatabase db) {
+            db.execSQL("CREATE UNIQUE INDEX " + INDEX_PRODUCT_ISBN + " ON " + BookEntry.TABLE_NAME
+                    + " (" + BookEntry.COLUMN_ISBN + ")");
+        }
+
+        /** Creates the product view with every column of the product table and the supplier's phone */
+        static void createView(SQLiteDatabase db) {
+            db.execSQL("CREATE VIEW " + VIEW_PRODUCT_DETAILS + " AS SELECT p." + BookEntry._ID + " AS " + BookEntry._ID
+                    + ", p." + BookEntry.COLUMN_PRODUCT_NAMES + " AS " + BookEntry.COLUMN_PRODUCT_NAMES
+                    + ", p." + BookEntry.COLUMN_PRODUCT_PRICES + " AS " + BookEntry.COLUMN_PRODUCT_PRICES
+                    + ", p." + BookEntry.COLUMN_PRODUCTS_QUANTITY + " AS " + BookEntry.COLUMN_PRODUCTS_QUANTITY
+                    + ", p." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                    + ", s." + SupplierEntry.COLUMN_SUPPLIER_PHONE + " AS " + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    + ", p." + BookEntry.COLUMN_REORDER_THRESHOLD + " AS " + BookEntry.COLUMN_REORDER_THRESHOLD
+                    + ", p." + BookEntry.COLUMN_ISBN + " AS " + BookEntry.COLUMN_ISBN
+                    + " FROM " + BookEntry.TABLE_NAME + " p LEFT JOIN " + SupplierEntry.TABLE_NAME
+                    + " s ON s." + SupplierEntry._ID + " = p." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        }
+    }
+
+    /**
+     * Version 11: deletes only hide products, so they can be undone, and a background purge
+     * removes them later. A deleted product has its deleted_at time set; deleting every product
+     * adds a row to {@link #TABLE_PRODUCT_WIPES} instead of marking each of them. The view hides
+     * both, and the statistics triggers only count the products still shown. A deleted product's
+     * ISBN moves to {@link #COLUMN_DELETED_ISBN}, so a new product can take it during the undo
+     * window.
+     */
+    private static final class AddSoftDelete extends Migration {
+
+        AddSoftDelete() {
+            super(11);
+        }
+
+        @Override
+        void apply(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + BookEntry.COLUMN_DELETED_AT + " INTEGER");
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN " + COLUMN_DELETED_ISBN + " TEXT");
+            createIndex(db);
+            db.execSQL("CREATE TABLE " + TABLE_PRODUCT_WIPES + " ("
+                    + COLUMN_WIPE_UP_TO_ID + " INTEGER PRIMARY KEY, "
+                    + COLUMN_WIPE_DELETED_AT + " INTEGER NOT NULL)");
+            db.execSQL("DROP TRIGGER supplier_stats_delete");
+            db.execSQL("DROP TRIGGER supplier_stats_update");
+            createTriggers(db);
+            db.execSQL("DROP VIEW " + VIEW_PRODUCT_DETAILS);
+            createView(db);
+        }
+
+        /** Creates the indexes of the deleted products */
+        static void createIndex(SQLiteDatabase db) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                // Products are only deleted for a while, so the indexes stay small and writes to
+                // the other products never touch them
+                db.execSQL("CREATE INDEX " + INDEX_PRODUCT_DELETED_AT + " ON " + BookEntry.TABLE_NAME
+                        + " (" + BookEntry.COLUMN_DELETED_AT + ") WHERE " + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL");
+                db.execSQL("CREATE INDEX " + INDEX_PRODUCT_DELETED_ISBN + " ON " + BookEntry.TABLE_NAME
+                        + " (" + COLUMN_DELETED_ISBN + ") WHERE " + COLUMN_DELETED_ISBN + " IS NOT NULL");
+            } else {
+                // Without partial indexes, an index of the moved ISBNs would hold every product;
+                // an undo reads the table instead
+                db.execSQL("CREATE INDEX " + INDEX_PRODUCT_DELETED_AT + " ON " + BookEntry.TABLE_NAME
+                        + " (" + BookEntry.COLUMN_DELETED_AT + ")");
+            }
+        }
+
+        /**
+         * Creates the statistics triggers that replace the delete and update ones of
+         * {@link AddSupplierStats}: a product leaves its supplier's totals when it is deleted and
+         * comes back when the delete is undone, and changes to hidden products are not counted
+         */
+        static void createTriggers(SQLiteDatabase db) {
+            db.execSQL("CREATE TRIGGER supplier_stats_delete AFTER DELETE ON " + BookEntry.TABLE_NAME
+                    + " WHEN " + isShown("old")
+                    + " BEGIN " + AddSupplierStats.addProduct("old", "-") + " END");
+            db.execSQL("CREATE TRIGGER supplier_stats_update AFTER UPDATE OF "
+                    + BookEntry.COLUMN_PRODUCT_PRICES + ", " + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", "
+                    + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " ON " + BookEntry.TABLE_NAME
+                    + " WHEN " + isShown("old")
+                    + " BEGIN " + AddSupplierStats.addProduct("old", "-") + AddSupplierStats.ensureRow("new")
+                    + AddSupplierStats.addProduct("new", "+") + " END");
+            db.execSQL("CREATE TRIGGER supplier_stats_hide AFTER UPDATE OF " + BookEntry.COLUMN_DELETED_AT
+                    + " ON " + BookEntry.TABLE_NAME
+                    + " WHEN new." + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL AND " + isShown("old")
+                    + " BEGIN " + AddSupplierStats.addProduct("old", "-") + " END");
+            db.execSQL("CREATE TRIGGER supplier_stats_restore AFTER UPDATE OF " + BookEntry.COLUMN_DELETED_AT
+                    + " ON " + BookEntry.TABLE_NAME
+                    + " WHEN old." + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL AND " + isShown("new")
+                    + " BEGIN " + AddSupplierStats.ensureRow("new") + AddSupplierStats.addProduct("new", "+") + " END");
+        }
+
+        /** Trigger condition: the row is neither marked deleted nor hidden by a delete of every product */
+        private static String isShown(String row) {
+            return row + "." + BookEntry.COLUMN_DELETED_AT + " IS NULL AND "
+                    + row + "." + BookEntry._ID + " > " + SQL_HIDDEN_UP_TO;
+        }
+
+        /**
+         * Creates the product view, without the deleted products and those hidden by a delete of
+         * every product. The bound is a subquery that doesn't depend on the row, so SQLite runs it
+         * once per query, as a single probe of the primary key of {@link #TABLE_PRODUCT_WIPES}.
+         */
+        static void createView(SQLiteDatabase db) {
+            // Without partial indexes the deleted_at index holds every product, and SQLite would
+            // pick it for IS NULL over the index of the sort; the unary + keeps it out of the plans
+            String deletedAt = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? "p." : "+p.")
+                    + BookEntry.COLUMN_DELETED_AT;
+            db.execSQL("CREATE VIEW " + VIEW_PRODUCT_DETAILS + " AS SELECT p." + BookEntry._ID + " AS " + BookEntry._ID
+                    + ", p." + BookEntry.COLUMN_PRODUCT_NAMES + " AS " + BookEntry.COLUMN_PRODUCT_NAMES
+                    + ", p." + BookEntry.COLUMN_PRODUCT_PRICES + " AS " + BookEntry.COLUMN_PRODUCT_PRICES
+                    + ", p." + BookEntry.COLUMN_PRODUCTS_QUANTITY + " AS " + BookEntry.COLUMN_PRODUCTS_QUANTITY
+                    + ", p." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                    + ", s." + SupplierEntry.COLUMN_SUPPLIER_PHONE + " AS " + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    + ", p." + BookEntry.COLUMN_REORDER_THRESHOLD + " AS " + BookEntry.COLUMN_REORDER_THRESHOLD
+                    + ", p." + BookEntry.COLUMN_ISBN + " AS " + BookEntry.COLUMN_ISBN
+                    + " FROM " + BookEntry.TABLE_NAME + " p LEFT JOIN " + SupplierEntry.TABLE_NAME
+                    + " s ON s." + SupplierEntry._ID + " = p." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                    + " WHERE " + deletedAt + " IS NULL AND p." + BookEntry._ID + " > " + SQL_HIDDEN_UP_TO);
+        }
+    }
+}
@@ -1,14 +1,39 @@
 package com.example.android.bookstoreinventory_part1.data;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.ResultReceiver;
+import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
 /**
  * {@link BookInventoryProvider} for Product Inventory app.
  */
@@ -32,6 +57,71 @@ public class BookInventoryProvider extends ContentProvider {
      */
     private static final int PRODUCTS_ID = 101;
 
+    /**
+     * URI matcher code for the content URI that searches the product names
+     */
+    private static final int PRODUCTS_SEARCH = 102;
+
+    /**
+     * URI matcher code for the content URI streaming an export of the product table
+     */
+    private static final int PRODUCTS_EXPORT = 103;
+
+    /**
+     * URI matcher code for the content URI adjusting the quantity of a single product
+     */
+    private static final int PRODUCTS_ADJUST = 104;
+
+    /**
+     * URI matcher code for the content URI of the stock ledger
+     */
+    private static final int STOCK_MOVEMENTS = 105;
+
+    /**
+     * URI matcher code for the content URI of the inventory statistics
+     */
+    private static final int STATS = 106;
+
+    /**
+     * URI matcher code for the content URI of the products at or below their reorder threshold
+     */
+    private static final int PRODUCTS_LOW_STOCK = 107;
+
+    /**
+     * URI matcher code for the content URI of the suppliers
+     */
+    private static final int SUPPLIERS = 108;
+
+    /**
+     * URI matcher code for the content URI of a single supplier
+     */
+    private static final int SUPPLIERS_ID = 109;
+
+    /**
+     * URI matcher code for the content URI of the product with a given ISBN
+     */
+    private static final int PRODUCTS_ISBN = 110;
+
+    /**
+     * Provider method purging every deleted product right away instead of once its undo window
+     * is over. Not part of the contract: only the tests and benchmarks use it, before they write
+     * rows straight into the table. The returned bundle holds {@link #RESULT_PURGED}.
+     */
+    static final String METHOD_PURGE_DELETED = "purge_deleted";
+
+    /** Number of deleted products purged (int) */
+    static final String RESULT_PURGED = "purged";
+
+    /** Tables the statistics are read from, each row with the name of its supplier */
+    private static final String STATS_TABLES = BookInventoryContract.StatsEntry.TABLE_NAME
+            + " LEFT JOIN " + BookInventoryContract.SupplierEntry.TABLE_NAME + " ON "
+            + BookInventoryContract.SupplierEntry.TABLE_NAME + "." + BookInventoryContract.SupplierEntry._ID + " = "
+            + BookInventoryContract.StatsEntry.TABLE_NAME + "." + BookInventoryContract.StatsEntry.COLUMN_SUPPLIER;
+
+    /** The formats an export can be streamed in */
+    private static final String[] EXPORT_MIME_TYPES = {
+            BookInventoryContract.MIME_TYPE_CSV, BookInventoryContract.MIME_TYPE_JSON};
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return fot the root URI.
@@ -61,13 +151,110 @@ public class BookInventoryProvider extends ContentProvider {
         // "content://com.example.android.products/products" (without a number at the end) doesn't match.
         sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
                 BookInventoryContract.PATH_PRODUCTS + "/#", PRODUCTS_ID);
+
+        // The content URI of the form "content://com.example.android.bookstoreinventory_part1/Products/search/hobbit"
+        // will map to the integer code {@link #PRODUCTS_SEARCH}. The last segment holds the search words.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_SEARCH + "/*",
+                PRODUCTS_SEARCH);
+
+        // The content URI "content://com.example.android.bookstoreinventory_part1/Products/export"
+        // will map to the integer code {@link #PRODUCTS_EXPORT}. It is only opened as a file.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_EXPORT,
+                PRODUCTS_EXPORT);
+
+        // The content URI "content://com.example.android.bookstoreinventory_part1/Products/3/adjust"
+        // will map to the integer code {@link #PRODUCTS_ADJUST}. It is only updated, with a delta.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_PRODUCTS + "/#/" + BookInventoryContract.PATH_ADJUST,
+                PRODUCTS_ADJUST);
+
+        // The content URI "content://com.example.android.bookstoreinventory_part1/StockMovements"
+        // will map to the integer code {@link #STOCK_MOVEMENTS}. The ledger is only queried.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_STOCK_MOVEMENTS, STOCK_MOVEMENTS);
+
+        // The content URI "content://com.example.android.bookstoreinventory_part1/Stats"
+        // will map to the integer code {@link #STATS}. The statistics are only queried.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_STATS, STATS);
+
+        // The content URI "content://com.example.android.bookstoreinventory_part1/Products/low_stock"
+        // will map to the integer code {@link #PRODUCTS_LOW_STOCK}.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_LOW_STOCK,
+                PRODUCTS_LOW_STOCK);
+
+        // The content URIs "content://com.example.android.bookstoreinventory_part1/Suppliers" and
+        // ".../Suppliers/3" will map to the integer codes {@link #SUPPLIERS} and {@link #SUPPLIERS_ID}.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_SUPPLIERS + "/#", SUPPLIERS_ID);
+
+        // The content URI "content://com.example.android.bookstoreinventory_part1/Products/isbn/9780306406157"
+        // will map to the integer code {@link #PRODUCTS_ISBN}. The last segment holds the ISBN.
+        sUriMatcher.addURI(BookInventoryContract.CONTENT_AUTHORITY,
+                BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_ISBN + "/*",
+                PRODUCTS_ISBN);
     }
 
+    /** Name of the database file the provider opens */
+    private final String mDatabaseName;
+
     /**
      * Database helper object
      */
     private BookInventoryDbHelper mDbHelper;
 
+    /**
+     * Products recently read, so single-row queries of them skip SQLite. Every write path
+     * invalidates what it changed.
+     */
+    private final ProductCache mCache = new ProductCache(ProductCache.DEFAULT_MAX_SIZE);
+
+    /** Compiled statements of the single-row paths, created with the database */
+    private ProductStatements mStatements;
+
+    /** Stock ledger every change of quantity is recorded in, created with the database */
+    private StockLedger mLedger;
+
+    /** Hides deleted products until their undo window is over, then purges them */
+    private ProductTrash mTrash;
+
+    /**
+     * Set while the calling thread is running {@link #bulkInsert} or {@link #applyBatch}. The
+     * single-row write paths add their change to it instead of notifying right away, and the
+     * batch sends a single notification once it is finished.
+     */
+    private final ThreadLocal<PendingNotification> mPendingNotification = new ThreadLocal<>();
+
+    /**
+     * Latency and row counts of every operation by URI, off unless turned on through
+     * {@link #dump}. Slow operations are sampled with the query plan of their statement.
+     */
+    private final ProviderMetrics mMetrics = new ProviderMetrics(new ProviderMetrics.Explainer() {
+        @Override
+        public String explain(String sql) {
+            return explainPlan(sql);
+        }
+    });
+
+    /** Constructs the provider of the app's inventory, as declared in the manifest */
+    public BookInventoryProvider() {
+        this(BookInventoryDbHelper.DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a provider over the database file with the given name, for the tests and
+     * benchmarks, which must never touch the app's inventory. Attach it with {@link #attachInfo}
+     * and reach it through a resolver of its own.
+     */
+    public BookInventoryProvider(String databaseName) {
+        mDatabaseName = databaseName;
+    }
+
     /**
      * Initialize the provider and the database helper object.
      */
@@ -76,7 +263,17 @@ public class BookInventoryProvider extends ContentProvider {
     // This is a global variable, so it can be referenced from other ContentProvider methods
     public boolean onCreate() {
         // Here is where the BookInventoryDbHelper variable is initialized
-        mDbHelper = new BookInventoryDbHelper(getContext());
+        mDbHelper = new BookInventoryDbHelper(getContext(), mDatabaseName);
+        // Use WAL and the tuned connection setup, so queries don't stall behind writes
+        mDbHelper.setTuningEnabled(true);
+        // Products deleted before the process last stopped are purged once their undo window is
+        // over; the database is opened on the purge thread rather than the main thread
+        ProductTrash.execute(new Runnable() {
+            @Override
+            public void run() {
+                getTrash().schedulePurge(0);
+            }
+        });
         return true;
     }
 
@@ -86,6 +283,7 @@ public class BookInventoryProvider extends ContentProvider {
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        long start = mMetrics.start();
         // Get readable database is used since we will not make any changes or enter new data in the database
         // Here is where we access the database using the mDbHelper variable initialized in
         // the onCreate method where we get the SQLite object from the DbHelper
@@ -99,6 +297,21 @@ public class BookInventoryProvider extends ContentProvider {
         // integer code that will be store in the variable call match
         int match = sUriMatcher.match(uri);
 
+        // The lists of products can be filtered and sorted with the typed parameters of
+        // ProductQuery, which become the same SQL for every query of the same shape
+        boolean sortedByQuery = false;
+        if (match == PRODUCTS || match == PRODUCTS_SEARCH || match == PRODUCTS_LOW_STOCK) {
+            ProductQuery productQuery = ProductQuery.fromUri(uri);
+            if (productQuery.hasFilter()) {
+                selection = appendSelection(selection, productQuery.getSelection());
+                selectionArgs = appendSelectionArgs(selectionArgs, productQuery.getSelectionArgs());
+            }
+            if (productQuery.getSortOrder() != null) {
+                sortOrder = productQuery.getSortOrder();
+                sortedByQuery = true;
+            }
+        }
+
         // With the match code defined, the switch command will help to decide which path to go down
         switch (match) {
             // If PRODUCTS id is matched, query is for a whole table
@@ -106,8 +319,36 @@ public class BookInventoryProvider extends ContentProvider {
                 // For the PRODUCTS code, query the products table directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
                 // could contain multiple rows of the products table
-                cursor = database.query(BookInventoryContract.BookEntry.TABLE_NAME, projection, selection,
-                        selectionArgs, null, null, sortOrder);
+                String afterId = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_AFTER_ID);
+                String afterName = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_AFTER_NAME);
+                if (sortedByQuery && (afterName != null || afterId != null)) {
+                    throw new IllegalArgumentException("Keyset paging has its own order, it can't be sorted: " + uri);
+                }
+                if (afterName != null) {
+                    // Keyset paging in name order: seek in the name index right after the last
+                    // row of the previous page instead of skipping rows with an offset
+                    selection = appendSelection(selection, "(" + BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES
+                            + " > ? COLLATE NOCASE OR (" + BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES
+                            + " = ? COLLATE NOCASE AND " + BookInventoryContract.BookEntry._ID + " > ?))");
+                    selectionArgs = appendSelectionArgs(selectionArgs, afterName, afterName,
+                            afterId == null ? "0" : afterId);
+                    sortOrder = BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE, "
+                            + BookInventoryContract.BookEntry._ID;
+                } else if (afterId != null) {
+                    // Keyset paging in _ID order
+                    selection = appendSelection(selection, BookInventoryContract.BookEntry._ID + " > ?");
+                    selectionArgs = appendSelectionArgs(selectionArgs, afterId);
+                    sortOrder = BookInventoryContract.BookEntry._ID;
+                }
+                String limit = getLimit(uri);
+                long generation = mCache.getGeneration();
+                cursor = queryTable(database, BookInventoryMigrations.VIEW_PRODUCT_DETAILS, projection, selection,
+                        selectionArgs, sortOrder, limit);
+                if (limit != null && ProductCache.canCache(projection)) {
+                    // A page is small and about to be read anyway, so its rows are cached for the
+                    // editor to open them without a query
+                    cacheProducts(cursor, generation);
+                }
                 break;
             // If PRODUCTS_ID is matched, query is for a single product
             case PRODUCTS_ID:
@@ -124,9 +365,16 @@ public class BookInventoryProvider extends ContentProvider {
                 // that will fill in the "?". Since we have 1 question mark in the selection,
                 // we have 1 string in the selection arguments' String array.
 
-                selection = BookInventoryContract.BookEntry._ID + "=?";
+                long id = ContentUris.parseId(uri);
+                if (selection == null && ProductCache.canServe(projection)) {
+                    // The whole row can come from the cache, or be read once and cached
+                    cursor = ProductCache.toCursor(getProduct(id), projection);
+                    break;
+                }
+
+                selection = ProductStatements.SELECTION_ID;
                 // Here is where the number 3 will be parse from the URI and convert into a string
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                selectionArgs = new String[]{String.valueOf(id)};
 
                 // Then in the SQL database object, we will call the query method passing all the inputs
                 // such as TABLE_NAME, projection, selection, selectionArgs
@@ -134,8 +382,100 @@ public class BookInventoryProvider extends ContentProvider {
                 // cursor containing that row of the table
                 // The SQLite statement is: SELECT id, name FROM pets WHERE _id=3
 
-                cursor = database.query(BookInventoryContract.BookEntry.TABLE_NAME, projection, selection,
-                        selectionArgs, null, null, sortOrder);
+                cursor = queryTable(database, BookInventoryMigrations.VIEW_PRODUCT_DETAILS, projection, selection,
+                        selectionArgs, sortOrder, null);
+                break;
+            // If PRODUCTS_ISBN is matched, query the product with the ISBN: one probe of the unique index
+            case PRODUCTS_ISBN:
+                selection = appendSelection(selection, ProductStatements.SELECTION_ISBN);
+                selectionArgs = appendSelectionArgs(selectionArgs, Isbns.normalize(uri.getLastPathSegment()));
+                cursor = queryTable(database, BookInventoryMigrations.VIEW_PRODUCT_DETAILS, projection, selection,
+                        selectionArgs, sortOrder, null);
+                break;
+            // If PRODUCTS_SEARCH is matched, query the products whose name matches the search words
+            case PRODUCTS_SEARCH:
+                String matchQuery = toMatchQuery(uri.getLastPathSegment());
+                if (!matchQuery.isEmpty()) {
+                    // The full-text index gives us the ids, the rows themselves come from the product table
+                    selection = appendSelection(selection, BookInventoryContract.BookEntry._ID
+                            + " IN (SELECT docid FROM " + BookInventoryMigrations.TABLE_PRODUCT_SEARCH
+                            + " WHERE " + BookInventoryMigrations.TABLE_PRODUCT_SEARCH + " MATCH ?)");
+                    selectionArgs = appendSelectionArgs(selectionArgs, matchQuery);
+                }
+                if (sortOrder == null) {
+                    // FTS4 has no built-in relevance function, so rank the shortest matching
+                    // names first: they are the ones closest to what was typed
+                    sortOrder = "length(" + BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES + "), "
+                            + BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE";
+                }
+                cursor = queryTable(database, BookInventoryMigrations.VIEW_PRODUCT_DETAILS, projection, selection,
+                        selectionArgs, sortOrder, null);
+                break;
+            // If PRODUCTS_LOW_STOCK is matched, query the products to reorder
+            case PRODUCTS_LOW_STOCK:
+                // The filter is written exactly as the WHERE of the partial low-stock index, so
+                // SQLite reads the index, which only holds these products, already in name order
+                selection = appendSelection(selection, BookInventoryContract.BookEntry.SELECTION_LOW_STOCK);
+                if (sortOrder == null) {
+                    sortOrder = BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE";
+                }
+                cursor = queryTable(database, BookInventoryMigrations.VIEW_PRODUCT_DETAILS, projection, selection,
+                        selectionArgs, sortOrder, getLimit(uri));
+                break;
+            // If STOCK_MOVEMENTS is matched, query a time range of the ledger, a page at a time
+            case STOCK_MOVEMENTS:
+                String from = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_FROM);
+                if (from != null) {
+                    selection = appendSelection(selection,
+                            BookInventoryContract.StockMovementEntry.COLUMN_CREATED_AT + " >= ?");
+                    selectionArgs = appendSelectionArgs(selectionArgs, String.valueOf(Long.parseLong(from)));
+                }
+                String to = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_TO);
+                if (to != null) {
+                    selection = appendSelection(selection,
+                            BookInventoryContract.StockMovementEntry.COLUMN_CREATED_AT + " < ?");
+                    selectionArgs = appendSelectionArgs(selectionArgs, String.valueOf(Long.parseLong(to)));
+                }
+                String afterTime = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_AFTER_TIME);
+                if (afterTime != null) {
+                    // Keyset paging in time order: seek in the created_at index right after the
+                    // last movement of the previous page, movements of the same time by _ID
+                    String afterMovement = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_AFTER_ID);
+                    selection = appendSelection(selection, "(" + BookInventoryContract.StockMovementEntry.COLUMN_CREATED_AT
+                            + " > ? OR (" + BookInventoryContract.StockMovementEntry.COLUMN_CREATED_AT + " = ? AND "
+                            + BookInventoryContract.StockMovementEntry._ID + " > ?))");
+                    String time = String.valueOf(Long.parseLong(afterTime));
+                    selectionArgs = appendSelectionArgs(selectionArgs, time, time,
+                            afterMovement == null ? "0" : String.valueOf(Long.parseLong(afterMovement)));
+                }
+                if (sortOrder == null || afterTime != null) {
+                    sortOrder = BookInventoryContract.StockMovementEntry.COLUMN_CREATED_AT + ", "
+                            + BookInventoryContract.StockMovementEntry._ID;
+                }
+                cursor = queryTable(database, BookInventoryContract.StockMovementEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, sortOrder, getLimit(uri));
+                break;
+            // If STATS is matched, read the totals the triggers keep, one row per supplier
+            case STATS:
+                if (sortOrder == null) {
+                    sortOrder = BookInventoryContract.StatsEntry.COLUMN_SUPPLIER;
+                }
+                cursor = queryTable(database, STATS_TABLES, projection, selection,
+                        selectionArgs, sortOrder, null);
+                break;
+            // If SUPPLIERS or SUPPLIERS_ID is matched, query the supplier table
+            case SUPPLIERS:
+                if (sortOrder == null) {
+                    sortOrder = BookInventoryContract.SupplierEntry._ID;
+                }
+                cursor = queryTable(database, BookInventoryContract.SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, sortOrder, null);
+                break;
+            case SUPPLIERS_ID:
+                selection = appendSelection(selection, BookInventoryContract.SupplierEntry._ID + "=?");
+                selectionArgs = appendSelectionArgs(selectionArgs, String.valueOf(ContentUris.parseId(uri)));
+                cursor = queryTable(database, BookInventoryContract.SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, sortOrder, null);
                 break;
 
             default:
@@ -143,13 +483,158 @@ public class BookInventoryProvider extends ContentProvider {
         }
 
         // Set notification URI on the cursor, so we know what content URI the Cursor was created for
-        // If the data at this URI changes, then we know we need to update the Cursor
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        // If the data at this URI changes, then we know we need to update the Cursor.
+        // Search results can change with any product, so they watch the whole Products URI.
+        // So do the low-stock list, the ledger and the statistics, which change along with the products,
+        // and an ISBN lookup, whose product is only notified on its Products/# URI.
+        Uri notificationUri = match == PRODUCTS_SEARCH || match == PRODUCTS_LOW_STOCK
+                || match == STOCK_MOVEMENTS || match == STATS || match == PRODUCTS_ISBN
+                ? BookInventoryContract.BookEntry.CONTENT_URI : uri;
+        cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
 
+        if (start != 0) {
+            // The query only runs once the rows are counted, which the caller does first anyway
+            mMetrics.end(ProviderMetrics.OP_QUERY, uriName(match), start, cursor.getCount());
+        }
         // Return the cursor
         return cursor;
     }
 
+    /**
+     * Returns the product with the given _ID from the cache, or reads and caches it.
+     * Returns null if there is no such product.
+     */
+    private Product getProduct(long id) {
+        Product product = mCache.get(id);
+        if (product != null) {
+            return product;
+        }
+        long generation = mCache.getGeneration();
+        mMetrics.noteStatement(ProductStatements.QUERY_BY_ID_SQL);
+        Cursor cursor = getStatements().queryById(id);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            product = new ProductReader(cursor).read();
+        } finally {
+            cursor.close();
+        }
+        mCache.put(product, generation);
+        return product;
+    }
+
+    /** Returns the compiled statements, compiling them on first use */
+    private synchronized ProductStatements getStatements() {
+        if (mStatements == null) {
+            mStatements = new ProductStatements(mDbHelper.getWritableDatabase());
+        }
+        return mStatements;
+    }
+
+    /** Returns the stock ledger, creating it on first use */
+    private synchronized StockLedger getLedger() {
+        if (mLedger == null) {
+            mLedger = new StockLedger(mDbHelper.getWritableDatabase());
+        }
+        return mLedger;
+    }
+
+    /** Returns the trash of the deleted products, creating it on first use */
+    private synchronized ProductTrash getTrash() {
+        if (mTrash == null) {
+            mTrash = new ProductTrash(mDbHelper.getWritableDatabase(), getLedger());
+        }
+        return mTrash;
+    }
+
+    /** Caches every row of the cursor, then moves it back before the first row */
+    private void cacheProducts(Cursor cursor, long generation) {
+        ProductReader reader = new ProductReader(cursor);
+        while (cursor.moveToNext()) {
+            mCache.put(reader.read(), generation);
+        }
+        cursor.moveToPosition(-1);
+    }
+
+    /**
+     * Drops the cached products a write to the given URI may have changed: the one product of
+     * a Products/# URI, or all of them for a write with a selection.
+     */
+    private void invalidateCache(Uri uri) {
+        if (sUriMatcher.match(uri) == PRODUCTS_ID) {
+            mCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            mCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Turns the words typed by the user into an FTS MATCH expression where every word is matched
+     * as a prefix, e.g. "the hob" becomes "the* hob*". Punctuation is dropped so it can't be
+     * taken for FTS query syntax. Returns an empty string if there is no word to search for.
+     */
+    private static String toMatchQuery(String query) {
+        StringBuilder matchQuery = new StringBuilder();
+        if (query == null) {
+            return "";
+        }
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            matchQuery.append(word).append('*');
+        }
+        return matchQuery.toString();
+    }
+
+    /** Returns the given selection combined with the extra clause using AND */
+    private static String appendSelection(String selection, String clause) {
+        if (selection == null || selection.isEmpty()) {
+            return clause;
+        }
+        return "(" + selection + ") AND " + clause;
+    }
+
+    /** Returns the given selection arguments with the extra arguments added at the end */
+    private static String[] appendSelectionArgs(String[] selectionArgs, String... args) {
+        if (selectionArgs == null) {
+            return args;
+        }
+        String[] result = new String[selectionArgs.length + args.length];
+        System.arraycopy(selectionArgs, 0, result, 0, selectionArgs.length);
+        System.arraycopy(args, 0, result, selectionArgs.length, args.length);
+        return result;
+    }
+
+    /**
+     * Returns the LIMIT clause for the limit and offset query parameters of the given URI,
+     * or null if there is no limit.
+     */
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_LIMIT);
+        if (limit == null) {
+            return null;
+        }
+        // parseInt throws NumberFormatException, an IllegalArgumentException, for bad values
+        int rowLimit = Integer.parseInt(limit);
+        if (rowLimit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+        String offset = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_OFFSET);
+        if (offset == null) {
+            return String.valueOf(rowLimit);
+        }
+        int rowOffset = Integer.parseInt(offset);
+        if (rowOffset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative: " + offset);
+        }
+        return rowOffset + "," + rowLimit;
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
 
@@ -163,79 +648,295 @@ public class BookInventoryProvider extends ContentProvider {
      */
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = mMetrics.start();
         // Here is where we use the URI matcher to check if there is a match
         final int match = sUriMatcher.match(uri);
         // Then the switch statement will help us to determine which case it falls into
         // In the insert method, only the PETS case are supported for insertion. Other cases
         // including no match will fall in the default case and an Exception will be thrown
+        Uri newUri;
         switch (match) {
             case PRODUCTS:
-                return insertProduct(uri, contentValues);
+                String onConflict = getConflictStrategy(uri);
+                newUri = onConflict == null ? insertProduct(uri, contentValues)
+                        : upsertProduct(uri, contentValues, onConflict);
+                break;
+            case PRODUCTS_ISBN:
+                newUri = receiveByIsbn(uri, contentValues);
+                break;
+            case SUPPLIERS:
+                newUri = insertSupplier(uri, contentValues);
+                break;
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
+        mMetrics.end(ProviderMetrics.OP_INSERT, uriName(match), start, newUri == null ? 0 : 1);
+        return newUri;
     }
 
     // Once the PRODUCTS case is called, this will call the addProduct/insertHelper method
     // Example:
     // URI: content://com.example.android.bookstoreinventory_part1/product_inventory
-    // ContentValues: name is Hobbit, quantity is 7, price is 9.99, weight is 4. The ID will
+    // ContentValues: name is Hobbit, quantity is 7, price is 999 (cents), weight is 4. The ID will
     // be auto-generated in increasing order as we insert new product into the table
     //
     // SQLite statement: INSERT INTO pets(name, price, quantity, supplierName, supplierPhone) VALUES ("Hobbit", "9.99", 7, 4, 555-555-5555)
     private Uri insertProduct(Uri uri, ContentValues values) {
+        // Check that the product is valid before inserting it
+        validateNewProduct(values);
+        long supplierId = values.getAsLong(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        if (!getStatements().supplierExists(supplierId)) {
+            throw new IllegalArgumentException("Product requires a valid supplier name");
+        }
+        // The phone number is the supplier's, it isn't stored with the product
+        String phone = values.getAsString(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER)) {
+            values = new ContentValues(values);
+            values.remove(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        }
+        // The ISBN is stored as an ISBN-13, so a scan finds the book however it was typed
+        values = normalizeIsbn(values);
+
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // Insert the new product with the given values, and its initial stock in the ledger
+        long id;
+        int suppliersChanged = 0;
+        database.beginTransaction();
+        try {
+            id = database.insert(BookInventoryContract.BookEntry.TABLE_NAME, null, values);
+            Integer quantity = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY);
+            if (id != -1 && quantity != null) {
+                getLedger().record(id, quantity, BookInventoryContract.StockMovementEntry.REASON_INITIAL);
+            }
+            if (id != -1 && phone != null) {
+                suppliersChanged = getStatements().updateSupplierPhone(supplierId, Phones.normalize(phone));
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        if (suppliersChanged > 0) {
+            onSupplierPhoneChanged(uri);
+        }
+        // If the ID is -1, then the insertion failed. Log an error and return null.
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        // Notify all listeners that the data has changed for the new product's content URI
+        // uri: content://com.example.android.bookstoreinventory_part1/Products/<id>
+        notifyChange(ContentUris.withAppendedId(uri, id));
+
+        // Once we know the ID of the new row in the table, return the new URI
+        // Return the new URI with the ID (of the newly inserted row) appended at the end
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Check the values of a product about to be inserted. Throws an IllegalArgumentException
+     * naming the first invalid value. Also used by {@link ProductCsvImporter} so imported rows
+     * follow the same rules.
+     */
+    static void validateNewProduct(ContentValues values) {
         // Check that the name is not null
         String name = values.getAsString(BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES);
         if (name == null) {
             throw new IllegalArgumentException("Product requires a name");
         }
-        // Check that the price is valid
-        Float price = values.getAsFloat(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES));
-        if (price != null && price < 0) {
-            throw new IllegalArgumentException("Product price must be positive");
+        // If the price is provided, check that it is a whole, non-negative number of cents
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES)) {
+            Long price = values.getAsLong(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES);
+            if (price == null || price < 0) {
+                throw new IllegalArgumentException("Product price must be positive");
+            }
         }
         // If the quantity is provided, check that it is greater than or equal to 0
         Integer quantity = values.getAsInteger(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY));
         if (quantity != null && quantity < 0) {
             throw new IllegalArgumentException("Product requires valid quantity");
         }
-        // If the supplier name is not null
-        int supplierName = Integer.parseInt(values.getAsString(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME)));
-        if (!BookInventoryContract.BookEntry.isValidSupplier(supplierName)) {
+        // If the reorder threshold is provided, check that it is greater than or equal to 0
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_REORDER_THRESHOLD)) {
+            Integer threshold = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_REORDER_THRESHOLD);
+            if (threshold == null || threshold < 0) {
+                throw new IllegalArgumentException("Product requires valid reorder threshold");
+            }
+        }
+        // Check that there is a supplier, the foreign key checks that it exists
+        Long supplierName = values.getAsLong(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        if (supplierName == null || supplierName < 0) {
             throw new IllegalArgumentException("Product requires a valid supplier name");
         }
-        // If the supplier number is provided, check that it is greater than
-        Integer supplierPhone = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
-        if (supplierPhone == null || supplierPhone <= 0) {
-            throw new IllegalArgumentException("Product requires valid supplier phone number");
+        // If the supplier phone number is provided, check that it is a phone number
+        String supplierPhone = values.getAsString(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        if (supplierPhone != null) {
+            Phones.normalize(supplierPhone);
         }
+        // If the ISBN is provided, check that it is an ISBN
+        String isbn = values.getAsString(BookInventoryContract.BookEntry.COLUMN_ISBN);
+        if (isbn != null) {
+            Isbns.normalize(isbn);
+        }
+        // Only a delete hides a product
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_DELETED_AT)) {
+            throw new IllegalArgumentException("Product deletion time can't be written, delete the product instead");
+        }
+    }
 
+    /**
+     * Returns the product values with the ISBN normalized, a null ISBN is kept. The given values
+     * are left unchanged.
+     */
+    private static ContentValues normalizeIsbn(ContentValues values) {
+        String isbn = values.getAsString(BookInventoryContract.BookEntry.COLUMN_ISBN);
+        if (isbn == null) {
+            return values;
+        }
+        values = new ContentValues(values);
+        values.put(BookInventoryContract.BookEntry.COLUMN_ISBN, Isbns.normalize(isbn));
+        return values;
+    }
 
-        // No need to check supplier's name, any value is valid (including null).
-
+    /**
+     * Receives stock of the book whose ISBN is the last segment of the Products/isbn/* URI. If a
+     * product already has this ISBN, its quantity goes up by the quantity of the values (1, a
+     * single scanned copy, if there is none) and the receipt is recorded in the ledger; the other
+     * values are left aside. Otherwise a new product is inserted from the values, with the ISBN.
+     * Returns the URI of the product either way, or null if the insert failed.
+     */
+    private Uri receiveByIsbn(Uri uri, ContentValues values) {
+        String isbn = Isbns.normalize(uri.getLastPathSegment());
+        String valuesIsbn = values.getAsString(BookInventoryContract.BookEntry.COLUMN_ISBN);
+        if (valuesIsbn != null && !isbn.equals(Isbns.normalize(valuesIsbn))) {
+            throw new IllegalArgumentException("The ISBN of the values is not the one of " + uri);
+        }
+        Integer quantity = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY);
+        int received = quantity == null ? 1 : quantity;
+        if (received < 0) {
+            throw new IllegalArgumentException("Product requires valid quantity");
+        }
+        // The products URI, keeping the query parameters such as the sync adapter flag
+        Uri productsUri = BookInventoryContract.BookEntry.CONTENT_URI.buildUpon()
+                .encodedQuery(uri.getEncodedQuery()).build();
 
-        // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        // Insert the new product with the given values
-        long id = database.insert(BookInventoryContract.BookEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+        Uri productUri;
+        // The lookup and the write are in one transaction, so two scans of a new book can't both
+        // insert it, and observers are only told once it is committed
+        boolean ownsBatch = beginBatch();
+        database.beginTransaction();
+        try {
+            long existingId = getStatements().queryIdByIsbn(isbn);
+            if (existingId == -1) {
+                ContentValues product = new ContentValues(values);
+                product.put(BookInventoryContract.BookEntry.COLUMN_ISBN, isbn);
+                product.put(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY, received);
+                productUri = insertProduct(productsUri, product);
+            } else {
+                productUri = ContentUris.withAppendedId(productsUri, existingId);
+                if (received > 0 && getStatements().adjustQuantity(existingId, received) > 0) {
+                    getLedger().record(existingId, received, BookInventoryContract.StockMovementEntry.REASON_RECEIPT);
+                    invalidateCache(productUri);
+                    notifyChange(productUri);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            if (ownsBatch) {
+                endBatch();
+            }
         }
-        // Notify all listeners that the data has changed for the product content URI
-        // uri: content://com.example.android.bookstoreinventory_part1/products
-        getContext().getContentResolver().notifyChange(uri, null);
+        return productUri == null ? null : productUri.buildUpon().clearQuery().build();
+    }
 
-        // Once we know the ID of the new row in the table, return the new URI
-        // Return the new URI with the ID (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, id);
+    /**
+     * Returns the {@link BookInventoryContract#QUERY_PARAMETER_ON_CONFLICT} strategy of the
+     * products URI, or null if inserts don't resolve conflicts. Throws an IllegalArgumentException
+     * if it is not a known strategy.
+     */
+    private static String getConflictStrategy(Uri uri) {
+        return checkConflictStrategy(uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_ON_CONFLICT), uri);
     }
+
+    /** Returns the given conflict strategy, null if there is none, after checking it is known */
+    private static String checkConflictStrategy(String onConflict, Object source) {
+        if (onConflict == null
+                || BookInventoryContract.CONFLICT_REPLACE.equals(onConflict)
+                || BookInventoryContract.CONFLICT_KEEP.equals(onConflict)
+                || BookInventoryContract.CONFLICT_SUM_QUANTITY.equals(onConflict)) {
+            return onConflict;
+        }
+        throw new IllegalArgumentException("Unknown conflict strategy " + onConflict + " in " + source);
+    }
+
+    /**
+     * Inserts the product unless another one has the same natural key: the same ISBN if the values
+     * have one, otherwise the same name (ignoring case) and supplier. That product is then resolved
+     * with the given {@link BookInventoryContract#QUERY_PARAMETER_ON_CONFLICT} strategy. The key is
+     * looked up with one probe of the ISBN or name index, in the transaction of the write, so
+     * re-importing a list doesn't duplicate its products. Returns the URI of the product inserted
+     * or matched, or null if the insert failed.
+     */
+    private Uri upsertProduct(Uri uri, ContentValues values, String onConflict) {
+        validateNewProduct(values);
+        values = normalizeIsbn(values);
+        String isbn = values.getAsString(BookInventoryContract.BookEntry.COLUMN_ISBN);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        Uri productUri;
+        boolean ownsBatch = beginBatch();
+        database.beginTransaction();
+        try {
+            long existingId = isbn != null ? getStatements().queryIdByIsbn(isbn)
+                    : getStatements().queryIdByNameAndSupplier(
+                            values.getAsString(BookInventoryContract.BookEntry.COLUMN_PRODUCT_NAMES),
+                            values.getAsLong(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME));
+            if (existingId == -1) {
+                productUri = insertProduct(uri, values);
+            } else {
+                productUri = ContentUris.withAppendedId(uri, existingId);
+                if (BookInventoryContract.CONFLICT_REPLACE.equals(onConflict)) {
+                    // The same validation, ledger entry and notification as an edit of the product
+                    values = new ContentValues(values);
+                    values.remove(BookInventoryContract.BookEntry._ID);
+                    updateProduct(productUri, values, ProductStatements.SELECTION_ID,
+                            new String[]{String.valueOf(existingId)});
+                } else if (BookInventoryContract.CONFLICT_SUM_QUANTITY.equals(onConflict)) {
+                    Integer quantity = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY);
+                    if (quantity != null && quantity > 0
+                            && getStatements().adjustQuantity(existingId, quantity) > 0) {
+                        getLedger().record(existingId, quantity, BookInventoryContract.StockMovementEntry.REASON_RECEIPT);
+                        invalidateCache(productUri);
+                        notifyChange(productUri);
+                    }
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            if (ownsBatch) {
+                endBatch();
+            }
+        }
+        return productUri == null ? null : productUri.buildUpon().clearQuery().build();
+    }
+
     /**
      * Updates the data at the given selection and selection arguments, with the new ContentValues.
      */
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
+        long start = mMetrics.start();
+        int rowsUpdated = updateMatching(uri, contentValues, selection, selectionArgs);
+        if (start != 0) {
+            mMetrics.end(ProviderMetrics.OP_UPDATE, uriName(sUriMatcher.match(uri)), start, rowsUpdated);
+        }
+        return rowsUpdated;
+    }
+
+    private int updateMatching(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
@@ -244,9 +945,23 @@ public class BookInventoryProvider extends ContentProvider {
                 // For the PRODUCTS_ID code, extract out the ID from the URI,
                 // so we know which row to update. Selection will be "_id=?" and selection
                 // arguments will be a String array containing the actual ID.
-                selection = BookInventoryContract.BookEntry._ID + "=?";
+                selection = ProductStatements.SELECTION_ID;
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 return updateProduct(uri, contentValues, selection, selectionArgs);
+            case PRODUCTS_ADJUST:
+                // The quantity changes by the given delta, the selection is not used
+                Integer delta = contentValues.getAsInteger(BookInventoryContract.KEY_DELTA);
+                if (delta == null) {
+                    throw new IllegalArgumentException("Adjustment requires a delta");
+                }
+                return adjustQuantity(uri, delta,
+                        contentValues.getAsString(BookInventoryContract.KEY_REASON)) < 0 ? 0 : 1;
+            case SUPPLIERS:
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
+            case SUPPLIERS_ID:
+                selection = appendSelection(selection, BookInventoryContract.SupplierEntry._ID + "=?");
+                selectionArgs = appendSelectionArgs(selectionArgs, String.valueOf(ContentUris.parseId(uri)));
+                return updateSupplier(uri, contentValues, selection, selectionArgs);
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
@@ -269,8 +984,8 @@ public class BookInventoryProvider extends ContentProvider {
         }
         // If the {@link BookEntry#COLUMN_PRODUCT_PRICES} key is present,
         // check that the product price is valid.
-        if (values.containsKey(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES))) {
-            Float price = values.getAsFloat(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES));
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES)) {
+            Long price = values.getAsLong(BookInventoryContract.BookEntry.COLUMN_PRODUCT_PRICES);
             if (price == null || price <0) {
                 throw new IllegalArgumentException("Product requires valid price");
             }
@@ -287,49 +1002,290 @@ public class BookInventoryProvider extends ContentProvider {
         }
 
         // If the {@link BookEntry#COLUMN_PRODUCT_SUPPLIER_NAME} key is present,
-        // check that the weight value is valid.
-        if (values.containsKey(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME))) {
-            // Check that the supplier name is greater than or equal to 0 kg
-            int supplierName = Integer.parseInt(values.getAsString(String.valueOf(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME)));
-            if (!BookInventoryContract.BookEntry.isValidSupplier(supplierName)) {
+        // check that the supplier exists.
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME)) {
+            Long supplierName = values.getAsLong(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+            if (supplierName == null || !getStatements().supplierExists(supplierName)) {
                 throw new IllegalArgumentException("Product requires valid supplier name");
             }
         }
 
         // If the {@link BookEntry#COLUMN_SUPPLIER_PHONE_NUMBER} key is present,
-        // check that the weight value is valid.
+        // check that it is a phone number. It is set on the supplier, not on the product.
+        String supplierPhone = null;
         if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER)) {
-            // Check that the supplier number is greater than 0
-            Integer supplierPhone = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
-            if (supplierPhone == null || supplierPhone <= 0) {
-                throw new IllegalArgumentException("Product requires valid quantity");
+            String phone = values.getAsString(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+            if (phone == null) {
+                throw new IllegalArgumentException("Product requires valid supplier phone number");
             }
+            supplierPhone = Phones.normalize(phone);
+            values = new ContentValues(values);
+            values.remove(BookInventoryContract.BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        }
+
+        // If the {@link BookEntry#COLUMN_REORDER_THRESHOLD} key is present,
+        // check that the threshold is greater than or equal to 0
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_REORDER_THRESHOLD)) {
+            Integer threshold = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_REORDER_THRESHOLD);
+            if (threshold == null || threshold < 0) {
+                throw new IllegalArgumentException("Product requires valid reorder threshold");
+            }
+        }
+
+        // If the {@link BookEntry#COLUMN_ISBN} key is present, check that it is an ISBN and
+        // store it normalized. Null clears it.
+        values = normalizeIsbn(values);
+
+        // Only a delete hides a product
+        if (values.containsKey(BookInventoryContract.BookEntry.COLUMN_DELETED_AT)) {
+            throw new IllegalArgumentException("Product deletion time can't be written, delete the product instead");
         }
 
         // No need to check the breed, any value is valid (including null).
 
         // If there are no values to update, then don't try to update the database
-        if (values.size() == 0) {
+        if (values.size() == 0 && supplierPhone == null) {
             return 0;
         }
         // Otherwise, get writeable database to update the data
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // Deleted products can't be changed while they wait for the purge
+        selection = appendSelection(selection, ProductStatements.SELECTION_SHOWN);
 
         // Returns the number of database rows affected by the update statement
         //return database.update(BookInventoryContract.BookEntry.TABLE_NAME, values, selection, selectionArgs);
         // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(BookInventoryContract.BookEntry.TABLE_NAME, values, selection, selectionArgs);
+        int rowsUpdated;
+        int suppliersChanged = 0;
+        Integer quantity = values.getAsInteger(BookInventoryContract.BookEntry.COLUMN_PRODUCTS_QUANTITY);
+        boolean singleProduct = sUriMatcher.match(uri) == PRODUCTS_ID;
+        // A new quantity is recorded in the ledger, in the transaction of the update
+        database.beginTransaction();
+        try {
+            if (supplierPhone != null) {
+                suppliersChanged = updateSupplierPhone(values, selection, selectionArgs, supplierPhone);
+            }
+            if (quantity != null) {
+                if (singleProduct) {
+                    getLedger().recordQuantity(ContentUris.parseId(uri), quantity,
+                            BookInventoryContract.StockMovementEntry.REASON_EDIT);
+                } else {
+                    getLedger().recordQuantity(selection, selectionArgs, quantity,
+                            BookInventoryContract.StockMovementEntry.REASON_EDIT);
+                }
+            }
+            if (values.size() == 0) {
+                // Only the supplier's phone number was given
+                rowsUpdated = suppliersChanged;
+            } else if (values.size() == 1 && quantity != null && singleProduct) {
+                // The scanner's stock count: one quantity on one row, through the compiled statement
+                rowsUpdated = getStatements().updateQuantity(ContentUris.parseId(uri), quantity);
+            } else {
+                if (mMetrics.isEnabled()) {
+                    mMetrics.noteStatement(buildUpdateSql(values, selection));
+                }
+                try {
+                    rowsUpdated = database.update(BookInventoryContract.BookEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                } catch (SQLiteConstraintException e) {
+                    // The unique index refuses an ISBN another product already has. A deleted
+                    // product isn't one of them, it moved its ISBN aside when it was hidden.
+                    throw new IllegalArgumentException("Product requires an ISBN no other product has", e);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if(rowsUpdated !=0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateCache(uri);
+            notifyChange(uri);
+        }
+        if (suppliersChanged > 0) {
+            onSupplierPhoneChanged(uri);
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
 
+    /**
+     * Sets the phone number given with a product update on the supplier: the new supplier if the
+     * update changes it, otherwise the suppliers of the products matching the selection. Must be
+     * called in the update's transaction, before the update. Returns the number of suppliers changed.
+     */
+    private int updateSupplierPhone(ContentValues values, String selection, String[] selectionArgs, String phone) {
+        Long supplierId = values.getAsLong(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        if (supplierId != null) {
+            return getStatements().updateSupplierPhone(supplierId, phone);
+        }
+        String products = "SELECT " + BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                + " FROM " + BookInventoryContract.BookEntry.TABLE_NAME;
+        if (selection != null && !selection.isEmpty()) {
+            products += " WHERE " + selection;
+        }
+        SQLiteStatement statement = mDbHelper.getWritableDatabase().compileStatement("UPDATE "
+                + BookInventoryContract.SupplierEntry.TABLE_NAME + " SET "
+                + BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE + " = ? WHERE "
+                + BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE + " != ? AND "
+                + BookInventoryContract.SupplierEntry._ID + " IN (" + products + ")");
+        try {
+            statement.bindString(1, phone);
+            statement.bindString(2, phone);
+            if (selectionArgs != null) {
+                for (int i = 0; i < selectionArgs.length; i++) {
+                    statement.bindString(i + 3, selectionArgs[i]);
+                }
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Insert a new supplier. It requires a name, the phone number is optional.
+     */
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        String name = values.getAsString(BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_NAME);
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Supplier requires a name");
+        }
+        values = normalizeSupplierPhone(values);
+
+        long id = mDbHelper.getWritableDatabase().insert(BookInventoryContract.SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+        // No product refers to the new supplier yet, only the supplier list changed
+        notifySupplierChange(uri);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Update the suppliers matching the selection. Their products show the new values, so the
+     * product observers are notified as well.
+     */
+    private int updateSupplier(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        if (values.containsKey(BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            String name = values.getAsString(BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_NAME);
+            if (name == null || name.trim().isEmpty()) {
+                throw new IllegalArgumentException("Supplier requires a name");
+            }
+        }
+        if (values.containsKey(BookInventoryContract.SupplierEntry._ID)) {
+            throw new IllegalArgumentException("The _ID of a supplier can't be changed");
+        }
+        values = normalizeSupplierPhone(values);
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        int rowsUpdated = mDbHelper.getWritableDatabase().update(BookInventoryContract.SupplierEntry.TABLE_NAME,
+                values, selection, selectionArgs);
+        if (rowsUpdated != 0) {
+            onSupplierPhoneChanged(uri);
+            notifyChange(BookInventoryContract.BookEntry.CONTENT_URI.buildUpon()
+                    .encodedQuery(uri.getEncodedQuery()).build());
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Returns the supplier values with the phone number normalized, an empty phone number
+     * clears it. The given values are left unchanged.
+     */
+    private static ContentValues normalizeSupplierPhone(ContentValues values) {
+        if (!values.containsKey(BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE)) {
+            return values;
+        }
+        String phone = values.getAsString(BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE);
+        values = new ContentValues(values);
+        values.put(BookInventoryContract.SupplierEntry.COLUMN_SUPPLIER_PHONE,
+                phone == null || phone.trim().isEmpty() ? "" : Phones.normalize(phone));
+        return values;
+    }
+
+    /**
+     * Delete the suppliers matching the selection. {@link BookInventoryContract.BookEntry#SUPPLIER_UNKNOWN}
+     * is never deleted, and the foreign key refuses to delete a supplier that still has products.
+     * Its deleted products are purged right away, they can't be brought back without it.
+     */
+    private int deleteSupplier(Uri uri, String selection, String[] selectionArgs) {
+        selection = appendSelection(selection, BookInventoryContract.SupplierEntry._ID + " != "
+                + BookInventoryContract.BookEntry.SUPPLIER_UNKNOWN);
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsDeleted;
+        database.beginTransaction();
+        try {
+            getTrash().purgeHidden(BookInventoryContract.BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " IN (SELECT "
+                    + BookInventoryContract.SupplierEntry._ID + " FROM " + BookInventoryContract.SupplierEntry.TABLE_NAME
+                    + " WHERE " + selection + ")", selectionArgs);
+            rowsDeleted = database.delete(BookInventoryContract.SupplierEntry.TABLE_NAME, selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } catch (SQLiteConstraintException e) {
+            throw new IllegalArgumentException("Cannot delete a supplier that still has products: " + uri, e);
+        } finally {
+            database.endTransaction();
+        }
+        if (rowsDeleted != 0) {
+            notifySupplierChange(uri);
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Called once a write changed the phone number of suppliers: every cached product may hold
+     * the old number, and the supplier observers are told.
+     */
+    private void onSupplierPhoneChanged(Uri uri) {
+        mCache.invalidateAll();
+        notifySupplierChange(uri);
+    }
+
+    /**
+     * Adds delta to the quantity of the product of the adjust URI, in a single UPDATE that only
+     * matches if the stock stays at 0 or above, so concurrent adjustments can't lose each other's
+     * changes. The adjustment is recorded in the ledger with the given reason, or as a sale or a
+     * receipt if it is null. Returns the new quantity, or -1 if the product doesn't exist or has
+     * too few.
+     */
+    private long adjustQuantity(Uri uri, int delta, String reason) {
+        // Products/#/adjust: the _ID is the second segment
+        long id = Long.parseLong(uri.getPathSegments().get(1));
+        if (reason == null) {
+            reason = delta < 0 ? BookInventoryContract.StockMovementEntry.REASON_SALE
+                    : BookInventoryContract.StockMovementEntry.REASON_RECEIPT;
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long quantity = -1;
+        // The new quantity is read in the same transaction, before any other write can change it
+        database.beginTransaction();
+        try {
+            if (getStatements().adjustQuantity(id, delta) > 0) {
+                quantity = getStatements().queryQuantity(id);
+                getLedger().record(id, delta, reason);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (quantity >= 0) {
+            // Observers watch the product, not its adjust URI; the query keeps the sync flag
+            Uri productUri = ContentUris.withAppendedId(BookInventoryContract.BookEntry.CONTENT_URI, id)
+                    .buildUpon().encodedQuery(uri.getEncodedQuery()).build();
+            invalidateCache(productUri);
+            notifyChange(productUri);
+        }
+        return quantity;
+    }
+
     /**
      * Delete the data at the given selection and selection arguments.
 
@@ -340,46 +1296,583 @@ public class BookInventoryProvider extends ContentProvider {
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = mMetrics.start();
+        int rowsDeleted = deleteMatching(uri, selection, selectionArgs);
+        if (start != 0) {
+            mMetrics.end(ProviderMetrics.OP_DELETE, uriName(sUriMatcher.match(uri)), start, rowsDeleted);
+        }
+        return rowsDeleted;
+    }
+
+    private int deleteMatching(Uri uri, String selection, String[] selectionArgs) {
+        final int match = sUriMatcher.match(uri);
+        if (match == SUPPLIERS) {
+            return deleteSupplier(uri, selection, selectionArgs);
+        }
+        if (match == SUPPLIERS_ID) {
+            return deleteSupplier(uri, appendSelection(selection, BookInventoryContract.SupplierEntry._ID + "=?"),
+                    appendSelectionArgs(selectionArgs, String.valueOf(ContentUris.parseId(uri))));
+        }
+
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         // Track the number of rows that were deleted
         int rowsDeleted;
 
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case PRODUCTS:
-                // Delete all rows that match the selection and selection args
-                //return database.delete(BookInventoryContract.BookEntry.TABLE_NAME, selection, selectionArgs);
-                rowsDeleted = database.delete(BookInventoryContract.BookEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case PRODUCTS_ID:
-                // Delete a single row given by the ID in the URI
-                selection = BookInventoryContract.BookEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                // return database.delete(BookInventoryContract.BookEntry.TABLE_NAME, selection, selectionArgs);
-                rowsDeleted = database.delete(BookInventoryContract.BookEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new IllegalArgumentException("Deletion is not supported for " + uri);
+        // The products are only hidden, so the delete can be undone until the purge removes them
+        // and records their stock in the ledger
+        long now = System.currentTimeMillis();
+        database.beginTransaction();
+        try {
+            switch (match) {
+                case PRODUCTS:
+                    // Delete all rows that match the selection and selection args
+                    //return database.delete(BookInventoryContract.BookEntry.TABLE_NAME, selection, selectionArgs);
+                    if (TextUtils.isEmpty(selection)) {
+                        // Every product: one row hides them all, however many there are
+                        rowsDeleted = getTrash().hideAll(now);
+                    } else {
+                        if (mMetrics.isEnabled()) {
+                            mMetrics.noteStatement(ProductTrash.buildHideSql(selection));
+                        }
+                        rowsDeleted = getTrash().hide(selection, selectionArgs, now);
+                    }
+                    break;
+                case PRODUCTS_ID:
+                    // Delete a single row given by the ID in the URI, through the compiled statement
+                    rowsDeleted = getStatements().hideById(ContentUris.parseId(uri), now);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Deletion is not supported for " + uri);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateCache(uri);
+            notifyChange(uri);
+            getTrash().schedulePurge(BookInventoryContract.UNDO_WINDOW_MILLIS);
         }
         // Return the number of rows deleted
         return rowsDeleted;
     }
+
+    /**
+     * Insert all the given rows in a single transaction. Every row still goes through the same
+     * validation as {@link #insert}, and the same conflict resolution if the URI has
+     * {@link BookInventoryContract#QUERY_PARAMETER_ON_CONFLICT}; if any of them is rejected the
+     * whole batch is rolled back. Listeners are notified once at the end instead of once per row.
+     * Returns the number of rows inserted or resolved against a stored product.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = mMetrics.start();
+        final int match = sUriMatcher.match(uri);
+        if (match != PRODUCTS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        String onConflict = getConflictStrategy(uri);
+
+        // Track the number of rows that were inserted
+        int rowsInserted = 0;
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        boolean ownsBatch = beginBatch();
+        database.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                Uri newUri = onConflict == null ? insertProduct(uri, value) : upsertProduct(uri, value, onConflict);
+                if (newUri != null) {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            if (ownsBatch) {
+                endBatch();
+            }
+        }
+        mMetrics.end(ProviderMetrics.OP_BULK_INSERT, uriName(match), start, rowsInserted);
+        return rowsInserted;
+    }
+
+    /**
+     * Apply all the given operations in a single transaction, so either all of them are
+     * written or none of them is. Listeners are notified once at the end.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = mMetrics.start();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        boolean ownsBatch = beginBatch();
+        ContentProviderResult[] results;
+        database.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            if (ownsBatch) {
+                endBatch();
+            }
+        }
+        // Each operation is also recorded on its own URI
+        mMetrics.end(ProviderMetrics.OP_APPLY_BATCH, "batch", start, operations.size());
+        return results;
+    }
+
+    /**
+     * Runs the provider methods declared in {@link BookInventoryContract}, such as
+     * {@link BookInventoryContract#METHOD_IMPORT_CSV}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (BookInventoryContract.METHOD_IMPORT_CSV.equals(method)) {
+            if (arg == null) {
+                throw new IllegalArgumentException("Import requires the URI of a CSV file");
+            }
+            return importCsv(Uri.parse(arg), extras);
+        }
+        if (BookInventoryContract.METHOD_ADJUST_QUANTITY.equals(method)) {
+            Uri uri = arg == null ? null : Uri.parse(arg);
+            if (uri == null || sUriMatcher.match(uri) != PRODUCTS_ADJUST) {
+                throw new IllegalArgumentException("Adjustment requires a product adjust URI: " + arg);
+            }
+            if (extras == null || !extras.containsKey(BookInventoryContract.KEY_DELTA)) {
+                throw new IllegalArgumentException("Adjustment requires a delta");
+            }
+            Bundle result = new Bundle();
+            result.putInt(BookInventoryContract.RESULT_QUANTITY, (int) adjustQuantity(uri,
+                    extras.getInt(BookInventoryContract.KEY_DELTA), extras.getString(BookInventoryContract.KEY_REASON)));
+            return result;
+        }
+        if (BookInventoryContract.METHOD_UNDO_DELETE.equals(method)) {
+            long since;
+            try {
+                since = Long.parseLong(arg);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Undo requires the time of the delete: " + arg, e);
+            }
+            int restored = getTrash().undo(since, System.currentTimeMillis());
+            if (restored > 0) {
+                mCache.invalidateAll();
+                notifyChange(BookInventoryContract.BookEntry.CONTENT_URI);
+            }
+            Bundle result = new Bundle();
+            result.putInt(BookInventoryContract.RESULT_RESTORED, restored);
+            return result;
+        }
+        if (METHOD_PURGE_DELETED.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(RESULT_PURGED, getTrash().purge(Long.MAX_VALUE));
+            return result;
+        }
+        if (BookInventoryContract.METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putInt(BookInventoryContract.RESULT_CACHE_HITS, mCache.hitCount());
+            stats.putInt(BookInventoryContract.RESULT_CACHE_MISSES, mCache.missCount());
+            stats.putInt(BookInventoryContract.RESULT_CACHE_EVICTIONS, mCache.evictionCount());
+            stats.putInt(BookInventoryContract.RESULT_CACHE_SIZE, mCache.size());
+            return stats;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Import the products of the given CSV file with {@link ProductCsvImporter}, then notify
+     * the listeners once for the whole import.
+     */
+    private Bundle importCsv(Uri fileUri, Bundle extras) {
+        int chunkSize = ProductCsvImporter.DEFAULT_CHUNK_SIZE;
+        ProductCsvImporter.ProgressListener listener = null;
+        String onConflict = null;
+        if (extras != null) {
+            chunkSize = extras.getInt(BookInventoryContract.EXTRA_CHUNK_SIZE, chunkSize);
+            onConflict = checkConflictStrategy(extras.getString(BookInventoryContract.EXTRA_ON_CONFLICT),
+                    "the import extras");
+            final ResultReceiver receiver = extras.getParcelable(BookInventoryContract.EXTRA_PROGRESS_RECEIVER);
+            if (receiver != null) {
+                listener = new ProductCsvImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(int imported, int rejected) {
+                        Bundle progress = new Bundle();
+                        progress.putInt(BookInventoryContract.RESULT_IMPORTED, imported);
+                        progress.putInt(BookInventoryContract.RESULT_REJECTED, rejected);
+                        receiver.send(0, progress);
+                    }
+                };
+            }
+        }
+
+        InputStream input;
+        try {
+            input = getContext().getContentResolver().openInputStream(fileUri);
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("Cannot open " + fileUri, e);
+        }
+
+        ProductCsvImporter.Result result;
+        try {
+            ProductCsvImporter importer = new ProductCsvImporter(mDbHelper.getWritableDatabase(),
+                    chunkSize, listener, getLedger(), getStatements(), onConflict);
+            result = importer.importCsv(new InputStreamReader(input, "UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read " + fileUri, e);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to close " + fileUri, e);
+            }
+        }
+
+        if (result.merged > 0) {
+            // The merged rows were written by _ID, behind the cache
+            mCache.invalidateAll();
+        }
+        if (result.imported > 0 || result.merged > 0) {
+            notifyChange(BookInventoryContract.BookEntry.CONTENT_URI);
+        }
+        if (result.suppliersChanged > 0) {
+            onSupplierPhoneChanged(BookInventoryContract.BookEntry.CONTENT_URI);
+        }
+
+        Bundle bundle = new Bundle();
+        bundle.putInt(BookInventoryContract.RESULT_IMPORTED, result.imported);
+        bundle.putInt(BookInventoryContract.RESULT_MERGED, result.merged);
+        bundle.putInt(BookInventoryContract.RESULT_REJECTED, result.rejected);
+        bundle.putStringArrayList(BookInventoryContract.RESULT_REJECTIONS, result.rejections);
+        return bundle;
+    }
+
+    /**
+     * Open the export URI as CSV, the format {@link BookInventoryContract#METHOD_IMPORT_CSV} reads.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != PRODUCTS_EXPORT) {
+            throw new FileNotFoundException("Cannot open " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Export can only be read: " + uri);
+        }
+        return openExport(uri, BookInventoryContract.MIME_TYPE_CSV);
+    }
+
+    /**
+     * Open the export URI in the first of CSV or JSON that matches the MIME type filter.
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts)
+            throws FileNotFoundException {
+        if (sUriMatcher.match(uri) == PRODUCTS_EXPORT) {
+            for (String mimeType : EXPORT_MIME_TYPES) {
+                if (ClipDescription.compareMimeTypes(mimeType, mimeTypeFilter)) {
+                    return new AssetFileDescriptor(openExport(uri, mimeType), 0,
+                            AssetFileDescriptor.UNKNOWN_LENGTH);
+                }
+            }
+        }
+        return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+    }
+
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        if (sUriMatcher.match(uri) != PRODUCTS_EXPORT) {
+            return null;
+        }
+        ArrayList<String> mimeTypes = new ArrayList<>();
+        for (String mimeType : EXPORT_MIME_TYPES) {
+            if (ClipDescription.compareMimeTypes(mimeType, mimeTypeFilter)) {
+                mimeTypes.add(mimeType);
+            }
+        }
+        return mimeTypes.isEmpty() ? null : mimeTypes.toArray(new String[mimeTypes.size()]);
+    }
+
+    /**
+     * Returns the read end of a pipe, the products are written into the other end on a
+     * background thread by {@link ProductExporter} as the reader consumes them. Nothing but the
+     * current chunk of rows and the pipe buffer is held in memory, whatever the table size.
+     */
+    private ParcelFileDescriptor openExport(Uri uri, String mimeType) throws FileNotFoundException {
+        return openPipeHelper(uri, mimeType, null, null, new PipeDataWriter<Void>() {
+            @Override
+            public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                        Bundle opts, Void args) {
+                Writer writer = null;
+                try {
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(output.getFileDescriptor()), "UTF-8"));
+                    ProductExporter exporter = new ProductExporter(mDbHelper.getReadableDatabase());
+                    if (BookInventoryContract.MIME_TYPE_JSON.equals(mimeType)) {
+                        exporter.exportJson(writer);
+                    } else {
+                        exporter.exportCsv(writer);
+                    }
+                } catch (IOException e) {
+                    // Most likely the reader closed its end before the end of the export
+                    Log.w(LOG_TAG, "Export of " + uri + " stopped", e);
+                } finally {
+                    if (writer != null) {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            Log.w(LOG_TAG, "Failed to close the export of " + uri, e);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Notify all listeners that the data at the given URI has changed. Row-level changes should
+     * pass the Products/# URI of the row, so observers of other rows are left alone (observers of
+     * the whole Products URI are still told, as it is an ancestor). While a batch is running on
+     * this thread the notification is held back until {@link #endBatch} is called.
+     * <p>
+     * Changes made with {@link BookInventoryContract#QUERY_PARAMETER_CALLER_IS_SYNCADAPTER} set to
+     * true are not synced back to the network.
+     */
+    private void notifyChange(Uri uri) {
+        boolean syncToNetwork = !Boolean.parseBoolean(
+                uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_CALLER_IS_SYNCADAPTER));
+        // Observers are registered on paths, the query parameters are only for this call
+        Uri notificationUri = uri.buildUpon().clearQuery().build();
+
+        PendingNotification pending = mPendingNotification.get();
+        if (pending != null) {
+            pending.add(notificationUri, syncToNetwork);
+            return;
+        }
+        dispatchChange(notificationUri, syncToNetwork);
+    }
+
+    /**
+     * Notify the observers of the suppliers. Held back during a batch like {@link #notifyChange}.
+     */
+    private void notifySupplierChange(Uri uri) {
+        boolean syncToNetwork = !Boolean.parseBoolean(
+                uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_CALLER_IS_SYNCADAPTER));
+        PendingNotification pending = mPendingNotification.get();
+        if (pending != null) {
+            pending.mSuppliersChanged = true;
+            pending.mSyncToNetwork |= syncToNetwork;
+            return;
+        }
+        dispatchChange(BookInventoryContract.SupplierEntry.CONTENT_URI, syncToNetwork);
+    }
+
+    private void dispatchChange(Uri uri, boolean syncToNetwork) {
+        getContext().getContentResolver().notifyChange(uri, null, syncToNetwork);
+        mDbHelper.requestCheckpoint();
+    }
+
+    /**
+     * Start holding back change notifications on this thread. Returns false if a batch is
+     * already running, in which case that batch stays in charge of the notification.
+     */
+    private boolean beginBatch() {
+        if (mPendingNotification.get() != null) {
+            return false;
+        }
+        mPendingNotification.set(new PendingNotification());
+        return true;
+    }
+
+    /**
+     * Stop holding back change notifications and send the one for the whole batch, if any.
+     * Must be called after the batch's transaction has ended.
+     */
+    private void endBatch() {
+        PendingNotification pending = mPendingNotification.get();
+        mPendingNotification.remove();
+        if (pending.mUri != null) {
+            // The rows were invalidated as they were written, but another thread may have read
+            // and cached their committed values before the transaction ended
+            invalidateCache(pending.mUri);
+            dispatchChange(pending.mUri, pending.mSyncToNetwork);
+        }
+        if (pending.mSuppliersChanged) {
+            dispatchChange(BookInventoryContract.SupplierEntry.CONTENT_URI, pending.mSyncToNetwork);
+        }
+    }
+
+    /**
+     * Change notification collected during a batch. A batch touching a single URI notifies that
+     * URI, a batch touching several notifies the Products URI once, which reaches all of them.
+     */
+    private static final class PendingNotification {
+
+        /** URI to notify, null while nothing has changed */
+        Uri mUri;
+
+        /** Whether any of the changes has to be synced to the network */
+        boolean mSyncToNetwork;
+
+        /** Whether the batch changed suppliers, which are notified on their own URI */
+        boolean mSuppliersChanged;
+
+        void add(Uri uri, boolean syncToNetwork) {
+            if (mUri == null) {
+                mUri = uri;
+            } else if (!mUri.equals(uri)) {
+                mUri = BookInventoryContract.BookEntry.CONTENT_URI;
+            }
+            mSyncToNetwork |= syncToNetwork;
+        }
+    }
+
+    /**
+     * Queries the table, noting the statement for the metrics first.
+     */
+    private Cursor queryTable(SQLiteDatabase database, String table, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder, String limit) {
+        if (mMetrics.isEnabled()) {
+            mMetrics.noteStatement(SQLiteQueryBuilder.buildQueryString(false, table, projection, selection,
+                    null, null, sortOrder, limit));
+        }
+        return database.query(table, projection, selection, selectionArgs, null, null, sortOrder, limit);
+    }
+
+    /** Returns the SQL of a product update, as the metrics show it */
+    private static String buildUpdateSql(ContentValues values, String selection) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(BookInventoryContract.BookEntry.TABLE_NAME)
+                .append(" SET ");
+        boolean first = true;
+        for (String column : values.keySet()) {
+            sql.append(first ? "" : ", ").append(column).append(" = ?");
+            first = false;
+        }
+        if (!TextUtils.isEmpty(selection)) {
+            sql.append(" WHERE ").append(selection);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Returns the query plan of the statement, one step per line. The parameters are left
+     * unbound, the plan doesn't depend on their values.
+     */
+    private String explainPlan(String sql) {
+        StringBuilder plan = new StringBuilder();
+        try {
+            Cursor cursor = mDbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+            try {
+                int detailColumnIndex = cursor.getColumnIndex("detail");
+                while (cursor.moveToNext()) {
+                    plan.append(plan.length() == 0 ? "" : "\n").append(cursor.getString(detailColumnIndex));
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLiteException e) {
+            return "No plan: " + e.getMessage();
+        }
+        return plan.toString();
+    }
+
+    /** Returns the URI pattern of the match code, as the metrics name it */
+    private static String uriName(int match) {
+        switch (match) {
+            case PRODUCTS:
+                return BookInventoryContract.PATH_PRODUCTS;
+            case PRODUCTS_ID:
+                return BookInventoryContract.PATH_PRODUCTS + "/#";
+            case PRODUCTS_SEARCH:
+                return BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_SEARCH + "/*";
+            case PRODUCTS_EXPORT:
+                return BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_EXPORT;
+            case PRODUCTS_ADJUST:
+                return BookInventoryContract.PATH_PRODUCTS + "/#/" + BookInventoryContract.PATH_ADJUST;
+            case PRODUCTS_LOW_STOCK:
+                return BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_LOW_STOCK;
+            case STOCK_MOVEMENTS:
+                return BookInventoryContract.PATH_STOCK_MOVEMENTS;
+            case STATS:
+                return BookInventoryContract.PATH_STATS;
+            case SUPPLIERS:
+                return BookInventoryContract.PATH_SUPPLIERS;
+            case SUPPLIERS_ID:
+                return BookInventoryContract.PATH_SUPPLIERS + "/#";
+            case PRODUCTS_ISBN:
+                return BookInventoryContract.PATH_PRODUCTS + "/" + BookInventoryContract.PATH_ISBN + "/*";
+            default:
+                return "unknown";
+        }
+    }
+
+    /** The provider's metrics, for the tests */
+    ProviderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Prints the metrics of the provider, with
+     * {@code adb shell dumpsys activity provider com.example.android.bookstoreinventory_part1/.data.BookInventoryProvider}.
+     * The arguments "metrics on", "metrics off", "metrics reset" and "slow <millis>" given after
+     * it change the recording first.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        for (int i = 0; args != null && i + 1 < args.length; i += 2) {
+            if ("metrics".equals(args[i]) && "on".equals(args[i + 1])) {
+                mMetrics.setEnabled(true);
+            } else if ("metrics".equals(args[i]) && "off".equals(args[i + 1])) {
+                mMetrics.setEnabled(false);
+            } else if ("metrics".equals(args[i]) && "reset".equals(args[i + 1])) {
+                mMetrics.reset();
+            } else if ("slow".equals(args[i])) {
+                try {
+                    mMetrics.setSlowThresholdMillis(Long.parseLong(args[i + 1]));
+                } catch (IllegalArgumentException e) {
+                    writer.println("Invalid slow threshold: " + args[i + 1]);
+                }
+            } else {
+                writer.println("Unknown arguments: " + args[i] + " " + args[i + 1]);
+            }
+        }
+        mMetrics.dump(writer);
+        ProductTrash trash = mTrash;
+        if (trash != null && trash.getLockHoldTimes().getCount() > 0) {
+            LatencyHistogram lockHoldTimes = trash.getLockHoldTimes();
+            writer.println("Purge chunks: " + lockHoldTimes.getCount() + ", lock held p50/p99/max "
+                    + lockHoldTimes.getPercentileMicros(50) + "/" + lockHoldTimes.getPercentileMicros(99)
+                    + "/" + lockHoldTimes.getMaxMicros() + " us");
+        }
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
+            case PRODUCTS_SEARCH:
+            case PRODUCTS_LOW_STOCK:
                 return BookInventoryContract.BookEntry.CONTENT_LIST_TYPE;
             case PRODUCTS_ID:
+            case PRODUCTS_ADJUST:
+            case PRODUCTS_ISBN:
                 return BookInventoryContract.BookEntry.CONTENT_ITEM_TYPE;
+            case PRODUCTS_EXPORT:
+                return BookInventoryContract.MIME_TYPE_CSV;
+            case STOCK_MOVEMENTS:
+                return BookInventoryContract.StockMovementEntry.CONTENT_LIST_TYPE;
+            case STATS:
+                return BookInventoryContract.StatsEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return BookInventoryContract.SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS_ID:
+                return BookInventoryContract.SupplierEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
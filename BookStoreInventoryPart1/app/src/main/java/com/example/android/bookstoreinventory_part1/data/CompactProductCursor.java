@@ -0,0 +1,404 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.AbstractCursor;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Read-only, in-memory copy of a product {@link Cursor}, stored column by column. The whole number
+ * columns of the product table (like {@link BookEntry#_ID}, the price and the quantity) are kept
+ * in an int[] (a long[] once a value doesn't fit), and each text column is packed into a single
+ * array, one byte per character while every character is Latin-1, with the end offset of each row.
+ * <p>
+ * A list of a few hundred thousand products then takes a few bytes per row besides the text, and
+ * moving the cursor anywhere never goes back to the database, unlike a SQLiteCursor refilling its
+ * CursorWindow. The copy is made once by {@link #copyOf(Cursor)}, which must not be called on the
+ * UI thread; after that the cursor doesn't see changes to the products.
+ */
+public class CompactProductCursor extends AbstractCursor {
+
+    /** Columns of the product table holding whole numbers, every other column is stored as text */
+    private static final String[] INTEGER_COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_REORDER_THRESHOLD};
+
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    private final String[] mColumnNames;
+
+    private final Column[] mColumns;
+
+    private final int mCount;
+
+    private CompactProductCursor(String[] columnNames, Column[] columns, int count) {
+        mColumnNames = columnNames;
+        mColumns = columns;
+        mCount = count;
+    }
+
+    /**
+     * Reads every row of the given cursor into a new {@link CompactProductCursor}. The source is
+     * left open, after its last row. Must not be called on the UI thread.
+     */
+    public static CompactProductCursor copyOf(Cursor source) {
+        String[] columnNames = source.getColumnNames();
+        int count = source.getCount();
+        Column[] columns = new Column[columnNames.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = isIntegerColumn(columnNames[i]) ? new IntegerColumn(count) : new TextColumn(count);
+        }
+
+        source.moveToPosition(-1);
+        int row = 0;
+        while (row < count && source.moveToNext()) {
+            for (int i = 0; i < columns.length; i++) {
+                columns[i].read(source, i, row);
+            }
+            row++;
+        }
+        for (Column column : columns) {
+            column.trim(row);
+        }
+        return new CompactProductCursor(columnNames, columns, row);
+    }
+
+    private static boolean isIntegerColumn(String columnName) {
+        for (String integerColumn : INTEGER_COLUMNS) {
+            if (integerColumn.equals(columnName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Approximate number of bytes held by the arrays of this cursor */
+    public long getSizeBytes() {
+        long size = 0;
+        for (Column column : mColumns) {
+            size += column.getSizeBytes();
+        }
+        return size;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    /** Returns the column of the given index, after checking the cursor is on a row */
+    private Column column(int column) {
+        checkPosition();
+        return mColumns[column];
+    }
+
+    @Override
+    public String getString(int column) {
+        return column(column).getString(mPos);
+    }
+
+    /** Copies the text straight out of the packed column, without making a String */
+    @Override
+    public void copyStringToBuffer(int column, CharArrayBuffer buffer) {
+        column(column).copyTo(mPos, buffer);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) column(column).getLong(mPos);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) column(column).getLong(mPos);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return column(column).getLong(mPos);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return column(column).getLong(mPos);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return column(column).getLong(mPos);
+    }
+
+    @Override
+    public int getType(int column) {
+        return column(column).getType(mPos);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return column(column).isNull(mPos);
+    }
+
+    /** Values of one column of every row */
+    private abstract static class Column {
+
+        /** Rows holding NULL, only created when there is one */
+        private BitSet mNulls;
+
+        /** Reads the value of the current row of the source into the given row */
+        void read(Cursor source, int column, int row) {
+            if (source.isNull(column)) {
+                if (mNulls == null) {
+                    mNulls = new BitSet();
+                }
+                mNulls.set(row);
+                readNull(row);
+            } else {
+                readValue(source, column, row);
+            }
+        }
+
+        boolean isNull(int row) {
+            return mNulls != null && mNulls.get(row);
+        }
+
+        abstract void readNull(int row);
+
+        abstract void readValue(Cursor source, int column, int row);
+
+        /** Drops the space left over once count rows have been read */
+        abstract void trim(int count);
+
+        abstract int getType(int row);
+
+        abstract String getString(int row);
+
+        abstract long getLong(int row);
+
+        void copyTo(int row, CharArrayBuffer buffer) {
+            String value = getString(row);
+            if (value == null) {
+                buffer.sizeCopied = 0;
+                return;
+            }
+            int length = value.length();
+            if (buffer.data == null || buffer.data.length < length) {
+                buffer.data = value.toCharArray();
+            } else {
+                value.getChars(0, length, buffer.data, 0);
+            }
+            buffer.sizeCopied = length;
+        }
+
+        long getSizeBytes() {
+            return mNulls == null ? 0 : mNulls.size() / 8;
+        }
+    }
+
+    /** Whole numbers, as int while they all fit */
+    private static class IntegerColumn extends Column {
+
+        private int[] mInts;
+
+        /** Replaces mInts once a value doesn't fit in an int */
+        private long[] mLongs;
+
+        IntegerColumn(int capacity) {
+            mInts = new int[capacity];
+        }
+
+        @Override
+        void readNull(int row) {
+            // The array already holds 0
+        }
+
+        @Override
+        void readValue(Cursor source, int column, int row) {
+            long value = source.getLong(column);
+            if (mLongs == null && value == (int) value) {
+                mInts[row] = (int) value;
+                return;
+            }
+            if (mLongs == null) {
+                mLongs = new long[mInts.length];
+                for (int i = 0; i < row; i++) {
+                    mLongs[i] = mInts[i];
+                }
+                mInts = null;
+            }
+            mLongs[row] = value;
+        }
+
+        @Override
+        void trim(int count) {
+            if (mLongs != null && mLongs.length != count) {
+                mLongs = Arrays.copyOf(mLongs, count);
+            } else if (mInts != null && mInts.length != count) {
+                mInts = Arrays.copyOf(mInts, count);
+            }
+        }
+
+        @Override
+        int getType(int row) {
+            return isNull(row) ? FIELD_TYPE_NULL : FIELD_TYPE_INTEGER;
+        }
+
+        @Override
+        String getString(int row) {
+            return isNull(row) ? null : String.valueOf(getLong(row));
+        }
+
+        @Override
+        long getLong(int row) {
+            return mLongs != null ? mLongs[row] : mInts[row];
+        }
+
+        @Override
+        long getSizeBytes() {
+            return super.getSizeBytes() + (mLongs != null ? 8L * mLongs.length : 4L * mInts.length);
+        }
+    }
+
+    /** Text of every row packed one after the other, mEnds[row] is where the text of row ends */
+    private static class TextColumn extends Column {
+
+        /** Characters while they are all Latin-1, one byte each */
+        private byte[] mBytes;
+
+        /** Replaces mBytes once a character doesn't fit in a byte */
+        private char[] mChars;
+
+        private final int[] mEnds;
+
+        /** Number of characters stored */
+        private int mLength;
+
+        TextColumn(int capacity) {
+            // Product names are short, start with room for about 16 characters a row
+            mBytes = new byte[Math.max(16, capacity * 16)];
+            mEnds = new int[capacity];
+        }
+
+        @Override
+        void readNull(int row) {
+            mEnds[row] = mLength;
+        }
+
+        @Override
+        void readValue(Cursor source, int column, int row) {
+            String value = source.getString(column);
+            int length = value.length();
+            ensureCapacity(mLength + length);
+            if (mChars == null) {
+                for (int i = 0; i < length; i++) {
+                    char c = value.charAt(i);
+                    if (c > 0xFF) {
+                        inflate();
+                        break;
+                    }
+                    mBytes[mLength + i] = (byte) c;
+                }
+            }
+            if (mChars != null) {
+                value.getChars(0, length, mChars, mLength);
+            }
+            mLength += length;
+            mEnds[row] = mLength;
+        }
+
+        /** Switches to two bytes a character, keeping what has been stored so far */
+        private void inflate() {
+            mChars = new char[mBytes.length];
+            for (int i = 0; i < mLength; i++) {
+                mChars[i] = (char) (mBytes[i] & 0xFF);
+            }
+            mBytes = null;
+        }
+
+        private void ensureCapacity(int capacity) {
+            int current = mChars != null ? mChars.length : mBytes.length;
+            if (capacity <= current) {
+                return;
+            }
+            int newCapacity = Math.max(capacity, current * 2);
+            if (mChars != null) {
+                mChars = Arrays.copyOf(mChars, newCapacity);
+            } else {
+                mBytes = Arrays.copyOf(mBytes, newCapacity);
+            }
+        }
+
+        @Override
+        void trim(int count) {
+            if (mChars != null && mChars.length != mLength) {
+                mChars = Arrays.copyOf(mChars, mLength);
+            } else if (mBytes != null && mBytes.length != mLength) {
+                mBytes = Arrays.copyOf(mBytes, mLength);
+            }
+            // mEnds is only read up to count, it is not worth copying
+        }
+
+        private int start(int row) {
+            return row == 0 ? 0 : mEnds[row - 1];
+        }
+
+        @Override
+        int getType(int row) {
+            return isNull(row) ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+        }
+
+        @Override
+        String getString(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            int start = start(row);
+            int length = mEnds[row] - start;
+            return mChars != null ? new String(mChars, start, length) : new String(mBytes, start, length, LATIN_1);
+        }
+
+        @Override
+        long getLong(int row) {
+            return isNull(row) ? 0 : Long.parseLong(getString(row));
+        }
+
+        @Override
+        void copyTo(int row, CharArrayBuffer buffer) {
+            if (isNull(row)) {
+                buffer.sizeCopied = 0;
+                return;
+            }
+            int start = start(row);
+            int length = mEnds[row] - start;
+            if (buffer.data == null || buffer.data.length < length) {
+                buffer.data = new char[length];
+            }
+            if (mChars != null) {
+                System.arraycopy(mChars, start, buffer.data, 0, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    buffer.data[i] = (char) (mBytes[start + i] & 0xFF);
+                }
+            }
+            buffer.sizeCopied = length;
+        }
+
+        @Override
+        long getSizeBytes() {
+            long text = mChars != null ? 2L * mChars.length : mBytes.length;
+            return super.getSizeBytes() + text + 4L * mEnds.length;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 style CSV support for the product import and export: fields are separated by
+ * commas, and a field containing a comma or a quote is quoted, with quotes doubled inside it.
+ * A record is a single line.
+ */
+final class Csv {
+
+    private Csv() {
+    }
+
+    /**
+     * Splits one line into its fields, which are added to the given list (cleared first).
+     *
+     * @throws IllegalArgumentException if a quoted field is not closed
+     */
+    static void parseLine(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < length && line.charAt(i) == '"') {
+                // Quoted field, runs until the next quote that isn't doubled
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("Unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Unexpected character after quoted field");
+                }
+            } else {
+                while (i < length && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            }
+            fields.add(field.toString());
+            if (i >= length) {
+                return;
+            }
+            // Skip the comma
+            i++;
+        }
+    }
+
+    /** Appends one field to out, quoting it if needed */
+    static void writeField(Appendable out, String field) throws IOException {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0
+                && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            out.append(field);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+/**
+ * Normalization of the ISBNs scanned or typed by the user ("0-306-40615-2", "978 0 306 40615 7")
+ * into the form stored in {@link BookInventoryContract.BookEntry#COLUMN_ISBN}: the 13 digits of
+ * the ISBN-13. An ISBN-10 becomes the ISBN-13 of the same book, so a book has a single key
+ * however it was entered, and looking it up is one probe of the unique ISBN index.
+ */
+public final class Isbns {
+
+    /** Prefix of the ISBN-13 of every book that also has an ISBN-10 */
+    private static final String BOOKLAND_PREFIX = "978";
+
+    private Isbns() {
+    }
+
+    /**
+     * Returns the ISBN-13 of the given ISBN-10 or ISBN-13, without its separators, e.g.
+     * "0-306-40615-2" becomes "9780306406157". Spaces and dashes are dropped.
+     *
+     * @throws IllegalArgumentException if the text has anything else but digits (and a final X
+     *                                  for an ISBN-10), doesn't have 10 or 13 of them, or its
+     *                                  check digit is wrong
+     */
+    public static String normalize(String isbn) {
+        StringBuilder digits = new StringBuilder(13);
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if ((c == 'X' || c == 'x') && digits.length() == 9) {
+                // The check digit of an ISBN-10 can be 10, written X
+                digits.append('X');
+            } else if (c != ' ' && c != '-') {
+                throw new IllegalArgumentException("Invalid ISBN: " + isbn);
+            }
+        }
+
+        if (digits.length() == 10 && isValidIsbn10(digits)) {
+            String isbn13 = BOOKLAND_PREFIX + digits.substring(0, 9);
+            return isbn13 + checkDigit13(isbn13);
+        }
+        if (digits.length() == 13 && digits.indexOf("X") < 0 && isValidIsbn13(digits)) {
+            return digits.toString();
+        }
+        throw new IllegalArgumentException("Invalid ISBN: " + isbn);
+    }
+
+    /** Whether the text is an ISBN-10 or ISBN-13 that {@link #normalize} accepts */
+    public static boolean isValid(String isbn) {
+        try {
+            normalize(isbn);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /** The weighted sum of the ten digits, weights 10 down to 1, must be a multiple of 11 */
+    private static boolean isValidIsbn10(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = digits.charAt(i);
+            sum += (10 - i) * (c == 'X' ? 10 : c - '0');
+        }
+        return sum % 11 == 0;
+    }
+
+    /** ISBN-13s are EANs of the 978 and 979 prefixes, with the EAN check digit */
+    private static boolean isValidIsbn13(CharSequence digits) {
+        String prefix = digits.subSequence(0, 3).toString();
+        if (!BOOKLAND_PREFIX.equals(prefix) && !"979".equals(prefix)) {
+            return false;
+        }
+        return checkDigit13(digits.subSequence(0, 12)) == digits.charAt(12);
+    }
+
+    /** Returns the check digit of the first twelve digits of an EAN-13, weights 1 and 3 */
+    private static char checkDigit13(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (digits.charAt(i) - '0');
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds, safe to record into from any thread without locking.
+ * <p>
+ * Values below {@link #LINEAR_LIMIT} get a bucket each. Above, every power of two is split into
+ * {@link #SUB_BUCKETS} buckets of equal width, so a reported percentile is at most 1/8 (12.5%)
+ * above the exact value whatever the scale. Recording is a few shifts and atomic adds.
+ */
+public class LatencyHistogram {
+
+    /** Values below this have a bucket each */
+    static final int LINEAR_LIMIT = 16;
+
+    /** Number of buckets each power of two is split into */
+    static final int SUB_BUCKETS = 8;
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /** Exponent of {@link #LINEAR_LIMIT}, the first power of two split into sub-buckets */
+    private static final int FIRST_EXPONENT = 4;
+
+    /** Values of 2^40 microseconds (about 12 days) and more all go to the last bucket */
+    private static final int LAST_EXPONENT = 39;
+
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (LAST_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong mCount = new AtomicLong();
+
+    private final AtomicLong mTotalMicros = new AtomicLong();
+
+    private final AtomicLong mMaxMicros = new AtomicLong();
+
+    /** Records one latency, negative values count as 0 */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        mCounts.incrementAndGet(bucketIndex(micros));
+        mCount.incrementAndGet();
+        mTotalMicros.addAndGet(micros);
+        long max = mMaxMicros.get();
+        while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+            max = mMaxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getTotalMicros() {
+        return mTotalMicros.get();
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros.get();
+    }
+
+    /** Returns the mean latency, 0 if nothing was recorded */
+    public double getMeanMicros() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mTotalMicros.get() / (double) count;
+    }
+
+    /**
+     * Returns the latency that the given percentage of the recorded values are at or below, as
+     * the upper bound of its bucket but never above the largest value recorded. Returns 0 if
+     * nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), mMaxMicros.get());
+            }
+        }
+        // Values recorded while we were reading
+        return mMaxMicros.get();
+    }
+
+    /** Clears every recorded value. Values recorded meanwhile may be partly kept. */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mTotalMicros.set(0);
+        mMaxMicros.set(0);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < LINEAR_LIMIT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > LAST_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        // The bits right after the leading one choose the sub-bucket
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Returns the smallest value of the given bucket */
+    static long lowerBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + FIRST_EXPONENT;
+        int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+    }
+
+    /** Returns the largest value of the given bucket */
+    static long upperBound(int index) {
+        return index == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowerBound(index + 1) - 1;
+    }
+}
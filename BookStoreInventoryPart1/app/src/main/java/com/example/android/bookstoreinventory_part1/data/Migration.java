@@ -0,0 +1,27 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step of the schema history. A migration takes the database from version
+ * {@code getVersion() - 1} to {@link #getVersion()}.
+ */
+abstract class Migration {
+
+    /** Database version this migration upgrades to */
+    private final int mVersion;
+
+    Migration(int version) {
+        mVersion = version;
+    }
+
+    int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Apply the schema change. This runs inside the transaction that {@link BookInventoryDbHelper}
+     * opens for onCreate/onUpgrade, so it must not begin or end transactions on its own.
+     */
+    abstract void apply(SQLiteDatabase db);
+}
@@ -0,0 +1,43 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+/**
+ * Normalization of the phone numbers typed by the user ("+1 (555) 010-9999") into the form stored
+ * in {@link BookInventoryContract.SupplierEntry#COLUMN_SUPPLIER_PHONE}: the digits, with a leading
+ * "+" if there was one. Phone numbers are kept as text, they don't fit in an int and leading
+ * zeros matter.
+ */
+public final class Phones {
+
+    /** The longest number the E.164 numbering plan allows */
+    static final int MAX_DIGITS = 15;
+
+    private Phones() {
+    }
+
+    /**
+     * Returns the phone number without its separators, e.g. "+1 (555) 010-9999" becomes
+     * "+15550109999". Spaces, dashes, dots, slashes and parentheses are dropped.
+     *
+     * @throws IllegalArgumentException if the text has anything else but digits, has no digit,
+     *                                  or more than {@link #MAX_DIGITS}
+     */
+    public static String normalize(String phone) {
+        StringBuilder normalized = new StringBuilder(phone.length());
+        int digits = 0;
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                normalized.append(c);
+                digits++;
+            } else if (c == '+' && normalized.length() == 0) {
+                normalized.append(c);
+            } else if (c != ' ' && c != '-' && c != '.' && c != '/' && c != '(' && c != ')') {
+                throw new IllegalArgumentException("Invalid phone number: " + phone);
+            }
+        }
+        if (digits == 0 || digits > MAX_DIGITS) {
+            throw new IllegalArgumentException("Invalid phone number: " + phone);
+        }
+        return normalized.toString();
+    }
+}
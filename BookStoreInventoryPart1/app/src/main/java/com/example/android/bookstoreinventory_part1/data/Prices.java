@@ -0,0 +1,47 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions between the price typed or shown to the user ("9.99") and the price stored in
+ * {@link BookInventoryContract.BookEntry#COLUMN_PRODUCT_PRICES}, a whole number of cents.
+ */
+public final class Prices {
+
+    private Prices() {
+    }
+
+    /**
+     * Parses a price such as "9", "9.9" or "9.99" into cents.
+     *
+     * @throws NumberFormatException if the text is not a price with at most two decimals,
+     *                               or is negative
+     */
+    public static long parseCents(String price) {
+        try {
+            long cents = new BigDecimal(price.trim()).movePointRight(2).longValueExact();
+            if (cents < 0) {
+                throw new NumberFormatException("Price must not be negative: " + price);
+            }
+            return cents;
+        } catch (ArithmeticException e) {
+            // More than two decimals, or too large for a long
+            throw new NumberFormatException("Invalid price: " + price);
+        }
+    }
+
+    /** Formats a price in cents with two decimals, e.g. 999 becomes "9.99" */
+    public static String format(long cents) {
+        StringBuilder price = new StringBuilder();
+        if (cents < 0) {
+            price.append('-');
+            cents = -cents;
+        }
+        long fraction = cents % 100;
+        price.append(cents / 100).append('.');
+        if (fraction < 10) {
+            price.append('0');
+        }
+        return price.append(fraction).toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+/**
+ * A product of the inventory, as read from one row of the product table by {@link ProductReader}.
+ */
+public final class Product {
+
+    private final long mId;
+
+    private final String mName;
+
+    private final long mPriceCents;
+
+    private final int mQuantity;
+
+    private final int mSupplier;
+
+    private final String mSupplierPhone;
+
+    private final int mReorderThreshold;
+
+    private final String mIsbn;
+
+    public Product(long id, String name, long priceCents, int quantity, int supplier, String supplierPhone,
+                   int reorderThreshold, String isbn) {
+        mId = id;
+        mName = name;
+        mPriceCents = priceCents;
+        mQuantity = quantity;
+        mSupplier = supplier;
+        mSupplierPhone = supplierPhone;
+        mReorderThreshold = reorderThreshold;
+        mIsbn = isbn;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /** Price in cents, see {@link Prices} */
+    public long getPriceCents() {
+        return mPriceCents;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    /** _ID of the supplier, see {@link BookInventoryContract.SupplierEntry} */
+    public int getSupplier() {
+        return mSupplier;
+    }
+
+    /** Phone number of the supplier, see {@link Phones}, empty if unknown */
+    public String getSupplierPhone() {
+        return mSupplierPhone;
+    }
+
+    /** Quantity at or below which the product is low in stock */
+    public int getReorderThreshold() {
+        return mReorderThreshold;
+    }
+
+    /** ISBN-13 of the book, see {@link Isbns}, null if it has none */
+    public String getIsbn() {
+        return mIsbn;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounded LRU cache of decoded products keyed by _ID, kept by {@link BookInventoryProvider} so a
+ * product that was just read (in a list page or on its own) can be served again without SQLite.
+ * <p>
+ * Every write to the table must invalidate what it touched. A reader takes the
+ * {@link #getGeneration() generation} before reading the database and passes it to
+ * {@link #put}: if anything was invalidated meanwhile the row it read may be stale and it is not
+ * cached. The phone number is the supplier's, so changing a supplier invalidates every product.
+ */
+public class ProductCache {
+
+    /** Default number of products kept */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** The columns held for each product, which the cache can serve any subset of */
+    static final String[] COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+            BookEntry.COLUMN_REORDER_THRESHOLD,
+            BookEntry.COLUMN_ISBN};
+
+    private static final List<String> COLUMN_LIST = Arrays.asList(COLUMNS);
+
+    private final LruCache<Long, Product> mProducts;
+
+    /** Incremented by every invalidation, guarded by this */
+    private long mGeneration;
+
+    public ProductCache(int maxSize) {
+        mProducts = new LruCache<>(maxSize);
+    }
+
+    /** Returns the cached product, or null on a miss */
+    public Product get(long id) {
+        return mProducts.get(id);
+    }
+
+    /** Returns the current generation, to pass to {@link #put} after reading the database */
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches the product read from the database, unless something was invalidated since the
+     * given generation was taken.
+     */
+    public synchronized void put(Product product, long generation) {
+        if (generation == mGeneration) {
+            mProducts.put(product.getId(), product);
+        }
+    }
+
+    /** Drops the product with the given _ID, after it was updated or deleted */
+    public synchronized void invalidate(long id) {
+        mGeneration++;
+        mProducts.remove(id);
+    }
+
+    /** Drops every product, after a write whose rows aren't known */
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mProducts.evictAll();
+    }
+
+    public int hitCount() {
+        return mProducts.hitCount();
+    }
+
+    public int missCount() {
+        return mProducts.missCount();
+    }
+
+    /** Number of products dropped to make room, or by {@link #invalidateAll()} */
+    public int evictionCount() {
+        return mProducts.evictionCount();
+    }
+
+    public int size() {
+        return mProducts.size();
+    }
+
+    /** Whether a cursor with this projection can be built from cached products (null is all) */
+    static boolean canServe(String[] projection) {
+        return projection == null || COLUMN_LIST.containsAll(Arrays.asList(projection));
+    }
+
+    /** Whether every cached column is in the projection, so each row can be cached */
+    static boolean canCache(String[] projection) {
+        return projection == null || Arrays.asList(projection).containsAll(COLUMN_LIST);
+    }
+
+    /**
+     * Returns a cursor holding the product in the given projection (null is all the cached
+     * columns), or no row if the product is null.
+     */
+    static Cursor toCursor(Product product, String[] projection) {
+        String[] columns = projection == null ? COLUMNS : projection;
+        MatrixCursor cursor = new MatrixCursor(columns, 1);
+        if (product == null) {
+            return cursor;
+        }
+        Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (COLUMN_LIST.indexOf(columns[i])) {
+                case 0:
+                    row[i] = product.getId();
+                    break;
+                case 1:
+                    row[i] = product.getName();
+                    break;
+                case 2:
+                    row[i] = product.getPriceCents();
+                    break;
+                case 3:
+                    row[i] = product.getQuantity();
+                    break;
+                case 4:
+                    row[i] = product.getSupplier();
+                    break;
+                case 5:
+                    row[i] = product.getSupplierPhone();
+                    break;
+                case 6:
+                    row[i] = product.getReorderThreshold();
+                    break;
+                case 7:
+                    row[i] = product.getIsbn();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Column not cached: " + columns[i]);
+            }
+        }
+        cursor.addRow(row);
+        return cursor;
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StockMovementEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams products from a CSV file into the product table. The first line is a header naming the
+ * columns with the {@link BookEntry} column names (in any order, the product name is required).
+ * Prices are in cents, as stored in the table.
+ * <p>
+ * Lines are read one at a time and inserted with a single compiled statement, committing every
+ * chunkSize rows, so memory use doesn't grow with the file. Each row is checked with the same
+ * rules as {@link BookInventoryProvider#insert}; invalid rows are skipped and counted. The stock of
+ * each imported product is recorded in the {@link StockLedger} in the same transaction.
+ * <p>
+ * The supplier column holds the _ID of an existing supplier, rows naming another one are rejected.
+ * The phone number column sets the phone number of that supplier, as it does through the provider.
+ * <p>
+ * With a {@link BookInventoryContract#QUERY_PARAMETER_ON_CONFLICT} strategy, a row whose product
+ * is already stored is resolved like an upsert through the provider instead of adding a copy. The
+ * file has no ISBN column, so the key is the name, ignoring case, and the supplier.
+ */
+public class ProductCsvImporter {
+
+    /** Default number of rows committed per transaction */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /** Only the first rejected lines are described in the result, the others are only counted */
+    public static final int MAX_REPORTED_REJECTIONS = 100;
+
+    /** The columns that can be imported, all but the last one are bound in the insert statement */
+    static final String[] COLUMNS = {
+            BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER};
+
+    /** Index in {@link #COLUMNS} of the phone number, which is the supplier's and isn't inserted */
+    private static final int PHONE_INDEX = COLUMNS.length - 1;
+
+    /** Index in {@link #COLUMNS} of the quantity, which the ledger records */
+    private static final int QUANTITY_INDEX = 2;
+
+    /**
+     * Told after each committed chunk.
+     */
+    public interface ProgressListener {
+        void onProgress(int imported, int rejected);
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static final class Result {
+
+        /** Number of rows inserted */
+        public final int imported;
+
+        /** Number of rows resolved against a stored product by the conflict strategy */
+        public final int merged;
+
+        /** Number of rows skipped because they were invalid */
+        public final int rejected;
+
+        /** "line N: reason" for the first {@link #MAX_REPORTED_REJECTIONS} rejected rows */
+        public final ArrayList<String> rejections;
+
+        /** Number of times a row changed the phone number of its supplier */
+        public final int suppliersChanged;
+
+        Result(int imported, int merged, int rejected, ArrayList<String> rejections, int suppliersChanged) {
+            this.imported = imported;
+            this.merged = merged;
+            this.rejected = rejected;
+            this.rejections = rejections;
+            this.suppliersChanged = suppliersChanged;
+        }
+    }
+
+    private final SQLiteDatabase mDatabase;
+
+    private final int mChunkSize;
+
+    private final ProgressListener mListener;
+
+    private final StockLedger mLedger;
+
+    private final ProductStatements mStatements;
+
+    /** What a row whose product is already stored does, null to insert every row */
+    private final String mOnConflict;
+
+    /**
+     * Constructs a new {@link ProductCsvImporter}.
+     *
+     * @param database  The database to import into
+     * @param chunkSize Number of rows committed per transaction
+     * @param listener  Told after each chunk, may be null
+     */
+    public ProductCsvImporter(SQLiteDatabase database, int chunkSize, ProgressListener listener) {
+        this(database, chunkSize, listener, new StockLedger(database), new ProductStatements(database), null);
+    }
+
+    /**
+     * Constructs a new {@link ProductCsvImporter} recording into the provider's ledger, resolving
+     * the rows already stored with the given {@link BookInventoryContract#QUERY_PARAMETER_ON_CONFLICT}
+     * strategy, or inserting every row if it is null
+     */
+    ProductCsvImporter(SQLiteDatabase database, int chunkSize, ProgressListener listener, StockLedger ledger,
+                       ProductStatements statements, String onConflict) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        mDatabase = database;
+        mChunkSize = chunkSize;
+        mListener = listener;
+        mLedger = ledger;
+        mStatements = statements;
+        mOnConflict = onConflict;
+    }
+
+    /**
+     * Imports every line of the given CSV. Must not be called on the UI thread. The reader is
+     * not closed.
+     *
+     * @throws IllegalArgumentException if the header is missing or has no product name column
+     */
+    public Result importCsv(Reader input) throws IOException {
+        BufferedReader reader = input instanceof BufferedReader
+                ? (BufferedReader) input : new BufferedReader(input);
+
+        List<String> fields = new ArrayList<>();
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV file is empty");
+        }
+        Csv.parseLine(header, fields);
+        // Position in the CSV line of each of COLUMNS, -1 if the file doesn't have it
+        int[] fieldIndices = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            fieldIndices[i] = fields.indexOf(COLUMNS[i]);
+        }
+        if (fieldIndices[0] < 0) {
+            throw new IllegalArgumentException("CSV header has no " + BookEntry.COLUMN_PRODUCT_NAMES + " column");
+        }
+
+        SQLiteStatement insert = mDatabase.compileStatement(buildInsertSql());
+        SQLiteStatement replace = BookInventoryContract.CONFLICT_REPLACE.equals(mOnConflict)
+                ? mDatabase.compileStatement(buildReplaceSql(fieldIndices)) : null;
+        SQLiteStatement updatePhone = mDatabase.compileStatement(ProductStatements.UPDATE_SUPPLIER_PHONE_SQL);
+        ContentValues values = new ContentValues();
+        ArrayList<String> rejections = new ArrayList<>();
+        int imported = 0;
+        int merged = 0;
+        int rejected = 0;
+        int suppliersChanged = 0;
+        int lineNumber = 1;
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                mDatabase.beginTransaction();
+                try {
+                    for (int inChunk = 0; inChunk < mChunkSize && line != null; line = reader.readLine()) {
+                        lineNumber++;
+                        if (line.isEmpty()) {
+                            continue;
+                        }
+                        inChunk++;
+                        try {
+                            Csv.parseLine(line, fields);
+                            readValues(fields, fieldIndices, values);
+                            BookInventoryProvider.validateNewProduct(values);
+                            long existingId = mOnConflict == null ? -1 : mStatements.queryIdByNameAndSupplier(
+                                    values.getAsString(BookEntry.COLUMN_PRODUCT_NAMES),
+                                    values.getAsLong(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME));
+                            Long quantity = values.getAsLong(BookEntry.COLUMN_PRODUCTS_QUANTITY);
+                            if (existingId == -1) {
+                                bindValues(insert, values);
+                                long id = insert.executeInsert();
+                                if (quantity != null) {
+                                    mLedger.record(id, quantity, StockMovementEntry.REASON_IMPORT);
+                                }
+                                imported++;
+                            } else {
+                                merged++;
+                                if (replace != null) {
+                                    if (fieldIndices[QUANTITY_INDEX] >= 0) {
+                                        mLedger.recordQuantity(existingId, quantity == null ? 0 : quantity,
+                                                StockMovementEntry.REASON_IMPORT);
+                                    }
+                                    bindValues(replace, values);
+                                    replace.bindLong(PHONE_INDEX + 1, existingId);
+                                    replace.executeUpdateDelete();
+                                } else {
+                                    if (BookInventoryContract.CONFLICT_SUM_QUANTITY.equals(mOnConflict)
+                                            && quantity != null && quantity > 0
+                                            && mStatements.adjustQuantity(existingId, quantity.intValue()) > 0) {
+                                        mLedger.record(existingId, quantity, StockMovementEntry.REASON_IMPORT);
+                                    }
+                                    // The other values of the row are dropped, the phone number too
+                                    continue;
+                                }
+                            }
+                            String phone = values.getAsString(COLUMNS[PHONE_INDEX]);
+                            if (phone != null) {
+                                updatePhone.bindString(1, Phones.normalize(phone));
+                                updatePhone.bindLong(2, values.getAsLong(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME));
+                                suppliersChanged += updatePhone.executeUpdateDelete();
+                            }
+                        } catch (IllegalArgumentException | SQLiteException e) {
+                            rejected++;
+                            if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+                                rejections.add("line " + lineNumber + ": " + e.getMessage());
+                            }
+                        }
+                    }
+                    mDatabase.setTransactionSuccessful();
+                } finally {
+                    mDatabase.endTransaction();
+                }
+                if (mListener != null) {
+                    mListener.onProgress(imported, rejected);
+                }
+            }
+        } finally {
+            insert.close();
+            if (replace != null) {
+                replace.close();
+            }
+            updatePhone.close();
+        }
+        return new Result(imported, merged, rejected, rejections, suppliersChanged);
+    }
+
+    private static String buildInsertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(BookEntry.TABLE_NAME).append(" (");
+        for (int i = 0; i < PHONE_INDEX; i++) {
+            sql.append(i == 0 ? "" : ", ").append(COLUMNS[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < PHONE_INDEX; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Returns the UPDATE giving a stored product the values of a row. Its parameters are numbered
+     * like those of the insert, so {@link #bindValues} binds both, and the _ID comes last. Only
+     * the columns the file has are set.
+     */
+    private static String buildReplaceSql(int[] fieldIndices) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(BookEntry.TABLE_NAME).append(" SET ");
+        for (int i = 0; i < PHONE_INDEX; i++) {
+            if (fieldIndices[i] >= 0) {
+                sql.append(i == 0 ? "" : ", ").append(COLUMNS[i]).append(" = ?").append(i + 1);
+            }
+        }
+        return sql.append(" WHERE ").append(BookEntry._ID).append(" = ?").append(PHONE_INDEX + 1).toString();
+    }
+
+    /** Copies the fields of one line into values, as the provider would receive them */
+    private static void readValues(List<String> fields, int[] fieldIndices, ContentValues values) {
+        values.clear();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            int fieldIndex = fieldIndices[i];
+            if (fieldIndex < 0 || fieldIndex >= fields.size()) {
+                continue;
+            }
+            String field = fields.get(fieldIndex);
+            if (i == 0) {
+                values.put(COLUMNS[i], field);
+            } else if (i == PHONE_INDEX) {
+                // Phone numbers are text, they are checked by the validation
+                if (!field.trim().isEmpty()) {
+                    values.put(COLUMNS[i], field);
+                }
+            } else if (!field.isEmpty()) {
+                values.put(COLUMNS[i], parseNumber(COLUMNS[i], field));
+            }
+        }
+    }
+
+    private static long parseNumber(String column, String field) {
+        try {
+            return Long.parseLong(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + ": " + field);
+        }
+    }
+
+    /** Binds the validated values, columns left out get the table defaults */
+    private static void bindValues(SQLiteStatement statement, ContentValues values) {
+        statement.clearBindings();
+        statement.bindString(1, values.getAsString(COLUMNS[0]));
+        for (int i = 1; i < PHONE_INDEX; i++) {
+            Long value = values.getAsLong(COLUMNS[i]);
+            // NOT NULL columns with a default get it through 0, like the provider's defaults
+            statement.bindLong(i + 1, value == null ? 0 : value);
+        }
+    }
+}
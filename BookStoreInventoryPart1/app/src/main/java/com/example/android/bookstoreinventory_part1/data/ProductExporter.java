@@ -0,0 +1,135 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Streams the whole product table as CSV or JSON. The table is walked in _ID order, one chunk of
+ * rows per query, seeking past the last _ID written, so neither the table nor the output is ever
+ * held in memory. Each chunk is its own query, so rows changed during a long export may or may
+ * not be included.
+ * <p>
+ * The CSV has the same header and columns as {@link ProductCsvImporter} expects, plus _id, so an
+ * export can be imported again.
+ */
+class ProductExporter {
+
+    private static final String LOG_TAG = ProductExporter.class.getSimpleName();
+
+    /** Number of rows read per query */
+    static final int CHUNK_SIZE = 1000;
+
+    /** Columns written, _ID first and then the importable columns */
+    static final String[] COLUMNS;
+
+    static {
+        COLUMNS = new String[ProductCsvImporter.COLUMNS.length + 1];
+        COLUMNS[0] = BookEntry._ID;
+        System.arraycopy(ProductCsvImporter.COLUMNS, 0, COLUMNS, 1, ProductCsvImporter.COLUMNS.length);
+    }
+
+    /** Index in {@link #COLUMNS} of the supplier's phone number, which is text */
+    private static final int PHONE_INDEX = COLUMNS.length - 1;
+
+    /**
+     * Receives the rows of the table, one call per row.
+     */
+    private interface RowWriter {
+        void writeRow(Cursor cursor) throws IOException;
+    }
+
+    private final SQLiteDatabase mDatabase;
+
+    ProductExporter(SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    /** Writes every product as a CSV line after a header line. Returns the number of products. */
+    int exportCsv(final Writer out) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(COLUMNS[i]);
+        }
+        out.write('\n');
+
+        int rows = forEachRow(new RowWriter() {
+            @Override
+            public void writeRow(Cursor cursor) throws IOException {
+                // _id and the numbers are written as they are, only the name and the phone
+                // number may need quoting
+                out.write(Long.toString(cursor.getLong(0)));
+                out.write(',');
+                Csv.writeField(out, cursor.getString(1));
+                for (int i = 2; i < PHONE_INDEX; i++) {
+                    out.write(',');
+                    out.write(Long.toString(cursor.getLong(i)));
+                }
+                out.write(',');
+                Csv.writeField(out, cursor.getString(PHONE_INDEX));
+                out.write('\n');
+            }
+        });
+        out.flush();
+        return rows;
+    }
+
+    /** Writes every product as an object of a JSON array. Returns the number of products. */
+    int exportJson(Writer out) throws IOException {
+        final JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        int rows = forEachRow(new RowWriter() {
+            @Override
+            public void writeRow(Cursor cursor) throws IOException {
+                json.beginObject();
+                json.name(COLUMNS[0]).value(cursor.getLong(0));
+                json.name(COLUMNS[1]).value(cursor.getString(1));
+                for (int i = 2; i < PHONE_INDEX; i++) {
+                    json.name(COLUMNS[i]).value(cursor.getLong(i));
+                }
+                json.name(COLUMNS[PHONE_INDEX]).value(cursor.getString(PHONE_INDEX));
+                json.endObject();
+            }
+        });
+        json.endArray();
+        json.flush();
+        return rows;
+    }
+
+    private int forEachRow(RowWriter writer) throws IOException {
+        long start = System.nanoTime();
+        String[] selectionArgs = new String[1];
+        long lastId = 0;
+        int rows = 0;
+        int chunkRows;
+        do {
+            selectionArgs[0] = Long.toString(lastId);
+            Cursor cursor = mDatabase.query(BookInventoryMigrations.VIEW_PRODUCT_DETAILS, COLUMNS, BookEntry._ID + " > ?",
+                    selectionArgs, null, null, BookEntry._ID, Integer.toString(CHUNK_SIZE));
+            try {
+                chunkRows = 0;
+                while (cursor.moveToNext()) {
+                    writer.writeRow(cursor);
+                    lastId = cursor.getLong(0);
+                    chunkRows++;
+                }
+            } finally {
+                cursor.close();
+            }
+            rows += chunkRows;
+        } while (chunkRows == CHUNK_SIZE);
+
+        long millis = Math.max((System.nanoTime() - start) / 1000000, 1);
+        Log.i(LOG_TAG, "Exported " + rows + " products in " + millis + " ms ("
+                + (rows * 1000L / millis) + " rows/s)");
+        return rows;
+    }
+}
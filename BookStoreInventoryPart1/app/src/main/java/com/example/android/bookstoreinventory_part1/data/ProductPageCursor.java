@@ -0,0 +1,374 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Read-only {@link Cursor} over all the products in _ID order that only keeps a few pages of rows
+ * in memory. Pages are fetched from {@link BookInventoryProvider} with keyset queries
+ * ({@link BookEntry#buildPageUri(int, long)}) when the cursor is moved onto them, and the least
+ * recently used page is dropped once more than maxPages are held.
+ * <p>
+ * The first page is fetched when the cursor is created. Once the cursor is moved onto a page, the
+ * page after it (or before it, when moving backwards) is fetched on a background thread, so a list
+ * scrolling through the rows finds the next page ready and the thread moving the cursor, usually
+ * the UI thread, doesn't wait on the provider. Only a jump to a page that isn't held or being
+ * fetched queries the provider on the moving thread.
+ * <p>
+ * A page after one already seen is an index seek returning pageSize rows, so it doesn't depend on
+ * the table size. So is a jump when the _IDs counted at creation have no gaps, the page then
+ * starts at a known _ID. Otherwise, a jump (like a fast scroll to the end of the list) seeks to
+ * the nearest page seen before it and skips the rows in between with an OFFSET, which costs time
+ * in proportion to the rows skipped: up to the whole table on the first jump to its end.
+ */
+public class ProductPageCursor extends AbstractCursor {
+
+    /** Default number of rows per page */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /** Default number of pages kept in memory */
+    public static final int DEFAULT_MAX_PAGES = 5;
+
+    /** Fetches the pages about to be moved onto, one at a time, on a daemon thread */
+    private static final Executor sPrefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, ProductPageCursor.class.getSimpleName() + " prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final ContentResolver mResolver;
+
+    private final String[] mProjection;
+
+    private final int mIdColumnIndex;
+
+    private final int mPageSize;
+
+    /** Total number of products, counted when the cursor is created */
+    private final int mCount;
+
+    /** Smallest _ID when the cursor is created */
+    private final long mFirstId;
+
+    /**
+     * Whether the _IDs counted at creation run from mFirstId without gaps, so the row at a
+     * position has the _ID mFirstId + position
+     */
+    private final boolean mDenseIds;
+
+    /** _ID of the last row of each page seen so far (0 if unknown), used to seek to the next page */
+    private final long[] mLastIds;
+
+    /** Pages currently held in memory, in least recently used order */
+    private final LinkedHashMap<Integer, Cursor> mPages;
+
+    /** Page holding the current row */
+    private Cursor mCurrentPage;
+
+    /** Index of the page being fetched in the background, -1 if there is none */
+    private int mPrefetchIndex = -1;
+
+    /** Fetch of the page mPrefetchIndex, only its result is handed over to the moving thread */
+    private FutureTask<Cursor> mPrefetch;
+
+    /**
+     * Constructs a new {@link ProductPageCursor}, counts the products and fetches the first page.
+     * Must not be called on the UI thread.
+     *
+     * @param resolver   used to query the provider
+     * @param projection columns of the cursor, must contain {@link BookEntry#_ID}
+     * @param pageSize   number of rows fetched at once
+     * @param maxPages   number of pages kept in memory
+     */
+    public ProductPageCursor(ContentResolver resolver, String[] projection, int pageSize, final int maxPages) {
+        mResolver = resolver;
+        mProjection = projection;
+        mPageSize = pageSize;
+
+        mIdColumnIndex = indexOf(projection, BookEntry._ID);
+        if (mIdColumnIndex < 0) {
+            throw new IllegalArgumentException("Projection must contain " + BookEntry._ID);
+        }
+
+        Cursor countCursor = resolver.query(BookEntry.CONTENT_URI, new String[]{"COUNT(*)",
+                "MIN(" + BookEntry._ID + ")", "MAX(" + BookEntry._ID + ")"}, null, null, null);
+        try {
+            mCount = countCursor.moveToFirst() ? countCursor.getInt(0) : 0;
+            mFirstId = mCount > 0 ? countCursor.getLong(1) : 0;
+            mDenseIds = mCount > 0 && countCursor.getLong(2) - mFirstId + 1 == mCount;
+        } finally {
+            countCursor.close();
+        }
+        mLastIds = new long[(mCount + pageSize - 1) / pageSize];
+
+        // Access ordered, so the eldest entry is the least recently used page
+        mPages = new LinkedHashMap<Integer, Cursor>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Cursor> eldest) {
+                if (size() > maxPages) {
+                    eldest.getValue().close();
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (mCount > 0) {
+            getPage(0);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mProjection;
+    }
+
+    /**
+     * Returns the number of rows at the start of the cursor whose pages are held in memory, which
+     * can be read without querying the provider
+     */
+    public int getFetchedCount() {
+        int pageIndex = 0;
+        while (mPages.containsKey(pageIndex)) {
+            pageIndex++;
+        }
+        return Math.min(pageIndex * mPageSize, mCount);
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        int pageIndex = newPosition / mPageSize;
+        mCurrentPage = getPage(pageIndex);
+        prefetch(newPosition >= oldPosition ? pageIndex + 1 : pageIndex - 1);
+        // Rows may have been deleted since the count was taken, the page can then be short
+        return mCurrentPage.moveToPosition(newPosition - pageIndex * mPageSize);
+    }
+
+    /**
+     * Returns the page with the given index: the page held in memory, the one fetched in the
+     * background, or else one fetched from the provider right away
+     */
+    private Cursor getPage(int pageIndex) {
+        Cursor page = mPages.get(pageIndex);
+        if (page != null) {
+            return page;
+        }
+
+        if (pageIndex == mPrefetchIndex) {
+            page = awaitPrefetch();
+        }
+        if (page == null) {
+            page = fetchPage(buildPageUri(pageIndex));
+        }
+        if (page.moveToLast()) {
+            mLastIds[pageIndex] = page.getLong(mIdColumnIndex);
+        }
+        mPages.put(pageIndex, page);
+        return page;
+    }
+
+    /**
+     * Starts fetching the page with the given index in the background, unless it is out of
+     * range, held or already being fetched. A fetch of another page is cancelled, the list has
+     * moved away from it.
+     */
+    private void prefetch(int pageIndex) {
+        if (pageIndex < 0 || pageIndex >= mLastIds.length || pageIndex == mPrefetchIndex
+                || mPages.containsKey(pageIndex)) {
+            return;
+        }
+        cancelPrefetch();
+        // The URI is built here, the background thread doesn't touch the state of the cursor
+        final Uri uri = buildPageUri(pageIndex);
+        mPrefetch = new FutureTask<>(new Callable<Cursor>() {
+            @Override
+            public Cursor call() {
+                return fetchPage(uri);
+            }
+        });
+        mPrefetchIndex = pageIndex;
+        sPrefetchExecutor.execute(mPrefetch);
+    }
+
+    /**
+     * Waits for the page being fetched in the background and returns it, or null if the fetch
+     * failed, in which case the page is fetched again on the calling thread to report the error
+     */
+    private Cursor awaitPrefetch() {
+        FutureTask<Cursor> prefetch = mPrefetch;
+        mPrefetch = null;
+        mPrefetchIndex = -1;
+        try {
+            return prefetch.get();
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void cancelPrefetch() {
+        if (mPrefetch != null) {
+            // A page fetched anyway is a MatrixCursor, there is nothing to release
+            mPrefetch.cancel(false);
+            mPrefetch = null;
+            mPrefetchIndex = -1;
+        }
+    }
+
+    /**
+     * Returns the URI of the page with the given index: a seek from the _ID the page starts
+     * after when it is known, otherwise from the nearest page seen before it, skipping the
+     * pages in between
+     */
+    private Uri buildPageUri(int pageIndex) {
+        if (pageIndex == 0) {
+            return BookEntry.buildPageUri(mPageSize, 0);
+        }
+        if (mLastIds[pageIndex - 1] != 0) {
+            return BookEntry.buildPageUri(mPageSize, mLastIds[pageIndex - 1]);
+        }
+        if (mDenseIds) {
+            return BookEntry.buildPageUri(mPageSize, mFirstId - 1 + (long) pageIndex * mPageSize);
+        }
+        // We jumped over pages we have never seen, so the rows up to the page are walked over
+        int seenIndex = pageIndex - 2;
+        while (seenIndex >= 0 && mLastIds[seenIndex] == 0) {
+            seenIndex--;
+        }
+        long afterId = seenIndex < 0 ? 0 : mLastIds[seenIndex];
+        return BookEntry.buildPageUri(mPageSize, afterId).buildUpon()
+                .appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_OFFSET,
+                        String.valueOf((pageIndex - 1 - seenIndex) * mPageSize))
+                .build();
+    }
+
+    /** Queries the page with the given URI from the provider, on the calling thread */
+    private Cursor fetchPage(Uri uri) {
+        return copyPage(mResolver.query(uri, mProjection, null, null, null));
+    }
+
+    /**
+     * Copies the rows of the given cursor into a plain in-memory cursor and closes it, so the
+     * page doesn't keep a whole CursorWindow alive.
+     */
+    private MatrixCursor copyPage(Cursor source) {
+        MatrixCursor page = new MatrixCursor(mProjection, source.getCount());
+        try {
+            int columnCount = mProjection.length;
+            while (source.moveToNext()) {
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    switch (source.getType(i)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[i] = source.getLong(i);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[i] = source.getDouble(i);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            row[i] = source.getBlob(i);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            row[i] = source.getString(i);
+                            break;
+                        default:
+                            row[i] = null;
+                            break;
+                    }
+                }
+                page.addRow(row);
+            }
+        } finally {
+            source.close();
+        }
+        return page;
+    }
+
+    private static int indexOf(String[] columns, String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (column.equals(columns[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCurrentPage.getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCurrentPage.getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCurrentPage.getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCurrentPage.getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCurrentPage.getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCurrentPage.getDouble(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCurrentPage.getBlob(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCurrentPage.getType(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCurrentPage.isNull(column);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        cancelPrefetch();
+        for (Cursor page : mPages.values()) {
+            page.close();
+        }
+        mPages.clear();
+        mCurrentPage = null;
+    }
+}
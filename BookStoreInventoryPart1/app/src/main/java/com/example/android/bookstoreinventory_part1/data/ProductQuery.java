@@ -0,0 +1,437 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.net.Uri;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Filters and sort order of the product list, carried as query parameters of the products URI
+ * and turned into SQL by the provider. Only whitelisted columns can be filtered or sorted on,
+ * and every value is bound as an argument, never written into the SQL.
+ * <pre>
+ *     Uri uri = new ProductQuery.Builder()
+ *             .supplier(supplierId)
+ *             .maxPriceCents(1500)
+ *             .sortBy(ProductQuery.SORT_PRICE, false)
+ *             .build()
+ *             .appendTo(BookEntry.CONTENT_URI);
+ * </pre>
+ * Queries using the same filters and sort (the same shape) get the same SQL, built once per
+ * shape, so SQLite reuses the statement it compiled for the first one.
+ */
+public final class ProductQuery {
+
+    /** Sort keys, each backed by an index of the product table */
+    public static final String SORT_NAME = "name";
+    public static final String SORT_PRICE = "price";
+    public static final String SORT_QUANTITY = "quantity";
+    public static final String SORT_SUPPLIER = "supplier";
+
+    /** The sort keys, in the order of their code in a shape */
+    private static final String[] SORT_KEYS = {SORT_NAME, SORT_PRICE, SORT_QUANTITY, SORT_SUPPLIER};
+
+    /** ORDER BY of each sort key. Ties are broken by _ID, which ends every index entry. */
+    private static final String[] SORT_COLUMNS = {
+            BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE",
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME};
+
+    // Bits of a shape, one per filter, in the order of their selection arguments
+    static final int FILTER_SUPPLIER = 1;
+    static final int FILTER_MIN_PRICE = 1 << 1;
+    static final int FILTER_MAX_PRICE = 1 << 2;
+    static final int FILTER_MIN_QUANTITY = 1 << 3;
+    static final int FILTER_MAX_QUANTITY = 1 << 4;
+    /** Name prefix as a range of the name index */
+    static final int FILTER_NAME_RANGE = 1 << 5;
+    /** Name prefix without an upper bound for the range, see {@link #prefixUpperBound} */
+    static final int FILTER_NAME_FROM = 1 << 6;
+
+    /** Shifts of the sort key (1 + index in SORT_KEYS, 0 for none) and direction in a shape */
+    private static final int SORT_SHIFT = 8;
+    private static final int DESCENDING_BIT = 1 << 12;
+
+    /** Selection of each filter bit, in bit order */
+    private static final String[] FILTER_SELECTIONS = {
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = ?",
+            BookEntry.COLUMN_PRODUCT_PRICES + " >= ?",
+            BookEntry.COLUMN_PRODUCT_PRICES + " <= ?",
+            BookEntry.COLUMN_PRODUCTS_QUANTITY + " >= ?",
+            BookEntry.COLUMN_PRODUCTS_QUANTITY + " <= ?",
+            // Written like the name index, so SQLite seeks to the first name of the prefix and
+            // stops after the last one
+            BookEntry.COLUMN_PRODUCT_NAMES + " >= ? COLLATE NOCASE AND "
+                    + BookEntry.COLUMN_PRODUCT_NAMES + " < ? COLLATE NOCASE",
+            BookEntry.COLUMN_PRODUCT_NAMES + " >= ? COLLATE NOCASE AND substr("
+                    + BookEntry.COLUMN_PRODUCT_NAMES + ", 1, ?) = ? COLLATE NOCASE"};
+
+    /** Selection and sort order of each shape seen so far, there are only a few hundred shapes */
+    private static final ConcurrentHashMap<Integer, String[]> sClauses = new ConcurrentHashMap<>();
+
+    private final Long mSupplier;
+    private final Long mMinPriceCents;
+    private final Long mMaxPriceCents;
+    private final Integer mMinQuantity;
+    private final Integer mMaxQuantity;
+    private final String mNamePrefix;
+    private final String mSort;
+    private final boolean mDescending;
+
+    private ProductQuery(Builder builder) {
+        mSupplier = builder.mSupplier;
+        mMinPriceCents = builder.mMinPriceCents;
+        mMaxPriceCents = builder.mMaxPriceCents;
+        mMinQuantity = builder.mMinQuantity;
+        mMaxQuantity = builder.mMaxQuantity;
+        mNamePrefix = builder.mNamePrefix;
+        mSort = builder.mSort;
+        mDescending = builder.mDescending;
+    }
+
+    /**
+     * Builds a {@link ProductQuery}, every filter is optional.
+     */
+    public static final class Builder {
+
+        private Long mSupplier;
+        private Long mMinPriceCents;
+        private Long mMaxPriceCents;
+        private Integer mMinQuantity;
+        private Integer mMaxQuantity;
+        private String mNamePrefix;
+        private String mSort;
+        private boolean mDescending;
+
+        /** Removes every filter, the sort order is kept */
+        public Builder clearFilters() {
+            mSupplier = null;
+            mMinPriceCents = null;
+            mMaxPriceCents = null;
+            mMinQuantity = null;
+            mMaxQuantity = null;
+            mNamePrefix = null;
+            return this;
+        }
+
+        /** Only the products of the supplier with this _ID */
+        public Builder supplier(long supplier) {
+            mSupplier = supplier;
+            return this;
+        }
+
+        /** Only the products costing at least this many cents */
+        public Builder minPriceCents(long cents) {
+            mMinPriceCents = cents;
+            return this;
+        }
+
+        /** Only the products costing at most this many cents */
+        public Builder maxPriceCents(long cents) {
+            mMaxPriceCents = cents;
+            return this;
+        }
+
+        /** Only the products with at least this quantity in stock */
+        public Builder minQuantity(int quantity) {
+            mMinQuantity = quantity;
+            return this;
+        }
+
+        /** Only the products with at most this quantity in stock */
+        public Builder maxQuantity(int quantity) {
+            mMaxQuantity = quantity;
+            return this;
+        }
+
+        /** Only the products whose name starts with the prefix, ignoring case. Empty means any name. */
+        public Builder namePrefix(String prefix) {
+            mNamePrefix = prefix == null || prefix.isEmpty() ? null : prefix;
+            return this;
+        }
+
+        /**
+         * Sorts the list by one of the SORT_ keys, or keeps the default order for null.
+         *
+         * @throws IllegalArgumentException if the key is not one of the SORT_ keys
+         */
+        public Builder sortBy(String sort, boolean descending) {
+            if (sort != null && sortIndex(sort) < 0) {
+                throw new IllegalArgumentException("Cannot sort by " + sort);
+            }
+            mSort = sort;
+            mDescending = sort != null && descending;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a minimum is above its maximum
+         */
+        public ProductQuery build() {
+            if (mMinPriceCents != null && mMaxPriceCents != null && mMinPriceCents > mMaxPriceCents) {
+                throw new IllegalArgumentException("Minimum price " + mMinPriceCents + " is above the maximum "
+                        + mMaxPriceCents);
+            }
+            if (mMinQuantity != null && mMaxQuantity != null && mMinQuantity > mMaxQuantity) {
+                throw new IllegalArgumentException("Minimum quantity " + mMinQuantity + " is above the maximum "
+                        + mMaxQuantity);
+            }
+            return new ProductQuery(this);
+        }
+    }
+
+    /**
+     * Reads the query from the parameters of a products URI. Parameters that aren't set leave
+     * the list unfiltered and in its default order.
+     *
+     * @throws IllegalArgumentException if a value is not a number or the sort key is unknown
+     */
+    public static ProductQuery fromUri(Uri uri) {
+        Builder builder = new Builder();
+        // parseLong and parseInt throw NumberFormatException, an IllegalArgumentException
+        String value = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_SUPPLIER);
+        if (value != null) {
+            builder.supplier(Long.parseLong(value));
+        }
+        value = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_MIN_PRICE);
+        if (value != null) {
+            builder.minPriceCents(Long.parseLong(value));
+        }
+        value = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_MAX_PRICE);
+        if (value != null) {
+            builder.maxPriceCents(Long.parseLong(value));
+        }
+        value = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_MIN_QUANTITY);
+        if (value != null) {
+            builder.minQuantity(Integer.parseInt(value));
+        }
+        value = uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_MAX_QUANTITY);
+        if (value != null) {
+            builder.maxQuantity(Integer.parseInt(value));
+        }
+        builder.namePrefix(uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_NAME_PREFIX));
+        builder.sortBy(uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_SORT),
+                Boolean.parseBoolean(uri.getQueryParameter(BookInventoryContract.QUERY_PARAMETER_DESCENDING)));
+        return builder.build();
+    }
+
+    /** Returns the URI with the query parameters of the filters and sort order added */
+    public Uri appendTo(Uri uri) {
+        Uri.Builder builder = uri.buildUpon();
+        if (mSupplier != null) {
+            builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_SUPPLIER, mSupplier.toString());
+        }
+        if (mMinPriceCents != null) {
+            builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_MIN_PRICE, mMinPriceCents.toString());
+        }
+        if (mMaxPriceCents != null) {
+            builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_MAX_PRICE, mMaxPriceCents.toString());
+        }
+        if (mMinQuantity != null) {
+            builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_MIN_QUANTITY, mMinQuantity.toString());
+        }
+        if (mMaxQuantity != null) {
+            builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_MAX_QUANTITY, mMaxQuantity.toString());
+        }
+        if (mNamePrefix != null) {
+            builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_NAME_PREFIX, mNamePrefix);
+        }
+        if (mSort != null) {
+            builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_SORT, mSort);
+            if (mDescending) {
+                builder.appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_DESCENDING, "true");
+            }
+        }
+        return builder.build();
+    }
+
+    /** Returns a builder holding the filters and sort order of this query */
+    public Builder buildUpon() {
+        Builder builder = new Builder();
+        builder.mSupplier = mSupplier;
+        builder.mMinPriceCents = mMinPriceCents;
+        builder.mMaxPriceCents = mMaxPriceCents;
+        builder.mMinQuantity = mMinQuantity;
+        builder.mMaxQuantity = mMaxQuantity;
+        builder.mNamePrefix = mNamePrefix;
+        builder.mSort = mSort;
+        builder.mDescending = mDescending;
+        return builder;
+    }
+
+    public Long getSupplier() {
+        return mSupplier;
+    }
+
+    public Long getMinPriceCents() {
+        return mMinPriceCents;
+    }
+
+    public Long getMaxPriceCents() {
+        return mMaxPriceCents;
+    }
+
+    public Integer getMinQuantity() {
+        return mMinQuantity;
+    }
+
+    public Integer getMaxQuantity() {
+        return mMaxQuantity;
+    }
+
+    public String getNamePrefix() {
+        return mNamePrefix;
+    }
+
+    /** Returns the SORT_ key, null for the default order */
+    public String getSort() {
+        return mSort;
+    }
+
+    public boolean isDescending() {
+        return mDescending;
+    }
+
+    /** Whether the query filters the list */
+    public boolean hasFilter() {
+        return (getShape() & ((1 << SORT_SHIFT) - 1)) != 0;
+    }
+
+    /**
+     * Returns the shape of the query: which filters it has, its sort key and direction, but not
+     * their values. Queries of the same shape share their SQL.
+     */
+    int getShape() {
+        int shape = 0;
+        if (mSupplier != null) {
+            shape |= FILTER_SUPPLIER;
+        }
+        if (mMinPriceCents != null) {
+            shape |= FILTER_MIN_PRICE;
+        }
+        if (mMaxPriceCents != null) {
+            shape |= FILTER_MAX_PRICE;
+        }
+        if (mMinQuantity != null) {
+            shape |= FILTER_MIN_QUANTITY;
+        }
+        if (mMaxQuantity != null) {
+            shape |= FILTER_MAX_QUANTITY;
+        }
+        if (mNamePrefix != null) {
+            shape |= prefixUpperBound(mNamePrefix) != null ? FILTER_NAME_RANGE : FILTER_NAME_FROM;
+        }
+        if (mSort != null) {
+            shape |= (sortIndex(mSort) + 1) << SORT_SHIFT;
+            if (mDescending) {
+                shape |= DESCENDING_BIT;
+            }
+        }
+        return shape;
+    }
+
+    /** Returns the WHERE clause of the filters, with a "?" for each value, null if there is no filter */
+    public String getSelection() {
+        return getClauses(getShape())[0];
+    }
+
+    /** Returns the values of the filters, in the order of the "?" of {@link #getSelection()} */
+    public String[] getSelectionArgs() {
+        List<String> args = new ArrayList<>();
+        if (mSupplier != null) {
+            args.add(mSupplier.toString());
+        }
+        if (mMinPriceCents != null) {
+            args.add(mMinPriceCents.toString());
+        }
+        if (mMaxPriceCents != null) {
+            args.add(mMaxPriceCents.toString());
+        }
+        if (mMinQuantity != null) {
+            args.add(mMinQuantity.toString());
+        }
+        if (mMaxQuantity != null) {
+            args.add(mMaxQuantity.toString());
+        }
+        if (mNamePrefix != null) {
+            args.add(mNamePrefix);
+            String upperBound = prefixUpperBound(mNamePrefix);
+            if (upperBound != null) {
+                args.add(upperBound);
+            } else {
+                args.add(String.valueOf(mNamePrefix.codePointCount(0, mNamePrefix.length())));
+                args.add(mNamePrefix);
+            }
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
+    /** Returns the ORDER BY clause, null for the default order */
+    public String getSortOrder() {
+        return getClauses(getShape())[1];
+    }
+
+    /** Returns the selection and sort order of the shape, built on first use */
+    private static String[] getClauses(int shape) {
+        String[] clauses = sClauses.get(shape);
+        if (clauses == null) {
+            clauses = buildClauses(shape);
+            sClauses.put(shape, clauses);
+        }
+        return clauses;
+    }
+
+    static String[] buildClauses(int shape) {
+        StringBuilder selection = new StringBuilder();
+        for (int i = 0; i < FILTER_SELECTIONS.length; i++) {
+            if ((shape & (1 << i)) != 0) {
+                selection.append(selection.length() == 0 ? "" : " AND ").append(FILTER_SELECTIONS[i]);
+            }
+        }
+        String sortOrder = null;
+        int sort = (shape >> SORT_SHIFT) & 0xf;
+        if (sort != 0) {
+            String direction = (shape & DESCENDING_BIT) != 0 ? " DESC" : "";
+            sortOrder = SORT_COLUMNS[sort - 1] + direction + ", " + BookEntry._ID + direction;
+        }
+        return new String[]{selection.length() == 0 ? null : selection.toString(), sortOrder};
+    }
+
+    private static int sortIndex(String sort) {
+        for (int i = 0; i < SORT_KEYS.length; i++) {
+            if (SORT_KEYS[i].equals(sort)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the smallest string, compared like NOCASE does, above every name starting with the
+     * prefix, or null if there is none that is simple to find (the prefix ends with U+FFFF or a
+     * surrogate). NOCASE compares the names with their ASCII letters in lower case, so the
+     * prefix is folded the same way and its last character is incremented.
+     */
+    static String prefixUpperBound(String prefix) {
+        StringBuilder bound = new StringBuilder(prefix.length());
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            bound.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+        int last = bound.length() - 1;
+        char next = (char) (bound.charAt(last) + 1);
+        if (next == 0 || Character.isSurrogate(bound.charAt(last)) || Character.isSurrogate(next)) {
+            return null;
+        }
+        if (next >= 'A' && next <= 'Z') {
+            // After '@', folded names have no upper case letters, the next character is '['
+            next = '[';
+        }
+        bound.setCharAt(last, next);
+        return bound.toString();
+    }
+}
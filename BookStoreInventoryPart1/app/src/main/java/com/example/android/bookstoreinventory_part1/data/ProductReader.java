@@ -0,0 +1,103 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+/**
+ * Typed access to the product columns of a {@link Cursor}. Column indices are resolved once when
+ * the reader is created and numbers are read as primitives, so reading a row doesn't allocate
+ * (only {@link #getName()} and {@link #getSupplierPhone()} return a new String, see
+ * {@link #copyName(CharArrayBuffer)}). Columns missing from the projection read as 0.
+ */
+public class ProductReader {
+
+    private final Cursor mCursor;
+
+    private final int mIdColumnIndex;
+    private final int mNameColumnIndex;
+    private final int mPriceColumnIndex;
+    private final int mQuantityColumnIndex;
+    private final int mSupplierColumnIndex;
+    private final int mSupplierPhoneColumnIndex;
+    private final int mReorderThresholdColumnIndex;
+    private final int mIsbnColumnIndex;
+
+    /**
+     * Constructs a new {@link ProductReader}.
+     *
+     * @param cursor The cursor to read from, positioned by the caller
+     */
+    public ProductReader(Cursor cursor) {
+        mCursor = cursor;
+        mIdColumnIndex = cursor.getColumnIndex(BookEntry._ID);
+        mNameColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAMES);
+        mPriceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_PRICES);
+        mQuantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCTS_QUANTITY);
+        mSupplierColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME);
+        mSupplierPhoneColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        mReorderThresholdColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_REORDER_THRESHOLD);
+        mIsbnColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_ISBN);
+    }
+
+    public Cursor getCursor() {
+        return mCursor;
+    }
+
+    public long getId() {
+        return mIdColumnIndex < 0 ? 0 : mCursor.getLong(mIdColumnIndex);
+    }
+
+    public String getName() {
+        return mNameColumnIndex < 0 ? null : mCursor.getString(mNameColumnIndex);
+    }
+
+    /**
+     * Copies the name into the given buffer instead of returning a new String, so a list can bind
+     * its rows without allocating. Leaves the buffer empty if the name is missing.
+     */
+    public void copyName(CharArrayBuffer buffer) {
+        if (mNameColumnIndex < 0) {
+            buffer.sizeCopied = 0;
+        } else {
+            mCursor.copyStringToBuffer(mNameColumnIndex, buffer);
+        }
+    }
+
+    /** Price in cents, see {@link Prices} */
+    public long getPriceCents() {
+        return mPriceColumnIndex < 0 ? 0 : mCursor.getLong(mPriceColumnIndex);
+    }
+
+    public int getQuantity() {
+        return mQuantityColumnIndex < 0 ? 0 : mCursor.getInt(mQuantityColumnIndex);
+    }
+
+    public int getSupplier() {
+        return mSupplierColumnIndex < 0 ? 0 : mCursor.getInt(mSupplierColumnIndex);
+    }
+
+    /** Phone number of the supplier, empty if unknown or missing from the projection */
+    public String getSupplierPhone() {
+        if (mSupplierPhoneColumnIndex < 0 || mCursor.isNull(mSupplierPhoneColumnIndex)) {
+            return "";
+        }
+        return mCursor.getString(mSupplierPhoneColumnIndex);
+    }
+
+    public int getReorderThreshold() {
+        return mReorderThresholdColumnIndex < 0 ? 0 : mCursor.getInt(mReorderThresholdColumnIndex);
+    }
+
+    /** ISBN-13 of the book, null if it has none or it is missing from the projection */
+    public String getIsbn() {
+        return mIsbnColumnIndex < 0 ? null : mCursor.getString(mIsbnColumnIndex);
+    }
+
+    /** Reads the current row into a new {@link Product} */
+    public Product read() {
+        return new Product(getId(), getName(), getPriceCents(), getQuantity(), getSupplier(),
+                getSupplierPhone(), getReorderThreshold(), getIsbn());
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.SupplierEntry;
+
+/**
+ * The single-row statements on the provider's hot paths, compiled once and reused for every
+ * call instead of building SQL and ContentValues each time.
+ * <p>
+ * Each statement comes from a {@link StatementPool}, so binder threads never share bind
+ * arguments. SQLite keeps the prepared form in the connection's statement cache, so reusing a
+ * statement skips parsing as well.
+ */
+final class ProductStatements {
+
+    /** Selection of a single product, kept constant so its compiled form is cached */
+    static final String SELECTION_ID = BookEntry._ID + "=?";
+
+    /** Selection of the product with a normalized ISBN, answered by the unique ISBN index */
+    static final String SELECTION_ISBN = BookEntry.COLUMN_ISBN + "=?";
+
+    /**
+     * Selection of the products that are not deleted, added to every write so a deleted product
+     * can't be changed while it waits for the purge
+     */
+    static final String SELECTION_SHOWN = BookEntry.COLUMN_DELETED_AT + " IS NULL AND "
+            + BookEntry._ID + " > " + BookInventoryMigrations.SQL_HIDDEN_UP_TO;
+
+    /**
+     * Sets the phone number ?1 of the supplier with _ID ?2, unless it already has it, so a batch
+     * of products repeating their supplier's number writes nothing
+     */
+    static final String UPDATE_SUPPLIER_PHONE_SQL = "UPDATE " + SupplierEntry.TABLE_NAME
+            + " SET " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " = ?1 WHERE " + SupplierEntry._ID + " = ?2"
+            + " AND " + SupplierEntry.COLUMN_SUPPLIER_PHONE + " != ?1";
+
+    /** Reads the columns of {@link ProductCache#COLUMNS} of one product, with its supplier's phone */
+    static final String QUERY_BY_ID_SQL;
+
+    static {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < ProductCache.COLUMNS.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(ProductCache.COLUMNS[i]);
+        }
+        QUERY_BY_ID_SQL = sql.append(" FROM ").append(BookInventoryMigrations.VIEW_PRODUCT_DETAILS)
+                .append(" WHERE ").append(SELECTION_ID).toString();
+    }
+
+    private final SQLiteDatabase mDatabase;
+
+    private final StatementPool mUpdateQuantity;
+
+    private final StatementPool mHideById;
+
+    private final StatementPool mAdjustQuantity;
+
+    private final StatementPool mQueryQuantity;
+
+    private final StatementPool mSupplierExists;
+
+    private final StatementPool mQueryIdByIsbn;
+
+    private final StatementPool mQueryIdByNameAndSupplier;
+
+    private final StatementPool mUpdateSupplierPhone;
+
+    ProductStatements(SQLiteDatabase database) {
+        mDatabase = database;
+        mUpdateQuantity = new StatementPool(mDatabase, "UPDATE " + BookEntry.TABLE_NAME
+                + " SET " + BookEntry.COLUMN_PRODUCTS_QUANTITY + "=? WHERE " + SELECTION_ID + " AND " + SELECTION_SHOWN);
+        mHideById = new StatementPool(mDatabase, ProductTrash.buildHideSql(SELECTION_ID));
+        mAdjustQuantity = new StatementPool(mDatabase, "UPDATE " + BookEntry.TABLE_NAME
+                + " SET " + BookEntry.COLUMN_PRODUCTS_QUANTITY + " = " + BookEntry.COLUMN_PRODUCTS_QUANTITY
+                + " + ?1 WHERE " + BookEntry._ID + "=?2 AND " + BookEntry.COLUMN_PRODUCTS_QUANTITY + " + ?1 >= 0"
+                + " AND " + SELECTION_SHOWN);
+        mQueryQuantity = new StatementPool(mDatabase, "SELECT " + BookEntry.COLUMN_PRODUCTS_QUANTITY
+                + " FROM " + BookEntry.TABLE_NAME + " WHERE " + SELECTION_ID);
+        mSupplierExists = new StatementPool(mDatabase, "SELECT COUNT(*) FROM " + SupplierEntry.TABLE_NAME
+                + " WHERE " + SupplierEntry._ID + "=?");
+        mUpdateSupplierPhone = new StatementPool(mDatabase, UPDATE_SUPPLIER_PHONE_SQL);
+        // A missing product reads as -1 instead of making simpleQueryForLong throw
+        mQueryIdByIsbn = new StatementPool(mDatabase, "SELECT IFNULL((SELECT " + BookEntry._ID
+                + " FROM " + BookEntry.TABLE_NAME + " WHERE " + SELECTION_ISBN + " AND " + SELECTION_SHOWN + "), -1)");
+        // Compared without case like the name index, which answers it; the oldest product wins
+        // if earlier imports left duplicates
+        mQueryIdByNameAndSupplier = new StatementPool(mDatabase, "SELECT IFNULL((SELECT " + BookEntry._ID
+                + " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_PRODUCT_NAMES + " = ? COLLATE NOCASE"
+                + " AND " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = ? AND " + SELECTION_SHOWN
+                + " ORDER BY " + BookEntry._ID
+                + " LIMIT 1), -1)");
+    }
+
+    /** Queries the cached columns of the product with the given _ID */
+    Cursor queryById(long id) {
+        return mDatabase.rawQuery(QUERY_BY_ID_SQL, new String[]{Long.toString(id)});
+    }
+
+    /**
+     * Sets the quantity of the product with the given _ID, returns the number of rows changed,
+     * 0 if it is deleted
+     */
+    int updateQuantity(long id, int quantity) {
+        SQLiteStatement statement = mUpdateQuantity.acquire();
+        try {
+            statement.bindLong(1, quantity);
+            statement.bindLong(2, id);
+            return statement.executeUpdateDelete();
+        } finally {
+            mUpdateQuantity.release(statement);
+        }
+    }
+
+    /**
+     * Adds delta to the quantity of the product with the given _ID in a single statement, unless
+     * that would take it below 0. Returns the number of rows changed, 0 if it was refused or the
+     * product is deleted.
+     */
+    int adjustQuantity(long id, int delta) {
+        SQLiteStatement statement = mAdjustQuantity.acquire();
+        try {
+            statement.bindLong(1, delta);
+            statement.bindLong(2, id);
+            return statement.executeUpdateDelete();
+        } finally {
+            mAdjustQuantity.release(statement);
+        }
+    }
+
+    /** Returns the quantity of the product with the given _ID */
+    long queryQuantity(long id) {
+        SQLiteStatement statement = mQueryQuantity.acquire();
+        try {
+            statement.bindLong(1, id);
+            return statement.simpleQueryForLong();
+        } finally {
+            mQueryQuantity.release(statement);
+        }
+    }
+
+    /**
+     * Marks the product with the given _ID deleted at the given time, hiding it until the purge.
+     * Returns the number of rows changed, 0 if it was already deleted.
+     */
+    int hideById(long id, long deletedAt) {
+        SQLiteStatement statement = mHideById.acquire();
+        try {
+            statement.bindLong(1, deletedAt);
+            statement.bindLong(2, id);
+            return statement.executeUpdateDelete();
+        } finally {
+            mHideById.release(statement);
+        }
+    }
+
+    /** Returns the _ID of the product with the given normalized ISBN, or -1 if there is none */
+    long queryIdByIsbn(String isbn) {
+        SQLiteStatement statement = mQueryIdByIsbn.acquire();
+        try {
+            statement.bindString(1, isbn);
+            return statement.simpleQueryForLong();
+        } finally {
+            mQueryIdByIsbn.release(statement);
+        }
+    }
+
+    /**
+     * Returns the _ID of the product with the given name, ignoring case, and supplier, or -1 if
+     * there is none
+     */
+    long queryIdByNameAndSupplier(String name, long supplierId) {
+        SQLiteStatement statement = mQueryIdByNameAndSupplier.acquire();
+        try {
+            statement.bindString(1, name);
+            statement.bindLong(2, supplierId);
+            return statement.simpleQueryForLong();
+        } finally {
+            mQueryIdByNameAndSupplier.release(statement);
+        }
+    }
+
+    /** Returns whether there is a supplier with the given _ID */
+    boolean supplierExists(long supplierId) {
+        SQLiteStatement statement = mSupplierExists.acquire();
+        try {
+            statement.bindLong(1, supplierId);
+            return statement.simpleQueryForLong() > 0;
+        } finally {
+            mSupplierExists.release(statement);
+        }
+    }
+
+    /**
+     * Sets the phone number of the supplier with the given _ID, returns the number of rows
+     * changed, 0 if the supplier already had this number
+     */
+    int updateSupplierPhone(long supplierId, String phone) {
+        SQLiteStatement statement = mUpdateSupplierPhone.acquire();
+        try {
+            statement.bindString(1, phone);
+            statement.bindLong(2, supplierId);
+            return statement.executeUpdateDelete();
+        } finally {
+            mUpdateSupplierPhone.release(statement);
+        }
+    }
+}
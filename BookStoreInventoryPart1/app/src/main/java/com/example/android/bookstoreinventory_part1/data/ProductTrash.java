@@ -0,0 +1,399 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StatsEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StockMovementEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deletes products in two steps: a delete only hides them, so it can be undone for
+ * {@link BookInventoryContract#UNDO_WINDOW_MILLIS}, and a purge on a background thread removes
+ * them for good once that is over.
+ * <p>
+ * A delete marks each product with its {@link BookEntry#COLUMN_DELETED_AT} time, except a delete
+ * of every product, which records a single row in {@link BookInventoryMigrations#TABLE_PRODUCT_WIPES}
+ * hiding every _ID up to the current highest one: it costs the same for 200k products as for 10.
+ * The purge removes the products {@link #PURGE_CHUNK_SIZE} at a time, each chunk in its own
+ * transaction, so other writers never wait for more than one chunk. The remaining stock of each
+ * product is recorded in the ledger as it is purged, since an undone delete moves no stock.
+ */
+final class ProductTrash {
+
+    private static final String LOG_TAG = ProductTrash.class.getSimpleName();
+
+    /** Products removed per transaction by the purge */
+    static final int PURGE_CHUNK_SIZE = 500;
+
+    /**
+     * Background thread running the purges of every trash, away from the write paths. A daemon,
+     * a purge still scheduled never keeps the process alive.
+     */
+    private static final ScheduledExecutorService sPurgeExecutor =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, LOG_TAG + " purge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** Selection of the products hidden by a delete, the opposite of {@link ProductStatements#SELECTION_SHOWN} */
+    private static final String SELECTION_HIDDEN = "(" + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL OR "
+            + BookEntry._ID + " <= " + BookInventoryMigrations.SQL_HIDDEN_UP_TO + ")";
+
+    /** Next chunk of the products up to _ID ?, hidden by a delete of every product, read in _ID order */
+    private static final String SELECTION_WIPED_CHUNK = BookEntry._ID + " IN (SELECT " + BookEntry._ID
+            + " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " <= ? ORDER BY " + BookEntry._ID
+            + " LIMIT " + PURGE_CHUNK_SIZE + ")";
+
+    /** Next chunk of the products marked deleted at or before ?, read from the deleted_at index */
+    private static final String SELECTION_DELETED_CHUNK = BookEntry._ID + " IN (SELECT " + BookEntry._ID
+            + " FROM " + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL AND "
+            + BookEntry.COLUMN_DELETED_AT + " <= ? ORDER BY " + BookEntry.COLUMN_DELETED_AT
+            + " LIMIT " + PURGE_CHUNK_SIZE + ")";
+
+    /** Number of products shown, which the statistics triggers keep without counting them */
+    private static final String COUNT_SHOWN_SQL = "SELECT IFNULL(SUM(" + StatsEntry.COLUMN_PRODUCT_COUNT
+            + "), 0) FROM " + StatsEntry.TABLE_NAME;
+
+    /** Moves the ISBN out of the unique index, so a new product can take it while this one is hidden */
+    private static final String SET_ISBN_ASIDE = BookInventoryMigrations.COLUMN_DELETED_ISBN + " = "
+            + BookEntry.COLUMN_ISBN + ", " + BookEntry.COLUMN_ISBN + " = NULL";
+
+    /**
+     * Moves aside the ISBNs of the products up to _ID ?, hidden by a delete of every product.
+     * Read from the ISBN index, so it only costs something for the products that have one.
+     */
+    private static final String SET_WIPED_ISBNS_ASIDE_SQL = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + SET_ISBN_ASIDE + " WHERE " + BookEntry.COLUMN_ISBN + " IS NOT NULL AND +" + BookEntry._ID + " <= ?";
+
+    /**
+     * Gives the products shown again above _ID ? their ISBN back, unless a new product took it
+     * meanwhile: OR IGNORE leaves those rows as they are, for {@link #DROP_TAKEN_ISBNS_SQL}
+     */
+    private static final String RESTORE_ISBNS_SQL = "UPDATE OR IGNORE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_ISBN + " = " + BookInventoryMigrations.COLUMN_DELETED_ISBN + ", "
+            + BookInventoryMigrations.COLUMN_DELETED_ISBN + " = NULL WHERE " + restoredSelection();
+
+    /** Forgets the ISBNs the restored products couldn't get back, they belong to another product now */
+    private static final String DROP_TAKEN_ISBNS_SQL = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookInventoryMigrations.COLUMN_DELETED_ISBN + " = NULL WHERE " + restoredSelection();
+
+    private static final String HIDDEN_UP_TO_SQL = "SELECT " + BookInventoryMigrations.SQL_HIDDEN_UP_TO;
+
+    /** Earliest delete still waiting for the purge, -1 if there is none */
+    private static final String NEXT_DELETED_AT_SQL = "SELECT IFNULL(MIN(t), -1) FROM (SELECT MIN("
+            + BookEntry.COLUMN_DELETED_AT + ") AS t FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL"
+            + " UNION ALL SELECT MIN(" + BookInventoryMigrations.COLUMN_WIPE_DELETED_AT + ") FROM "
+            + BookInventoryMigrations.TABLE_PRODUCT_WIPES + ")";
+
+    /**
+     * Adds the products with an _ID in (?1, ?2] that are not marked deleted to their supplier's
+     * totals, once the delete of every product that hid them is undone
+     */
+    private static final String ADD_RANGE_TO_STATS_SQL;
+
+    private static final String ADD_RANGE_SUPPLIERS_SQL;
+
+    static {
+        String range = " FROM " + BookEntry.TABLE_NAME + " p WHERE p." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                + " = " + StatsEntry.TABLE_NAME + "." + StatsEntry.COLUMN_SUPPLIER
+                + " AND p." + BookEntry._ID + " > ?1 AND p." + BookEntry._ID + " <= ?2"
+                + " AND p." + BookEntry.COLUMN_DELETED_AT + " IS NULL)";
+        ADD_RANGE_TO_STATS_SQL = "UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                + StatsEntry.COLUMN_PRODUCT_COUNT + " = " + StatsEntry.COLUMN_PRODUCT_COUNT
+                + " + (SELECT COUNT(*)" + range + ", "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS
+                + " + (SELECT IFNULL(SUM(p." + BookEntry.COLUMN_PRODUCTS_QUANTITY + "), 0)" + range + ", "
+                + StatsEntry.COLUMN_TOTAL_VALUE + " = " + StatsEntry.COLUMN_TOTAL_VALUE
+                + " + (SELECT IFNULL(SUM(p." + BookEntry.COLUMN_PRODUCT_PRICES + " * p."
+                + BookEntry.COLUMN_PRODUCTS_QUANTITY + "), 0)" + range;
+        ADD_RANGE_SUPPLIERS_SQL = "INSERT OR IGNORE INTO " + StatsEntry.TABLE_NAME + " (" + StatsEntry.COLUMN_SUPPLIER + ")"
+                + " SELECT DISTINCT " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry._ID + " > ?1 AND " + BookEntry._ID + " <= ?2"
+                + " AND " + BookEntry.COLUMN_DELETED_AT + " IS NULL";
+    }
+
+    /**
+     * Selection of the products shown above _ID ? whose ISBN is still aside, only the ones an
+     * undo just brought back. The unary + leaves the index of the moved ISBNs as the only choice.
+     */
+    private static String restoredSelection() {
+        return BookInventoryMigrations.COLUMN_DELETED_ISBN + " IS NOT NULL AND +" + BookEntry.COLUMN_DELETED_AT
+                + " IS NULL AND +" + BookEntry._ID + " > ?";
+    }
+
+    private final SQLiteDatabase mDatabase;
+
+    private final StockLedger mLedger;
+
+    /** How long each purge chunk held the database's write lock, in microseconds */
+    private final LatencyHistogram mLockHoldTimes = new LatencyHistogram();
+
+    /** True while a purge is scheduled, so they don't pile up */
+    private final AtomicBoolean mPurgeScheduled = new AtomicBoolean();
+
+    ProductTrash(SQLiteDatabase database, StockLedger ledger) {
+        mDatabase = database;
+        mLedger = ledger;
+    }
+
+    /** Runs the task on the purge thread */
+    static void execute(Runnable task) {
+        sPurgeExecutor.execute(task);
+    }
+
+    /** Returns the UPDATE hiding the products matching the selection, its first argument is the time */
+    static String buildHideSql(String selection) {
+        String where = ProductStatements.SELECTION_SHOWN;
+        if (selection != null && !selection.isEmpty()) {
+            where = "(" + selection + ") AND " + where;
+        }
+        return "UPDATE " + BookEntry.TABLE_NAME + " SET " + BookEntry.COLUMN_DELETED_AT + " = ?, "
+                + SET_ISBN_ASIDE + " WHERE " + where;
+    }
+
+    /**
+     * Marks the products matching the selection deleted at the given time. Must be called in a
+     * transaction. Returns the number of products hidden.
+     */
+    int hide(String selection, String[] selectionArgs, long deletedAt) {
+        SQLiteStatement statement = mDatabase.compileStatement(buildHideSql(selection));
+        try {
+            statement.bindLong(1, deletedAt);
+            if (selectionArgs != null) {
+                for (int i = 0; i < selectionArgs.length; i++) {
+                    statement.bindString(i + 2, selectionArgs[i]);
+                }
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Hides every product at the given time with a single row of
+     * {@link BookInventoryMigrations#TABLE_PRODUCT_WIPES}, whatever the number of products. Must
+     * be called in a transaction. Returns the number of products hidden.
+     */
+    int hideAll(long deletedAt) {
+        long shown = DatabaseUtils.longForQuery(mDatabase, COUNT_SHOWN_SQL, null);
+        if (shown == 0) {
+            return 0;
+        }
+        long upToId = DatabaseUtils.longForQuery(mDatabase, "SELECT MAX(" + BookEntry._ID + ") FROM "
+                + BookEntry.TABLE_NAME, null);
+        mDatabase.execSQL("INSERT INTO " + BookInventoryMigrations.TABLE_PRODUCT_WIPES + " ("
+                + BookInventoryMigrations.COLUMN_WIPE_UP_TO_ID + ", " + BookInventoryMigrations.COLUMN_WIPE_DELETED_AT
+                + ") VALUES (?, ?)", new Object[]{upToId, deletedAt});
+        mDatabase.execSQL(SET_WIPED_ISBNS_ASIDE_SQL, new Object[]{upToId});
+        // Every product shown is hidden now, no trigger runs for them
+        mDatabase.execSQL("UPDATE " + StatsEntry.TABLE_NAME + " SET " + StatsEntry.COLUMN_PRODUCT_COUNT + " = 0, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = 0, " + StatsEntry.COLUMN_TOTAL_VALUE + " = 0");
+        return (int) shown;
+    }
+
+    /**
+     * Brings back the products deleted at or after since, in one transaction. Deletes older than
+     * the undo window stay, the purge may already have started on them. Returns the number of
+     * products shown again.
+     */
+    int undo(long since, long now) {
+        since = Math.max(since, now - BookInventoryContract.UNDO_WINDOW_MILLIS);
+        String[] sinceArgs = {String.valueOf(since)};
+        int restored;
+        mDatabase.beginTransaction();
+        try {
+            long shownBefore = DatabaseUtils.longForQuery(mDatabase, COUNT_SHOWN_SQL, null);
+            long hiddenUpTo = DatabaseUtils.longForQuery(mDatabase, HIDDEN_UP_TO_SQL, null);
+            // The statistics trigger counts back the products above every delete of everything
+            // still pending, the others are counted below once those deletes are undone
+            mDatabase.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET " + BookEntry.COLUMN_DELETED_AT
+                    + " = NULL WHERE " + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL AND "
+                    + BookEntry.COLUMN_DELETED_AT + " >= ?", sinceArgs);
+            int wipesUndone = mDatabase.delete(BookInventoryMigrations.TABLE_PRODUCT_WIPES,
+                    BookInventoryMigrations.COLUMN_WIPE_DELETED_AT + " >= ?", sinceArgs);
+            long newHiddenUpTo = hiddenUpTo;
+            if (wipesUndone > 0) {
+                newHiddenUpTo = DatabaseUtils.longForQuery(mDatabase, HIDDEN_UP_TO_SQL, null);
+                Object[] range = {newHiddenUpTo, hiddenUpTo};
+                mDatabase.execSQL(ADD_RANGE_SUPPLIERS_SQL, range);
+                mDatabase.execSQL(ADD_RANGE_TO_STATS_SQL, range);
+            }
+            Object[] shownAbove = {newHiddenUpTo};
+            mDatabase.execSQL(RESTORE_ISBNS_SQL, shownAbove);
+            mDatabase.execSQL(DROP_TAKEN_ISBNS_SQL, shownAbove);
+            restored = (int) (DatabaseUtils.longForQuery(mDatabase, COUNT_SHOWN_SQL, null) - shownBefore);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        return restored;
+    }
+
+    /**
+     * Removes the products deleted at or before deletedBefore, oldest delete first, one chunk per
+     * transaction. Returns the number of products purged.
+     */
+    int purge(long deletedBefore) {
+        long start = SystemClock.elapsedRealtime();
+        int purged = 0;
+        int chunks = 0;
+        for (long upToId : queryWipes(deletedBefore)) {
+            int chunk;
+            while ((chunk = purgeWipedChunk(upToId)) >= 0) {
+                purged += chunk;
+                chunks++;
+                if (chunk < PURGE_CHUNK_SIZE) {
+                    break;
+                }
+            }
+        }
+        String[] args = {String.valueOf(deletedBefore)};
+        int chunk;
+        do {
+            chunk = purgeDeletedChunk(args);
+            if (chunk > 0) {
+                purged += chunk;
+                chunks++;
+            }
+        } while (chunk == PURGE_CHUNK_SIZE);
+        if (purged > 0) {
+            Log.i(LOG_TAG, "Purged " + purged + " products in " + chunks + " chunks, "
+                    + (SystemClock.elapsedRealtime() - start) + " ms, lock held p50/max "
+                    + mLockHoldTimes.getPercentileMicros(50) + "/" + mLockHoldTimes.getMaxMicros() + " us");
+        }
+        return purged;
+    }
+
+    /**
+     * Removes the deleted products matching the selection right away, in the caller's
+     * transaction: a supplier can only go once its deleted products are gone. Returns the number
+     * of products purged.
+     */
+    int purgeHidden(String selection, String[] selectionArgs) {
+        return purgeMatching("(" + selection + ") AND " + SELECTION_HIDDEN, selectionArgs);
+    }
+
+    /**
+     * Schedules a purge of the deletes older than the undo window after delayMillis, unless one
+     * is already scheduled. Each purge schedules the next one for the oldest delete it left.
+     */
+    void schedulePurge(long delayMillis) {
+        if (!mPurgeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        sPurgeExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                mPurgeScheduled.set(false);
+                long next;
+                try {
+                    purge(System.currentTimeMillis() - BookInventoryContract.UNDO_WINDOW_MILLIS);
+                    next = DatabaseUtils.longForQuery(mDatabase, NEXT_DELETED_AT_SQL, null);
+                } catch (RuntimeException e) {
+                    // The deleted products stay hidden, the next delete schedules another purge
+                    Log.w(LOG_TAG, "Purge failed", e);
+                    return;
+                }
+                if (next >= 0) {
+                    schedulePurge(Math.max(0, next + BookInventoryContract.UNDO_WINDOW_MILLIS
+                            - System.currentTimeMillis()));
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Returns how long each purge chunk held the write lock, in microseconds */
+    LatencyHistogram getLockHoldTimes() {
+        return mLockHoldTimes;
+    }
+
+    /** Returns the up_to_id of the deletes of every product made at or before deletedBefore, oldest first */
+    private List<Long> queryWipes(long deletedBefore) {
+        List<Long> wipes = new ArrayList<>();
+        Cursor cursor = mDatabase.query(BookInventoryMigrations.TABLE_PRODUCT_WIPES,
+                new String[]{BookInventoryMigrations.COLUMN_WIPE_UP_TO_ID},
+                BookInventoryMigrations.COLUMN_WIPE_DELETED_AT + " <= ?", new String[]{String.valueOf(deletedBefore)},
+                null, null, BookInventoryMigrations.COLUMN_WIPE_DELETED_AT);
+        try {
+            while (cursor.moveToNext()) {
+                wipes.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return wipes;
+    }
+
+    /**
+     * Removes the next chunk of the products hidden by the delete of every product up to
+     * upToId, and that delete with its last chunk. Returns the number of products purged, or -1
+     * if the delete was undone in the meantime.
+     */
+    private int purgeWipedChunk(long upToId) {
+        String[] args = {String.valueOf(upToId)};
+        long start = System.nanoTime();
+        int purged;
+        mDatabase.beginTransaction();
+        try {
+            if (DatabaseUtils.longForQuery(mDatabase, "SELECT COUNT(*) FROM " + BookInventoryMigrations.TABLE_PRODUCT_WIPES
+                    + " WHERE " + BookInventoryMigrations.COLUMN_WIPE_UP_TO_ID + " = ?", args) == 0) {
+                purged = -1;
+            } else {
+                purged = purgeMatching(SELECTION_WIPED_CHUNK, args);
+                if (purged < PURGE_CHUNK_SIZE) {
+                    mDatabase.delete(BookInventoryMigrations.TABLE_PRODUCT_WIPES,
+                            BookInventoryMigrations.COLUMN_WIPE_UP_TO_ID + " = ?", args);
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        if (purged >= 0) {
+            mLockHoldTimes.record((System.nanoTime() - start) / 1000);
+        }
+        return purged;
+    }
+
+    /** Removes the next chunk of the products marked deleted at or before args[0] */
+    private int purgeDeletedChunk(String[] args) {
+        long start = System.nanoTime();
+        int purged;
+        mDatabase.beginTransaction();
+        try {
+            purged = purgeMatching(SELECTION_DELETED_CHUNK, args);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        if (purged > 0) {
+            mLockHoldTimes.record((System.nanoTime() - start) / 1000);
+        }
+        return purged;
+    }
+
+    /** Records the remaining stock of the products matching the selection, then removes them */
+    private int purgeMatching(String selection, String[] selectionArgs) {
+        mLedger.recordQuantity(selection, selectionArgs, 0, StockMovementEntry.REASON_DELETE);
+        return mDatabase.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs product inserts, updates and deletes on a background executor and reports the outcome
+ * on the main thread, so screens never wait on the database.
+ * <p>
+ * Writes to the same URI run one after the other in the order they were requested, even across
+ * activities (a save followed by a delete of the same product can't be reordered); writes to
+ * different URIs may run in parallel. Inserts are ordered on the products URI.
+ */
+public class ProductWriter {
+
+    private static final String LOG_TAG = ProductWriter.class.getSimpleName();
+
+    private static ProductWriter sInstance;
+
+    /**
+     * Told on the main thread when a write finishes. Only override what you need. A write that
+     * fails, including one the provider rejects as invalid, reports a null URI or 0 rows.
+     */
+    public static abstract class Callback {
+
+        /** @param newUri URI of the inserted product, or null if the insert failed */
+        public void onInsertComplete(Uri newUri) {
+        }
+
+        /** @param rowsAffected Number of products updated, 0 if the update failed */
+        public void onUpdateComplete(int rowsAffected) {
+        }
+
+        /** @param rowsDeleted Number of products deleted, 0 if the delete failed */
+        public void onDeleteComplete(int rowsDeleted) {
+        }
+
+        /** @param newQuantity Quantity after the adjustment, -1 if it was refused or failed */
+        public void onAdjustComplete(int newQuantity) {
+        }
+
+        /** @param restored Number of deleted products restored, 0 if none were or the undo failed */
+        public void onUndoComplete(int restored) {
+        }
+    }
+
+    private final ContentResolver mResolver;
+
+    private final Executor mExecutor;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Writes waiting for the one running on their URI. A URI is in the map while one of its
+     * writes is running, its queue holds the writes requested after it.
+     */
+    private final Map<Uri, ArrayDeque<Runnable>> mQueues = new HashMap<>();
+
+    /**
+     * Constructs a new {@link ProductWriter}.
+     *
+     * @param resolver The resolver the writes go through
+     * @param executor Runs the writes, may be multi-threaded
+     */
+    public ProductWriter(ContentResolver resolver, Executor executor) {
+        mResolver = resolver;
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the writer shared by the whole app, which is what keeps writes to a product in
+     * order when they come from different activities.
+     */
+    public static synchronized ProductWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProductWriter(context.getApplicationContext().getContentResolver(),
+                    AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+        return sInstance;
+    }
+
+    /** Inserts a product, see {@link ContentResolver#insert} */
+    public void insert(final Uri uri, final ContentValues values, final Callback callback) {
+        enqueue(uri, new Runnable() {
+            @Override
+            public void run() {
+                Uri newUri = null;
+                try {
+                    newUri = mResolver.insert(uri, values);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to insert into " + uri, e);
+                }
+                final Uri result = newUri;
+                post(callback, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onInsertComplete(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Updates the products at the URI, see {@link ContentResolver#update} */
+    public void update(final Uri uri, final ContentValues values, final String selection,
+                       final String[] selectionArgs, final Callback callback) {
+        enqueue(uri, new Runnable() {
+            @Override
+            public void run() {
+                int rows = 0;
+                try {
+                    rows = mResolver.update(uri, values, selection, selectionArgs);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to update " + uri, e);
+                }
+                final int result = rows;
+                post(callback, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onUpdateComplete(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Deletes the products at the URI, see {@link ContentResolver#delete} */
+    public void delete(final Uri uri, final String selection, final String[] selectionArgs,
+                       final Callback callback) {
+        enqueue(uri, new Runnable() {
+            @Override
+            public void run() {
+                int rows = 0;
+                try {
+                    rows = mResolver.delete(uri, selection, selectionArgs);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to delete " + uri, e);
+                }
+                final int result = rows;
+                post(callback, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onDeleteComplete(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Changes the quantity of the product by delta, see {@link BookInventoryContract#PATH_ADJUST}.
+     * Ordered with the other writes to the product URI.
+     */
+    public void adjustQuantity(final Uri productUri, final int delta, final Callback callback) {
+        enqueue(productUri, new Runnable() {
+            @Override
+            public void run() {
+                int quantity = -1;
+                try {
+                    Bundle extras = new Bundle();
+                    extras.putInt(BookInventoryContract.KEY_DELTA, delta);
+                    Bundle result = mResolver.call(BookInventoryContract.BookEntry.CONTENT_URI,
+                            BookInventoryContract.METHOD_ADJUST_QUANTITY,
+                            productUri.buildUpon().appendPath(BookInventoryContract.PATH_ADJUST).toString(),
+                            extras);
+                    quantity = result.getInt(BookInventoryContract.RESULT_QUANTITY, -1);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to adjust " + productUri, e);
+                }
+                final int result = quantity;
+                post(callback, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onAdjustComplete(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Restores the products deleted since the given time, see
+     * {@link BookInventoryContract#METHOD_UNDO_DELETE}. Pass the URI the delete was requested on,
+     * so the undo can't run before it.
+     */
+    public void undoDelete(final Uri uri, final long since, final Callback callback) {
+        enqueue(uri, new Runnable() {
+            @Override
+            public void run() {
+                int restored = 0;
+                try {
+                    Bundle result = mResolver.call(BookInventoryContract.BookEntry.CONTENT_URI,
+                            BookInventoryContract.METHOD_UNDO_DELETE, Long.toString(since), null);
+                    restored = result.getInt(BookInventoryContract.RESULT_RESTORED);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to undo the delete of " + uri, e);
+                }
+                final int result = restored;
+                post(callback, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onUndoComplete(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void post(Callback callback, Runnable delivery) {
+        if (callback != null) {
+            mMainHandler.post(delivery);
+        }
+    }
+
+    /** Runs the write once the writes requested before it on the same URI are done */
+    private void enqueue(Uri uri, Runnable write) {
+        // Query parameters don't change which rows are written
+        final Uri key = uri.buildUpon().clearQuery().build();
+        synchronized (mQueues) {
+            ArrayDeque<Runnable> queue = mQueues.get(key);
+            if (queue != null) {
+                queue.add(write);
+                return;
+            }
+            mQueues.put(key, new ArrayDeque<Runnable>());
+        }
+        final Runnable first = write;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain(key, first);
+            }
+        });
+    }
+
+    /** Runs the write and then every write queued behind it, on the current thread */
+    private void drain(Uri key, Runnable write) {
+        // Each write catches its own failures, so one bad write can't strand the ones behind it
+        while (write != null) {
+            write.run();
+            synchronized (mQueues) {
+                write = mQueues.get(key).poll();
+                if (write == null) {
+                    mQueues.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms, row counts and slow operation samples of {@link BookInventoryProvider},
+ * by operation and URI. Disabled by default: {@link #start()} then costs a volatile read and
+ * {@link #end} returns right away.
+ * <p>
+ * An operation is timed with
+ * <pre>
+ *     long start = metrics.start();
+ *     ... run it, calling noteStatement(sql) before the statement that does the work ...
+ *     metrics.end(ProviderMetrics.OP_QUERY, "Products", start, rows);
+ * </pre>
+ * The last statement noted on the thread is kept with the operations slower than the
+ * threshold, along with its query plan.
+ */
+public class ProviderMetrics {
+
+    public static final String OP_QUERY = "query";
+    public static final String OP_INSERT = "insert";
+    public static final String OP_UPDATE = "update";
+    public static final String OP_DELETE = "delete";
+    public static final String OP_BULK_INSERT = "bulkInsert";
+    public static final String OP_APPLY_BATCH = "applyBatch";
+
+    /** Operations slower than this are sampled, unless another threshold is set */
+    public static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 50;
+
+    /** Only the latest slow operations are kept */
+    static final int MAX_SLOW_SAMPLES = 20;
+
+    /**
+     * Gives the query plan of a statement, for the slow samples.
+     */
+    public interface Explainer {
+        String explain(String sql);
+    }
+
+    /**
+     * Figures of one operation on one URI.
+     */
+    public static final class OperationStats {
+
+        final LatencyHistogram mLatency = new LatencyHistogram();
+
+        final AtomicLong mRows = new AtomicLong();
+
+        public LatencyHistogram getLatency() {
+            return mLatency;
+        }
+
+        /** Total of the rows returned or changed */
+        public long getRows() {
+            return mRows.get();
+        }
+    }
+
+    /**
+     * An operation that took longer than the threshold.
+     */
+    public static final class SlowSample {
+
+        public final long timeMillis;
+
+        public final String operation;
+
+        public final String uri;
+
+        public final long micros;
+
+        public final int rows;
+
+        /** The last statement the operation noted, null if none */
+        public final String sql;
+
+        /** The query plan of the statement, null if there is no statement */
+        public final String plan;
+
+        SlowSample(long timeMillis, String operation, String uri, long micros, int rows, String sql, String plan) {
+            this.timeMillis = timeMillis;
+            this.operation = operation;
+            this.uri = uri;
+            this.micros = micros;
+            this.rows = rows;
+            this.sql = sql;
+            this.plan = plan;
+        }
+    }
+
+    private final Explainer mExplainer;
+
+    private volatile boolean mEnabled;
+
+    private volatile long mSlowThresholdNanos = DEFAULT_SLOW_THRESHOLD_MILLIS * 1000000;
+
+    /** Keyed by operation and URI name, see {@link #key} */
+    private final ConcurrentHashMap<String, OperationStats> mStats = new ConcurrentHashMap<>();
+
+    /** Guarded by itself */
+    private final ArrayDeque<SlowSample> mSlowSamples = new ArrayDeque<>();
+
+    /** The statement last noted by the operation running on the thread */
+    private final ThreadLocal<String> mStatement = new ThreadLocal<>();
+
+    public ProviderMetrics(Explainer explainer) {
+        mExplainer = explainer;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /** Turns recording on or off, what was recorded is kept */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public void setSlowThresholdMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative: " + millis);
+        }
+        mSlowThresholdNanos = millis * 1000000;
+    }
+
+    public long getSlowThresholdMillis() {
+        return mSlowThresholdNanos / 1000000;
+    }
+
+    /** Returns the start time to pass to {@link #end}, 0 when disabled */
+    public long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /** Remembers the SQL of the statement the running operation is about to execute */
+    public void noteStatement(String sql) {
+        if (mEnabled) {
+            mStatement.set(sql);
+        }
+    }
+
+    /**
+     * Records an operation started with {@link #start()}. Does nothing if it was started while
+     * disabled.
+     *
+     * @param operation One of the OP_ constants
+     * @param uri       Name of the URI pattern the operation ran on
+     * @param start     What {@link #start()} returned
+     * @param rows      Rows returned or changed
+     */
+    public void end(String operation, String uri, long start, int rows) {
+        if (start == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        String sql = mStatement.get();
+        mStatement.remove();
+
+        OperationStats stats = getOrCreateStats(operation, uri);
+        stats.mLatency.record(nanos / 1000);
+        stats.mRows.addAndGet(Math.max(rows, 0));
+
+        if (nanos >= mSlowThresholdNanos) {
+            // Only slow operations pay for the plan
+            String plan = sql == null ? null : mExplainer.explain(sql);
+            SlowSample sample = new SlowSample(System.currentTimeMillis(), operation, uri, nanos / 1000,
+                    rows, sql, plan);
+            synchronized (mSlowSamples) {
+                if (mSlowSamples.size() == MAX_SLOW_SAMPLES) {
+                    mSlowSamples.removeFirst();
+                }
+                mSlowSamples.addLast(sample);
+            }
+        }
+    }
+
+    /** Returns the figures of the operation on the URI, null if it was never recorded */
+    public OperationStats getStats(String operation, String uri) {
+        return mStats.get(key(operation, uri));
+    }
+
+    /** Returns the slow samples, oldest first */
+    public List<SlowSample> getSlowSamples() {
+        synchronized (mSlowSamples) {
+            return new ArrayList<>(mSlowSamples);
+        }
+    }
+
+    /** Forgets everything recorded */
+    public void reset() {
+        mStats.clear();
+        synchronized (mSlowSamples) {
+            mSlowSamples.clear();
+        }
+    }
+
+    /** Prints a line per operation and URI, then the slow samples */
+    public void dump(PrintWriter writer) {
+        writer.println("Provider metrics: " + (mEnabled ? "enabled" : "disabled")
+                + ", slow threshold " + getSlowThresholdMillis() + " ms");
+        writer.println(String.format(Locale.US, "%-32s %8s %10s %9s %9s %9s %9s %9s",
+                "operation uri", "count", "rows", "mean us", "p50 us", "p90 us", "p99 us", "max us"));
+        for (Map.Entry<String, OperationStats> entry : new TreeMap<>(mStats).entrySet()) {
+            LatencyHistogram latency = entry.getValue().mLatency;
+            writer.println(String.format(Locale.US, "%-32s %8d %10d %9.0f %9d %9d %9d %9d",
+                    entry.getKey(), latency.getCount(), entry.getValue().getRows(), latency.getMeanMicros(),
+                    latency.getPercentileMicros(50), latency.getPercentileMicros(90),
+                    latency.getPercentileMicros(99), latency.getMaxMicros()));
+        }
+
+        List<SlowSample> samples = getSlowSamples();
+        writer.println("Slow operations (" + samples.size() + "):");
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        for (SlowSample sample : samples) {
+            writer.println("  " + format.format(new Date(sample.timeMillis)) + " " + sample.operation + " "
+                    + sample.uri + ": " + sample.micros + " us, " + sample.rows + " rows");
+            if (sample.sql != null) {
+                writer.println("    " + sample.sql);
+            }
+            if (sample.plan != null) {
+                for (String line : sample.plan.split("\n")) {
+                    writer.println("      " + line);
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private OperationStats getOrCreateStats(String operation, String uri) {
+        String key = key(operation, uri);
+        OperationStats stats = mStats.get(key);
+        if (stats == null) {
+            OperationStats created = new OperationStats();
+            stats = mStats.putIfAbsent(key, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private static String key(String operation, String uri) {
+        return operation + " " + uri;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Idle compiled statements for one SQL string. A compiled statement holds its bind arguments,
+ * so it can only be used by one thread at a time: a thread takes one (or compiles one if all
+ * are busy) and gives it back when done. No lock is held while the statement waits for the
+ * write connection, which a batch on another thread may be holding. The pool holds at most as
+ * many statements as there were threads running the SQL at the same time.
+ */
+final class StatementPool {
+
+    private final SQLiteDatabase mDatabase;
+
+    private final String mSql;
+
+    private final Queue<SQLiteStatement> mIdle = new ConcurrentLinkedQueue<>();
+
+    StatementPool(SQLiteDatabase database, String sql) {
+        mDatabase = database;
+        mSql = sql;
+    }
+
+    SQLiteStatement acquire() {
+        SQLiteStatement statement = mIdle.poll();
+        return statement != null ? statement : mDatabase.compileStatement(mSql);
+    }
+
+    void release(SQLiteStatement statement) {
+        statement.clearBindings();
+        mIdle.offer(statement);
+    }
+}
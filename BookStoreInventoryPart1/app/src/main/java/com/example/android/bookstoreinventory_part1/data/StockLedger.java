@@ -0,0 +1,258 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.StockMovementEntry;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the stock ledger: one {@link StockMovementEntry} row per change of quantity, appended
+ * by the caller inside the transaction that makes the change. Recording is a single compiled
+ * INSERT, with no read of the ledger, so the sale path pays one row append and nothing more.
+ * <p>
+ * Every {@link #COMPACT_THRESHOLD} movements the ledger is compacted on a background thread into
+ * one snapshot per product (see {@link BookInventoryMigrations#TABLE_STOCK_SNAPSHOTS}), so a
+ * quantity is rebuilt from its snapshot and the few movements after it instead of the whole
+ * history. Compaction never removes movements.
+ */
+final class StockLedger {
+
+    private static final String LOG_TAG = StockLedger.class.getSimpleName();
+
+    /** Number of movements recorded after which a compaction is scheduled */
+    static final int COMPACT_THRESHOLD = 10000;
+
+    /**
+     * Background thread running the compactions of every ledger, away from the write paths. A
+     * daemon, like the checkpoint thread of {@link BookInventoryDbHelper}.
+     */
+    private static final Executor sCompactExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, LOG_TAG + " compaction");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final String INSERT_SQL = "INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+            + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+            + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT
+            + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * Records the change of a product to quantity ?1, from the quantity it has before the update
+     * runs. Inserts nothing if the quantity doesn't change or the product doesn't exist or is
+     * deleted, which the update refuses to change.
+     */
+    private static final String INSERT_QUANTITY_SQL = "INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+            + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+            + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT + ")"
+            + " SELECT " + BookEntry._ID + ", ?1 - " + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", ?2, ?3"
+            + " FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + BookEntry._ID + " = ?4 AND " + BookEntry.COLUMN_PRODUCTS_QUANTITY + " != ?1"
+            + " AND " + ProductStatements.SELECTION_SHOWN;
+
+    /**
+     * Folds the movements after each product's snapshot into it. The first bound argument is the
+     * highest movement already compacted, which lets SQLite skip the compacted history through
+     * the rowid; the per-product check keeps the result right whatever value is passed.
+     */
+    private static final String COMPACT_SQL = "INSERT OR REPLACE INTO " + BookInventoryMigrations.TABLE_STOCK_SNAPSHOTS
+            + " (" + BookInventoryMigrations.COLUMN_SNAPSHOT_PRODUCT_ID + ", "
+            + BookInventoryMigrations.COLUMN_SNAPSHOT_QUANTITY + ", "
+            + BookInventoryMigrations.COLUMN_SNAPSHOT_MOVEMENT_ID + ")"
+            + " SELECT m." + StockMovementEntry.COLUMN_PRODUCT_ID
+            + ", IFNULL(s." + BookInventoryMigrations.COLUMN_SNAPSHOT_QUANTITY + ", 0) + SUM(m." + StockMovementEntry.COLUMN_DELTA + ")"
+            + ", MAX(m." + StockMovementEntry._ID + ")"
+            + " FROM " + StockMovementEntry.TABLE_NAME + " m LEFT JOIN " + BookInventoryMigrations.TABLE_STOCK_SNAPSHOTS
+            + " s ON s." + BookInventoryMigrations.COLUMN_SNAPSHOT_PRODUCT_ID + " = m." + StockMovementEntry.COLUMN_PRODUCT_ID
+            + " WHERE m." + StockMovementEntry._ID + " > ?"
+            + " AND m." + StockMovementEntry._ID + " > IFNULL(s." + BookInventoryMigrations.COLUMN_SNAPSHOT_MOVEMENT_ID + ", 0)"
+            + " GROUP BY m." + StockMovementEntry.COLUMN_PRODUCT_ID;
+
+    private static final String COMPACTED_UP_TO_SQL = "SELECT IFNULL(MAX("
+            + BookInventoryMigrations.COLUMN_SNAPSHOT_MOVEMENT_ID + "), 0) FROM "
+            + BookInventoryMigrations.TABLE_STOCK_SNAPSHOTS;
+
+    /** The snapshot of product ?1 plus the sum of its movements after the snapshot */
+    private static final String REBUILD_SQL = "SELECT IFNULL((SELECT "
+            + BookInventoryMigrations.COLUMN_SNAPSHOT_QUANTITY + " FROM " + BookInventoryMigrations.TABLE_STOCK_SNAPSHOTS
+            + " WHERE " + BookInventoryMigrations.COLUMN_SNAPSHOT_PRODUCT_ID + " = ?1), 0)"
+            + " + IFNULL((SELECT SUM(" + StockMovementEntry.COLUMN_DELTA + ") FROM " + StockMovementEntry.TABLE_NAME
+            + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID + " = ?1 AND " + StockMovementEntry._ID
+            + " > IFNULL((SELECT " + BookInventoryMigrations.COLUMN_SNAPSHOT_MOVEMENT_ID
+            + " FROM " + BookInventoryMigrations.TABLE_STOCK_SNAPSHOTS
+            + " WHERE " + BookInventoryMigrations.COLUMN_SNAPSHOT_PRODUCT_ID + " = ?1), 0)), 0)";
+
+    private final SQLiteDatabase mDatabase;
+
+    private final StatementPool mInsert;
+
+    private final StatementPool mInsertQuantity;
+
+    private final StatementPool mRebuild;
+
+    /** Movements recorded since the last compaction was scheduled */
+    private final AtomicInteger mRecordedSinceCompact = new AtomicInteger();
+
+    /** True while a compaction is queued or running, so they don't pile up */
+    private final AtomicBoolean mCompactPending = new AtomicBoolean();
+
+    StockLedger(SQLiteDatabase database) {
+        mDatabase = database;
+        mInsert = new StatementPool(database, INSERT_SQL);
+        mInsertQuantity = new StatementPool(database, INSERT_QUANTITY_SQL);
+        mRebuild = new StatementPool(database, REBUILD_SQL);
+    }
+
+    /** Records that the quantity of the product changed by delta. Does nothing if delta is 0. */
+    void record(long productId, long delta, String reason) {
+        if (delta == 0) {
+            return;
+        }
+        SQLiteStatement statement = mInsert.acquire();
+        try {
+            statement.bindLong(1, productId);
+            statement.bindLong(2, delta);
+            statement.bindString(3, reason);
+            statement.bindLong(4, System.currentTimeMillis());
+            statement.executeInsert();
+        } finally {
+            mInsert.release(statement);
+        }
+        onRecorded(1);
+    }
+
+    /**
+     * Records that the product is about to be set to quantity, the difference with its current
+     * quantity. Must be called in the update's transaction, before the update.
+     */
+    void recordQuantity(long productId, long quantity, String reason) {
+        SQLiteStatement statement = mInsertQuantity.acquire();
+        int recorded;
+        try {
+            statement.bindLong(1, quantity);
+            statement.bindString(2, reason);
+            statement.bindLong(3, System.currentTimeMillis());
+            statement.bindLong(4, productId);
+            recorded = statement.executeUpdateDelete();
+        } finally {
+            mInsertQuantity.release(statement);
+        }
+        onRecorded(recorded);
+    }
+
+    /**
+     * Records that every product matching the selection is about to be set to quantity. Must be
+     * called in the update's transaction, before the update, so the selection still matches the
+     * rows it is about to change.
+     */
+    void recordQuantity(String selection, String[] selectionArgs, long quantity, String reason) {
+        String where = BookEntry.COLUMN_PRODUCTS_QUANTITY + " != ?";
+        if (selection != null && !selection.isEmpty()) {
+            where = "(" + selection + ") AND " + where;
+        }
+        SQLiteStatement statement = mDatabase.compileStatement("INSERT INTO " + StockMovementEntry.TABLE_NAME
+                + " (" + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_DELTA + ", "
+                + StockMovementEntry.COLUMN_REASON + ", " + StockMovementEntry.COLUMN_CREATED_AT + ")"
+                + " SELECT " + BookEntry._ID + ", ? - " + BookEntry.COLUMN_PRODUCTS_QUANTITY + ", ?, ?"
+                + " FROM " + BookEntry.TABLE_NAME + " WHERE " + where);
+        int recorded;
+        try {
+            statement.bindLong(1, quantity);
+            statement.bindString(2, reason);
+            statement.bindLong(3, System.currentTimeMillis());
+            int index = 4;
+            if (selectionArgs != null) {
+                for (String arg : selectionArgs) {
+                    statement.bindString(index++, arg);
+                }
+            }
+            statement.bindLong(index, quantity);
+            recorded = statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+        onRecorded(recorded);
+    }
+
+    /**
+     * Returns the quantity of the product according to the ledger: its snapshot plus the
+     * movements recorded after it.
+     */
+    long rebuildQuantity(long productId) {
+        SQLiteStatement statement = mRebuild.acquire();
+        try {
+            statement.bindLong(1, productId);
+            return statement.simpleQueryForLong();
+        } finally {
+            mRebuild.release(statement);
+        }
+    }
+
+    /**
+     * Folds every movement recorded since the last compaction into the snapshots, in one
+     * transaction. Returns the number of snapshots written.
+     */
+    int compact() {
+        long start = SystemClock.elapsedRealtime();
+        int compacted;
+        mDatabase.beginTransaction();
+        try {
+            long compactedUpTo;
+            SQLiteStatement statement = mDatabase.compileStatement(COMPACTED_UP_TO_SQL);
+            try {
+                compactedUpTo = statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+            statement = mDatabase.compileStatement(COMPACT_SQL);
+            try {
+                statement.bindLong(1, compactedUpTo);
+                compacted = statement.executeUpdateDelete();
+            } finally {
+                statement.close();
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        Log.i(LOG_TAG, "Compacted " + compacted + " snapshots in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+        return compacted;
+    }
+
+    /** Counts the recorded movements and schedules a compaction once enough have piled up */
+    private void onRecorded(int count) {
+        if (count <= 0 || mRecordedSinceCompact.addAndGet(count) < COMPACT_THRESHOLD) {
+            return;
+        }
+        if (!mCompactPending.compareAndSet(false, true)) {
+            return;
+        }
+        mRecordedSinceCompact.set(0);
+        sCompactExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    // The snapshots are only a shortcut, the next compaction catches up
+                    Log.w(LOG_TAG, "Compaction failed", e);
+                } finally {
+                    mCompactPending.set(false);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the CSV line parser and field writer used by the product import and export.
+ */
+public class CsvTest {
+
+    @Test
+    public void parseLine_splitsPlainFields() {
+        List<String> fields = new ArrayList<>();
+        Csv.parseLine("The Hobbit,999,7,3,5555555", fields);
+        assertEquals(Arrays.asList("The Hobbit", "999", "7", "3", "5555555"), fields);
+    }
+
+    @Test
+    public void parseLine_keepsEmptyFields() {
+        List<String> fields = new ArrayList<>();
+        Csv.parseLine(",a,,", fields);
+        assertEquals(Arrays.asList("", "a", "", ""), fields);
+    }
+
+    @Test
+    public void parseLine_unquotesFields() {
+        List<String> fields = new ArrayList<>();
+        Csv.parseLine("\"Hello, \"\"World\"\"\",1", fields);
+        assertEquals(Arrays.asList("Hello, \"World\"", "1"), fields);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseLine_rejectsUnterminatedQuote() {
+        Csv.parseLine("\"The Hobbit,1", new ArrayList<String>());
+    }
+
+    @Test
+    public void writeField_roundTripsThroughParse() throws IOException {
+        String[] names = {"Plain", "With, comma", "With \"quotes\"", ""};
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            Csv.writeField(line, names[i]);
+        }
+        List<String> fields = new ArrayList<>();
+        Csv.parseLine(line.toString(), fields);
+        assertEquals(Arrays.asList(names), fields);
+    }
+}
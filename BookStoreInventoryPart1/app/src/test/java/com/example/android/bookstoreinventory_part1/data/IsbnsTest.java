@@ -0,0 +1,62 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the normalization of ISBNs.
+ */
+public class IsbnsTest {
+
+    @Test
+    public void normalize_dropsSeparators() {
+        assertEquals("9780306406157", Isbns.normalize("978-0-306-40615-7"));
+        assertEquals("9780306406157", Isbns.normalize(" 978 0306 406157 "));
+    }
+
+    @Test
+    public void normalize_turnsIsbn10IntoIsbn13() {
+        assertEquals("9780306406157", Isbns.normalize("0-306-40615-2"));
+        assertEquals("9780201633610", Isbns.normalize("0201633612"));
+    }
+
+    @Test
+    public void normalize_acceptsXAsTheLastDigitOfAnIsbn10() {
+        assertEquals("9780804429573", Isbns.normalize("0-8044-2957-X"));
+        assertEquals("9780804429573", Isbns.normalize("080442957x"));
+    }
+
+    @Test
+    public void normalize_accepts979Isbns() {
+        assertEquals("9791069000001", Isbns.normalize("979-10-690-0000-1"));
+    }
+
+    @Test
+    public void isValid_rejectsWrongCheckDigits() {
+        assertFalse(Isbns.isValid("978-0-306-40615-8"));
+        assertFalse(Isbns.isValid("0-306-40615-3"));
+        assertTrue(Isbns.isValid("0-306-40615-2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsOtherEans() {
+        // A valid EAN-13, but not of a book
+        Isbns.normalize("4006381333931");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsXAnywhereElse() {
+        Isbns.normalize("08044295X7");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsLetters() {
+        Isbns.normalize("ISBN 0-306-40615-2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsOtherLengths() {
+        Isbns.normalize("978030640615");
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the latency histogram: its buckets and the accuracy of its percentiles.
+ */
+public class LatencyHistogramTest {
+
+    /** A percentile is reported as the upper bound of its bucket, at most this much above */
+    private static final double MAX_RELATIVE_ERROR = 1.0 / LatencyHistogram.SUB_BUCKETS;
+
+    @Test
+    public void buckets_coverEveryValueOnce() {
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long lower = LatencyHistogram.lowerBound(i);
+            long upper = LatencyHistogram.upperBound(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(lower));
+            assertEquals(i, LatencyHistogram.bucketIndex(upper));
+            assertEquals(upper + 1, LatencyHistogram.lowerBound(i + 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10; micros++) {
+            histogram.record(micros);
+        }
+        assertEquals(5, histogram.getPercentileMicros(50));
+        assertEquals(9, histogram.getPercentileMicros(90));
+        assertEquals(10, histogram.getPercentileMicros(100));
+        assertEquals(5.5, histogram.getMeanMicros(), 0);
+    }
+
+    @Test
+    public void percentiles_areWithinOneBucketOfExact() {
+        // Log-normal latencies, from tens of microseconds to hundreds of milliseconds
+        Random random = new Random(19);
+        long[] values = new long[100000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(6 + 2 * random.nextGaussian());
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long reported = histogram.getPercentileMicros(percentile);
+            assertTrue(percentile + ": " + reported + " < " + exact, reported >= exact);
+            assertTrue(percentile + ": " + reported + " too far above " + exact,
+                    reported <= exact + Math.max(1, exact * MAX_RELATIVE_ERROR));
+        }
+        assertEquals(values[values.length - 1], histogram.getMaxMicros());
+        assertEquals(values.length, histogram.getCount());
+    }
+
+    @Test
+    public void reset_forgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1234);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    public void concurrentRecords_areAllCounted() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) {
+                        histogram.record(i % 5000);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.getCount());
+        assertEquals(4999, histogram.getMaxMicros());
+    }
+}
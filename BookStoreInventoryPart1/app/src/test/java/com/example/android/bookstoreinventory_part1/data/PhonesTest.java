@@ -0,0 +1,44 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the normalization of supplier phone numbers.
+ */
+public class PhonesTest {
+
+    @Test
+    public void normalize_dropsSeparators() {
+        assertEquals("5550109999", Phones.normalize("555-010-9999"));
+        assertEquals("+15550109999", Phones.normalize("+1 (555) 010.9999"));
+        assertEquals("0207946", Phones.normalize(" 020 / 7946 "));
+    }
+
+    @Test
+    public void normalize_keepsNumbersTooLargeForAnInt() {
+        assertEquals("+442079460958", Phones.normalize("+44 20 7946 0958"));
+        assertEquals("999999999999999", Phones.normalize("999999999999999"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsLetters() {
+        Phones.normalize("555-CALL-NOW");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsPlusInTheMiddle() {
+        Phones.normalize("555+1234");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsNoDigits() {
+        Phones.normalize(" - ");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void normalize_rejectsTooManyDigits() {
+        Phones.normalize("1234567890123456");
+    }
+}
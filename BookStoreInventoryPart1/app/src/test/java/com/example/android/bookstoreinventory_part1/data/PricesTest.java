@@ -0,0 +1,50 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the conversions between displayed prices and cents.
+ */
+public class PricesTest {
+
+    @Test
+    public void parseCents_acceptsUpToTwoDecimals() {
+        assertEquals(900, Prices.parseCents("9"));
+        assertEquals(990, Prices.parseCents("9.9"));
+        assertEquals(999, Prices.parseCents("9.99"));
+        assertEquals(999, Prices.parseCents(" 9.990 "));
+        assertEquals(0, Prices.parseCents("0"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseCents_rejectsFractionsOfCents() {
+        Prices.parseCents("9.999");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseCents_rejectsNegativePrices() {
+        Prices.parseCents("-1");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseCents_rejectsText() {
+        Prices.parseCents("nine");
+    }
+
+    @Test
+    public void format_alwaysShowsTwoDecimals() {
+        assertEquals("9.99", Prices.format(999));
+        assertEquals("9.05", Prices.format(905));
+        assertEquals("0.00", Prices.format(0));
+        assertEquals("1200.50", Prices.format(120050));
+    }
+
+    @Test
+    public void format_roundTripsThroughParse() {
+        for (long cents = 0; cents < 10000; cents += 7) {
+            assertEquals(cents, Prices.parseCents(Prices.format(cents)));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the SQL a {@link ProductQuery} is turned into.
+ */
+public class ProductQueryTest {
+
+    @Test
+    public void emptyQuery_hasNoSelectionNorSortOrder() {
+        ProductQuery query = new ProductQuery.Builder().namePrefix("").build();
+        assertFalse(query.hasFilter());
+        assertNull(query.getSelection());
+        assertEquals(0, query.getSelectionArgs().length);
+        assertNull(query.getSortOrder());
+    }
+
+    @Test
+    public void filters_bindTheirValuesInSelectionOrder() {
+        ProductQuery query = new ProductQuery.Builder()
+                .maxQuantity(20)
+                .supplier(3)
+                .minPriceCents(500)
+                .build();
+        assertTrue(query.hasFilter());
+        assertEquals(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = ? AND "
+                + BookEntry.COLUMN_PRODUCT_PRICES + " >= ? AND "
+                + BookEntry.COLUMN_PRODUCTS_QUANTITY + " <= ?", query.getSelection());
+        assertArrayEquals(new String[]{"3", "500", "20"}, query.getSelectionArgs());
+    }
+
+    @Test
+    public void values_neverReachTheSql() {
+        ProductQuery query = new ProductQuery.Builder().namePrefix("x' OR 1=1 --").build();
+        assertFalse(query.getSelection().contains("OR 1=1"));
+        assertEquals("x' OR 1=1 --", query.getSelectionArgs()[0]);
+    }
+
+    @Test
+    public void sameShape_sharesItsSql() {
+        ProductQuery first = new ProductQuery.Builder().supplier(1).sortBy(ProductQuery.SORT_PRICE, true).build();
+        ProductQuery second = new ProductQuery.Builder().supplier(4).sortBy(ProductQuery.SORT_PRICE, true).build();
+        assertEquals(first.getShape(), second.getShape());
+        assertSame(first.getSelection(), second.getSelection());
+        assertSame(first.getSortOrder(), second.getSortOrder());
+    }
+
+    @Test
+    public void sort_isBrokenById_inTheSameDirection() {
+        assertEquals(BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE, " + BookEntry._ID,
+                new ProductQuery.Builder().sortBy(ProductQuery.SORT_NAME, false).build().getSortOrder());
+        assertEquals(BookEntry.COLUMN_PRODUCTS_QUANTITY + " DESC, " + BookEntry._ID + " DESC",
+                new ProductQuery.Builder().sortBy(ProductQuery.SORT_QUANTITY, true).build().getSortOrder());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sort_rejectsColumnsOutsideTheWhitelist() {
+        new ProductQuery.Builder().sortBy(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void build_rejectsAnEmptyRange() {
+        new ProductQuery.Builder().minQuantity(10).maxQuantity(5).build();
+    }
+
+    @Test
+    public void buildUpon_keepsTheSortWhenFiltersAreCleared() {
+        ProductQuery query = new ProductQuery.Builder().supplier(2).namePrefix("the")
+                .sortBy(ProductQuery.SORT_SUPPLIER, true).build();
+        ProductQuery cleared = query.buildUpon().clearFilters().build();
+        assertFalse(cleared.hasFilter());
+        assertEquals(query.getSortOrder(), cleared.getSortOrder());
+    }
+
+    @Test
+    public void namePrefix_isARangeOfTheFoldedPrefix() {
+        ProductQuery query = new ProductQuery.Builder().namePrefix("The Ho").build();
+        assertArrayEquals(new String[]{"The Ho", "the hp"}, query.getSelectionArgs());
+        assertEquals("abd", ProductQuery.prefixUpperBound("ABC"));
+        // Folded names have no upper case letters to stop at
+        assertEquals("x[", ProductQuery.prefixUpperBound("x@"));
+    }
+
+    @Test
+    public void namePrefix_withoutUpperBound_comparesTheStartOfTheName() {
+        String prefix = "a\uFFFF";
+        assertNull(ProductQuery.prefixUpperBound(prefix));
+        ProductQuery query = new ProductQuery.Builder().namePrefix(prefix).build();
+        assertTrue(query.getSelection(), query.getSelection().contains("substr("));
+        assertArrayEquals(new String[]{prefix, "2", prefix}, query.getSelectionArgs());
+    }
+}
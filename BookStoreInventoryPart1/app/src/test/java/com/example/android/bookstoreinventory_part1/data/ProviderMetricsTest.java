@@ -0,0 +1,117 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the provider metrics: what is recorded when enabled, and that disabled
+ * metrics cost next to nothing.
+ */
+public class ProviderMetricsTest {
+
+    private static final String PLAN = "SEARCH product_inventory USING INTEGER PRIMARY KEY (rowid=?)";
+
+    /** Upper bound of the mean cost of a disabled start() and end(), in nanoseconds */
+    private static final double MAX_DISABLED_NANOS = 20;
+
+    private static final int CALLS = 10000000;
+
+    private final ProviderMetrics mMetrics = new ProviderMetrics(new ProviderMetrics.Explainer() {
+        @Override
+        public String explain(String sql) {
+            return PLAN;
+        }
+    });
+
+    @Test
+    public void disabled_recordsNothing() {
+        long start = mMetrics.start();
+        mMetrics.noteStatement("SELECT 1");
+        mMetrics.end(ProviderMetrics.OP_QUERY, "Products", start, 3);
+        assertEquals(0, start);
+        assertNull(mMetrics.getStats(ProviderMetrics.OP_QUERY, "Products"));
+    }
+
+    @Test
+    public void enabled_recordsLatencyAndRowsByUri() {
+        mMetrics.setEnabled(true);
+        for (int i = 0; i < 3; i++) {
+            long start = mMetrics.start();
+            mMetrics.end(ProviderMetrics.OP_QUERY, "Products", start, 50);
+        }
+        mMetrics.end(ProviderMetrics.OP_UPDATE, "Products/#", mMetrics.start(), 1);
+
+        ProviderMetrics.OperationStats stats = mMetrics.getStats(ProviderMetrics.OP_QUERY, "Products");
+        assertEquals(3, stats.getLatency().getCount());
+        assertEquals(150, stats.getRows());
+        assertEquals(1, mMetrics.getStats(ProviderMetrics.OP_UPDATE, "Products/#").getRows());
+        assertNull(mMetrics.getStats(ProviderMetrics.OP_UPDATE, "Products"));
+    }
+
+    @Test
+    public void slowOperation_isSampledWithStatementAndPlan() {
+        mMetrics.setEnabled(true);
+        mMetrics.setSlowThresholdMillis(0);
+        long start = mMetrics.start();
+        mMetrics.noteStatement("SELECT * FROM product_inventory WHERE _id=?");
+        mMetrics.end(ProviderMetrics.OP_QUERY, "Products/#", start, 1);
+        // The statement is only kept for the operation that noted it
+        mMetrics.end(ProviderMetrics.OP_INSERT, "Products", mMetrics.start(), 1);
+
+        List<ProviderMetrics.SlowSample> samples = mMetrics.getSlowSamples();
+        assertEquals(2, samples.size());
+        assertEquals("SELECT * FROM product_inventory WHERE _id=?", samples.get(0).sql);
+        assertEquals(PLAN, samples.get(0).plan);
+        assertNull(samples.get(1).sql);
+        assertNull(samples.get(1).plan);
+    }
+
+    @Test
+    public void slowSamples_keepTheLatest() {
+        mMetrics.setEnabled(true);
+        mMetrics.setSlowThresholdMillis(0);
+        for (int i = 0; i < ProviderMetrics.MAX_SLOW_SAMPLES + 5; i++) {
+            mMetrics.end(ProviderMetrics.OP_DELETE, "Products", mMetrics.start(), i);
+        }
+        List<ProviderMetrics.SlowSample> samples = mMetrics.getSlowSamples();
+        assertEquals(ProviderMetrics.MAX_SLOW_SAMPLES, samples.size());
+        assertEquals(5, samples.get(0).rows);
+    }
+
+    @Test
+    public void dump_listsEveryOperation() {
+        mMetrics.setEnabled(true);
+        mMetrics.end(ProviderMetrics.OP_QUERY, "Stats", mMetrics.start(), 6);
+        StringWriter out = new StringWriter();
+        mMetrics.dump(new PrintWriter(out));
+        assertTrue(out.toString(), out.toString().contains("query Stats"));
+    }
+
+    @Test
+    public void disabled_costsNextToNothing() {
+        // Warm up, so the loop is compiled before it is timed
+        long sink = runDisabled(CALLS);
+        long start = System.nanoTime();
+        sink += runDisabled(CALLS);
+        double nanosPerCall = (System.nanoTime() - start) / (double) CALLS;
+        assertEquals(0, sink);
+        assertTrue(nanosPerCall + " ns", nanosPerCall < MAX_DISABLED_NANOS);
+        assertNull(mMetrics.getStats(ProviderMetrics.OP_QUERY, "Products"));
+    }
+
+    /** What every provider operation adds when the metrics are off */
+    private long runDisabled(int calls) {
+        long sum = 0;
+        for (int i = 0; i < calls; i++) {
+            long start = mMetrics.start();
+            mMetrics.end(ProviderMetrics.OP_QUERY, "Products", start, 1);
+            sum += start;
+        }
+        return sum;
+    }
+}
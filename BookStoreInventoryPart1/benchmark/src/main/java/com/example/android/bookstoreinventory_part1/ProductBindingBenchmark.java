@@ -0,0 +1,214 @@
+package com.example.android.bookstoreinventory_part1;
+
+import android.app.Instrumentation;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+
+import com.example.android.bookstoreinventory_part1.data.BenchmarkReport;
+import com.example.android.bookstoreinventory_part1.data.BenchmarkTables;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.CompactProductCursor;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of {@link ProductCursorAdapter} binding a page of the product list, as the list
+ * screen shows it, at every table size of {@link BenchmarkTables#sizes()}. Binding runs on the
+ * main thread. The same pages are also bound from the {@link CompactProductCursor} the
+ * {@link ProductListLoader} copies sorted lists into, and with the view and column lookups of
+ * every row the adapter's view holder replaced.
+ */
+@RunWith(Parameterized.class)
+public class ProductBindingBenchmark {
+
+    private static final int WARMUPS = 20;
+
+    private static final int RUNS = 200;
+
+    /** About a screen of list items */
+    private static final int PAGE_SIZE = 20;
+
+    private static final BenchmarkReport sReport =
+            new BenchmarkReport(ProductBindingBenchmark.class.getSimpleName());
+
+    @Parameterized.Parameters(name = "{0} rows")
+    public static List<Object[]> sizes() {
+        return BenchmarkTables.sizes();
+    }
+
+    private final int mTableSize;
+
+    private Instrumentation mInstrumentation;
+
+    private Cursor mCursor;
+
+    private ProductCursorAdapter mAdapter;
+
+    private RecyclerView mParent;
+
+    public ProductBindingBenchmark(int tableSize) {
+        mTableSize = tableSize;
+    }
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        ContentResolver resolver = BenchmarkTables.getResolver();
+        BenchmarkTables.fill(resolver, mTableSize);
+        mCursor = resolver.query(BookEntry.buildPageUri(mTableSize, "", 0), null, null, null, null);
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // The list item uses framework theme attributes only
+                Context context = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(),
+                        android.R.style.Theme_DeviceDefault_Light);
+                mParent = new RecyclerView(context);
+                mParent.setLayoutManager(new LinearLayoutManager(context));
+                mAdapter = new ProductCursorAdapter(new ProductCursorAdapter.OnProductClickListener() {
+                    @Override
+                    public void onProductClick(long id) {
+                    }
+
+                    @Override
+                    public void onAdjustQuantity(long id, int delta) {
+                    }
+                });
+                mAdapter.swapCursor(mCursor);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mCursor.close();
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        BenchmarkTables.clear(BenchmarkTables.getResolver());
+        sReport.write(InstrumentationRegistry.getTargetContext());
+    }
+
+    /** Binds pages of already created holders, as when the list scrolls */
+    @Test
+    public void bindPage() {
+        assertEquals(mTableSize, mAdapter.getItemCount());
+        measureBindPage("bindPage");
+    }
+
+    /** Binds the same pages from a compact copy of the query result, as a sorted list shows them */
+    @Test
+    public void bindPage_compactCursor() {
+        // The loader keeps larger results as they are
+        Assume.assumeTrue(mTableSize <= ProductListLoader.MAX_COMPACT_ROWS);
+        final CompactProductCursor compact = CompactProductCursor.copyOf(mCursor);
+        try {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mAdapter.swapCursor(compact);
+                }
+            });
+            assertEquals(mTableSize, mAdapter.getItemCount());
+            measureBindPage("bindPage_compactCursor");
+        } finally {
+            compact.close();
+        }
+    }
+
+    /**
+     * Binds the same pages looking up the views and column indices for every row, as the
+     * CursorAdapter.bindView the view holder replaced did
+     */
+    @Test
+    public void bindPage_lookupPerRow() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final View[] views = new View[PAGE_SIZE];
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    views[i] = LayoutInflater.from(mParent.getContext()).inflate(R.layout.list_item, mParent, false);
+                }
+                final int pages = mTableSize / PAGE_SIZE;
+                sReport.measure("bindPage_lookupPerRow", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        int first = (run * 37 % pages) * PAGE_SIZE;
+                        for (int i = 0; i < PAGE_SIZE; i++) {
+                            mCursor.moveToPosition(first + i);
+                            TextView nameTextView = (TextView) views[i].findViewById(R.id.name);
+                            TextView summaryTextView = (TextView) views[i].findViewById(R.id.summary);
+                            int nameColumnIndex = mCursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAMES);
+                            int quantityColumnIndex = mCursor.getColumnIndex(BookEntry.COLUMN_PRODUCTS_QUANTITY);
+                            nameTextView.setText(mCursor.getString(nameColumnIndex));
+                            summaryTextView.setText(mCursor.getString(quantityColumnIndex));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** Binds pages of already created holders through the adapter, under the given name */
+    private void measureBindPage(final String name) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                final ProductCursorAdapter.ProductViewHolder[] holders =
+                        new ProductCursorAdapter.ProductViewHolder[PAGE_SIZE];
+                for (int i = 0; i < PAGE_SIZE; i++) {
+                    holders[i] = mAdapter.onCreateViewHolder(mParent, 0);
+                }
+                final int pages = mTableSize / PAGE_SIZE;
+                sReport.measure(name, mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        // Walk down the list so the cursor window has to move on large tables
+                        int first = (run * 37 % pages) * PAGE_SIZE;
+                        for (int i = 0; i < PAGE_SIZE; i++) {
+                            mAdapter.onBindViewHolder(holders[i], first + i);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /** Creates and binds the holders of a page, as when the list is first shown */
+    @Test
+    public void createAndBindPage() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                sReport.measure("createAndBindPage", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        for (int i = 0; i < PAGE_SIZE; i++) {
+                            mAdapter.onBindViewHolder(mAdapter.onCreateViewHolder(mParent, 0), i);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
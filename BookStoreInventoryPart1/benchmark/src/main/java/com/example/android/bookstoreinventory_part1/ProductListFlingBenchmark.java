@@ -0,0 +1,152 @@
+package com.example.android.bookstoreinventory_part1;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.ContextThemeWrapper;
+
+import com.example.android.bookstoreinventory_part1.data.BenchmarkReport;
+import com.example.android.bookstoreinventory_part1.data.BenchmarkTables;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.CompactProductCursor;
+import com.example.android.bookstoreinventory_part1.data.ProductQuery;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of a fling from the top to the bottom of a sorted list of 200k products: the
+ * {@link CompactProductCursor} the {@link ProductListLoader} returns against the provider cursor
+ * a CursorLoader returns. Each run is one frame of the fling, binding the visible rows through
+ * {@link ProductCursorAdapter} on the main thread, so the report holds the frame times. The Java
+ * and native heap each cursor holds once loaded are recorded as figures.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductListFlingBenchmark {
+
+    private static final int TABLE_SIZE = 200000;
+
+    /** Rows on screen, bound every frame */
+    private static final int VISIBLE_ROWS = 12;
+
+    /** Rows a fast fling moves the list by in one frame */
+    private static final int ROWS_PER_FRAME = 150;
+
+    /** Frames of a fling to the bottom of the list */
+    private static final int FRAMES = (TABLE_SIZE - VISIBLE_ROWS) / ROWS_PER_FRAME + 1;
+
+    /** The projection of the product list */
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES, BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    /** A sorted list, which the loader doesn't read page by page */
+    private static final Uri LIST_URI = new ProductQuery.Builder()
+            .sortBy(ProductQuery.SORT_NAME, false)
+            .build()
+            .appendTo(BookEntry.CONTENT_URI);
+
+    private static final BenchmarkReport sReport =
+            new BenchmarkReport(ProductListFlingBenchmark.class.getSimpleName());
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = BenchmarkTables.getResolver();
+        BenchmarkTables.fill(mResolver, TABLE_SIZE);
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        BenchmarkTables.clear(BenchmarkTables.getResolver());
+        sReport.write(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void fling_queryCursor() {
+        long javaBefore = BenchmarkReport.usedJavaHeap();
+        long nativeBefore = BenchmarkReport.usedNativeHeap();
+        // What a CursorLoader returns: the query result, counted on the loader thread
+        Cursor cursor = mResolver.query(LIST_URI, PROJECTION, null, null, null);
+        try {
+            assertEquals(TABLE_SIZE, cursor.getCount());
+            recordHeap("queryCursor", javaBefore, nativeBefore);
+            fling("fling_queryCursor", cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void fling_compactCursor() {
+        long javaBefore = BenchmarkReport.usedJavaHeap();
+        long nativeBefore = BenchmarkReport.usedNativeHeap();
+        Cursor source = mResolver.query(LIST_URI, PROJECTION, null, null, null);
+        CompactProductCursor cursor;
+        try {
+            cursor = CompactProductCursor.copyOf(source);
+        } finally {
+            source.close();
+        }
+        try {
+            assertEquals(TABLE_SIZE, cursor.getCount());
+            recordHeap("compactCursor", javaBefore, nativeBefore);
+            fling("fling_compactCursor", cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Records the Java and native heap taken since the given figures, once a cursor is loaded */
+    private static void recordHeap(String cursorName, long javaBefore, long nativeBefore) {
+        sReport.record(cursorName + "_javaHeap", TABLE_SIZE, BenchmarkReport.Figure.UNIT_BYTES,
+                BenchmarkReport.usedJavaHeap() - javaBefore);
+        sReport.record(cursorName + "_nativeHeap", TABLE_SIZE, BenchmarkReport.Figure.UNIT_BYTES,
+                BenchmarkReport.usedNativeHeap() - nativeBefore);
+    }
+
+    /**
+     * Binds the visible rows of every frame of a fling from the top to the bottom of the list,
+     * timing each frame
+     */
+    private void fling(final String name, final Cursor cursor) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // The list item uses framework theme attributes only
+                Context context = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(),
+                        android.R.style.Theme_DeviceDefault_Light);
+                RecyclerView parent = new RecyclerView(context);
+                parent.setLayoutManager(new LinearLayoutManager(context));
+                final ProductCursorAdapter adapter = new ProductCursorAdapter(null);
+                adapter.swapCursor(cursor);
+                final ProductCursorAdapter.ProductViewHolder[] holders =
+                        new ProductCursorAdapter.ProductViewHolder[VISIBLE_ROWS];
+                for (int i = 0; i < VISIBLE_ROWS; i++) {
+                    holders[i] = adapter.onCreateViewHolder(parent, 0);
+                }
+                // No warmup, the first frames of a fling are the ones that find the cursor cold
+                sReport.measure(name, TABLE_SIZE, 0, FRAMES, new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        int first = run * ROWS_PER_FRAME;
+                        for (int i = 0; i < VISIBLE_ROWS; i++) {
+                            adapter.onBindViewHolder(holders[i], first + i);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Debug;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Times benchmark operations and collects their results, then writes them as JSON to
+ * files/benchmark/&lt;suite&gt;.json in the data directory of the app under test:
+ * <pre>
+ * {
+ *   "suite": "ProviderBenchmark",
+ *   "timeMillis": 1539000000000,
+ *   "device": {"manufacturer": "...", "model": "...", "sdk": 28},
+ *   "results": [
+ *     {"name": "queryById", "tableSize": 100000, "runs": 200,
+ *      "minNanos": ..., "medianNanos": ..., "p90Nanos": ..., "maxNanos": ..., "meanNanos": ...},
+ *     ...
+ *   ],
+ *   "figures": [
+ *     {"name": "compactCursor_javaHeap", "tableSize": 200000, "unit": "bytes", "value": ...},
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ * Pull a report with
+ * <pre>
+ *     adb shell run-as com.example.android.bookstoreinventory_part1 cat files/benchmark/ProviderBenchmark.json
+ * </pre>
+ */
+public class BenchmarkReport {
+
+    private static final String LOG_TAG = "Benchmark";
+
+    static final String DIRECTORY = "benchmark";
+
+    /** One timed operation of a benchmark */
+    public interface Operation {
+        /**
+         * @param run Index of the run, starting at 0 after the warmup runs
+         */
+        void run(int run);
+    }
+
+    /** Figures of one benchmark at one table size */
+    public static final class Result {
+
+        public final String name;
+
+        public final int tableSize;
+
+        public final int runs;
+
+        public final long minNanos;
+
+        public final long medianNanos;
+
+        public final long p90Nanos;
+
+        public final long maxNanos;
+
+        public final long meanNanos;
+
+        Result(String name, int tableSize, long[] nanos) {
+            this.name = name;
+            this.tableSize = tableSize;
+            runs = nanos.length;
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            minNanos = sorted[0];
+            medianNanos = sorted[sorted.length / 2];
+            p90Nanos = sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.9) - 1)];
+            maxNanos = sorted[sorted.length - 1];
+            long total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            meanNanos = total / sorted.length;
+        }
+    }
+
+    /** A figure of one benchmark at one table size other than a time, like the memory it used */
+    public static final class Figure {
+
+        /** Unit of a figure counting bytes */
+        public static final String UNIT_BYTES = "bytes";
+
+        public final String name;
+
+        public final int tableSize;
+
+        public final String unit;
+
+        public final long value;
+
+        Figure(String name, int tableSize, String unit, long value) {
+            this.name = name;
+            this.tableSize = tableSize;
+            this.unit = unit;
+            this.value = value;
+        }
+    }
+
+    private final String mSuite;
+
+    private final List<Result> mResults = new ArrayList<>();
+
+    private final List<Figure> mFigures = new ArrayList<>();
+
+    public BenchmarkReport(String suite) {
+        mSuite = suite;
+    }
+
+    /**
+     * Runs the operation untimed warmups times, then times each of runs calls separately and
+     * records the result.
+     */
+    public Result measure(String name, int tableSize, int warmups, int runs, Operation operation) {
+        if (runs < 1) {
+            throw new IllegalArgumentException("At least one run is needed: " + runs);
+        }
+        for (int i = 0; i < warmups; i++) {
+            operation.run(i);
+        }
+        long[] nanos = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            operation.run(i);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Result result = new Result(name, tableSize, nanos);
+        synchronized (mResults) {
+            mResults.add(result);
+        }
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%s %s, %d rows: median %.1f us, p90 %.1f us, max %.1f us, min %.1f us",
+                mSuite, name, tableSize, result.medianNanos / 1000.0, result.p90Nanos / 1000.0,
+                result.maxNanos / 1000.0, result.minNanos / 1000.0));
+        return result;
+    }
+
+    /** Records a figure that isn't a time, like the memory an operation used */
+    public Figure record(String name, int tableSize, String unit, long value) {
+        Figure figure = new Figure(name, tableSize, unit, value);
+        synchronized (mFigures) {
+            mFigures.add(figure);
+        }
+        Log.i(LOG_TAG, String.format(Locale.US, "%s %s, %d rows: %d %s", mSuite, name, tableSize, value, unit));
+        return figure;
+    }
+
+    public List<Result> getResults() {
+        synchronized (mResults) {
+            return new ArrayList<>(mResults);
+        }
+    }
+
+    public List<Figure> getFigures() {
+        synchronized (mFigures) {
+            return new ArrayList<>(mFigures);
+        }
+    }
+
+    /** Returns the Java heap in use, after a garbage collection so it only counts live objects */
+    public static long usedJavaHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Returns the native heap in use, where CursorWindows live */
+    public static long usedNativeHeap() {
+        return Debug.getNativeHeapAllocatedSize();
+    }
+
+    /** Writes the results recorded so far, replacing the previous report of the suite */
+    public File write(Context context) throws IOException {
+        File directory = new File(context.getFilesDir(), DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        File file = new File(directory, mSuite + ".json");
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("suite").value(mSuite);
+            writer.name("timeMillis").value(System.currentTimeMillis());
+            writer.name("device").beginObject()
+                    .name("manufacturer").value(Build.MANUFACTURER)
+                    .name("model").value(Build.MODEL)
+                    .name("sdk").value(Build.VERSION.SDK_INT)
+                    .endObject();
+            writer.name("results").beginArray();
+            for (Result result : getResults()) {
+                writer.beginObject()
+                        .name("name").value(result.name)
+                        .name("tableSize").value(result.tableSize)
+                        .name("runs").value(result.runs)
+                        .name("minNanos").value(result.minNanos)
+                        .name("medianNanos").value(result.medianNanos)
+                        .name("p90Nanos").value(result.p90Nanos)
+                        .name("maxNanos").value(result.maxNanos)
+                        .name("meanNanos").value(result.meanNanos)
+                        .endObject();
+            }
+            writer.endArray();
+            writer.name("figures").beginArray();
+            for (Figure figure : getFigures()) {
+                writer.beginObject()
+                        .name("name").value(figure.name)
+                        .name("tableSize").value(figure.tableSize)
+                        .name("unit").value(figure.unit)
+                        .name("value").value(figure.value)
+                        .endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+        Log.i(LOG_TAG, "Wrote " + file);
+        return file;
+    }
+}
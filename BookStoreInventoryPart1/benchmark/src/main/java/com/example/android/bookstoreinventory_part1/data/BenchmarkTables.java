@@ -0,0 +1,181 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.test.mock.MockContentResolver;
+import android.util.Log;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.SupplierEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Table sizes the benchmarks are parameterized with, and the product table filled to one of them.
+ * The benchmarks run against a provider of their own over a separate database, so they never
+ * touch the inventory of the app installed on the device.
+ */
+public final class BenchmarkTables {
+
+    private static final String LOG_TAG = "Benchmark";
+
+    /** Instrumentation argument listing the table sizes to run, comma separated */
+    public static final String ARGUMENT_TABLE_SIZES = "tableSizes";
+
+    private static final int[] DEFAULT_TABLE_SIZES = {1000, 100000, 1000000};
+
+    /** Rows per bulkInsert while filling, so a million rows don't sit in memory at once */
+    private static final int FILL_CHUNK = 5000;
+
+    /** Database file of the benchmark provider, next to the app's own */
+    private static final String DATABASE_NAME = "productInventory-benchmark.db";
+
+    /** Number of suppliers the products are spread over */
+    private static final int SUPPLIER_COUNT = 5;
+
+    /** Size the table was last filled to by {@link #fill}, -1 if it may have been emptied since */
+    private static int sFilledSize = -1;
+
+    private static MockContentResolver sResolver;
+
+    private static long[] sSupplierIds;
+
+    private BenchmarkTables() {
+    }
+
+    /** Returns the resolver of the benchmark provider, created with its database on first use */
+    public static synchronized ContentResolver getResolver() {
+        if (sResolver == null) {
+            Context context = InstrumentationRegistry.getTargetContext();
+            ProviderInfo info = new ProviderInfo();
+            info.authority = BookInventoryContract.CONTENT_AUTHORITY;
+            BookInventoryProvider provider = new BookInventoryProvider(DATABASE_NAME);
+            provider.attachInfo(context, info);
+            sResolver = new MockContentResolver(context);
+            sResolver.addProvider(BookInventoryContract.CONTENT_AUTHORITY, provider);
+        }
+        return sResolver;
+    }
+
+    /** Returns the table sizes as parameters of a {@link org.junit.runners.Parameterized} runner */
+    public static List<Object[]> sizes() {
+        int[] sizes = DEFAULT_TABLE_SIZES;
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String argument = arguments == null ? null : arguments.getString(ARGUMENT_TABLE_SIZES);
+        if (argument != null) {
+            String[] parts = argument.split(",");
+            sizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                sizes[i] = Integer.parseInt(parts[i].trim());
+            }
+        }
+        List<Object[]> parameters = new ArrayList<>();
+        for (int size : sizes) {
+            parameters.add(new Object[]{size});
+        }
+        return parameters;
+    }
+
+    /**
+     * Fills the product table with size products, numbered from the smallest _ID up. Does nothing
+     * if it was last filled to that size, the benchmarks of one size leave it about as they
+     * found it.
+     */
+    public static void fill(ContentResolver resolver, int size) {
+        if (sFilledSize == size) {
+            return;
+        }
+        long start = System.nanoTime();
+        clear(resolver);
+        for (int first = 0; first < size; first += FILL_CHUNK) {
+            resolver.bulkInsert(BookEntry.CONTENT_URI, createProducts(first, Math.min(FILL_CHUNK, size - first)));
+        }
+        sFilledSize = size;
+        Log.i(LOG_TAG, "Filled " + size + " products in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Empties the product table. The deleted products are purged right away, so they don't
+     * weigh on the benchmarks that follow.
+     */
+    public static void clear(ContentResolver resolver) {
+        resolver.delete(BookEntry.CONTENT_URI, null, null);
+        resolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED, null, null);
+        sFilledSize = -1;
+    }
+
+    /** Returns the smallest product _ID, 0 if there are no products */
+    public static long firstId(ContentResolver resolver) {
+        Cursor cursor = resolver.query(BookEntry.buildPageUri(1, 0), new String[]{BookEntry._ID},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Returns the ISBN-13 of the given product number, 978 and the number on nine digits */
+    public static String isbnOf(int number) {
+        String digits = "978" + String.format(Locale.US, "%09d", number);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (digits.charAt(i) - '0');
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    /**
+     * Returns the _IDs of the suppliers the products are spread over, looked up by name through
+     * {@link SupplierEntry#CONTENT_URI} and inserted there the first time the database doesn't
+     * have them
+     */
+    public static synchronized long[] getSupplierIds() {
+        if (sSupplierIds == null) {
+            ContentResolver resolver = getResolver();
+            long[] ids = new long[SUPPLIER_COUNT];
+            for (int i = 0; i < SUPPLIER_COUNT; i++) {
+                String name = "Benchmark Supplier " + (i + 1);
+                Cursor cursor = resolver.query(SupplierEntry.CONTENT_URI, new String[]{SupplierEntry._ID},
+                        SupplierEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[]{name}, null);
+                try {
+                    if (cursor.moveToFirst()) {
+                        ids[i] = cursor.getLong(0);
+                        continue;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                ContentValues values = new ContentValues();
+                values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+                ids[i] = ContentUris.parseId(resolver.insert(SupplierEntry.CONTENT_URI, values));
+            }
+            sSupplierIds = ids;
+        }
+        return sSupplierIds;
+    }
+
+    /** Products numbered first to first + count - 1, spread over the suppliers of {@link #getSupplierIds()} */
+    public static ContentValues[] createProducts(int first, int count) {
+        long[] supplierIds = getSupplierIds();
+        ContentValues[] products = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            int number = first + i;
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_PRODUCT_NAMES, "Book " + number);
+            values.put(BookEntry.COLUMN_PRODUCT_PRICES, 10 + number % 20);
+            values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, number % 50);
+            values.put(BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplierIds[number % supplierIds.length]);
+            products[i] = values;
+        }
+        return products;
+    }
+}
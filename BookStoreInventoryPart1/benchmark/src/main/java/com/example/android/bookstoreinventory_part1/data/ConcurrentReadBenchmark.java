@@ -0,0 +1,143 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of reading a product by _ID through the provider while another thread bulk inserts
+ * batches, each in one write transaction, against the same read with no writer and the time of
+ * one of those write transactions. With write-ahead logging the reads during the writes stay
+ * close to the idle ones instead of taking up to a write transaction.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentReadBenchmark {
+
+    private static final int TABLE_SIZE = 100000;
+
+    private static final int WARMUPS = 20;
+
+    private static final int RUNS = 500;
+
+    /** Products of each batch the writer inserts */
+    private static final int BATCH_SIZE = 2000;
+
+    private static final int BATCH_RUNS = 10;
+
+    private static final BenchmarkReport sReport =
+            new BenchmarkReport(ConcurrentReadBenchmark.class.getSimpleName());
+
+    private ContentResolver mResolver;
+
+    private long mFirstId;
+
+    /** Fixed seed, so every run of the suite reads the same rows */
+    private final Random mRandom = new Random(42);
+
+    @Before
+    public void setUp() {
+        mResolver = BenchmarkTables.getResolver();
+        BenchmarkTables.fill(mResolver, TABLE_SIZE);
+        mFirstId = BenchmarkTables.firstId(mResolver);
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        BenchmarkTables.clear(BenchmarkTables.getResolver());
+        sReport.write(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void readById_idle() {
+        measureReads("readById_idle");
+    }
+
+    @Test
+    public void readById_duringBulkInserts() throws InterruptedException {
+        final long lastId = lastId();
+        final ContentValues[] products = BenchmarkTables.createProducts(TABLE_SIZE, BATCH_SIZE);
+        final AtomicBoolean reading = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (reading.get()) {
+                    mResolver.bulkInsert(BookEntry.CONTENT_URI, products);
+                }
+            }
+        });
+        writer.start();
+        try {
+            measureReads("readById_duringBulkInserts");
+        } finally {
+            reading.set(false);
+            writer.join();
+            removeProductsAfter(lastId);
+        }
+    }
+
+    @Test
+    public void bulkInsert_writeTransaction() {
+        final long lastId = lastId();
+        final ContentValues[] products = BenchmarkTables.createProducts(TABLE_SIZE, BATCH_SIZE);
+        try {
+            sReport.measure("bulkInsert_writeTransaction", TABLE_SIZE, 1, BATCH_RUNS,
+                    new BenchmarkReport.Operation() {
+                        @Override
+                        public void run(int run) {
+                            mResolver.bulkInsert(BookEntry.CONTENT_URI, products);
+                        }
+                    });
+        } finally {
+            removeProductsAfter(lastId);
+        }
+    }
+
+    private void measureReads(String name) {
+        sReport.measure(name, TABLE_SIZE, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                // A selection instead of the product URI, so the read reaches SQLite instead of the cache
+                long id = mFirstId + mRandom.nextInt(TABLE_SIZE);
+                Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, null, BookEntry._ID + " = ?",
+                        new String[]{String.valueOf(id)}, null);
+                try {
+                    assertTrue(cursor.moveToFirst());
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    private long lastId() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{"MAX(" + BookEntry._ID + ")"},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /** Deletes and purges the products the writer added after the given _ID */
+    private void removeProductsAfter(long id) {
+        mResolver.delete(BookEntry.CONTENT_URI, BookEntry._ID + " > ?", new String[]{String.valueOf(id)});
+        mResolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED, null, null);
+    }
+}
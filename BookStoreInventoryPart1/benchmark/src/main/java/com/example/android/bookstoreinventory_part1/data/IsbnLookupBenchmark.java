@@ -0,0 +1,103 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of finding a scanned book among 1M products: the Products/isbn/* lookup, one probe
+ * of the unique ISBN index, against what the counters did before, a search of the name picked
+ * from the results.
+ */
+@RunWith(AndroidJUnit4.class)
+public class IsbnLookupBenchmark {
+
+    private static final int TABLE_SIZE = 1000000;
+
+    /** Rows per bulkInsert, as BenchmarkTables fills the table */
+    private static final int CHUNK_SIZE = 5000;
+
+    private static final int WARMUPS = 20;
+
+    private static final int RUNS = 200;
+
+    private static final String[] PROJECTION = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY, BookEntry.COLUMN_ISBN};
+
+    private static final BenchmarkReport sReport = new BenchmarkReport(IsbnLookupBenchmark.class.getSimpleName());
+
+    private final ContentResolver mResolver = BenchmarkTables.getResolver();
+
+    /** Fixed seed, so every run of the suite looks up the same books */
+    private final Random mRandom = new Random(42);
+
+    /** Fills the table with products that each have an ISBN, which {@link BenchmarkTables#fill} doesn't give */
+    @BeforeClass
+    public static void fillTable() {
+        ContentResolver resolver = BenchmarkTables.getResolver();
+        BenchmarkTables.clear(resolver);
+        for (int first = 0; first < TABLE_SIZE; first += CHUNK_SIZE) {
+            ContentValues[] products = BenchmarkTables.createProducts(first, CHUNK_SIZE);
+            for (int i = 0; i < products.length; i++) {
+                products[i].put(BookEntry.COLUMN_ISBN, BenchmarkTables.isbnOf(first + i));
+            }
+            resolver.bulkInsert(BookEntry.CONTENT_URI, products);
+        }
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        BenchmarkTables.clear(BenchmarkTables.getResolver());
+        sReport.write(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void lookupByIsbn() {
+        sReport.measure("lookupByIsbn", TABLE_SIZE, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                String isbn = BenchmarkTables.isbnOf(mRandom.nextInt(TABLE_SIZE));
+                // Typed with separators, as printed on the back cover
+                Uri uri = BookEntry.buildIsbnUri(isbn.substring(0, 3) + "-" + isbn.substring(3, 12) + "-"
+                        + isbn.charAt(12));
+                Cursor cursor = mResolver.query(uri, PROJECTION, null, null, null);
+                try {
+                    assertTrue(cursor.moveToFirst());
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void lookupByNameSearch() {
+        sReport.measure("lookupByNameSearch", TABLE_SIZE, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                Cursor cursor = mResolver.query(BookEntry.buildSearchUri("Book " + mRandom.nextInt(TABLE_SIZE)),
+                        PROJECTION, null, null, null);
+                try {
+                    assertTrue(cursor.getCount() > 0);
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,442 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of {@link BookInventoryProvider} through the ContentResolver, as the app calls it:
+ * single-row insert, update and delete, a batch of products inserted one by one and with one
+ * bulkInsert, a page of the product list, a page of it with the supplier's phone number joined in,
+ * a page of the low-stock list, the editor load path
+ * (Products/# with the editor's projection read through {@link ProductReader}), and the first row
+ * of the whole product list, read through the query result a CursorLoader returns and through a
+ * {@link ProductPageCursor}. Scrolling through the whole list with each of the two also records
+ * the peak Java and native heap. Each runs at every table size of {@link BenchmarkTables#sizes()}.
+ */
+@RunWith(Parameterized.class)
+public class ProviderBenchmark {
+
+    private static final int WARMUPS = 20;
+
+    private static final int RUNS = 200;
+
+    private static final int PAGE_SIZE = 50;
+
+    /** Products of an inserted batch, and runs of the batch inserts */
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int BATCH_WARMUPS = 1;
+
+    private static final int BATCH_RUNS = 5;
+
+    /** Runs of the first row of the whole list, which reads every row through the query result */
+    private static final int LIST_WARMUPS = 2;
+
+    private static final int LIST_RUNS = 10;
+
+    /** The columns the product list shows */
+    private static final String[] LIST_PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY};
+
+    /** The columns the editor loads, see ProductEditorActivity */
+    private static final String[] EDITOR_PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAMES,
+            BookEntry.COLUMN_PRODUCT_PRICES,
+            BookEntry.COLUMN_PRODUCTS_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+            BookEntry.COLUMN_REORDER_THRESHOLD};
+
+    private static final BenchmarkReport sReport = new BenchmarkReport(ProviderBenchmark.class.getSimpleName());
+
+    @Parameterized.Parameters(name = "{0} rows")
+    public static List<Object[]> sizes() {
+        return BenchmarkTables.sizes();
+    }
+
+    private final int mTableSize;
+
+    private ContentResolver mResolver;
+
+    private long mFirstId;
+
+    /** Fixed seed, so every run of the suite touches the same rows */
+    private final Random mRandom = new Random(42);
+
+    public ProviderBenchmark(int tableSize) {
+        mTableSize = tableSize;
+    }
+
+    @Before
+    public void setUp() {
+        mResolver = BenchmarkTables.getResolver();
+        BenchmarkTables.fill(mResolver, mTableSize);
+        mFirstId = BenchmarkTables.firstId(mResolver);
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        BenchmarkTables.clear(BenchmarkTables.getResolver());
+        sReport.write(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void insert() {
+        final Uri[] inserted = new Uri[WARMUPS + RUNS];
+        final ContentValues[] products = BenchmarkTables.createProducts(mTableSize, WARMUPS + RUNS);
+        sReport.measure("insert", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            private int mNext;
+
+            @Override
+            public void run(int run) {
+                inserted[mNext] = mResolver.insert(BookEntry.CONTENT_URI, products[mNext]);
+                mNext++;
+            }
+        });
+        // Back to the size the other benchmarks expect
+        for (Uri uri : inserted) {
+            assertEquals(1, mResolver.delete(uri, null, null));
+        }
+    }
+
+    @Test
+    public void insertBatch_singleInserts() {
+        final ContentValues[] products = BenchmarkTables.createProducts(mTableSize, BATCH_SIZE);
+        long lastId = lastId();
+        sReport.measure("insertBatch_singleInserts", mTableSize, BATCH_WARMUPS, BATCH_RUNS,
+                new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        for (ContentValues product : products) {
+                            assertNotNull(mResolver.insert(BookEntry.CONTENT_URI, product));
+                        }
+                    }
+                });
+        removeProductsAfter(lastId);
+    }
+
+    @Test
+    public void insertBatch_bulkInsert() {
+        final ContentValues[] products = BenchmarkTables.createProducts(mTableSize, BATCH_SIZE);
+        long lastId = lastId();
+        sReport.measure("insertBatch_bulkInsert", mTableSize, BATCH_WARMUPS, BATCH_RUNS,
+                new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        assertEquals(BATCH_SIZE, mResolver.bulkInsert(BookEntry.CONTENT_URI, products));
+                    }
+                });
+        removeProductsAfter(lastId);
+    }
+
+    @Test
+    public void updateQuantityById() {
+        sReport.measure("updateQuantityById", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                ContentValues values = new ContentValues();
+                values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, run % 50);
+                assertEquals(1, mResolver.update(randomProductUri(), values, null, null));
+            }
+        });
+    }
+
+    @Test
+    public void queryPageByName() {
+        sReport.measure("queryPageByName", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                // Names sort as text, any "Book <n>" starts a full page but the last few
+                String afterName = "Book " + mRandom.nextInt(mTableSize);
+                Cursor cursor = mResolver.query(BookEntry.buildPageUri(PAGE_SIZE, afterName, 0),
+                        null, null, null, null);
+                try {
+                    ProductReader reader = new ProductReader(cursor);
+                    while (cursor.moveToNext()) {
+                        reader.getName();
+                        reader.getQuantity();
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void queryPageWithSupplierPhone() {
+        final Uri pageUri = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+        final String[] projection = {BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAMES,
+                BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER};
+        sReport.measure("queryPageWithSupplierPhone", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                // Every product finds its supplier's number through the view of the two tables
+                Cursor cursor = mResolver.query(pageUri, projection, null, null,
+                        BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE");
+                try {
+                    while (cursor.moveToNext()) {
+                        cursor.getString(1);
+                        cursor.getString(2);
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void queryLowStockPage() {
+        // The table keeps the default threshold of 0, so the one product in fifty out of stock is
+        // low: the smallest table has less than a page of them
+        final Uri pageUri = BookEntry.LOW_STOCK_URI.buildUpon()
+                .appendQueryParameter(BookInventoryContract.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+        sReport.measure("queryLowStockPage", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                Cursor cursor = mResolver.query(pageUri, LIST_PROJECTION, null, null, null);
+                try {
+                    ProductReader reader = new ProductReader(cursor);
+                    while (cursor.moveToNext()) {
+                        reader.getName();
+                        reader.getQuantity();
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void editorLoad() {
+        sReport.measure("editorLoad", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                loadEditor(randomProductUri());
+            }
+        });
+    }
+
+    @Test
+    public void editorLoad_sameProduct() {
+        final Uri uri = randomProductUri();
+        // After the first load the product comes from ProductCache
+        sReport.measure("editorLoad_sameProduct", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                loadEditor(uri);
+            }
+        });
+    }
+
+    @Test
+    public void listFirstRow_queryCursor() {
+        sReport.measure("listFirstRow_queryCursor", mTableSize, LIST_WARMUPS, LIST_RUNS,
+                new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, LIST_PROJECTION, null, null, null);
+                        try {
+                            // A CursorLoader counts the rows on its thread, which reads the whole table
+                            assertEquals(mTableSize, cursor.getCount());
+                            assertTrue(cursor.moveToFirst());
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void listFirstRow_pageCursor() {
+        sReport.measure("listFirstRow_pageCursor", mTableSize, LIST_WARMUPS, LIST_RUNS,
+                new BenchmarkReport.Operation() {
+                    @Override
+                    public void run(int run) {
+                        Cursor cursor = new ProductPageCursor(mResolver, LIST_PROJECTION,
+                                ProductPageCursor.DEFAULT_PAGE_SIZE, ProductPageCursor.DEFAULT_MAX_PAGES);
+                        try {
+                            assertTrue(cursor.moveToFirst());
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void listScroll_queryCursor() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, LIST_PROJECTION, null, null, null);
+        try {
+            measureScroll("listScroll_queryCursor", cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void listScroll_pageCursor() {
+        Cursor cursor = new ProductPageCursor(mResolver, LIST_PROJECTION,
+                ProductPageCursor.DEFAULT_PAGE_SIZE, ProductPageCursor.DEFAULT_MAX_PAGES);
+        try {
+            measureScroll("listScroll_pageCursor", cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void editorLoad_coldThenWarm() {
+        invalidateCache();
+        // Products never loaded since the cache was emptied, then the same products again
+        sReport.measure("editorLoad_cold", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            private int mNext;
+
+            @Override
+            public void run(int run) {
+                loadEditor(productUri(mNext++));
+            }
+        });
+        sReport.measure("editorLoad_warm", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            private int mNext;
+
+            @Override
+            public void run(int run) {
+                loadEditor(productUri(mNext++));
+            }
+        });
+    }
+
+    @Test
+    public void deleteById() {
+        // Delete products added for the purpose, so the table keeps its size
+        final Uri[] extra = new Uri[WARMUPS + RUNS];
+        ContentValues[] products = BenchmarkTables.createProducts(mTableSize, extra.length);
+        for (int i = 0; i < extra.length; i++) {
+            extra[i] = mResolver.insert(BookEntry.CONTENT_URI, products[i]);
+        }
+        sReport.measure("deleteById", mTableSize, WARMUPS, RUNS, new BenchmarkReport.Operation() {
+            private int mNext;
+
+            @Override
+            public void run(int run) {
+                assertEquals(1, mResolver.delete(extra[mNext++], null, null));
+            }
+        });
+    }
+
+    /**
+     * Times one scroll through every row of the cursor, like a fling to the bottom of the list,
+     * and records the peak Java and native heap above what was in use before it
+     */
+    private void measureScroll(String name, final Cursor cursor) {
+        final long javaBefore = BenchmarkReport.usedJavaHeap();
+        final long nativeBefore = BenchmarkReport.usedNativeHeap();
+        final long[] peaks = {javaBefore, nativeBefore};
+        sReport.measure(name, mTableSize, 0, 1, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                Runtime runtime = Runtime.getRuntime();
+                int position = 0;
+                while (cursor.moveToPosition(position)) {
+                    cursor.getString(1);
+                    if (position % 1000 == 0) {
+                        // Without a collection, which would take longer than the scroll
+                        peaks[0] = Math.max(peaks[0], runtime.totalMemory() - runtime.freeMemory());
+                        peaks[1] = Math.max(peaks[1], BenchmarkReport.usedNativeHeap());
+                    }
+                    position++;
+                }
+                assertEquals(mTableSize, position);
+            }
+        });
+        sReport.record(name + "_peakJavaHeap", mTableSize, BenchmarkReport.Figure.UNIT_BYTES, peaks[0] - javaBefore);
+        sReport.record(name + "_peakNativeHeap", mTableSize, BenchmarkReport.Figure.UNIT_BYTES,
+                peaks[1] - nativeBefore);
+    }
+
+    /** Returns the greatest product _ID */
+    private long lastId() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{"MAX(" + BookEntry._ID + ")"},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Deletes and purges the products added after the given _ID, so the table is back to the
+     * size the other benchmarks expect without the batches left hidden in it
+     */
+    private void removeProductsAfter(long id) {
+        mResolver.delete(BookEntry.CONTENT_URI, BookEntry._ID + " > ?", new String[]{String.valueOf(id)});
+        mResolver.call(BookEntry.CONTENT_URI, BookInventoryProvider.METHOD_PURGE_DELETED, null, null);
+    }
+
+    /** Reads the product as ProductEditorActivity.onLoadFinished does */
+    private void loadEditor(Uri uri) {
+        Cursor cursor = mResolver.query(uri, EDITOR_PROJECTION, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            ProductReader reader = new ProductReader(cursor);
+            reader.getSupplier();
+            reader.getName();
+            Prices.format(reader.getPriceCents());
+            Integer.toString(reader.getQuantity());
+            Integer.toString(reader.getReorderThreshold());
+            reader.getSupplierPhone();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Uri randomProductUri() {
+        return productUri(mRandom.nextInt(mTableSize));
+    }
+
+    /** Returns the URI of the product with the given number */
+    private Uri productUri(int number) {
+        return ContentUris.withAppendedId(BookEntry.CONTENT_URI, mFirstId + number % mTableSize);
+    }
+
+    /**
+     * Empties the provider's product cache through a write with a selection, which rewrites the
+     * quantity the first product was filled with
+     */
+    private void invalidateCache() {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCTS_QUANTITY, 0);
+        mResolver.update(BookEntry.CONTENT_URI, values, BookEntry._ID + " = ?",
+                new String[]{String.valueOf(mFirstId)});
+    }
+}
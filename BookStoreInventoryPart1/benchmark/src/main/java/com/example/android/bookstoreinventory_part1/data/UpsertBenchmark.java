@@ -0,0 +1,120 @@
+package com.example.android.bookstoreinventory_part1.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstoreinventory_part1.data.BookInventoryContract.BookEntry;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks of re-importing a supplier list of 100k products into a table already holding them:
+ * plain bulk inserts followed by the dedupe pass they made necessary, against bulk inserts with
+ * each {@link BookInventoryContract#QUERY_PARAMETER_ON_CONFLICT} strategy. Each run imports the
+ * whole list and leaves the table with the same 100k products.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UpsertBenchmark {
+
+    private static final int TABLE_SIZE = 100000;
+
+    private static final int RUNS = 3;
+
+    /** Rows per bulkInsert, as BenchmarkTables fills the table */
+    private static final int CHUNK_SIZE = 5000;
+
+    /** Deletes all but the oldest product of each name and supplier */
+    private static final String SELECTION_DUPLICATES = BookEntry._ID + " NOT IN (SELECT MIN("
+            + BookEntry._ID + ") FROM " + BookEntry.TABLE_NAME + " GROUP BY "
+            + BookEntry.COLUMN_PRODUCT_NAMES + " COLLATE NOCASE, " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ")";
+
+    private static final BenchmarkReport sReport = new BenchmarkReport(UpsertBenchmark.class.getSimpleName());
+
+    private ContentResolver mResolver;
+
+    /** The re-imported list: the same products, with new prices */
+    private ContentValues[] mList;
+
+    @Before
+    public void setUp() {
+        mResolver = BenchmarkTables.getResolver();
+        BenchmarkTables.fill(mResolver, TABLE_SIZE);
+        mList = BenchmarkTables.createProducts(0, TABLE_SIZE);
+        for (ContentValues values : mList) {
+            values.put(BookEntry.COLUMN_PRODUCT_PRICES, values.getAsLong(BookEntry.COLUMN_PRODUCT_PRICES) + 1);
+        }
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        BenchmarkTables.clear(BenchmarkTables.getResolver());
+        sReport.write(InstrumentationRegistry.getTargetContext());
+    }
+
+    @Test
+    public void reimport_insertThenDedupe() {
+        sReport.measure("reimport_insertThenDedupe", TABLE_SIZE, 0, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                importList(BookEntry.CONTENT_URI);
+                assertEquals(TABLE_SIZE, mResolver.delete(BookEntry.CONTENT_URI, SELECTION_DUPLICATES, null));
+            }
+        });
+        assertEquals(TABLE_SIZE, countProducts());
+    }
+
+    @Test
+    public void reimport_replace() {
+        measureUpsert("reimport_replace", BookInventoryContract.CONFLICT_REPLACE);
+    }
+
+    @Test
+    public void reimport_keep() {
+        measureUpsert("reimport_keep", BookInventoryContract.CONFLICT_KEEP);
+    }
+
+    @Test
+    public void reimport_sumQuantity() {
+        measureUpsert("reimport_sumQuantity", BookInventoryContract.CONFLICT_SUM_QUANTITY);
+    }
+
+    private void measureUpsert(String name, String onConflict) {
+        final Uri uri = BookEntry.buildUpsertUri(onConflict);
+        sReport.measure(name, TABLE_SIZE, 0, RUNS, new BenchmarkReport.Operation() {
+            @Override
+            public void run(int run) {
+                importList(uri);
+            }
+        });
+        assertEquals(TABLE_SIZE, countProducts());
+    }
+
+    /** Bulk inserts the whole list, CHUNK_SIZE rows at a time */
+    private void importList(Uri uri) {
+        for (int first = 0; first < mList.length; first += CHUNK_SIZE) {
+            ContentValues[] chunk = new ContentValues[Math.min(CHUNK_SIZE, mList.length - first)];
+            System.arraycopy(mList, first, chunk, 0, chunk.length);
+            assertEquals(chunk.length, mResolver.bulkInsert(uri, chunk));
+        }
+    }
+
+    private int countProducts() {
+        Cursor cursor = mResolver.query(BookEntry.CONTENT_URI, new String[]{BookEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}